@@ -0,0 +1,158 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.DataOutput;
+import java.io.UTFDataFormatException;
+
+/**
+ * A data output writing directly into a fixed-size array.
+ *
+ * <p>Writing past the end of the array throws an {@link IndexOutOfBoundsException}.</p>
+ */
+final class ArrayDataOutput implements DataOutput {
+  private final byte[] array;
+  private int position;
+
+  ArrayDataOutput(final byte@NonNull[] array) {
+    this(array, 0);
+  }
+
+  ArrayDataOutput(final byte@NonNull[] array, final int position) {
+    this.array = array;
+    this.position = position;
+  }
+
+  /**
+   * Gets the array written to.
+   *
+   * @return the array
+   */
+  byte@NonNull[] array() {
+    return this.array;
+  }
+
+  /**
+   * Gets the position of the next byte to be written.
+   *
+   * @return the position
+   */
+  int position() {
+    return this.position;
+  }
+
+  /**
+   * Skips over bytes that are written by someone else.
+   *
+   * @param length the number of bytes to skip
+   */
+  void skip(final int length) {
+    this.position += length;
+  }
+
+  @Override
+  public void write(final int b) {
+    this.array[this.position++] = (byte) b;
+  }
+
+  @Override
+  public void write(final byte@NonNull[] b) {
+    this.write(b, 0, b.length);
+  }
+
+  @Override
+  public void write(final byte@NonNull[] b, final int off, final int len) {
+    System.arraycopy(b, off, this.array, this.position, len);
+    this.position += len;
+  }
+
+  @Override
+  public void writeBoolean(final boolean v) {
+    this.array[this.position++] = (byte) (v ? 1 : 0);
+  }
+
+  @Override
+  public void writeByte(final int v) {
+    this.array[this.position++] = (byte) v;
+  }
+
+  @Override
+  public void writeShort(final int v) {
+    ByteArrays.putShort(this.array, this.position, (short) v);
+    this.position += Short.BYTES;
+  }
+
+  @Override
+  public void writeChar(final int v) {
+    this.writeShort(v);
+  }
+
+  @Override
+  public void writeInt(final int v) {
+    ByteArrays.putInt(this.array, this.position, v);
+    this.position += Integer.BYTES;
+  }
+
+  @Override
+  public void writeLong(final long v) {
+    ByteArrays.putLong(this.array, this.position, v);
+    this.position += Long.BYTES;
+  }
+
+  @Override
+  public void writeFloat(final float v) {
+    this.writeInt(Float.floatToIntBits(v));
+  }
+
+  @Override
+  public void writeDouble(final double v) {
+    this.writeLong(Double.doubleToLongBits(v));
+  }
+
+  @Override
+  public void writeBytes(final @NonNull String s) {
+    for(int i = 0, length = s.length(); i < length; i++) {
+      this.array[this.position++] = (byte) s.charAt(i);
+    }
+  }
+
+  @Override
+  public void writeChars(final @NonNull String s) {
+    for(int i = 0, length = s.length(); i < length; i++) {
+      this.writeShort(s.charAt(i));
+    }
+  }
+
+  @Override
+  public void writeUTF(final @NonNull String s) throws UTFDataFormatException {
+    final int length = ModifiedUtf8.encodedLength(s);
+    if(length > 0xffff) {
+      throw new UTFDataFormatException(String.format("Encoded string of %d bytes is too long", length));
+    }
+    this.writeShort(length);
+    this.position = ModifiedUtf8.encode(s, this.array, this.position);
+  }
+}
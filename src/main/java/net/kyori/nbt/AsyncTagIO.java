@@ -0,0 +1,304 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reads and writes compound tags without blocking the caller.
+ *
+ * <p>Operations run on an executor, and at most {@link Builder#maxInFlight(int) a fixed number} run at once.
+ * Further operations wait in a queue of bounded size, and are rejected with a
+ * {@link RejectedExecutionException} once it is full. Cancelling an operation that has not started yet
+ * removes it from the queue; an operation that has started runs to completion.</p>
+ */
+public final class AsyncTagIO {
+  /**
+   * The executor shared by every instance built without one. Its idle threads expire, so it never needs to be shut down.
+   */
+  private static final Executor DEFAULT_EXECUTOR = BlockingExecutors.create("nbt-io-");
+  private final Executor executor;
+  private final int maxInFlight;
+  private final int maxQueued;
+  private final Queue<Operation<?>> queue = new ArrayDeque<>();
+  private int inFlight;
+
+  private AsyncTagIO(final @NonNull Executor executor, final int maxInFlight, final int maxQueued) {
+    this.executor = executor;
+    this.maxInFlight = maxInFlight;
+    this.maxQueued = maxQueued;
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return a new builder
+   */
+  public static @NonNull Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Reads a compound tag from {@code path}.
+   *
+   * @param path the path
+   * @return a future completed with the compound tag
+   * @see TagIO#readPath(Path)
+   */
+  public @NonNull CompletableFuture<CompoundTag> readPathAsync(final @NonNull Path path) {
+    return this.submit(() -> TagIO.readPath(path));
+  }
+
+  /**
+   * Reads a compound tag from {@code path} using GZIP decompression.
+   *
+   * @param path the path
+   * @return a future completed with the compound tag
+   * @see TagIO#readCompressedPath(Path)
+   */
+  public @NonNull CompletableFuture<CompoundTag> readCompressedPathAsync(final @NonNull Path path) {
+    return this.submit(() -> TagIO.readCompressedPath(path));
+  }
+
+  /**
+   * Reads a compound tag from {@code path} using {@code compression}.
+   *
+   * @param path the path
+   * @param compression the compression
+   * @return a future completed with the compound tag
+   * @see TagIO#readPath(Path, Compression)
+   */
+  public @NonNull CompletableFuture<CompoundTag> readPathAsync(final @NonNull Path path, final @NonNull Compression compression) {
+    return this.submit(() -> TagIO.readPath(path, compression));
+  }
+
+  /**
+   * Writes a compound tag to {@code path}.
+   *
+   * <p>The tag must not be modified until the future completes.</p>
+   *
+   * @param tag the compound tag
+   * @param path the path
+   * @return a future completed once the compound tag has been written
+   * @see TagIO#writePath(CompoundTag, Path)
+   */
+  public @NonNull CompletableFuture<Void> writePathAsync(final @NonNull CompoundTag tag, final @NonNull Path path) {
+    return this.submit(() -> {
+      TagIO.writePath(tag, path);
+      return null;
+    });
+  }
+
+  /**
+   * Writes a compound tag to {@code path} using GZIP compression.
+   *
+   * <p>The tag must not be modified until the future completes.</p>
+   *
+   * @param tag the compound tag
+   * @param path the path
+   * @return a future completed once the compound tag has been written
+   * @see TagIO#writeCompressedPath(CompoundTag, Path)
+   */
+  public @NonNull CompletableFuture<Void> writeCompressedPathAsync(final @NonNull CompoundTag tag, final @NonNull Path path) {
+    return this.submit(() -> {
+      TagIO.writeCompressedPath(tag, path);
+      return null;
+    });
+  }
+
+  /**
+   * Writes a compound tag to {@code path} using {@code compression}.
+   *
+   * <p>The tag must not be modified until the future completes.</p>
+   *
+   * @param tag the compound tag
+   * @param path the path
+   * @param compression the compression
+   * @return a future completed once the compound tag has been written
+   * @see TagIO#writePath(CompoundTag, Path, Compression)
+   */
+  public @NonNull CompletableFuture<Void> writePathAsync(final @NonNull CompoundTag tag, final @NonNull Path path, final @NonNull Compression compression) {
+    return this.submit(() -> {
+      TagIO.writePath(tag, path, compression);
+      return null;
+    });
+  }
+
+  /**
+   * Gets the number of operations that are running or queued.
+   *
+   * @return the number of operations
+   */
+  public synchronized int pending() {
+    return this.inFlight + this.queue.size();
+  }
+
+  private <T> @NonNull CompletableFuture<T> submit(final @NonNull IOSupplier<T> task) {
+    final Operation<T> operation = new Operation<>(task);
+    synchronized(this) {
+      if(this.inFlight >= this.maxInFlight) {
+        if(this.queue.size() >= this.maxQueued) {
+          operation.future.completeExceptionally(new RejectedExecutionException(String.format("More than %d operations are queued", this.maxQueued)));
+        } else {
+          this.queue.add(operation);
+        }
+        return operation.future;
+      }
+      this.inFlight++;
+    }
+    this.execute(operation);
+    return operation.future;
+  }
+
+  private void execute(final @NonNull Operation<?> operation) {
+    try {
+      this.executor.execute(operation);
+    } catch(final RejectedExecutionException e) {
+      operation.future.completeExceptionally(e);
+      this.release();
+    }
+  }
+
+  /**
+   * Starts the next queued operation, or releases the slot of a completed one.
+   */
+  private void release() {
+    /* @Nullable */ Operation<?> next;
+    synchronized(this) {
+      do {
+        next = this.queue.poll();
+      } while(next != null && next.future.isDone()); // cancelled while queued
+      if(next == null) {
+        this.inFlight--;
+        return;
+      }
+    }
+    this.execute(next);
+  }
+
+  @FunctionalInterface
+  private interface IOSupplier<T> {
+    T get() throws IOException;
+  }
+
+  private final class Operation<T> implements Runnable {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    private final IOSupplier<T> task;
+
+    Operation(final @NonNull IOSupplier<T> task) {
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if(!this.future.isDone()) {
+          this.future.complete(this.task.get());
+        }
+      } catch(final Throwable t) {
+        this.future.completeExceptionally(t);
+      } finally {
+        AsyncTagIO.this.release();
+      }
+    }
+  }
+
+  /**
+   * An async tag I/O builder.
+   */
+  public static final class Builder {
+    private /* @Nullable */ Executor executor;
+    private int maxInFlight = 16;
+    private int maxQueued = 1024;
+
+    Builder() {
+    }
+
+    /**
+     * Sets the executor operations run on.
+     *
+     * <p>Operations block while they run, so the executor should not be shared with non-blocking tasks.
+     * By default, a pool of daemon threads shared by all instances is used, or virtual threads on Java 21
+     * and newer.</p>
+     *
+     * @param executor the executor
+     * @return this builder
+     */
+    public @NonNull Builder executor(final @NonNull Executor executor) {
+      this.executor = requireNonNull(executor, "executor");
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of operations running at once.
+     *
+     * <p>Defaults to {@code 16}.</p>
+     *
+     * @param maxInFlight the maximum number of operations
+     * @return this builder
+     */
+    public @NonNull Builder maxInFlight(final int maxInFlight) {
+      if(maxInFlight < 1) {
+        throw new IllegalArgumentException(String.format("Maximum of %d operations is not positive", maxInFlight));
+      }
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of operations waiting to run.
+     *
+     * <p>Defaults to {@code 1024}.</p>
+     *
+     * @param maxQueued the maximum number of operations
+     * @return this builder
+     */
+    public @NonNull Builder maxQueued(final int maxQueued) {
+      if(maxQueued < 0) {
+        throw new IllegalArgumentException(String.format("Maximum of %d queued operations is negative", maxQueued));
+      }
+      this.maxQueued = maxQueued;
+      return this;
+    }
+
+    /**
+     * Builds an async tag I/O.
+     *
+     * @return the async tag I/O
+     */
+    public @NonNull AsyncTagIO build() {
+      return new AsyncTagIO(this.executor != null ? this.executor : DEFAULT_EXECUTOR, this.maxInFlight, this.maxQueued);
+    }
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors for blocking I/O.
+ *
+ * <p>A Java 21 version of this class, using virtual threads, is part of the multi-release jar.</p>
+ */
+final class BlockingExecutors {
+  private BlockingExecutors() {
+  }
+
+  /**
+   * Creates an executor with one daemon thread per running task.
+   *
+   * @param name the prefix of thread names
+   * @return the executor
+   */
+  static @NonNull ExecutorService create(final @NonNull String name) {
+    final AtomicInteger count = new AtomicInteger();
+    return Executors.newCachedThreadPool(runnable -> {
+      final Thread thread = new Thread(runnable, name + count.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+}
@@ -68,9 +68,7 @@ public final class ByteArrayTag extends AbstractList<ByteTag> implements Indexed
 
   @Override
   public void read(final @NonNull DataInput input, final int depth) throws IOException {
-    final int length = input.readInt();
-    this.value = new byte[length];
-    input.readFully(this.value);
+    this.value = TagDecoder.readBytes(input, input.readInt());
   }
 
   @Override
@@ -79,6 +77,11 @@ public final class ByteArrayTag extends AbstractList<ByteTag> implements Indexed
     output.write(this.value);
   }
 
+  @Override
+  public int serializedSize() {
+    return Integer.BYTES + this.value.length;
+  }
+
   @Override
   public @NonNull TagType type() {
     return TagType.BYTE_ARRAY;
@@ -0,0 +1,76 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Reads and writes primitives in byte arrays.
+ *
+ * <p>A Java 21 version of this class, using {@code VarHandle} views, is part of the multi-release jar.</p>
+ */
+final class ByteArrays {
+  private ByteArrays() {
+  }
+
+  static short getShort(final byte@NonNull[] array, final int index) {
+    return (short) ((array[index] & 0xff) << 8 | (array[index + 1] & 0xff));
+  }
+
+  static int getInt(final byte@NonNull[] array, final int index) {
+    return (array[index] & 0xff) << 24 | (array[index + 1] & 0xff) << 16 | (array[index + 2] & 0xff) << 8 | (array[index + 3] & 0xff);
+  }
+
+  static long getLong(final byte@NonNull[] array, final int index) {
+    return (long) getInt(array, index) << 32 | (getInt(array, index + 4) & 0xffffffffL);
+  }
+
+  static int getIntLE(final byte@NonNull[] array, final int index) {
+    return (array[index] & 0xff) | (array[index + 1] & 0xff) << 8 | (array[index + 2] & 0xff) << 16 | (array[index + 3] & 0xff) << 24;
+  }
+
+  static void putShort(final byte@NonNull[] array, final int index, final short value) {
+    array[index] = (byte) (value >>> 8);
+    array[index + 1] = (byte) value;
+  }
+
+  static void putInt(final byte@NonNull[] array, final int index, final int value) {
+    array[index] = (byte) (value >>> 24);
+    array[index + 1] = (byte) (value >>> 16);
+    array[index + 2] = (byte) (value >>> 8);
+    array[index + 3] = (byte) value;
+  }
+
+  static void putLong(final byte@NonNull[] array, final int index, final long value) {
+    putInt(array, index, (int) (value >>> 32));
+    putInt(array, index + 4, (int) value);
+  }
+
+  static void putIntLE(final byte@NonNull[] array, final int index, final int value) {
+    array[index] = (byte) value;
+    array[index + 1] = (byte) (value >>> 8);
+    array[index + 2] = (byte) (value >>> 16);
+    array[index + 3] = (byte) (value >>> 24);
+  }
+}
@@ -93,6 +93,11 @@ public final class ByteTag implements NumberTag {
     output.writeByte(this.value);
   }
 
+  @Override
+  public int serializedSize() {
+    return Byte.BYTES;
+  }
+
   @Override
   public @NonNull TagType type() {
     return TagType.BYTE;
@@ -29,10 +29,13 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.UUID;
+import java.util.function.BiFunction;
 
 /**
  * A compound tag.
@@ -45,7 +48,20 @@ public final class CompoundTag implements CollectionTag {
   /**
    * The map of tags.
    */
-  private final Map<String, Tag> tags = new HashMap<>();
+  private final Map<String, Tag> tags;
+
+  public CompoundTag() {
+    this.tags = new HashMap<>();
+  }
+
+  /**
+   * Creates a compound tag with room for {@code expectedSize} tags.
+   *
+   * @param expectedSize the expected number of tags
+   */
+  CompoundTag(final int expectedSize) {
+    this.tags = new HashMap<>(expectedSize < 3 ? expectedSize + 1 : (int) (expectedSize / 0.75f) + 1);
+  }
 
   /**
    * Gets a tag by its key.
@@ -128,6 +144,22 @@ public final class CompoundTag implements CollectionTag {
     return tag != null ? tag.type() : TagType.END;
   }
 
+  /**
+   * Gets the tag with the specified key, decoding it if it is {@link RawTag raw}.
+   *
+   * <p>The raw tag is not replaced by its decoded tag, so that reading a shared tree never writes to it.</p>
+   *
+   * @param key the key
+   * @return the tag
+   */
+  private @NonNull Tag decoded(final @NonNull String key) {
+    final Tag tag = this.tags.get(key);
+    if(tag instanceof RawTag) {
+      return ((RawTag) tag).decode();
+    }
+    return tag;
+  }
+
   /**
    * Gets a byte.
    *
@@ -149,7 +181,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public byte getByte(final @NonNull String key, final byte defaultValue) {
     if(this.contains(key, TagType.BYTE)) {
-      return ((NumberTag) this.tags.get(key)).byteValue();
+      return ((NumberTag) this.decoded(key)).byteValue();
     }
     return defaultValue;
   }
@@ -185,7 +217,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public short getShort(final @NonNull String key, final short defaultValue) {
     if(this.contains(key, TagType.SHORT)) {
-      return ((NumberTag) this.tags.get(key)).shortValue();
+      return ((NumberTag) this.decoded(key)).shortValue();
     }
     return defaultValue;
   }
@@ -221,7 +253,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public int getInt(final @NonNull String key, final int defaultValue) {
     if(this.contains(key, TagType.INT)) {
-      return ((NumberTag) this.tags.get(key)).intValue();
+      return ((NumberTag) this.decoded(key)).intValue();
     }
     return defaultValue;
   }
@@ -257,7 +289,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public long getLong(final @NonNull String key, final long defaultValue) {
     if(this.contains(key, TagType.LONG)) {
-      return ((NumberTag) this.tags.get(key)).longValue();
+      return ((NumberTag) this.decoded(key)).longValue();
     }
     return defaultValue;
   }
@@ -293,7 +325,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public float getFloat(final @NonNull String key, final float defaultValue) {
     if(this.contains(key, TagType.FLOAT)) {
-      return ((NumberTag) this.tags.get(key)).floatValue();
+      return ((NumberTag) this.decoded(key)).floatValue();
     }
     return defaultValue;
   }
@@ -329,7 +361,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public double getDouble(final @NonNull String key, final double defaultValue) {
     if(this.contains(key, TagType.DOUBLE)) {
-      return ((NumberTag) this.tags.get(key)).doubleValue();
+      return ((NumberTag) this.decoded(key)).doubleValue();
     }
     return defaultValue;
   }
@@ -353,7 +385,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public byte@NonNull[] getByteArray(final @NonNull String key) {
     if(this.contains(key, TagType.BYTE_ARRAY)) {
-      return ((ByteArrayTag) this.tags.get(key)).value();
+      return ((ByteArrayTag) this.decoded(key)).value();
     }
     return new byte[0];
   }
@@ -367,7 +399,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public byte@NonNull[] getByteArray(final @NonNull String key, final byte@NonNull[] defaultValue) {
     if(this.contains(key, TagType.BYTE_ARRAY)) {
-      return ((ByteArrayTag) this.tags.get(key)).value();
+      return ((ByteArrayTag) this.decoded(key)).value();
     }
     return defaultValue;
   }
@@ -403,7 +435,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public @NonNull String getString(final @NonNull String key, final @NonNull String defaultValue) {
     if(this.contains(key, TagType.STRING)) {
-      return ((StringTag) this.tags.get(key)).value();
+      return ((StringTag) this.decoded(key)).value();
     }
     return defaultValue;
   }
@@ -427,7 +459,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public @NonNull ListTag getList(final @NonNull String key) {
     if(this.contains(key, TagType.LIST)) {
-      return (ListTag) this.tags.get(key);
+      return (ListTag) this.decoded(key);
     }
     return new ListTag();
   }
@@ -443,7 +475,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public @NonNull ListTag getList(final @NonNull String key, final @NonNull TagType expectedType) {
     if(this.contains(key, TagType.LIST)) {
-      final ListTag tag = (ListTag) this.get(key);
+      final ListTag tag = (ListTag) this.decoded(key);
       if(expectedType.test(tag.listType())) {
         return tag;
       }
@@ -463,7 +495,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public @NonNull ListTag getList(final @NonNull String key, final @NonNull TagType expectedType, final @NonNull ListTag defaultValue) {
     if(this.contains(key, TagType.LIST)) {
-      final ListTag tag = (ListTag) this.get(key);
+      final ListTag tag = (ListTag) this.decoded(key);
       if(expectedType.test(tag.listType())) {
         return tag;
       }
@@ -481,7 +513,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public @NonNull ListTag getList(final @NonNull String key, final @NonNull ListTag defaultValue) {
     if(this.contains(key, TagType.LIST)) {
-      return (ListTag) this.tags.get(key);
+      return (ListTag) this.decoded(key);
     }
     return defaultValue;
   }
@@ -495,7 +527,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public @NonNull CompoundTag getCompound(final @NonNull String key) {
     if(this.contains(key, TagType.COMPOUND)) {
-      return (CompoundTag) this.tags.get(key);
+      return (CompoundTag) this.decoded(key);
     }
     return new CompoundTag();
   }
@@ -510,7 +542,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public @NonNull CompoundTag getCompound(final @NonNull String key, final @NonNull CompoundTag defaultValue) {
     if(this.contains(key, TagType.COMPOUND)) {
-      return (CompoundTag) this.tags.get(key);
+      return (CompoundTag) this.decoded(key);
     }
     return defaultValue;
   }
@@ -524,7 +556,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public int@NonNull[] getIntArray(final @NonNull String key) {
     if(this.contains(key, TagType.INT_ARRAY)) {
-      return ((IntArrayTag) this.tags.get(key)).value();
+      return ((IntArrayTag) this.decoded(key)).value();
     }
     return new int[0];
   }
@@ -538,7 +570,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public int@NonNull[] getIntArray(final @NonNull String key, final int@NonNull[] defaultValue) {
     if(this.contains(key, TagType.INT_ARRAY)) {
-      return ((IntArrayTag) this.tags.get(key)).value();
+      return ((IntArrayTag) this.decoded(key)).value();
     }
     return defaultValue;
   }
@@ -562,7 +594,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public long@NonNull[] getLongArray(final @NonNull String key) {
     if(this.contains(key, TagType.LONG_ARRAY)) {
-      return ((LongArrayTag) this.tags.get(key)).value();
+      return ((LongArrayTag) this.decoded(key)).value();
     }
     return new long[0];
   }
@@ -576,7 +608,7 @@ public final class CompoundTag implements CollectionTag {
    */
   public long@NonNull[] getLongArray(final @NonNull String key, final long@NonNull[] defaultValue) {
     if(this.contains(key, TagType.LONG_ARRAY)) {
-      return ((LongArrayTag) this.tags.get(key)).value();
+      return ((LongArrayTag) this.decoded(key)).value();
     }
     return defaultValue;
   }
@@ -676,19 +708,29 @@ public final class CompoundTag implements CollectionTag {
     return this.contains(key + "Least", TagType.LONG) && this.contains(key + "Most", TagType.LONG);
   }
 
+  /**
+   * Creates a spliterator over the entries of this compound.
+   *
+   * <p>The entries can not be modified through the spliterator.</p>
+   *
+   * @return a spliterator
+   */
+  public @NonNull Spliterator<Map.Entry<String, Tag>> spliterator() {
+    return Collections.unmodifiableMap(this.tags).entrySet().spliterator();
+  }
+
+  /**
+   * Replaces each tag with the result of applying {@code function} to it.
+   *
+   * @param function the function
+   */
+  void replaceAll(final @NonNull BiFunction<String, Tag, Tag> function) {
+    this.tags.replaceAll(function);
+  }
+
   @Override
   public void read(final @NonNull DataInput input, final int depth) throws IOException {
-    if(depth > MAX_DEPTH) {
-      throw new IllegalStateException(String.format("Depth of %d is higher than max of %d", depth, MAX_DEPTH));
-    }
-
-    TagType type;
-    while((type = TagType.of(input.readByte())) != TagType.END) {
-      final String key = input.readUTF();
-      final Tag tag = type.create();
-      tag.read(input, depth + 1);
-      this.tags.put(key, tag);
-    }
+    TagDecoder.DEFAULT.readCompound(this, input, depth);
   }
 
   @Override
@@ -704,6 +746,19 @@ public final class CompoundTag implements CollectionTag {
     output.writeByte(TagType.END.id());
   }
 
+  @Override
+  public int serializedSize() {
+    int size = Byte.BYTES; // end
+    for(final Map.Entry<String, Tag> entry : this.tags.entrySet()) {
+      final Tag tag = entry.getValue();
+      size += Byte.BYTES;
+      if(tag.type() != TagType.END) {
+        size += Short.BYTES + ModifiedUtf8.encodedLength(entry.getKey()) + tag.serializedSize();
+      }
+    }
+    return size;
+  }
+
   @Override
   public @NonNull TagType type() {
     return TagType.COMPOUND;
@@ -711,7 +766,7 @@ public final class CompoundTag implements CollectionTag {
 
   @Override
   public @NonNull CompoundTag copy() {
-    final CompoundTag copy = new CompoundTag();
+    final CompoundTag copy = new CompoundTag(this.tags.size());
     for(final Map.Entry<String, Tag> entry : this.tags.entrySet()) {
       copy.put(entry.getKey(), entry.getValue().copy());
     }
@@ -0,0 +1,100 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A compression format for encoded tags.
+ */
+public enum Compression {
+  /**
+   * No compression.
+   */
+  NONE {
+    @Override
+    public @NonNull InputStream decompress(final @NonNull InputStream input) {
+      return input;
+    }
+
+    @Override
+    public @NonNull OutputStream compress(final @NonNull OutputStream output) {
+      return output;
+    }
+  },
+  /**
+   * GZIP compression.
+   */
+  GZIP {
+    @Override
+    public @NonNull InputStream decompress(final @NonNull InputStream input) throws IOException {
+      return new GZIPInputStream(input);
+    }
+
+    @Override
+    public @NonNull OutputStream compress(final @NonNull OutputStream output) throws IOException {
+      return new GZIPOutputStream(output);
+    }
+  },
+  /**
+   * LZ4 compression, in the LZ4 frame format.
+   *
+   * <p>Compresses less than {@link #GZIP}, but compresses and decompresses several times faster.</p>
+   */
+  LZ4 {
+    @Override
+    public @NonNull InputStream decompress(final @NonNull InputStream input) throws IOException {
+      return new Lz4InputStream(input);
+    }
+
+    @Override
+    public @NonNull OutputStream compress(final @NonNull OutputStream output) throws IOException {
+      return new Lz4OutputStream(output);
+    }
+  };
+
+  /**
+   * Wraps an input stream to decompress from it.
+   *
+   * @param input the input stream
+   * @return the decompressing input stream
+   * @throws IOException if an exception was encountered while reading a header
+   */
+  public abstract @NonNull InputStream decompress(final @NonNull InputStream input) throws IOException;
+
+  /**
+   * Wraps an output stream to compress into it.
+   *
+   * @param output the output stream
+   * @return the compressing output stream
+   * @throws IOException if an exception was encountered while writing a header
+   */
+  public abstract @NonNull OutputStream compress(final @NonNull OutputStream output) throws IOException;
+}
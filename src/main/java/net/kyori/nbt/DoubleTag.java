@@ -85,6 +85,11 @@ public final class DoubleTag implements NumberTag {
     output.writeDouble(this.value);
   }
 
+  @Override
+  public int serializedSize() {
+    return Double.BYTES;
+  }
+
   @Override
   public @NonNull TagType type() {
     return TagType.DOUBLE;
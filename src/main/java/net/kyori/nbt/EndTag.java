@@ -43,6 +43,11 @@ public final class EndTag implements Tag {
   public void write(final @NonNull DataOutput output) {
   }
 
+  @Override
+  public int serializedSize() {
+    return 0;
+  }
+
   @Override
   public @NonNull TagType type() {
     return TagType.END;
@@ -85,6 +85,11 @@ public final class FloatTag implements NumberTag {
     output.writeFloat(this.value);
   }
 
+  @Override
+  public int serializedSize() {
+    return Float.BYTES;
+  }
+
   @Override
   public @NonNull TagType type() {
     return TagType.FLOAT;
@@ -0,0 +1,76 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * A policy deciding when a {@link TagRecordWriter} flushes.
+ */
+@FunctionalInterface
+public interface FlushPolicy {
+  /**
+   * A policy that flushes after every record.
+   */
+  FlushPolicy EVERY_RECORD = (records, bytes) -> true;
+  /**
+   * A policy that only flushes when {@link TagRecordWriter#flush()} is called, or when the buffer is full.
+   */
+  FlushPolicy MANUAL = (records, bytes) -> false;
+
+  /**
+   * Creates a policy that flushes after every {@code count} records.
+   *
+   * @param count the number of records
+   * @return the policy
+   */
+  static @NonNull FlushPolicy records(final int count) {
+    if(count < 1) {
+      throw new IllegalArgumentException(String.format("Record count of %d is not positive", count));
+    }
+    return (records, bytes) -> records >= count;
+  }
+
+  /**
+   * Creates a policy that flushes once at least {@code count} bytes have been written.
+   *
+   * @param count the number of bytes, before compression
+   * @return the policy
+   */
+  static @NonNull FlushPolicy bytes(final long count) {
+    if(count < 1) {
+      throw new IllegalArgumentException(String.format("Byte count of %d is not positive", count));
+    }
+    return (records, bytes) -> bytes >= count;
+  }
+
+  /**
+   * Tests if the writer should flush after writing a record.
+   *
+   * @param records the number of records written since the last flush
+   * @param bytes the number of bytes written since the last flush, before compression
+   * @return {@code true} if the writer should flush
+   */
+  boolean flush(final int records, final long bytes);
+}
@@ -0,0 +1,581 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A decoder that reads a root compound tag from buffers as they arrive, without blocking.
+ *
+ * <p>Each call to {@link #feed(ByteBuffer)} consumes as much of the buffer as it can, and keeps its
+ * parse state until the next call. Only the bytes of a value split between two buffers are copied;
+ * everything else is decoded straight from the buffers. Once a compound tag is {@link Status#COMPLETE complete},
+ * the bytes following it are left in the buffer, and the next call starts a new compound tag.</p>
+ *
+ * <p>Input is read in the {@link TagEncoding#JAVA Java encoding}.</p>
+ *
+ * <p>Like a {@link TagDecoder}, a decoder {@link #builder() built} with a quota limits the tags, and the estimated
+ * number of bytes retained by them, that each compound tag may decode.</p>
+ */
+public final class IncrementalTagDecoder {
+  private static final int ROOT_TYPE = 0;
+  private static final int ROOT_NAME_LENGTH = 1;
+  private static final int ROOT_NAME = 2;
+  private static final int NEXT = 3;
+  private static final int ENTRY_TYPE = 4;
+  private static final int KEY_LENGTH = 5;
+  private static final int KEY = 6;
+  private static final int VALUE = 7;
+  private static final int STRING = 8;
+  private static final int ARRAY = 9;
+  private static final int DONE = 10;
+
+  private final long maxBytes;
+  private final long maxTags;
+  /**
+   * The space used by the compound tag being decoded, or {@code null} if there is no quota.
+   */
+  private /* @Nullable */ TagDecoder.Budget budget;
+  private int state = ROOT_TYPE;
+  /**
+   * The open compound and list tags, innermost last.
+   */
+  private Tag[] stack = new Tag[8];
+  /**
+   * The number of elements left to read for each open list tag.
+   */
+  private int[] remaining = new int[8];
+  private int size;
+  private /* @Nullable */ CompoundTag root;
+  /**
+   * The type of the value being read.
+   */
+  private TagType type;
+  /**
+   * The key of the value being read, or {@code null} if it is an element of a list.
+   */
+  private /* @Nullable */ String key;
+  /**
+   * The length of the string or array being read.
+   */
+  private int length;
+  /**
+   * The array being read, and the number of elements read so far.
+   */
+  private /* @Nullable */ Object array;
+  private int filled;
+  /**
+   * The bytes of a value split between two buffers.
+   */
+  private byte[] pending = new byte[16];
+  private int pendingLength;
+
+  /**
+   * Creates a decoder without a quota.
+   */
+  public IncrementalTagDecoder() {
+    this(Long.MAX_VALUE, Long.MAX_VALUE);
+  }
+
+  private IncrementalTagDecoder(final long maxBytes, final long maxTags) {
+    this.maxBytes = maxBytes;
+    this.maxTags = maxTags;
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return a new builder
+   */
+  public static @NonNull Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * The status of a decoder.
+   */
+  public enum Status {
+    /**
+     * More input is needed to complete the compound tag.
+     */
+    NEED_MORE_INPUT,
+    /**
+     * The compound tag is complete, and can be taken with {@link #result()}.
+     */
+    COMPLETE
+  }
+
+  /**
+   * Feeds a buffer to this decoder.
+   *
+   * <p>The position of the buffer is advanced past the bytes that were consumed.</p>
+   *
+   * @param buffer the buffer
+   * @return the status
+   * @throws IOException if the input is malformed
+   */
+  public @NonNull Status feed(final @NonNull ByteBuffer buffer) throws IOException {
+    if(this.state == DONE) {
+      throw new IllegalStateException("The result has not been taken");
+    }
+    final ByteOrder order = buffer.order();
+    buffer.order(ByteOrder.BIG_ENDIAN);
+    try {
+      return this.run(buffer) ? Status.COMPLETE : Status.NEED_MORE_INPUT;
+    } finally {
+      buffer.order(order);
+    }
+  }
+
+  /**
+   * Takes the completed compound tag, and resets this decoder for the next one.
+   *
+   * @return the compound tag
+   * @throws IllegalStateException if the compound tag is not complete
+   */
+  public @NonNull CompoundTag result() {
+    if(this.state != DONE) {
+      throw new IllegalStateException("The compound tag is not complete");
+    }
+    final CompoundTag root = this.root;
+    this.reset();
+    return root;
+  }
+
+  /**
+   * Discards any partially decoded compound tag.
+   */
+  public void reset() {
+    this.state = ROOT_TYPE;
+    Arrays.fill(this.stack, 0, this.size, null);
+    this.size = 0;
+    this.root = null;
+    this.budget = null;
+    this.key = null;
+    this.array = null;
+    this.pendingLength = 0;
+  }
+
+  private boolean run(final @NonNull ByteBuffer src) throws IOException {
+    while(true) {
+      /* @Nullable */ ByteBuffer in;
+      switch(this.state) {
+        case ROOT_TYPE:
+          if((in = this.need(src, 1)) == null) {
+            return false;
+          }
+          final TagType rootType = TagType.of(in.get());
+          if(rootType != TagType.COMPOUND) {
+            throw new IOException(String.format("Expected root tag to be a %s, was %s", TagType.COMPOUND, rootType));
+          }
+          this.state = ROOT_NAME_LENGTH;
+          break;
+        case ROOT_NAME_LENGTH:
+          if((in = this.need(src, 2)) == null) {
+            return false;
+          }
+          this.length = in.getShort() & 0xffff;
+          this.state = ROOT_NAME;
+          break;
+        case ROOT_NAME:
+          if((in = this.need(src, this.length)) == null) {
+            return false;
+          }
+          in.position(in.position() + this.length); // skip the name
+          if(this.maxBytes != Long.MAX_VALUE || this.maxTags != Long.MAX_VALUE) {
+            this.budget = new TagDecoder.Budget(this.maxBytes, this.maxTags);
+          }
+          this.allocate(RetainedSize.COMPOUND, 1);
+          this.root = new CompoundTag();
+          this.push(this.root, -1);
+          this.state = NEXT;
+          break;
+        case NEXT: {
+          if(this.size == 0) {
+            this.state = DONE;
+            return true;
+          }
+          final Tag top = this.stack[this.size - 1];
+          if(top instanceof CompoundTag) {
+            this.state = ENTRY_TYPE;
+          } else if(this.remaining[this.size - 1] == 0) {
+            this.pop();
+          } else {
+            this.remaining[this.size - 1]--;
+            this.allocate(4, 0); // the reference held by the list
+            this.type = ((ListTag) top).listType();
+            this.key = null;
+            this.state = VALUE;
+          }
+          break;
+        }
+        case ENTRY_TYPE:
+          if((in = this.need(src, 1)) == null) {
+            return false;
+          }
+          this.type = TagType.of(in.get());
+          if(this.type == TagType.END) {
+            this.pop();
+            this.state = NEXT;
+          } else {
+            this.state = KEY_LENGTH;
+          }
+          break;
+        case KEY_LENGTH:
+          if((in = this.need(src, 2)) == null) {
+            return false;
+          }
+          this.length = in.getShort() & 0xffff;
+          this.state = KEY;
+          break;
+        case KEY:
+          if((in = this.need(src, this.length)) == null) {
+            return false;
+          }
+          this.key = ModifiedUtf8.decode(bytes(in, this.length));
+          this.allocate(RetainedSize.entry(this.key), 0);
+          this.state = VALUE;
+          break;
+        case VALUE:
+          if(!this.value(src)) {
+            return false;
+          }
+          break;
+        case STRING:
+          if((in = this.need(src, this.length)) == null) {
+            return false;
+          }
+          this.allocate(RetainedSize.STRING + RetainedSize.array(this.length, 1), 1);
+          final byte[] bytes = bytes(in, this.length);
+          ModifiedUtf8.validate(bytes);
+          this.attach(new StringTag(bytes));
+          this.state = NEXT;
+          break;
+        case ARRAY:
+          if(!this.fill(src)) {
+            return false;
+          }
+          this.attach(this.arrayTag());
+          this.array = null;
+          this.state = NEXT;
+          break;
+        default:
+          throw new IllegalStateException();
+      }
+    }
+  }
+
+  private boolean value(final @NonNull ByteBuffer src) throws IOException {
+    final ByteBuffer in;
+    switch(this.type) {
+      case BYTE:
+        if((in = this.need(src, Byte.BYTES)) == null) {
+          return false;
+        }
+        this.allocate(RetainedSize.NUMBER, 1);
+        this.attach(new ByteTag(in.get()));
+        break;
+      case SHORT:
+        if((in = this.need(src, Short.BYTES)) == null) {
+          return false;
+        }
+        this.allocate(RetainedSize.NUMBER, 1);
+        this.attach(new ShortTag(in.getShort()));
+        break;
+      case INT:
+        if((in = this.need(src, Integer.BYTES)) == null) {
+          return false;
+        }
+        this.allocate(RetainedSize.NUMBER, 1);
+        this.attach(new IntTag(in.getInt()));
+        break;
+      case LONG:
+        if((in = this.need(src, Long.BYTES)) == null) {
+          return false;
+        }
+        this.allocate(RetainedSize.WIDE_NUMBER, 1);
+        this.attach(new LongTag(in.getLong()));
+        break;
+      case FLOAT:
+        if((in = this.need(src, Float.BYTES)) == null) {
+          return false;
+        }
+        this.allocate(RetainedSize.NUMBER, 1);
+        this.attach(new FloatTag(in.getFloat()));
+        break;
+      case DOUBLE:
+        if((in = this.need(src, Double.BYTES)) == null) {
+          return false;
+        }
+        this.allocate(RetainedSize.WIDE_NUMBER, 1);
+        this.attach(new DoubleTag(in.getDouble()));
+        break;
+      case STRING:
+        if((in = this.need(src, Short.BYTES)) == null) {
+          return false;
+        }
+        this.length = in.getShort() & 0xffff;
+        this.state = STRING;
+        return true;
+      case BYTE_ARRAY:
+      case INT_ARRAY:
+      case LONG_ARRAY:
+        if((in = this.need(src, Integer.BYTES)) == null) {
+          return false;
+        }
+        this.length = in.getInt();
+        if(this.length < 0) {
+          throw new IOException(String.format("Array length of %d is negative", this.length));
+        }
+        this.allocate(RetainedSize.ARRAY + RetainedSize.array(this.length, width(this.type)), 1);
+        this.filled = 0;
+        this.array = null;
+        this.state = ARRAY;
+        return true;
+      case LIST: {
+        if((in = this.need(src, Byte.BYTES + Integer.BYTES)) == null) {
+          return false;
+        }
+        TagDecoder.checkDepth(this.size);
+        final TagType elementType = TagType.of(in.get());
+        final int length = in.getInt();
+        final int capacity = Math.max(0, Math.min(length, TagDecoder.MAX_INITIAL_CAPACITY));
+        this.allocate(RetainedSize.LIST + RetainedSize.array(capacity, 4), 1);
+        final ListTag list = new ListTag(elementType, capacity);
+        this.attach(list);
+        this.push(list, Math.max(0, length));
+        break;
+      }
+      case COMPOUND: {
+        TagDecoder.checkDepth(this.size);
+        this.allocate(RetainedSize.COMPOUND, 1);
+        final CompoundTag compound = new CompoundTag();
+        this.attach(compound);
+        this.push(compound, -1);
+        break;
+      }
+      default:
+        throw new IOException(String.format("Unexpected %s value", this.type));
+    }
+    this.state = NEXT;
+    return true;
+  }
+
+  /**
+   * Reads as many array elements as are available, growing the array as they arrive.
+   *
+   * @param src the buffer
+   * @return {@code true} if the array is complete
+   */
+  private boolean fill(final @NonNull ByteBuffer src) {
+    final int width = width(this.type);
+    if(this.array == null) {
+      // the length is untrusted, so the array grows as elements arrive
+      this.array = newArray(this.type, Math.min(this.length, TagDecoder.MAX_INITIAL_ARRAY_BYTES / width));
+    }
+    while(this.filled < this.length) {
+      final int capacity = capacity(this.array);
+      if(this.filled == capacity) {
+        this.array = grow(this.array, (int) Math.min(this.length, capacity * 2L));
+      }
+      if(this.array instanceof byte[]) {
+        final byte[] array = (byte[]) this.array;
+        final int chunk = Math.min(array.length - this.filled, src.remaining());
+        src.get(array, this.filled, chunk);
+        this.filled += chunk;
+        if(!src.hasRemaining() && this.filled < this.length) {
+          return false;
+        }
+      } else {
+        final ByteBuffer in = this.need(src, width);
+        if(in == null) {
+          return false;
+        }
+        if(this.array instanceof int[]) {
+          ((int[]) this.array)[this.filled++] = in.getInt();
+        } else {
+          ((long[]) this.array)[this.filled++] = in.getLong();
+        }
+      }
+    }
+    return true;
+  }
+
+  private static int width(final @NonNull TagType type) {
+    return type == TagType.BYTE_ARRAY ? Byte.BYTES : (type == TagType.INT_ARRAY ? Integer.BYTES : Long.BYTES);
+  }
+
+  private @NonNull Tag arrayTag() {
+    if(this.array instanceof byte[]) {
+      return new ByteArrayTag((byte[]) this.array);
+    } else if(this.array instanceof int[]) {
+      return new IntArrayTag((int[]) this.array);
+    }
+    return new LongArrayTag((long[]) this.array);
+  }
+
+  private static @NonNull Object newArray(final @NonNull TagType type, final int capacity) {
+    switch(type) {
+      case BYTE_ARRAY:
+        return new byte[capacity];
+      case INT_ARRAY:
+        return new int[capacity];
+      default:
+        return new long[capacity];
+    }
+  }
+
+  private static @NonNull Object grow(final @NonNull Object array, final int capacity) {
+    if(array instanceof byte[]) {
+      return Arrays.copyOf((byte[]) array, capacity);
+    } else if(array instanceof int[]) {
+      return Arrays.copyOf((int[]) array, capacity);
+    }
+    return Arrays.copyOf((long[]) array, capacity);
+  }
+
+  private static int capacity(final @NonNull Object array) {
+    if(array instanceof byte[]) {
+      return ((byte[]) array).length;
+    } else if(array instanceof int[]) {
+      return ((int[]) array).length;
+    }
+    return ((long[]) array).length;
+  }
+
+  /**
+   * Gets a buffer with {@code length} bytes available, copying bytes into the pending buffer when they
+   * are split between two buffers.
+   *
+   * @param src the buffer
+   * @param length the number of bytes
+   * @return a buffer, or {@code null} if the bytes are not available yet
+   */
+  private @Nullable ByteBuffer need(final @NonNull ByteBuffer src, final int length) {
+    if(this.pendingLength == 0 && src.remaining() >= length) {
+      return src;
+    }
+    if(this.pending.length < length) {
+      this.pending = Arrays.copyOf(this.pending, Math.max(length, this.pending.length * 2));
+    }
+    final int chunk = Math.min(length - this.pendingLength, src.remaining());
+    src.get(this.pending, this.pendingLength, chunk);
+    this.pendingLength += chunk;
+    if(this.pendingLength < length) {
+      return null;
+    }
+    this.pendingLength = 0;
+    return ByteBuffer.wrap(this.pending, 0, length);
+  }
+
+  private static byte@NonNull[] bytes(final @NonNull ByteBuffer in, final int length) {
+    final byte[] bytes = new byte[length];
+    in.get(bytes);
+    return bytes;
+  }
+
+  private void allocate(final long bytes, final int tags) throws IOException {
+    if(this.budget != null) {
+      this.budget.allocate(bytes, tags);
+    }
+  }
+
+  private void attach(final @NonNull Tag tag) {
+    final Tag parent = this.stack[this.size - 1];
+    if(parent instanceof CompoundTag) {
+      ((CompoundTag) parent).put(this.key, tag);
+    } else {
+      ((ListTag) parent).append(tag);
+    }
+  }
+
+  private void push(final @NonNull Tag tag, final int remaining) {
+    if(this.size == this.stack.length) {
+      this.stack = Arrays.copyOf(this.stack, this.size * 2);
+      this.remaining = Arrays.copyOf(this.remaining, this.size * 2);
+    }
+    this.stack[this.size] = tag;
+    this.remaining[this.size] = remaining;
+    this.size++;
+  }
+
+  private void pop() {
+    this.stack[--this.size] = null;
+  }
+
+  /**
+   * A decoder builder.
+   */
+  public static final class Builder {
+    private long maxBytes = Long.MAX_VALUE;
+    private long maxTags = Long.MAX_VALUE;
+
+    Builder() {
+    }
+
+    /**
+     * Sets the maximum estimated number of bytes retained by the tags of a single compound tag.
+     *
+     * @param maxBytes the maximum number of bytes
+     * @return this builder
+     * @see TagDecoder.Builder#maxBytes(long)
+     */
+    public @NonNull Builder maxBytes(final long maxBytes) {
+      if(maxBytes < 0) {
+        throw new IllegalArgumentException(String.format("Quota of %d bytes is negative", maxBytes));
+      }
+      this.maxBytes = maxBytes;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of tags in a single compound tag.
+     *
+     * @param maxTags the maximum number of tags
+     * @return this builder
+     */
+    public @NonNull Builder maxTags(final long maxTags) {
+      if(maxTags < 0) {
+        throw new IllegalArgumentException(String.format("Quota of %d tags is negative", maxTags));
+      }
+      this.maxTags = maxTags;
+      return this;
+    }
+
+    /**
+     * Builds a decoder.
+     *
+     * @return the decoder
+     */
+    public @NonNull IncrementalTagDecoder build() {
+      return new IncrementalTagDecoder(this.maxBytes, this.maxTags);
+    }
+  }
+}
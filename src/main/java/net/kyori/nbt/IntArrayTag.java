@@ -68,11 +68,7 @@ public final class IntArrayTag extends AbstractList<IntTag> implements IndexedCo
 
   @Override
   public void read(final @NonNull DataInput input, final int depth) throws IOException {
-    final int length = input.readInt();
-    this.value = new int[length];
-    for(int i = 0; i < length; i++) {
-      this.value[i] = input.readInt();
-    }
+    this.value = TagDecoder.readInts(input, input.readInt());
   }
 
   @Override
@@ -83,6 +79,11 @@ public final class IntArrayTag extends AbstractList<IntTag> implements IndexedCo
     }
   }
 
+  @Override
+  public int serializedSize() {
+    return Integer.BYTES + this.value.length * Integer.BYTES;
+  }
+
   @Override
   public @NonNull TagType type() {
     return TagType.INT_ARRAY;
@@ -85,6 +85,11 @@ public final class IntTag implements NumberTag {
     output.writeInt(this.value);
   }
 
+  @Override
+  public int serializedSize() {
+    return Integer.BYTES;
+  }
+
   @Override
   public @NonNull TagType type() {
     return TagType.INT;
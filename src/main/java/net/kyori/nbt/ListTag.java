@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Spliterator;
 
 import static java.util.Objects.requireNonNull;
 
@@ -46,7 +47,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
   /**
    * The list of tags.
    */
-  private final List<Tag> tags = new ArrayList<>();
+  private final List<Tag> tags;
   /**
    * The type of this list.
    */
@@ -58,6 +59,18 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
 
   public ListTag(final @NonNull TagType type) {
     this.type = type;
+    this.tags = new ArrayList<>();
+  }
+
+  /**
+   * Creates a list tag with room for {@code capacity} tags.
+   *
+   * @param type the type
+   * @param capacity the initial capacity
+   */
+  ListTag(final @NonNull TagType type, final int capacity) {
+    this.type = type;
+    this.tags = new ArrayList<>(capacity);
   }
 
   /**
@@ -141,7 +154,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the byte value, or {@code defaultValue}
    */
   public byte getByte(final @NonNegative int index, final byte defaultValue) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type().number()) {
       return ((NumberTag) tag).byteValue();
     }
@@ -166,7 +179,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the short value, or {@code defaultValue}
    */
   public short getShort(final @NonNegative int index, final short defaultValue) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type().number()) {
       return ((NumberTag) tag).shortValue();
     }
@@ -191,7 +204,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the int value, or {@code defaultValue}
    */
   public int getInt(final @NonNegative int index, final int defaultValue) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type().number()) {
       return ((NumberTag) tag).intValue();
     }
@@ -216,7 +229,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the long value, or {@code defaultValue}
    */
   public long getLong(final @NonNegative int index, final long defaultValue) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type().number()) {
       return ((NumberTag) tag).longValue();
     }
@@ -241,7 +254,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the float value, or {@code defaultValue}
    */
   public float getFloat(final @NonNegative int index, final float defaultValue) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type().number()) {
       return ((NumberTag) tag).floatValue();
     }
@@ -266,7 +279,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the double value, or {@code defaultValue}
    */
   public double getDouble(final @NonNegative int index, final double defaultValue) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type().number()) {
       return ((NumberTag) tag).doubleValue();
     }
@@ -280,7 +293,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the array of bytes, or a zero-length array
    */
   public @NonNull byte[] getByteArray(final @NonNegative int index) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type() == TagType.BYTE_ARRAY) {
       return ((ByteArrayTag) tag).value();
     }
@@ -295,7 +308,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the array of bytes, or {@code defaultValue}
    */
   public @NonNull byte[] getByteArray(final @NonNegative int index, final @NonNull byte[] defaultValue) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type() == TagType.BYTE_ARRAY) {
       return ((ByteArrayTag) tag).value();
     }
@@ -320,7 +333,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the string value, or {@code defaultValue}
    */
   public @NonNull String getString(final @NonNegative int index, final @NonNull String defaultValue) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type() == TagType.STRING) {
       return ((StringTag) tag).value();
     }
@@ -334,7 +347,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the compound, or a new compound
    */
   public @NonNull CompoundTag getCompound(final @NonNegative int index) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type() == TagType.COMPOUND) {
       return (CompoundTag) tag;
     }
@@ -349,7 +362,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the compound, or {@code defaultValue}
    */
   public @NonNull CompoundTag getCompound(final @NonNegative int index, final @NonNull CompoundTag defaultValue) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type() == TagType.COMPOUND) {
       return (CompoundTag) tag;
     }
@@ -363,7 +376,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the array of ints, or a zero-length array
    */
   public @NonNull int[] getIntArray(final @NonNegative int index) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type() == TagType.INT_ARRAY) {
       return ((IntArrayTag) tag).value();
     }
@@ -378,7 +391,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the array of ints, or {@code defaultValue}
    */
   public @NonNull int[] getIntArray(final @NonNegative int index, final @NonNull int[] defaultValue) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type() == TagType.INT_ARRAY) {
       return ((IntArrayTag) tag).value();
     }
@@ -392,7 +405,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the array of longs, or a zero-length array
    */
   public @NonNull long[] getLongArray(final @NonNegative int index) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type() == TagType.LONG_ARRAY) {
       return ((LongArrayTag) tag).value();
     }
@@ -407,13 +420,29 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
    * @return the array of longs, or {@code defaultValue}
    */
   public @NonNull long[] getLongArray(final @NonNegative int index, final @NonNull long[] defaultValue) {
-    final Tag tag = this.get(index);
+    final Tag tag = this.decoded(index);
     if(tag.type() == TagType.LONG_ARRAY) {
       return ((LongArrayTag) tag).value();
     }
     return defaultValue;
   }
 
+  /**
+   * Gets the tag at the specified index, decoding it if it is {@link RawTag raw}.
+   *
+   * <p>The raw tag is not replaced by its decoded tag, so that reading a shared tree never writes to it.</p>
+   *
+   * @param index the index
+   * @return the tag
+   */
+  private @NonNull Tag decoded(final @NonNegative int index) {
+    final Tag tag = this.tags.get(index);
+    if(tag instanceof RawTag) {
+      return ((RawTag) tag).decode();
+    }
+    return tag;
+  }
+
   /**
    * Adds a tag.
    *
@@ -433,6 +462,26 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
     return true;
   }
 
+  /**
+   * Inserts a tag at the specified index.
+   *
+   * @param index the index
+   * @param tag the tag
+   * @throws IndexOutOfBoundsException if the index is out of range
+   */
+  @Override
+  public void add(final int index, final @NonNull Tag tag) {
+    // don't allow an end tag to be added
+    if(tag.type() == TagType.END) {
+      throw new IllegalArgumentException(String.format("Cannot add a '%s' to a '%s'", EndTag.class.getSimpleName(), ListTag.class.getSimpleName()));
+    }
+    // set the type if it has not yet been set
+    if(this.type == TagType.END) {
+      this.type = tag.type();
+    }
+    this.tags.add(index, tag);
+  }
+
   /**
    * Sets the tag at the specified index.
    *
@@ -465,6 +514,11 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
     return this.tags.remove(index);
   }
 
+  @Override
+  public @NonNull Spliterator<Tag> spliterator() {
+    return this.tags.spliterator();
+  }
+
   @Override
   public int size() {
     return this.tags.size();
@@ -475,6 +529,15 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
     return this.tags.isEmpty();
   }
 
+  /**
+   * Adds a tag, without any checks.
+   *
+   * @param tag the tag
+   */
+  void append(final @NonNull Tag tag) {
+    this.tags.add(tag);
+  }
+
   @Override
   public void read(final @NonNull DataInput input, final int depth) throws IOException {
     if(depth > MAX_DEPTH) {
@@ -482,13 +545,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
     }
 
     this.type = TagType.of(input.readByte());
-
-    final int length = input.readInt();
-    for(int i = 0; i < length; i++) {
-      final Tag tag = this.type.create();
-      tag.read(input, depth + 1);
-      this.tags.add(tag);
-    }
+    TagDecoder.DEFAULT.readList(this, input.readInt(), input, depth);
   }
 
   @Override
@@ -500,6 +557,15 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
     }
   }
 
+  @Override
+  public int serializedSize() {
+    int size = Byte.BYTES + Integer.BYTES;
+    for(int i = 0, length = this.tags.size(); i < length; i++) {
+      size += this.tags.get(i).serializedSize();
+    }
+    return size;
+  }
+
   @Override
   public @NonNull TagType type() {
     return TagType.LIST;
@@ -507,7 +573,7 @@ public final class ListTag extends AbstractList<Tag> implements IndexedCollectio
 
   @Override
   public @NonNull ListTag copy() {
-    final ListTag copy = new ListTag(this.type);
+    final ListTag copy = new ListTag(this.type, this.tags.size());
     for(final Tag tag : this.tags) {
       copy.tags.add(tag.copy()); // add directly to list, we can skip sanity checks
     }
@@ -0,0 +1,120 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A data input reading little-endian numbers and UTF-8 strings, as used by Bedrock edition storage.
+ */
+class LittleEndianDataInput implements DataInput {
+  final DataInput input;
+
+  LittleEndianDataInput(final @NonNull DataInput input) {
+    this.input = input;
+  }
+
+  @Override
+  public void readFully(final byte@NonNull[] b) throws IOException {
+    this.input.readFully(b);
+  }
+
+  @Override
+  public void readFully(final byte@NonNull[] b, final int off, final int len) throws IOException {
+    this.input.readFully(b, off, len);
+  }
+
+  @Override
+  public int skipBytes(final int n) throws IOException {
+    return this.input.skipBytes(n);
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    return this.input.readBoolean();
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    return this.input.readByte();
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return this.input.readUnsignedByte();
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    return Short.reverseBytes(this.input.readShort());
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return this.readShort() & 0xffff;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    return Character.reverseBytes(this.input.readChar());
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    return Integer.reverseBytes(this.input.readInt());
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    return Long.reverseBytes(this.input.readLong());
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    return Float.intBitsToFloat(Integer.reverseBytes(this.input.readInt()));
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    return Double.longBitsToDouble(Long.reverseBytes(this.input.readLong()));
+  }
+
+  @Override
+  public String readLine() throws IOException {
+    return this.input.readLine();
+  }
+
+  @Override
+  public @NonNull String readUTF() throws IOException {
+    return this.readUTF(this.readUnsignedShort());
+  }
+
+  final @NonNull String readUTF(final int length) throws IOException {
+    return new String(TagDecoder.readBytes(this, length), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A data output writing little-endian numbers and UTF-8 strings, as used by Bedrock edition storage.
+ */
+class LittleEndianDataOutput implements DataOutput {
+  final DataOutput output;
+
+  LittleEndianDataOutput(final @NonNull DataOutput output) {
+    this.output = output;
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    this.output.write(b);
+  }
+
+  @Override
+  public void write(final byte@NonNull[] b) throws IOException {
+    this.output.write(b);
+  }
+
+  @Override
+  public void write(final byte@NonNull[] b, final int off, final int len) throws IOException {
+    this.output.write(b, off, len);
+  }
+
+  @Override
+  public void writeBoolean(final boolean v) throws IOException {
+    this.output.writeBoolean(v);
+  }
+
+  @Override
+  public void writeByte(final int v) throws IOException {
+    this.output.writeByte(v);
+  }
+
+  @Override
+  public void writeShort(final int v) throws IOException {
+    this.output.writeShort(Short.reverseBytes((short) v));
+  }
+
+  @Override
+  public void writeChar(final int v) throws IOException {
+    this.output.writeChar(Character.reverseBytes((char) v));
+  }
+
+  @Override
+  public void writeInt(final int v) throws IOException {
+    this.output.writeInt(Integer.reverseBytes(v));
+  }
+
+  @Override
+  public void writeLong(final long v) throws IOException {
+    this.output.writeLong(Long.reverseBytes(v));
+  }
+
+  @Override
+  public void writeFloat(final float v) throws IOException {
+    this.output.writeInt(Integer.reverseBytes(Float.floatToIntBits(v)));
+  }
+
+  @Override
+  public void writeDouble(final double v) throws IOException {
+    this.output.writeLong(Long.reverseBytes(Double.doubleToLongBits(v)));
+  }
+
+  @Override
+  public void writeBytes(final @NonNull String s) throws IOException {
+    this.output.writeBytes(s);
+  }
+
+  @Override
+  public void writeChars(final @NonNull String s) throws IOException {
+    for(int i = 0; i < s.length(); i++) {
+      this.writeChar(s.charAt(i));
+    }
+  }
+
+  @Override
+  public void writeUTF(final @NonNull String s) throws IOException {
+    final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    if(bytes.length > 0xffff) {
+      throw new UTFDataFormatException(String.format("Encoded string length of %d is higher than max of %d", bytes.length, 0xffff));
+    }
+    this.writeShort(bytes.length);
+    this.output.write(bytes);
+  }
+}
@@ -68,11 +68,7 @@ public final class LongArrayTag extends AbstractList<LongTag> implements Indexed
 
   @Override
   public void read(final @NonNull DataInput input, final int depth) throws IOException {
-    final int length = input.readInt();
-    this.value = new long[length];
-    for(int i = 0; i < length; i++) {
-      this.value[i] = input.readLong();
-    }
+    this.value = TagDecoder.readLongs(input, input.readInt());
   }
 
   @Override
@@ -83,6 +79,11 @@ public final class LongArrayTag extends AbstractList<LongTag> implements Indexed
     }
   }
 
+  @Override
+  public int serializedSize() {
+    return Integer.BYTES + this.value.length * Long.BYTES;
+  }
+
   @Override
   public @NonNull TagType type() {
     return TagType.LONG_ARRAY;
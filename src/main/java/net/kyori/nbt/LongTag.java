@@ -85,6 +85,11 @@ public final class LongTag implements NumberTag {
     output.writeLong(this.value);
   }
 
+  @Override
+  public int serializedSize() {
+    return Long.BYTES;
+  }
+
   @Override
   public @NonNull TagType type() {
     return TagType.LONG;
@@ -0,0 +1,304 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The LZ4 block format, and the xxHash32 checksum used by the LZ4 frame format.
+ *
+ * @see <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Block_format.md">LZ4 Block Format</a>
+ */
+final class Lz4 {
+  /**
+   * The number of entries in a hash table, as a power of two.
+   */
+  static final int HASH_LOG = 12;
+  private static final int MIN_MATCH = 4;
+  /**
+   * The last match must start at least this many bytes before the end of the block.
+   */
+  private static final int MF_LIMIT = 12;
+  /**
+   * The last bytes of a block are always literals.
+   */
+  private static final int LAST_LITERALS = 5;
+  private static final int MAX_DISTANCE = 0xffff;
+  private static final int ML_MASK = 0xf;
+  private static final int RUN_MASK = 0xf;
+  /**
+   * Controls how quickly the compressor skips over incompressible data.
+   */
+  private static final int SKIP_TRIGGER = 6;
+
+  private static final int PRIME1 = 0x9e3779b1;
+  private static final int PRIME2 = 0x85ebca77;
+  private static final int PRIME3 = 0xc2b2ae3d;
+  private static final int PRIME4 = 0x27d4eb2f;
+  private static final int PRIME5 = 0x165667b1;
+
+  private Lz4() {
+  }
+
+  /**
+   * Gets the maximum compressed length of {@code length} bytes.
+   *
+   * @param length the uncompressed length
+   * @return the maximum compressed length
+   */
+  static int maxCompressedLength(final int length) {
+    return length + length / 255 + 16;
+  }
+
+  /**
+   * Compresses a block.
+   *
+   * @param src the source
+   * @param srcOff the source offset
+   * @param srcLen the source length
+   * @param dst the destination, with at least {@link #maxCompressedLength(int)} bytes after {@code dstOff}
+   * @param dstOff the destination offset
+   * @param table a hash table of {@code 1 << HASH_LOG} entries
+   * @return the compressed length
+   */
+  static int compress(final byte@NonNull[] src, final int srcOff, final int srcLen, final byte@NonNull[] dst, final int dstOff, final int@NonNull[] table) {
+    Arrays.fill(table, -1);
+    final int end = srcOff + srcLen;
+    final int matchLimit = end - LAST_LITERALS;
+    final int mfLimit = end - MF_LIMIT;
+    int anchor = srcOff;
+    int sp = srcOff;
+    int dp = dstOff;
+    int searches = 1 << SKIP_TRIGGER;
+    while(sp < mfLimit) {
+      final int sequence = ByteArrays.getIntLE(src, sp);
+      final int hash = hash(sequence);
+      int ref = table[hash];
+      table[hash] = sp;
+      if(ref < 0 || sp - ref > MAX_DISTANCE || ByteArrays.getIntLE(src, ref) != sequence) {
+        sp += searches++ >>> SKIP_TRIGGER;
+        continue;
+      }
+      searches = 1 << SKIP_TRIGGER;
+      while(sp > anchor && ref > srcOff && src[sp - 1] == src[ref - 1]) {
+        sp--;
+        ref--;
+      }
+      int length = MIN_MATCH;
+      while(sp + length < matchLimit && src[sp + length] == src[ref + length]) {
+        length++;
+      }
+      dp = writeSequence(src, anchor, sp - anchor, dst, dp, sp - ref, length);
+      sp += length;
+      anchor = sp;
+      if(sp < mfLimit) {
+        table[hash(ByteArrays.getIntLE(src, sp - 2))] = sp - 2;
+      }
+    }
+    return writeLastLiterals(src, anchor, end - anchor, dst, dp) - dstOff;
+  }
+
+  private static int writeSequence(final byte@NonNull[] src, final int literalOff, final int literalLen, final byte@NonNull[] dst, int dp, final int offset, final int matchLen) {
+    final int tokenOff = dp++;
+    int token;
+    if(literalLen >= RUN_MASK) {
+      token = RUN_MASK << 4;
+      dp = writeLength(dst, dp, literalLen - RUN_MASK);
+    } else {
+      token = literalLen << 4;
+    }
+    System.arraycopy(src, literalOff, dst, dp, literalLen);
+    dp += literalLen;
+    dst[dp++] = (byte) offset;
+    dst[dp++] = (byte) (offset >>> 8);
+    final int length = matchLen - MIN_MATCH;
+    if(length >= ML_MASK) {
+      token |= ML_MASK;
+      dp = writeLength(dst, dp, length - ML_MASK);
+    } else {
+      token |= length;
+    }
+    dst[tokenOff] = (byte) token;
+    return dp;
+  }
+
+  private static int writeLastLiterals(final byte@NonNull[] src, final int literalOff, final int literalLen, final byte@NonNull[] dst, int dp) {
+    if(literalLen >= RUN_MASK) {
+      dst[dp++] = (byte) (RUN_MASK << 4);
+      dp = writeLength(dst, dp, literalLen - RUN_MASK);
+    } else {
+      dst[dp++] = (byte) (literalLen << 4);
+    }
+    System.arraycopy(src, literalOff, dst, dp, literalLen);
+    return dp + literalLen;
+  }
+
+  private static int writeLength(final byte@NonNull[] dst, int dp, int length) {
+    while(length >= 0xff) {
+      dst[dp++] = (byte) 0xff;
+      length -= 0xff;
+    }
+    dst[dp++] = (byte) length;
+    return dp;
+  }
+
+  /**
+   * Decompresses a block.
+   *
+   * @param src the source
+   * @param srcOff the source offset
+   * @param srcLen the source length
+   * @param dst the destination
+   * @param dstOff the destination offset
+   * @param dstLen the maximum decompressed length
+   * @return the decompressed length
+   * @throws IOException if the block is malformed
+   */
+  static int decompress(final byte@NonNull[] src, final int srcOff, final int srcLen, final byte@NonNull[] dst, final int dstOff, final int dstLen) throws IOException {
+    final int srcEnd = srcOff + srcLen;
+    final int dstEnd = dstOff + dstLen;
+    int sp = srcOff;
+    int dp = dstOff;
+    while(true) {
+      if(sp >= srcEnd) {
+        throw new IOException("Malformed LZ4 block: unexpected end");
+      }
+      final int token = src[sp++] & 0xff;
+      int literalLen = token >>> 4;
+      if(literalLen == RUN_MASK) {
+        int b;
+        do {
+          if(sp >= srcEnd) {
+            throw new IOException("Malformed LZ4 block: unexpected end");
+          }
+          b = src[sp++] & 0xff;
+          literalLen += b;
+        } while(b == 0xff);
+      }
+      if(literalLen > srcEnd - sp || literalLen > dstEnd - dp) {
+        throw new IOException("Malformed LZ4 block: literals out of bounds");
+      }
+      System.arraycopy(src, sp, dst, dp, literalLen);
+      sp += literalLen;
+      dp += literalLen;
+      if(sp == srcEnd) {
+        return dp - dstOff; // the last sequence has no match
+      }
+      if(srcEnd - sp < 2) {
+        throw new IOException("Malformed LZ4 block: unexpected end");
+      }
+      final int offset = (src[sp] & 0xff) | (src[sp + 1] & 0xff) << 8;
+      sp += 2;
+      if(offset == 0 || offset > dp - dstOff) {
+        throw new IOException(String.format("Malformed LZ4 block: offset of %d is out of bounds", offset));
+      }
+      int matchLen = token & ML_MASK;
+      if(matchLen == ML_MASK) {
+        int b;
+        do {
+          if(sp >= srcEnd) {
+            throw new IOException("Malformed LZ4 block: unexpected end");
+          }
+          b = src[sp++] & 0xff;
+          matchLen += b;
+        } while(b == 0xff);
+      }
+      matchLen += MIN_MATCH;
+      if(matchLen > dstEnd - dp) {
+        throw new IOException("Malformed LZ4 block: match out of bounds");
+      }
+      final int ref = dp - offset;
+      if(offset >= matchLen) {
+        System.arraycopy(dst, ref, dst, dp, matchLen);
+      } else {
+        // an overlapping match repeats the last offset bytes, so the copied prefix doubles with each pass
+        for(int copied = 0; copied < matchLen; ) {
+          final int chunk = Math.min(matchLen - copied, dp + copied - ref);
+          System.arraycopy(dst, ref, dst, dp + copied, chunk);
+          copied += chunk;
+        }
+      }
+      dp += matchLen;
+    }
+  }
+
+  /**
+   * Computes the xxHash32 of a range of bytes.
+   *
+   * @param bytes the bytes
+   * @param off the offset
+   * @param len the length
+   * @param seed the seed
+   * @return the hash
+   */
+  static int xxHash32(final byte@NonNull[] bytes, int off, final int len, final int seed) {
+    final int end = off + len;
+    int hash;
+    if(len >= 16) {
+      int v1 = seed + PRIME1 + PRIME2;
+      int v2 = seed + PRIME2;
+      int v3 = seed;
+      int v4 = seed - PRIME1;
+      final int limit = end - 16;
+      do {
+        v1 = round(v1, ByteArrays.getIntLE(bytes, off));
+        v2 = round(v2, ByteArrays.getIntLE(bytes, off + 4));
+        v3 = round(v3, ByteArrays.getIntLE(bytes, off + 8));
+        v4 = round(v4, ByteArrays.getIntLE(bytes, off + 12));
+        off += 16;
+      } while(off <= limit);
+      hash = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7) + Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
+    } else {
+      hash = seed + PRIME5;
+    }
+    hash += len;
+    for(; off + 4 <= end; off += 4) {
+      hash += ByteArrays.getIntLE(bytes, off) * PRIME3;
+      hash = Integer.rotateLeft(hash, 17) * PRIME4;
+    }
+    for(; off < end; off++) {
+      hash += (bytes[off] & 0xff) * PRIME5;
+      hash = Integer.rotateLeft(hash, 11) * PRIME1;
+    }
+    hash ^= hash >>> 15;
+    hash *= PRIME2;
+    hash ^= hash >>> 13;
+    hash *= PRIME3;
+    hash ^= hash >>> 16;
+    return hash;
+  }
+
+  private static int round(int acc, final int input) {
+    acc += input * PRIME2;
+    acc = Integer.rotateLeft(acc, 13);
+    return acc * PRIME1;
+  }
+
+  private static int hash(final int sequence) {
+    return (sequence * PRIME1) >>> (32 - HASH_LOG);
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that decompresses data in the LZ4 frame format.
+ *
+ * <p>Dependent blocks and dictionary ids are not supported. Block checksums are verified; the content checksum
+ * is skipped.</p>
+ */
+final class Lz4InputStream extends InputStream {
+  private final DataInputStream in;
+  private final boolean blockChecksum;
+  private final boolean contentChecksum;
+  private final byte[] compressed;
+  private final byte[] buffer;
+  private int position;
+  private int length;
+  private boolean finished;
+
+  Lz4InputStream(final @NonNull InputStream in) throws IOException {
+    this.in = new DataInputStream(in);
+    final byte[] header = new byte[15];
+    this.in.readFully(header, 0, 7);
+    if(ByteArrays.getIntLE(header, 0) != Lz4OutputStream.MAGIC) {
+      throw new IOException("Not in LZ4 frame format");
+    }
+    final int flags = header[4] & 0xff;
+    if((flags & 0xc0) != Lz4OutputStream.VERSION) {
+      throw new IOException(String.format("Unsupported LZ4 frame version %d", flags >>> 6));
+    }
+    if((flags & Lz4OutputStream.BLOCK_INDEPENDENCE) == 0) {
+      throw new IOException("Dependent LZ4 blocks are not supported");
+    }
+    if((flags & Lz4OutputStream.DICTIONARY_ID) != 0) {
+      throw new IOException("LZ4 dictionaries are not supported");
+    }
+    int headerLength = 6;
+    if((flags & Lz4OutputStream.CONTENT_SIZE) != 0) {
+      this.in.readFully(header, 7, 8);
+      headerLength += 8;
+    }
+    final int blockSizeId = (header[5] >>> 4) & 0x7;
+    if(blockSizeId < Lz4OutputStream.BLOCK_64KB) {
+      throw new IOException(String.format("Invalid LZ4 block maximum size id %d", blockSizeId));
+    }
+    if((byte) (Lz4.xxHash32(header, 4, headerLength - 4, 0) >>> 8) != header[headerLength]) {
+      throw new IOException("LZ4 frame header checksum mismatch");
+    }
+    this.blockChecksum = (flags & Lz4OutputStream.BLOCK_CHECKSUM) != 0;
+    this.contentChecksum = (flags & Lz4OutputStream.CONTENT_CHECKSUM) != 0;
+    final int blockSize = 1 << (2 * blockSizeId + 8);
+    this.compressed = new byte[blockSize];
+    this.buffer = new byte[blockSize];
+  }
+
+  @Override
+  public int read() throws IOException {
+    if(this.position == this.length && !this.readBlock()) {
+      return -1;
+    }
+    return this.buffer[this.position++] & 0xff;
+  }
+
+  @Override
+  public int read(final byte@NonNull[] b, final int off, final int len) throws IOException {
+    if(len == 0) {
+      return 0;
+    }
+    if(this.position == this.length && !this.readBlock()) {
+      return -1;
+    }
+    final int read = Math.min(len, this.length - this.position);
+    System.arraycopy(this.buffer, this.position, b, off, read);
+    this.position += read;
+    return read;
+  }
+
+  @Override
+  public int available() {
+    return this.length - this.position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.in.close();
+  }
+
+  private boolean readBlock() throws IOException {
+    while(!this.finished) {
+      final int header = Integer.reverseBytes(this.in.readInt());
+      if(header == 0) {
+        this.finished = true;
+        if(this.contentChecksum) {
+          this.in.readInt();
+        }
+        break;
+      }
+      final int size = header & ~Lz4OutputStream.UNCOMPRESSED;
+      if(size > this.buffer.length) {
+        throw new IOException(String.format("LZ4 block size of %d is higher than max of %d", size, this.buffer.length));
+      }
+      final boolean uncompressed = (header & Lz4OutputStream.UNCOMPRESSED) != 0;
+      final byte[] block = uncompressed ? this.buffer : this.compressed;
+      this.in.readFully(block, 0, size);
+      if(this.blockChecksum && Integer.reverseBytes(this.in.readInt()) != Lz4.xxHash32(block, 0, size, 0)) {
+        throw new IOException("LZ4 block checksum mismatch");
+      }
+      this.position = 0;
+      this.length = uncompressed ? size : Lz4.decompress(this.compressed, 0, size, this.buffer, 0, this.buffer.length);
+      if(this.length > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that compresses data in the LZ4 frame format.
+ *
+ * <p>Frames are written with independent 64 KiB blocks and no checksums other than the header checksum.</p>
+ *
+ * @see <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Frame_format.md">LZ4 Frame Format</a>
+ */
+final class Lz4OutputStream extends FilterOutputStream {
+  static final int MAGIC = 0x184d2204;
+  static final int VERSION = 1 << 6;
+  static final int BLOCK_INDEPENDENCE = 1 << 5;
+  static final int BLOCK_CHECKSUM = 1 << 4;
+  static final int CONTENT_SIZE = 1 << 3;
+  static final int CONTENT_CHECKSUM = 1 << 2;
+  static final int DICTIONARY_ID = 1;
+  /**
+   * The block maximum size id for 64 KiB blocks.
+   */
+  static final int BLOCK_64KB = 4;
+  /**
+   * The high bit of a block size, set when the block is stored uncompressed.
+   */
+  static final int UNCOMPRESSED = 0x80000000;
+  private final byte[] buffer = new byte[64 * 1024];
+  private final byte[] compressed = new byte[4 + Lz4.maxCompressedLength(this.buffer.length)];
+  private final int[] table = new int[1 << Lz4.HASH_LOG];
+  private int length;
+  private boolean closed;
+
+  Lz4OutputStream(final @NonNull OutputStream out) throws IOException {
+    super(out);
+    final byte[] header = new byte[7];
+    ByteArrays.putIntLE(header, 0, MAGIC);
+    header[4] = (byte) (VERSION | BLOCK_INDEPENDENCE);
+    header[5] = (byte) (BLOCK_64KB << 4);
+    header[6] = (byte) (Lz4.xxHash32(header, 4, 2, 0) >>> 8);
+    out.write(header);
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    this.ensureOpen();
+    if(this.length == this.buffer.length) {
+      this.writeBlock();
+    }
+    this.buffer[this.length++] = (byte) b;
+  }
+
+  @Override
+  public void write(final byte@NonNull[] b, int off, int len) throws IOException {
+    this.ensureOpen();
+    while(len > 0) {
+      if(this.length == this.buffer.length) {
+        this.writeBlock();
+      }
+      final int chunk = Math.min(len, this.buffer.length - this.length);
+      System.arraycopy(b, off, this.buffer, this.length, chunk);
+      this.length += chunk;
+      off += chunk;
+      len -= chunk;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    this.ensureOpen();
+    this.writeBlock();
+    this.out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if(this.closed) {
+      return;
+    }
+    try {
+      this.writeBlock();
+      final byte[] end = new byte[4];
+      this.out.write(end);
+      this.closed = true;
+    } finally {
+      this.out.close();
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    if(this.length == 0) {
+      return;
+    }
+    final int size = Lz4.compress(this.buffer, 0, this.length, this.compressed, 4, this.table);
+    if(size < this.length) {
+      ByteArrays.putIntLE(this.compressed, 0, size);
+      this.out.write(this.compressed, 0, 4 + size);
+    } else {
+      ByteArrays.putIntLE(this.compressed, 0, this.length | UNCOMPRESSED);
+      this.out.write(this.compressed, 0, 4);
+      this.out.write(this.buffer, 0, this.length);
+    }
+    this.length = 0;
+  }
+
+  private void ensureOpen() throws IOException {
+    if(this.closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.UTFDataFormatException;
+
+/**
+ * Utilities for working with modified UTF-8, as used by {@link java.io.DataInput#readUTF()}.
+ */
+final class ModifiedUtf8 {
+  private ModifiedUtf8() {
+  }
+
+  /**
+   * Decodes a string.
+   *
+   * @param bytes the encoded bytes
+   * @return the string
+   * @throws UTFDataFormatException if {@code bytes} is not valid modified UTF-8
+   */
+  static @NonNull String decode(final byte@NonNull[] bytes) throws UTFDataFormatException {
+    return decode(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Decodes a string.
+   *
+   * @param bytes the encoded bytes
+   * @param offset the offset of the first encoded byte
+   * @param length the number of encoded bytes
+   * @return the string
+   * @throws UTFDataFormatException if the bytes are not valid modified UTF-8
+   */
+  static @NonNull String decode(final byte@NonNull[] bytes, final int offset, final int length) throws UTFDataFormatException {
+    final char[] chars = new char[length];
+    int count = 0;
+    int i = offset;
+    final int end = offset + length;
+    // fast path for ascii
+    while(i < end && bytes[i] > 0) {
+      chars[count++] = (char) bytes[i++];
+    }
+    while(i < end) {
+      final int a = bytes[i] & 0xff;
+      switch(a >> 4) {
+        case 0: case 1: case 2: case 3: case 4: case 5: case 6: case 7:
+          // 0xxxxxxx
+          chars[count++] = (char) a;
+          i++;
+          break;
+        case 12: case 13: {
+          // 110x xxxx   10xx xxxx
+          if(i + 2 > end) {
+            throw new UTFDataFormatException("malformed input: partial character at end");
+          }
+          final int b = bytes[i + 1];
+          if((b & 0xc0) != 0x80) {
+            throw new UTFDataFormatException("malformed input around byte " + (i - offset));
+          }
+          chars[count++] = (char) (((a & 0x1f) << 6) | (b & 0x3f));
+          i += 2;
+          break;
+        }
+        case 14: {
+          // 1110 xxxx  10xx xxxx  10xx xxxx
+          if(i + 3 > end) {
+            throw new UTFDataFormatException("malformed input: partial character at end");
+          }
+          final int b = bytes[i + 1];
+          final int c = bytes[i + 2];
+          if(((b & 0xc0) != 0x80) || ((c & 0xc0) != 0x80)) {
+            throw new UTFDataFormatException("malformed input around byte " + (i - offset));
+          }
+          chars[count++] = (char) (((a & 0x0f) << 12) | ((b & 0x3f) << 6) | (c & 0x3f));
+          i += 3;
+          break;
+        }
+        default:
+          // 10xx xxxx, 1111 xxxx
+          throw new UTFDataFormatException("malformed input around byte " + (i - offset));
+      }
+    }
+    return new String(chars, 0, count);
+  }
+
+  /**
+   * Checks that {@code bytes} are structurally valid modified UTF-8, without decoding them.
+   *
+   * @param bytes the encoded bytes
+   * @throws UTFDataFormatException if {@code bytes} is not valid modified UTF-8
+   */
+  static void validate(final byte@NonNull[] bytes) throws UTFDataFormatException {
+    int i = 0;
+    final int end = bytes.length;
+    while(i < end) {
+      final int a = bytes[i] & 0xff;
+      final int width;
+      if(a < 0x80) {
+        width = 1;
+      } else if((a & 0xe0) == 0xc0) {
+        width = 2;
+      } else if((a & 0xf0) == 0xe0) {
+        width = 3;
+      } else {
+        throw new UTFDataFormatException("malformed input around byte " + i);
+      }
+      if(i + width > end) {
+        throw new UTFDataFormatException("malformed input: partial character at end");
+      }
+      for(int j = 1; j < width; j++) {
+        if((bytes[i + j] & 0xc0) != 0x80) {
+          throw new UTFDataFormatException("malformed input around byte " + i);
+        }
+      }
+      i += width;
+    }
+  }
+
+  /**
+   * Gets the number of bytes {@code string} encodes to, excluding the length prefix.
+   *
+   * @param string the string
+   * @return the encoded length
+   */
+  static int encodedLength(final @NonNull String string) {
+    final int chars = string.length();
+    int length = chars;
+    for(int i = 0; i < chars; i++) {
+      final char c = string.charAt(i);
+      if(c >= 0x80 || c == 0) {
+        length += c >= 0x800 ? 2 : 1;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Encodes a string, excluding the length prefix.
+   *
+   * @param string the string
+   * @return the encoded bytes
+   */
+  static byte@NonNull[] encode(final @NonNull String string) {
+    final byte[] bytes = new byte[encodedLength(string)];
+    encode(string, bytes, 0);
+    return bytes;
+  }
+
+  /**
+   * Encodes a string into {@code bytes}, excluding the length prefix.
+   *
+   * @param string the string
+   * @param bytes the destination
+   * @param offset the offset to start writing at
+   * @return the offset after the last written byte
+   */
+  static int encode(final @NonNull String string, final byte@NonNull[] bytes, int offset) {
+    for(int i = 0, chars = string.length(); i < chars; i++) {
+      final char c = string.charAt(i);
+      if(c != 0 && c < 0x80) {
+        bytes[offset++] = (byte) c;
+      } else if(c < 0x800) {
+        bytes[offset++] = (byte) (0xc0 | ((c >> 6) & 0x1f));
+        bytes[offset++] = (byte) (0x80 | (c & 0x3f));
+      } else {
+        bytes[offset++] = (byte) (0xe0 | ((c >> 12) & 0x0f));
+        bytes[offset++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        bytes[offset++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    return offset;
+  }
+
+  /**
+   * Computes the {@link String#hashCode() hash code} of an encoded string, without decoding it.
+   *
+   * <p>Malformed input produces an unspecified hash code.</p>
+   *
+   * @param bytes the encoded bytes
+   * @return the hash code
+   */
+  static int hash(final byte@NonNull[] bytes) {
+    int hash = 0;
+    int i = 0;
+    final int end = bytes.length;
+    while(i < end) {
+      final int a = bytes[i] & 0xff;
+      final int c;
+      if(a < 0x80) {
+        c = a;
+        i++;
+      } else if(a < 0xe0) {
+        c = i + 1 < end ? (((a & 0x1f) << 6) | (bytes[i + 1] & 0x3f)) : a;
+        i += 2;
+      } else {
+        c = i + 2 < end ? (((a & 0x0f) << 12) | ((bytes[i + 1] & 0x3f) << 6) | (bytes[i + 2] & 0x3f)) : a;
+        i += 3;
+      }
+      hash = 31 * hash + (char) c;
+    }
+    return hash;
+  }
+}
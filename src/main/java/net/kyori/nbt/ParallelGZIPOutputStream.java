@@ -0,0 +1,280 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An output stream that compresses data in the GZIP format using multiple threads.
+ *
+ * <p>Data is split into blocks which are deflated in parallel. Each block is primed with the last 32 KiB of
+ * the block before it as a preset dictionary, so compression is close to that of a single deflater. The
+ * compressed blocks are written in order as a single GZIP member, which can be read by
+ * {@link java.util.zip.GZIPInputStream}.</p>
+ */
+public final class ParallelGZIPOutputStream extends FilterOutputStream {
+  /**
+   * The default block size.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+  /**
+   * The size of the deflate window, and of the dictionary passed between blocks.
+   */
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+  private static final byte[] HEADER = {
+    (byte) 0x1f, (byte) 0x8b, // magic
+    Deflater.DEFLATED, // compression method
+    0, // flags
+    0, 0, 0, 0, // modification time
+    0, // extra flags
+    0 // operating system
+  };
+  private final @NonNull Executor executor;
+  private final int level;
+  /**
+   * The maximum number of blocks being compressed at once.
+   */
+  private final int maxPending;
+  private final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+  private final CRC32 crc = new CRC32();
+  private byte[] block;
+  private int blockLength;
+  private byte @Nullable [] dictionary;
+  private long length;
+  private boolean finished;
+  private boolean closed;
+
+  /**
+   * Creates a new stream using the common pool, the default block size and the default compression level.
+   *
+   * @param out the output stream
+   * @throws IOException if an exception was encountered while writing the header
+   */
+  public ParallelGZIPOutputStream(final @NonNull OutputStream out) throws IOException {
+    this(out, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism(), DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Creates a new stream.
+   *
+   * @param out the output stream
+   * @param executor the executor blocks are compressed on
+   * @param workers the number of blocks compressed at once
+   * @param blockSize the block size, in bytes
+   * @param level the compression level
+   * @throws IOException if an exception was encountered while writing the header
+   */
+  public ParallelGZIPOutputStream(final @NonNull OutputStream out, final @NonNull Executor executor, final int workers, final int blockSize, final int level) throws IOException {
+    super(out);
+    if(workers < 1) {
+      throw new IllegalArgumentException(String.format("Worker count of %d is not positive", workers));
+    }
+    if(blockSize < DICTIONARY_SIZE) {
+      throw new IllegalArgumentException(String.format("Block size of %d is smaller than %d", blockSize, DICTIONARY_SIZE));
+    }
+    if((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException(String.format("Invalid compression level %d", level));
+    }
+    this.executor = requireNonNull(executor, "executor");
+    this.maxPending = workers * 2; // keep the workers busy while the oldest block is written out
+    this.level = level;
+    this.block = new byte[blockSize];
+    out.write(HEADER);
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    this.ensureOpen();
+    this.block[this.blockLength++] = (byte) b;
+    this.length++;
+    if(this.blockLength == this.block.length) {
+      this.submit(false);
+    }
+  }
+
+  @Override
+  public void write(final byte@NonNull[] b, int off, int len) throws IOException {
+    this.ensureOpen();
+    this.length += len;
+    while(len > 0) {
+      final int chunk = Math.min(len, this.block.length - this.blockLength);
+      System.arraycopy(b, off, this.block, this.blockLength, chunk);
+      this.blockLength += chunk;
+      off += chunk;
+      len -= chunk;
+      if(this.blockLength == this.block.length) {
+        this.submit(false);
+      }
+    }
+  }
+
+  /**
+   * Compresses any buffered data, and writes all compressed blocks to the underlying stream.
+   *
+   * @throws IOException if an exception was encountered while compressing or writing
+   */
+  @Override
+  public void flush() throws IOException {
+    this.ensureOpen();
+    if(this.blockLength > 0) {
+      this.submit(false);
+    }
+    while(!this.pending.isEmpty()) {
+      this.writeOldest();
+    }
+    this.out.flush();
+  }
+
+  /**
+   * Finishes writing compressed data, without closing the underlying stream.
+   *
+   * @throws IOException if an exception was encountered while compressing or writing
+   */
+  public void finish() throws IOException {
+    if(this.finished) {
+      return;
+    }
+    this.submit(true);
+    while(!this.pending.isEmpty()) {
+      this.writeOldest();
+    }
+    this.finished = true;
+    writeIntLE(this.out, (int) this.crc.getValue());
+    writeIntLE(this.out, (int) this.length);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if(!this.closed) {
+      this.closed = true;
+      try {
+        this.finish();
+      } finally {
+        this.out.close();
+      }
+    }
+  }
+
+  private void submit(final boolean last) throws IOException {
+    // the checksum is updated a block at a time, rather than on every write
+    this.crc.update(this.block, 0, this.blockLength);
+    final byte[] block = this.blockLength == this.block.length ? this.block : Arrays.copyOf(this.block, this.blockLength);
+    final byte @Nullable [] dictionary = this.dictionary;
+    final int level = this.level;
+    this.pending.addLast(CompletableFuture.supplyAsync(() -> deflate(block, dictionary, level, last), this.executor));
+    if(block.length >= DICTIONARY_SIZE) {
+      this.dictionary = Arrays.copyOfRange(block, block.length - DICTIONARY_SIZE, block.length);
+    } else if(block.length > 0) {
+      // a short block only happens on flush - combine it with the tail of the previous dictionary
+      final byte[] previous = this.dictionary != null ? this.dictionary : new byte[0];
+      final byte[] combined = new byte[Math.min(DICTIONARY_SIZE, previous.length + block.length)];
+      final int kept = combined.length - block.length;
+      System.arraycopy(previous, previous.length - kept, combined, 0, kept);
+      System.arraycopy(block, 0, combined, kept, block.length);
+      this.dictionary = combined;
+    }
+    this.block = new byte[this.block.length];
+    this.blockLength = 0;
+    while(this.pending.size() > this.maxPending) {
+      this.writeOldest();
+    }
+  }
+
+  private void writeOldest() throws IOException {
+    final CompletableFuture<byte[]> future = this.pending.removeFirst();
+    try {
+      this.out.write(future.get());
+    } catch(final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing");
+    } catch(final ExecutionException e) {
+      throw new IOException("Exception while compressing", e.getCause());
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if(this.closed) {
+      throw new IOException("Stream closed");
+    }
+    if(this.finished) {
+      throw new IOException("Stream finished");
+    }
+  }
+
+  private static byte@NonNull[] deflate(final byte@NonNull[] block, final byte @Nullable [] dictionary, final int level, final boolean last) {
+    final Deflater deflater = new Deflater(level, true);
+    try {
+      if(dictionary != null) {
+        deflater.setDictionary(dictionary);
+      }
+      deflater.setInput(block);
+      byte[] output = new byte[Math.max(64, block.length / 2)];
+      int length = 0;
+      if(last) {
+        deflater.finish();
+        while(!deflater.finished()) {
+          if(length == output.length) {
+            output = Arrays.copyOf(output, output.length * 2);
+          }
+          length += deflater.deflate(output, length, output.length - length);
+        }
+      } else {
+        // a sync flush ends the block on a byte boundary without marking it as the final block
+        do {
+          if(length == output.length) {
+            output = Arrays.copyOf(output, output.length * 2);
+          }
+          length += deflater.deflate(output, length, output.length - length, Deflater.SYNC_FLUSH);
+        } while(length == output.length);
+      }
+      return Arrays.copyOf(output, length);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static void writeIntLE(final @NonNull OutputStream out, final int value) throws IOException {
+    out.write(value & 0xff);
+    out.write((value >>> 8) & 0xff);
+    out.write((value >>> 16) & 0xff);
+    out.write((value >>> 24) & 0xff);
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A writer that encodes large compound and list tags in parallel.
+ *
+ * <p>The exact {@link Tag#serializedSize() size} of every tag is known up front, so each child above the
+ * threshold is encoded by a separate task directly into its own region of a single output array. The
+ * output is identical to that of {@link TagIO#writeDataOutput(CompoundTag, java.io.DataOutput)}.</p>
+ *
+ * <p>Tags must not be modified while they are being written.</p>
+ */
+public final class ParallelTagWriter {
+  /**
+   * The default threshold.
+   */
+  public static final int DEFAULT_THRESHOLD = 64 * 1024;
+  /**
+   * The pool tasks are run in.
+   */
+  private final @NonNull ForkJoinPool pool;
+  /**
+   * The serialized size, in bytes, above which a child tag is encoded by a separate task.
+   */
+  private final int threshold;
+
+  public ParallelTagWriter() {
+    this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Creates a new writer.
+   *
+   * @param pool the pool tasks are run in
+   * @param threshold the serialized size, in bytes, above which a child tag is encoded by a separate task
+   */
+  public ParallelTagWriter(final @NonNull ForkJoinPool pool, final int threshold) {
+    if(threshold < 1) {
+      throw new IllegalArgumentException(String.format("Threshold of %d is not positive", threshold));
+    }
+    this.pool = requireNonNull(pool, "pool");
+    this.threshold = threshold;
+  }
+
+  /**
+   * Writes a compound tag to a new array of exactly the right size.
+   *
+   * @param tag the compound tag
+   * @return the encoded bytes
+   * @throws IOException if an exception was encountered while writing the compound tag
+   */
+  public byte@NonNull[] writeToByteArray(final @NonNull CompoundTag tag) throws IOException {
+    final TagSizes sizes = new TagSizes(tag, this.threshold);
+    final ArrayDataOutput output = new ArrayDataOutput(new byte[Byte.BYTES + Short.BYTES + sizes.total()]); // type id, empty name, value
+    output.writeByte(tag.type().id());
+    output.writeUTF(""); // write empty name
+    try {
+      this.pool.invoke(new EncodeTask(tag, output, sizes));
+    } catch(final UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return output.array();
+  }
+
+  /**
+   * Writes a compound tag to an output stream.
+   *
+   * @param tag the compound tag
+   * @param output the output stream
+   * @throws IOException if an exception was encountered while writing the compound tag
+   */
+  public void writeOutputStream(final @NonNull CompoundTag tag, final @NonNull OutputStream output) throws IOException {
+    try(final OutputStream os = output) {
+      os.write(this.writeToByteArray(tag));
+    }
+  }
+
+  /**
+   * A task encoding the value of a compound or list tag.
+   */
+  private final class EncodeTask extends RecursiveAction {
+    private static final long serialVersionUID = 0L;
+    private final transient Tag tag;
+    private final transient ArrayDataOutput output;
+    private final transient TagSizes sizes;
+
+    EncodeTask(final @NonNull Tag tag, final @NonNull ArrayDataOutput output, final @NonNull TagSizes sizes) {
+      this.tag = tag;
+      this.output = output;
+      this.sizes = sizes;
+    }
+
+    @Override
+    protected void compute() {
+      final List<EncodeTask> tasks = new ArrayList<>();
+      try {
+        if(this.tag instanceof CompoundTag) {
+          final CompoundTag compound = (CompoundTag) this.tag;
+          for(final String key : compound.keySet()) {
+            final Tag child = compound.get(key);
+            this.output.writeByte(child.type().id());
+            if(child.type() != TagType.END) {
+              this.output.writeUTF(key);
+              this.child(child, tasks);
+            }
+          }
+          this.output.writeByte(TagType.END.id());
+        } else {
+          final ListTag list = (ListTag) this.tag;
+          this.output.writeByte(list.listType().id());
+          this.output.writeInt(list.size());
+          for(int i = 0, size = list.size(); i < size; i++) {
+            this.child(list.get(i), tasks);
+          }
+        }
+      } catch(final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      for(int i = tasks.size() - 1; i >= 0; i--) {
+        tasks.get(i).join();
+      }
+    }
+
+    private void child(final @NonNull Tag child, final @NonNull List<EncodeTask> tasks) throws IOException {
+      final int size = this.sizes.large(child);
+      if(size >= 0) {
+        final EncodeTask task = new EncodeTask(child, new ArrayDataOutput(this.output.array(), this.output.position()), this.sizes);
+        task.fork();
+        tasks.add(task);
+        this.output.skip(size);
+        return;
+      }
+      child.write(this.output);
+    }
+  }
+}
@@ -0,0 +1,318 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join implementations of operations over large trees of tags.
+ *
+ * <p>Work is split by the {@link Tag#serializedSize() serialized size} of each subtree - compound and
+ * list tags larger than {@link #THRESHOLD} are processed by a separate task, and smaller ones are
+ * processed sequentially. The results are the same as those of the sequential operations.</p>
+ *
+ * <p>Tags must not be modified while an operation is running.</p>
+ */
+public final class ParallelTags {
+  /**
+   * The serialized size, in bytes, above which a subtree is processed by a separate task.
+   */
+  public static final int THRESHOLD = 64 * 1024;
+
+  private ParallelTags() {
+  }
+
+  /**
+   * Creates a copy of a tag, using the common pool.
+   *
+   * @param tag the tag
+   * @param <T> the tag type
+   * @return a copy of the tag
+   * @see Tag#copy()
+   */
+  public static <T extends Tag> @NonNull T parallelCopy(final @NonNull T tag) {
+    return parallelCopy(ForkJoinPool.commonPool(), tag);
+  }
+
+  /**
+   * Creates a copy of a tag.
+   *
+   * @param pool the pool tasks are run in
+   * @param tag the tag
+   * @param <T> the tag type
+   * @return a copy of the tag
+   * @see Tag#copy()
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends Tag> @NonNull T parallelCopy(final @NonNull ForkJoinPool pool, final @NonNull T tag) {
+    final TagSizes sizes = new TagSizes(tag, THRESHOLD);
+    if(!split(sizes, tag)) {
+      return (T) tag.copy();
+    }
+    return (T) pool.invoke(new CopyTask(tag, sizes));
+  }
+
+  /**
+   * Tests if two tags are equal, using the common pool.
+   *
+   * @param a the first tag
+   * @param b the second tag
+   * @return {@code true} if the tags are equal
+   * @see Tag#equals(Object)
+   */
+  public static boolean parallelEquals(final @NonNull Tag a, final @NonNull Tag b) {
+    return parallelEquals(ForkJoinPool.commonPool(), a, b);
+  }
+
+  /**
+   * Tests if two tags are equal.
+   *
+   * @param pool the pool tasks are run in
+   * @param a the first tag
+   * @param b the second tag
+   * @return {@code true} if the tags are equal
+   * @see Tag#equals(Object)
+   */
+  public static boolean parallelEquals(final @NonNull ForkJoinPool pool, final @NonNull Tag a, final @NonNull Tag b) {
+    if(a == b) {
+      return true;
+    }
+    final TagSizes sizes = new TagSizes(a, THRESHOLD);
+    if(!split(sizes, a)) {
+      return a.equals(b);
+    }
+    return pool.invoke(new EqualsTask(a, b, sizes));
+  }
+
+  /**
+   * Computes the hash code of a tag, using the common pool.
+   *
+   * @param tag the tag
+   * @return the hash code
+   * @see Tag#hashCode()
+   */
+  public static int parallelHash(final @NonNull Tag tag) {
+    return parallelHash(ForkJoinPool.commonPool(), tag);
+  }
+
+  /**
+   * Computes the hash code of a tag.
+   *
+   * @param pool the pool tasks are run in
+   * @param tag the tag
+   * @return the hash code
+   * @see Tag#hashCode()
+   */
+  public static int parallelHash(final @NonNull ForkJoinPool pool, final @NonNull Tag tag) {
+    final TagSizes sizes = new TagSizes(tag, THRESHOLD);
+    if(!split(sizes, tag)) {
+      return tag.hashCode();
+    }
+    return pool.invoke(new HashTask(tag, sizes));
+  }
+
+  /**
+   * Tests if a tag should be processed by a separate task.
+   *
+   * @param sizes the sizes of the large tags in the tree
+   * @param tag the tag
+   * @return {@code true} if the tag should be processed by a separate task
+   */
+  private static boolean split(final @NonNull TagSizes sizes, final @NonNull Tag tag) {
+    return sizes.large(tag) >= 0;
+  }
+
+  private static final class CopyTask extends RecursiveTask<Tag> {
+    private static final long serialVersionUID = 0L;
+    private final transient Tag tag;
+    private final transient TagSizes sizes;
+
+    CopyTask(final @NonNull Tag tag, final @NonNull TagSizes sizes) {
+      this.tag = tag;
+      this.sizes = sizes;
+    }
+
+    @Override
+    protected @NonNull Tag compute() {
+      if(this.tag instanceof CompoundTag) {
+        final CompoundTag compound = (CompoundTag) this.tag;
+        final CompoundTag copy = new CompoundTag(compound.size());
+        final List<String> keys = new ArrayList<>();
+        final List<CopyTask> tasks = new ArrayList<>();
+        for(final String key : compound.keySet()) {
+          final Tag child = compound.get(key);
+          if(split(this.sizes, child)) {
+            final CopyTask task = new CopyTask(child, this.sizes);
+            task.fork();
+            keys.add(key);
+            tasks.add(task);
+          } else {
+            copy.put(key, child.copy());
+          }
+        }
+        for(int i = tasks.size() - 1; i >= 0; i--) {
+          copy.put(keys.get(i), tasks.get(i).join());
+        }
+        return copy;
+      }
+      final ListTag list = (ListTag) this.tag;
+      final Object[] elements = new Object[list.size()];
+      for(int i = 0; i < elements.length; i++) {
+        final Tag element = list.get(i);
+        if(split(this.sizes, element)) {
+          final CopyTask task = new CopyTask(element, this.sizes);
+          task.fork();
+          elements[i] = task;
+        } else {
+          elements[i] = element.copy();
+        }
+      }
+      final ListTag copy = new ListTag(list.listType(), elements.length);
+      for(final Object element : elements) {
+        copy.append(element instanceof CopyTask ? ((CopyTask) element).join() : (Tag) element);
+      }
+      return copy;
+    }
+  }
+
+  private static final class EqualsTask extends RecursiveTask<Boolean> {
+    private static final long serialVersionUID = 0L;
+    private final transient Tag a;
+    private final transient Tag b;
+    private final transient TagSizes sizes;
+
+    EqualsTask(final @NonNull Tag a, final @NonNull Tag b, final @NonNull TagSizes sizes) {
+      this.a = a;
+      this.b = b;
+      this.sizes = sizes;
+    }
+
+    @Override
+    protected @NonNull Boolean compute() {
+      if(this.a.getClass() != this.b.getClass() || ((CollectionTag) this.a).size() != ((CollectionTag) this.b).size()) {
+        return false;
+      }
+      final List<EqualsTask> tasks = new ArrayList<>();
+      boolean equal = true;
+      if(this.a instanceof CompoundTag) {
+        final CompoundTag a = (CompoundTag) this.a;
+        final CompoundTag b = (CompoundTag) this.b;
+        for(final String key : a.keySet()) {
+          if(!(equal = this.compare(a.get(key), b.get(key), tasks))) {
+            break;
+          }
+        }
+      } else {
+        final ListTag a = (ListTag) this.a;
+        final ListTag b = (ListTag) this.b;
+        for(int i = 0, size = a.size(); i < size && equal; i++) {
+          equal = this.compare(a.get(i), b.get(i), tasks);
+        }
+      }
+      for(int i = tasks.size() - 1; i >= 0; i--) {
+        if(equal) {
+          equal = tasks.get(i).join();
+        } else {
+          tasks.get(i).cancel(false);
+        }
+      }
+      return equal;
+    }
+
+    private boolean compare(final @NonNull Tag a, final @Nullable Tag b, final @NonNull List<EqualsTask> tasks) {
+      if(b == null) {
+        return false;
+      }
+      if(a != b && split(this.sizes, a)) {
+        final EqualsTask task = new EqualsTask(a, b, this.sizes);
+        task.fork();
+        tasks.add(task);
+        return true;
+      }
+      return a.equals(b);
+    }
+  }
+
+  private static final class HashTask extends RecursiveTask<Integer> {
+    private static final long serialVersionUID = 0L;
+    private final transient Tag tag;
+    private final transient TagSizes sizes;
+
+    HashTask(final @NonNull Tag tag, final @NonNull TagSizes sizes) {
+      this.tag = tag;
+      this.sizes = sizes;
+    }
+
+    @Override
+    protected @NonNull Integer compute() {
+      if(this.tag instanceof CompoundTag) {
+        // matches AbstractMap#hashCode - the sum of the hash codes of each entry
+        final CompoundTag compound = (CompoundTag) this.tag;
+        final List<HashTask> tasks = new ArrayList<>();
+        final List<String> keys = new ArrayList<>();
+        int hash = 0;
+        for(final String key : compound.keySet()) {
+          final Tag child = compound.get(key);
+          if(split(this.sizes, child)) {
+            final HashTask task = new HashTask(child, this.sizes);
+            task.fork();
+            tasks.add(task);
+            keys.add(key);
+          } else {
+            hash += key.hashCode() ^ child.hashCode();
+          }
+        }
+        for(int i = tasks.size() - 1; i >= 0; i--) {
+          hash += keys.get(i).hashCode() ^ tasks.get(i).join();
+        }
+        return hash;
+      }
+      // matches AbstractList#hashCode
+      final ListTag list = (ListTag) this.tag;
+      final int size = list.size();
+      final int[] hashes = new int[size];
+      final HashTask[] tasks = new HashTask[size];
+      for(int i = 0; i < size; i++) {
+        final Tag element = list.get(i);
+        if(split(this.sizes, element)) {
+          tasks[i] = new HashTask(element, this.sizes);
+          tasks[i].fork();
+        } else {
+          hashes[i] = element.hashCode();
+        }
+      }
+      int hash = 1;
+      for(int i = 0; i < size; i++) {
+        hash = 31 * hash + (tasks[i] != null ? tasks[i].join() : hashes[i]);
+      }
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A tag holding the encoded bytes of another tag.
+ *
+ * <p>A raw tag is not decoded - the bytes it was read from are written back out verbatim. Raw tags are
+ * produced while reading by a {@link RawTagPolicy}, and are useful for passing through data that is
+ * never inspected.</p>
+ *
+ * <p>A raw tag is never equal to a decoded tag, even if the raw tag {@link #decode() decodes} to it.</p>
+ *
+ * <p>The typed getters of compound and list tags decode a raw tag each time they are called, and leave the
+ * raw tag in place - changes made to a decoded tag are not written back.</p>
+ */
+public final class RawTag implements Tag {
+  /**
+   * The type of the encoded tag.
+   */
+  private final @NonNull TagType type;
+  /**
+   * The encoded value of the tag, without its type id.
+   */
+  private byte[] bytes;
+
+  RawTag(final @NonNull TagType type) {
+    this.type = type;
+  }
+
+  RawTag(final @NonNull TagType type, final byte@NonNull[] bytes) {
+    this.type = type;
+    this.bytes = bytes;
+  }
+
+  /**
+   * Creates a raw tag by encoding {@code tag}.
+   *
+   * @param tag the tag
+   * @return the raw tag
+   */
+  public static @NonNull RawTag encode(final @NonNull Tag tag) {
+    if(tag instanceof RawTag) {
+      return (RawTag) tag;
+    }
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      tag.write(new DataOutputStream(bytes));
+    } catch(final IOException e) {
+      throw new IllegalStateException(e); // writing to memory does not fail
+    }
+    return new RawTag(tag.type(), bytes.toByteArray());
+  }
+
+  /**
+   * Gets the encoded length of this tag, in bytes.
+   *
+   * @return the encoded length
+   */
+  public int length() {
+    return this.bytes.length;
+  }
+
+  /**
+   * Decodes this tag.
+   *
+   * @return the decoded tag
+   */
+  public @NonNull Tag decode() {
+    final Tag tag = this.type.create();
+    try {
+      tag.read(new DataInputStream(new ByteArrayInputStream(this.bytes)), 0);
+    } catch(final IOException e) {
+      throw new IllegalStateException(e); // the structure was validated when the bytes were read
+    }
+    return tag;
+  }
+
+  @Override
+  public void read(final @NonNull DataInput input, final int depth) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    copy(this.type, input, new DataOutputStream(bytes), depth);
+    this.bytes = bytes.toByteArray();
+  }
+
+  @Override
+  public void write(final @NonNull DataOutput output) throws IOException {
+    if(!TagEncoding.java(output)) {
+      this.decode().write(output);
+      return;
+    }
+    output.write(this.bytes);
+  }
+
+  @Override
+  public int serializedSize() {
+    return this.bytes.length;
+  }
+
+  @Override
+  public @NonNull TagType type() {
+    return this.type;
+  }
+
+  @Override
+  public @NonNull RawTag copy() {
+    return new RawTag(this.type, this.bytes); // the encoded bytes are never modified, so they can be shared
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * this.type.hashCode() + Arrays.hashCode(this.bytes);
+  }
+
+  @Override
+  public boolean equals(final Object that) {
+    return this == that || (that instanceof RawTag && this.type == ((RawTag) that).type && Arrays.equals(this.bytes, ((RawTag) that).bytes));
+  }
+
+  /**
+   * Copies the encoded value of a tag from {@code input} to {@code output}, validating its structure.
+   *
+   * @param type the type of the tag
+   * @param input the input
+   * @param output the output
+   * @param depth the depth
+   * @throws IOException if an exception was encountered while reading or writing
+   */
+  static void copy(final @NonNull TagType type, final @NonNull DataInput input, final @NonNull DataOutput output, final int depth) throws IOException {
+    switch(type) {
+      case END:
+        break;
+      case BYTE:
+        output.writeByte(input.readByte());
+        break;
+      case SHORT:
+        output.writeShort(input.readShort());
+        break;
+      case INT:
+      case FLOAT:
+        output.writeInt(input.readInt());
+        break;
+      case LONG:
+      case DOUBLE:
+        output.writeLong(input.readLong());
+        break;
+      case BYTE_ARRAY:
+        copyArray(input, output, 1);
+        break;
+      case STRING: {
+        if(!TagEncoding.java(input)) {
+          output.writeUTF(input.readUTF());
+          break;
+        }
+        final int length = input.readUnsignedShort();
+        output.writeShort(length);
+        copyBytes(input, output, length);
+        break;
+      }
+      case LIST: {
+        if(depth > ListTag.MAX_DEPTH) {
+          throw new IllegalStateException(String.format("Depth of %d is higher than max of %d", depth, ListTag.MAX_DEPTH));
+        }
+        final TagType elementType = TagType.of(input.readByte());
+        output.writeByte(elementType.id());
+        final int length = input.readInt();
+        if(elementType == TagType.END && length > 0) {
+          throw new IOException(String.format("List of %d %s tags is not empty", length, TagType.END));
+        }
+        output.writeInt(length);
+        for(int i = 0; i < length; i++) {
+          copy(elementType, input, output, depth + 1);
+        }
+        break;
+      }
+      case COMPOUND: {
+        if(depth > CompoundTag.MAX_DEPTH) {
+          throw new IllegalStateException(String.format("Depth of %d is higher than max of %d", depth, CompoundTag.MAX_DEPTH));
+        }
+        TagType childType;
+        while((childType = TagType.of(input.readByte())) != TagType.END) {
+          output.writeByte(childType.id());
+          copy(TagType.STRING, input, output, depth + 1); // key
+          copy(childType, input, output, depth + 1);
+        }
+        output.writeByte(TagType.END.id());
+        break;
+      }
+      case INT_ARRAY:
+        if(!TagEncoding.java(input)) {
+          final int[] value = TagDecoder.readInts(input, input.readInt());
+          output.writeInt(value.length);
+          for(final int element : value) {
+            output.writeInt(element);
+          }
+          break;
+        }
+        copyArray(input, output, Integer.BYTES);
+        break;
+      case LONG_ARRAY:
+        if(!TagEncoding.java(input)) {
+          final long[] value = TagDecoder.readLongs(input, input.readInt());
+          output.writeInt(value.length);
+          for(final long element : value) {
+            output.writeLong(element);
+          }
+          break;
+        }
+        copyArray(input, output, Long.BYTES);
+        break;
+    }
+  }
+
+  private static void copyArray(final @NonNull DataInput input, final @NonNull DataOutput output, final int width) throws IOException {
+    final int length = input.readInt();
+    if(length < 0) {
+      throw new IOException(String.format("Array length of %d is negative", length));
+    }
+    output.writeInt(length);
+    copyBytes(input, output, (long) length * width);
+  }
+
+  private static void copyBytes(final @NonNull DataInput input, final @NonNull DataOutput output, long length) throws IOException {
+    final byte[] buffer = new byte[(int) Math.min(length, 8192)];
+    while(length > 0) {
+      final int chunk = (int) Math.min(length, buffer.length);
+      input.readFully(buffer, 0, chunk);
+      output.write(buffer, 0, chunk);
+      length -= chunk;
+    }
+  }
+}
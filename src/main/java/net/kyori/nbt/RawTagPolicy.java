@@ -0,0 +1,73 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A policy deciding which tags are kept as {@link RawTag raw tags} while reading.
+ */
+@FunctionalInterface
+public interface RawTagPolicy {
+  /**
+   * A policy that decodes every tag.
+   */
+  RawTagPolicy NONE = (type, key, depth) -> false;
+
+  /**
+   * Creates a policy that keeps the tags with one of the specified keys raw, at any depth.
+   *
+   * @param keys the keys
+   * @return the policy
+   */
+  static @NonNull RawTagPolicy keys(final @NonNull String... keys) {
+    final Set<String> set = new HashSet<>(Arrays.asList(keys));
+    return (type, key, depth) -> key != null && set.contains(key);
+  }
+
+  /**
+   * Creates a policy that keeps all tags deeper than {@code depth} raw.
+   *
+   * @param depth the depth
+   * @return the policy
+   */
+  static @NonNull RawTagPolicy deeperThan(final int depth) {
+    return (type, key, tagDepth) -> tagDepth > depth;
+  }
+
+  /**
+   * Tests if a tag should be kept raw.
+   *
+   * @param type the type of the tag
+   * @param key the key of the tag, or {@code null} if the tag is an element of a list
+   * @param depth the depth of the tag
+   * @return {@code true} if the tag should be kept raw, {@code false} if it should be decoded
+   */
+  boolean raw(final @NonNull TagType type, final @Nullable String key, final int depth);
+}
@@ -0,0 +1,138 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Estimates of the heap space retained by tags.
+ *
+ * <p>Estimates assume a 64-bit virtual machine with compressed references, and are meant for
+ * accounting, not for exact measurement.</p>
+ */
+final class RetainedSize {
+  /**
+   * The size of a number tag holding a value of up to 4 bytes.
+   */
+  static final long NUMBER = 16;
+  /**
+   * The size of a number tag holding an 8 byte value.
+   */
+  static final long WIDE_NUMBER = 24;
+  /**
+   * The size of a string or raw tag, excluding the encoded bytes.
+   */
+  static final long STRING = 24;
+  /**
+   * The size of an array tag, excluding the array.
+   */
+  static final long ARRAY = 16;
+  /**
+   * The size of a list tag, including its backing list but excluding the element array.
+   */
+  static final long LIST = 48;
+  /**
+   * The size of a compound tag, including its backing map but excluding the table.
+   */
+  static final long COMPOUND = 64;
+  /**
+   * The size of a compound tag entry, excluding the characters of its key.
+   */
+  static final long ENTRY = 32 + 24 + 4;
+
+  private RetainedSize() {
+  }
+
+  /**
+   * Gets the size of an array.
+   *
+   * @param length the length of the array
+   * @param width the width of an element, in bytes
+   * @return the size
+   */
+  static long array(final long length, final int width) {
+    return align(16 + length * width);
+  }
+
+  /**
+   * Gets the size of a compound tag entry with the specified key.
+   *
+   * @param key the key
+   * @return the size
+   */
+  static long entry(final @NonNull String key) {
+    return ENTRY + array(key.length(), 1);
+  }
+
+  /**
+   * Estimates the size of a tag, and all of its children.
+   *
+   * @param tag the tag
+   * @return the size
+   */
+  static long of(final @NonNull Tag tag) {
+    if(tag instanceof RawTag) {
+      return STRING + array(((RawTag) tag).length(), 1);
+    }
+    switch(tag.type()) {
+      case BYTE:
+      case SHORT:
+      case INT:
+      case FLOAT:
+        return NUMBER;
+      case LONG:
+      case DOUBLE:
+        return WIDE_NUMBER;
+      case BYTE_ARRAY:
+        return ARRAY + array(((ByteArrayTag) tag).value().length, Byte.BYTES);
+      case STRING:
+        return STRING + array(((StringTag) tag).storedLength(), 1);
+      case LIST: {
+        long size = LIST + array(((ListTag) tag).size(), 4);
+        for(final Tag element : (ListTag) tag) {
+          size += of(element);
+        }
+        return size;
+      }
+      case COMPOUND: {
+        final CompoundTag compound = (CompoundTag) tag;
+        long size = COMPOUND + array(compound.size() * 2L, 4);
+        for(final String key : compound.keySet()) {
+          size += entry(key) + of(compound.get(key));
+        }
+        return size;
+      }
+      case INT_ARRAY:
+        return ARRAY + array(((IntArrayTag) tag).value().length, Integer.BYTES);
+      case LONG_ARRAY:
+        return ARRAY + array(((LongArrayTag) tag).value().length, Long.BYTES);
+      default:
+        return NUMBER;
+    }
+  }
+
+  private static long align(final long size) {
+    return (size + 7) & ~7L;
+  }
+}
@@ -85,6 +85,11 @@ public final class ShortTag implements NumberTag {
     output.writeShort(this.value);
   }
 
+  @Override
+  public int serializedSize() {
+    return Short.BYTES;
+  }
+
   @Override
   public @NonNull TagType type() {
     return TagType.SHORT;
@@ -28,15 +28,26 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.Objects;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
 
 import static java.util.Objects.requireNonNull;
 
 /**
  * A tag representing a {@link String}.
+ *
+ * <p>A string tag that has been read holds on to its encoded bytes, and only decodes them when
+ * its {@link #value() value} is first requested. The encoded bytes are written back out verbatim.</p>
  */
 public final class StringTag implements Tag {
-  private String value;
+  /**
+   * The encoded value, in modified UTF-8, or {@code null} if this tag was created from a {@link String}.
+   */
+  private byte[] bytes;
+  /**
+   * The decoded value, or {@code null} if it has not been decoded yet.
+   */
+  private /* @Nullable */ String value;
 
   StringTag() {
   }
@@ -45,18 +56,59 @@ public final class StringTag implements Tag {
     this.value = requireNonNull(value, "value");
   }
 
+  StringTag(final byte@NonNull[] bytes) {
+    this.bytes = bytes;
+  }
+
   public @NonNull String value() {
-    return this.value;
+    /* @Nullable */ String value = this.value;
+    if(value == null) {
+      try {
+        value = ModifiedUtf8.decode(this.bytes);
+      } catch(final UTFDataFormatException e) {
+        throw new IllegalStateException("Malformed string value", e);
+      }
+      this.value = value;
+    }
+    return value;
+  }
+
+  /**
+   * Gets the number of encoded bytes held by this tag, or the length of its value if it holds no encoded bytes.
+   *
+   * @return the stored length
+   */
+  int storedLength() {
+    return this.bytes != null ? this.bytes.length : this.value.length();
   }
 
   @Override
   public void read(final @NonNull DataInput input, final int depth) throws IOException {
-    this.value = input.readUTF();
+    if(!TagEncoding.java(input)) {
+      this.bytes = null;
+      this.value = input.readUTF();
+      return;
+    }
+    final byte[] bytes = new byte[input.readUnsignedShort()];
+    input.readFully(bytes);
+    ModifiedUtf8.validate(bytes);
+    this.bytes = bytes;
+    this.value = null;
   }
 
   @Override
   public void write(final @NonNull DataOutput output) throws IOException {
-    output.writeUTF(this.value);
+    if(this.bytes != null && TagEncoding.java(output)) {
+      output.writeShort(this.bytes.length);
+      output.write(this.bytes);
+    } else {
+      output.writeUTF(this.value());
+    }
+  }
+
+  @Override
+  public int serializedSize() {
+    return Short.BYTES + (this.bytes != null ? this.bytes.length : ModifiedUtf8.encodedLength(this.value));
   }
 
   @Override
@@ -66,16 +118,33 @@ public final class StringTag implements Tag {
 
   @Override
   public @NonNull StringTag copy() {
+    if(this.bytes != null) {
+      return new StringTag(this.bytes); // the encoded bytes are never modified, so they can be shared
+    }
     return new StringTag(this.value);
   }
 
   @Override
   public int hashCode() {
+    if(this.value == null) {
+      return ModifiedUtf8.hash(this.bytes);
+    }
     return this.value.hashCode();
   }
 
   @Override
   public boolean equals(final Object that) {
-    return this == that || (that instanceof StringTag && Objects.equals(this.value, ((StringTag) that).value));
+    if(this == that) {
+      return true;
+    }
+    if(!(that instanceof StringTag)) {
+      return false;
+    }
+    final StringTag other = (StringTag) that;
+    if(this.bytes != null && other.bytes != null && Arrays.equals(this.bytes, other.bytes)) {
+      return true;
+    }
+    // different encodings may still decode to the same value, such as 0xc0 0x80 and 0x00
+    return this.value().equals(other.value());
   }
 }
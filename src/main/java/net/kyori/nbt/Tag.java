@@ -50,6 +50,13 @@ public interface Tag {
    */
   void write(final @NonNull DataOutput output) throws IOException;
 
+  /**
+   * Gets the number of bytes {@link #write(DataOutput) written} for the value of this tag in the {@link TagEncoding#JAVA Java encoding}.
+   *
+   * @return the serialized size, in bytes
+   */
+  int serializedSize();
+
   /**
    * Gets the type of this tag.
    *
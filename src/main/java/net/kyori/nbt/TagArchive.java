@@ -0,0 +1,314 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A read-only archive of named compound tags, stored as {@link TagTape tapes} in a single file that is
+ * mapped into memory.
+ *
+ * <p>Each tape is stored with its structural entries already computed, so opening an archive and
+ * getting a tape parses nothing: the tape is a view over the mapped file. Processes that map the same
+ * archive share a single copy of it in the page cache.</p>
+ *
+ * <p>An archive file is limited to 2 GiB.</p>
+ */
+public final class TagArchive {
+  private static final int MAGIC = 0x4e425441; // NBTA
+  private static final int VERSION = 1;
+  /**
+   * The length of the header: the magic number, the version, the number of tapes, and the offset of
+   * the index, which is sorted by name.
+   */
+  private static final int HEADER = 4 + 4 + 4 + 4;
+  /**
+   * The length of an index record: the offset and length of the name, the offset and length of the
+   * encoded bytes, and the offset and number of the structural entries.
+   */
+  private static final int RECORD = 6 * 4;
+  private final ByteBuffer file;
+  private final int count;
+  private final int index;
+
+  private TagArchive(final @NonNull ByteBuffer file) throws IOException {
+    this.file = file;
+    if(file.limit() < HEADER || file.getInt(0) != MAGIC) {
+      throw new IOException("Not a tag archive");
+    }
+    if(file.getInt(4) != VERSION) {
+      throw new IOException(String.format("Unsupported tag archive version %d", file.getInt(4)));
+    }
+    this.count = file.getInt(8);
+    this.index = file.getInt(12);
+    if(this.count < 0 || this.index < HEADER || (long) this.index + (long) this.count * RECORD > file.limit()) {
+      throw new IOException("Tag archive index is out of bounds");
+    }
+  }
+
+  /**
+   * Opens an archive by mapping {@code path} into memory.
+   *
+   * @param path the path
+   * @return the archive
+   * @throws IOException if an exception was encountered while opening the archive
+   */
+  public static @NonNull TagArchive open(final @NonNull Path path) throws IOException {
+    try(final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final long size = channel.size();
+      if(size > Integer.MAX_VALUE) {
+        throw new IOException(String.format("Tag archive of %d bytes is too large to map", size));
+      }
+      // the mapping stays valid once the channel is closed
+      return new TagArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    }
+  }
+
+  /**
+   * Creates a new writer.
+   *
+   * @return a new writer
+   */
+  public static @NonNull Writer writer() {
+    return new Writer();
+  }
+
+  /**
+   * Gets the number of tapes in this archive.
+   *
+   * @return the number of tapes
+   */
+  public int size() {
+    return this.count;
+  }
+
+  /**
+   * Gets the names of the tapes in this archive, in order.
+   *
+   * @return the names
+   */
+  public @NonNull List<String> names() {
+    return new AbstractList<String>() {
+      @Override
+      public String get(final int index) {
+        if(index < 0 || index >= TagArchive.this.count) {
+          throw new IndexOutOfBoundsException(String.format("Index %d is out of bounds for %d tapes", index, TagArchive.this.count));
+        }
+        return TagArchive.this.name(index);
+      }
+
+      @Override
+      public int size() {
+        return TagArchive.this.count;
+      }
+    };
+  }
+
+  /**
+   * Gets the tape named {@code name}.
+   *
+   * @param name the name
+   * @return the tape, or {@code null} if there is none
+   * @throws IOException if the tape is out of the bounds of the archive
+   */
+  public @Nullable TagTape get(final @NonNull String name) throws IOException {
+    // the index is sorted by name
+    int low = 0;
+    int high = this.count - 1;
+    while(low <= high) {
+      final int middle = (low + high) >>> 1;
+      final int comparison = this.name(middle).compareTo(name);
+      if(comparison < 0) {
+        low = middle + 1;
+      } else if(comparison > 0) {
+        high = middle - 1;
+      } else {
+        return this.tape(middle);
+      }
+    }
+    return null;
+  }
+
+  private @NonNull String name(final int index) {
+    final int record = this.index + index * RECORD;
+    final byte[] name = new byte[this.file.getInt(record + 4)];
+    final ByteBuffer buffer = this.file.duplicate();
+    buffer.position(this.file.getInt(record));
+    buffer.get(name);
+    return new String(name, StandardCharsets.UTF_8);
+  }
+
+  private @NonNull TagTape tape(final int index) throws IOException {
+    final int record = this.index + index * RECORD;
+    final int data = this.file.getInt(record + 8);
+    final int length = this.file.getInt(record + 12);
+    final int entries = this.file.getInt(record + 16);
+    final int entryCount = this.file.getInt(record + 20);
+    if(data < HEADER || length < 0 || (long) data + length > this.file.limit() || entries < HEADER || entryCount < 0 || (long) entries + (long) entryCount * 8 > this.file.limit()) {
+      throw new IOException(String.format("Tape %s is out of bounds", this.name(index)));
+    }
+    return new TagTape(slice(this.file, data, length).order(ByteOrder.BIG_ENDIAN), slice(this.file, entries, entryCount * 8).order(ByteOrder.BIG_ENDIAN).asLongBuffer());
+  }
+
+  private static @NonNull ByteBuffer slice(final @NonNull ByteBuffer buffer, final int offset, final int length) {
+    final ByteBuffer slice = buffer.duplicate();
+    slice.limit(offset + length);
+    slice.position(offset);
+    return slice.slice();
+  }
+
+  /**
+   * A writer of an archive.
+   */
+  public static final class Writer {
+    private final Map<String, TagTape> tapes = new TreeMap<>();
+
+    Writer() {
+    }
+
+    /**
+     * Adds a compound tag.
+     *
+     * @param name the name
+     * @param tag the compound tag
+     * @return this writer
+     * @throws IOException if an exception was encountered while encoding the compound tag
+     */
+    public @NonNull Writer add(final @NonNull String name, final @NonNull CompoundTag tag) throws IOException {
+      return this.add(name, TagIO.readTape(TagIO.writeToByteArray(tag)));
+    }
+
+    /**
+     * Adds a tape.
+     *
+     * @param name the name
+     * @param tape the tape
+     * @return this writer
+     */
+    public @NonNull Writer add(final @NonNull String name, final @NonNull TagTape tape) {
+      requireNonNull(name, "name");
+      if(this.tapes.putIfAbsent(name, requireNonNull(tape, "tape")) != null) {
+        throw new IllegalArgumentException(String.format("Duplicate tape name %s", name));
+      }
+      return this;
+    }
+
+    /**
+     * Writes the archive to {@code path}.
+     *
+     * <p>The archive is written next to {@code path} and then moved over it, so processes that have
+     * the previous archive mapped keep their view of it.</p>
+     *
+     * @param path the path
+     * @throws IOException if an exception was encountered while writing the archive
+     */
+    public void write(final @NonNull Path path) throws IOException {
+      final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+      try {
+        try(final OutputStream stream = Files.newOutputStream(temporary)) {
+          this.write(stream);
+        }
+        TagSaver.move(temporary, path);
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+    }
+
+    private void write(final @NonNull OutputStream stream) throws IOException {
+      // lay out the index, which follows the header, and then the names and tapes
+      final int[] records = new int[this.tapes.size() * 6];
+      final byte[][] names = new byte[this.tapes.size()][];
+      long position = HEADER + (long) records.length * 4;
+      int i = 0;
+      for(final Map.Entry<String, TagTape> entry : this.tapes.entrySet()) {
+        final byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        names[i / 6] = name;
+        records[i++] = (int) position;
+        records[i++] = name.length;
+        position += name.length;
+        records[i++] = (int) position;
+        records[i++] = entry.getValue().data().remaining();
+        position = align(position + records[i - 1]); // so the entries can be read as longs
+        records[i++] = (int) position;
+        records[i++] = entry.getValue().entries().remaining();
+        position += records[i - 1] * 8L;
+        if(position > Integer.MAX_VALUE) {
+          throw new IOException("Tag archive is larger than 2 GiB");
+        }
+      }
+      final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(this.tapes.size());
+      output.writeInt(HEADER);
+      for(final int record : records) {
+        output.writeInt(record);
+      }
+      i = 0;
+      final byte[] buffer = new byte[8192];
+      for(final TagTape tape : this.tapes.values()) {
+        output.write(names[i]);
+        final ByteBuffer data = tape.data();
+        while(data.hasRemaining()) {
+          final int length = Math.min(buffer.length, data.remaining());
+          data.get(buffer, 0, length);
+          output.write(buffer, 0, length);
+        }
+        for(int padding = records[i * 6 + 4] - records[i * 6 + 2] - records[i * 6 + 3]; padding > 0; padding--) {
+          output.writeByte(0);
+        }
+        final LongBuffer entries = tape.entries();
+        while(entries.hasRemaining()) {
+          output.writeLong(entries.get());
+        }
+        i++;
+      }
+      output.flush();
+    }
+
+    private static long align(final long position) {
+      return (position + 7) & ~7L;
+    }
+  }
+}
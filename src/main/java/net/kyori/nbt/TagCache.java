@@ -0,0 +1,389 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A cache of compound tags read from files.
+ *
+ * <p>Entries are keyed by path, and are reloaded when the modification time or size of the file changes.
+ * The least recently used entries are evicted once the estimated heap space retained by all entries
+ * exceeds a maximum. Concurrent misses for the same file read it only once.</p>
+ *
+ * <p>Callers get a {@link CompoundTag#copy() copy} of the cached tag, unless copy-on-read has been
+ * disabled - in which case the returned tags are shared, and must not be modified.</p>
+ */
+public final class TagCache {
+  private final long maxBytes;
+  private final Compression compression;
+  private final boolean copyOnRead;
+  /**
+   * The cached entries, in access order. Guarded by itself.
+   */
+  private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<Key, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+  private long weight;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  private TagCache(final long maxBytes, final @NonNull Compression compression, final boolean copyOnRead) {
+    this.maxBytes = maxBytes;
+    this.compression = compression;
+    this.copyOnRead = copyOnRead;
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return a new builder
+   */
+  public static @NonNull Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Gets the compound tag read from {@code path}, reading it if it is not cached or has changed.
+   *
+   * @param path the path
+   * @return the compound tag
+   * @throws IOException if an exception was encountered while reading the compound tag
+   */
+  public @NonNull CompoundTag get(final @NonNull Path path) throws IOException {
+    final Path normalized = path.toAbsolutePath().normalize();
+    final BasicFileAttributes attributes = Files.readAttributes(normalized, BasicFileAttributes.class);
+    final Key key = new Key(normalized, attributes.lastModifiedTime().toMillis(), attributes.size());
+    final @Nullable Entry entry;
+    synchronized(this.entries) {
+      entry = this.entries.get(normalized);
+    }
+    if(entry != null && entry.key.equals(key)) {
+      this.hits.increment();
+      return this.read(entry); // copy outside of the lock, entries are never modified
+    }
+    this.misses.increment();
+    return this.read(this.load(key));
+  }
+
+  /**
+   * Removes the entry for {@code path}.
+   *
+   * @param path the path
+   */
+  public void invalidate(final @NonNull Path path) {
+    synchronized(this.entries) {
+      final Entry entry = this.entries.remove(path.toAbsolutePath().normalize());
+      if(entry != null) {
+        this.weight -= entry.weight;
+      }
+    }
+  }
+
+  /**
+   * Removes all entries.
+   */
+  public void invalidateAll() {
+    synchronized(this.entries) {
+      this.entries.clear();
+      this.weight = 0;
+    }
+  }
+
+  /**
+   * Gets a snapshot of the statistics of this cache.
+   *
+   * @return the statistics
+   */
+  public @NonNull Stats stats() {
+    final long weight;
+    final int size;
+    synchronized(this.entries) {
+      weight = this.weight;
+      size = this.entries.size();
+    }
+    return new Stats(this.hits.sum(), this.misses.sum(), this.loads.sum(), this.evictions.sum(), size, weight);
+  }
+
+  private @NonNull CompoundTag read(final @NonNull Entry entry) {
+    return this.copyOnRead ? entry.tag.copy() : entry.tag;
+  }
+
+  private @NonNull Entry load(final @NonNull Key key) throws IOException {
+    final CompletableFuture<Entry> future = new CompletableFuture<>();
+    final CompletableFuture<Entry> existing = this.loading.putIfAbsent(key, future);
+    if(existing != null) {
+      try {
+        return existing.join();
+      } catch(final CompletionException e) {
+        if(e.getCause() instanceof UncheckedIOException) {
+          throw ((UncheckedIOException) e.getCause()).getCause();
+        }
+        throw e;
+      }
+    }
+    try {
+      synchronized(this.entries) {
+        final Entry entry = this.entries.get(key.path);
+        if(entry != null && entry.key.equals(key)) {
+          future.complete(entry); // loaded by someone else since the miss
+          return entry;
+        }
+      }
+      this.loads.increment();
+      final CompoundTag tag = TagIO.readPath(key.path, this.compression);
+      final Entry entry = new Entry(key, tag, RetainedSize.of(tag));
+      this.put(entry);
+      future.complete(entry);
+      return entry;
+    } catch(final IOException e) {
+      future.completeExceptionally(new UncheckedIOException(e));
+      throw e;
+    } catch(final RuntimeException | Error e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      this.loading.remove(key, future);
+    }
+  }
+
+  private void put(final @NonNull Entry entry) {
+    if(entry.weight > this.maxBytes) {
+      return; // would evict everything else, and then itself
+    }
+    synchronized(this.entries) {
+      final Entry previous = this.entries.get(entry.key.path);
+      if(previous != null) {
+        if(previous.key.modified > entry.key.modified) {
+          return; // a load of an older version finished last
+        }
+        this.weight -= previous.weight;
+      }
+      this.entries.put(entry.key.path, entry);
+      this.weight += entry.weight;
+      final Iterator<Entry> it = this.entries.values().iterator();
+      while(this.weight > this.maxBytes && it.hasNext()) {
+        final Entry eldest = it.next();
+        it.remove();
+        this.weight -= eldest.weight;
+        this.evictions.increment();
+      }
+    }
+  }
+
+  private static final class Key {
+    final Path path;
+    final long modified;
+    final long size;
+
+    Key(final @NonNull Path path, final long modified, final long size) {
+      this.path = path;
+      this.modified = modified;
+      this.size = size;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * this.path.hashCode() + Long.hashCode(this.modified)) + Long.hashCode(this.size);
+    }
+
+    @Override
+    public boolean equals(final Object that) {
+      if(this == that) {
+        return true;
+      }
+      if(!(that instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) that;
+      return this.modified == other.modified && this.size == other.size && this.path.equals(other.path);
+    }
+  }
+
+  private static final class Entry {
+    final Key key;
+    final CompoundTag tag;
+    final long weight;
+
+    Entry(final @NonNull Key key, final @NonNull CompoundTag tag, final long weight) {
+      this.key = key;
+      this.tag = tag;
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * The statistics of a cache.
+   */
+  public static final class Stats {
+    private final long hits;
+    private final long misses;
+    private final long loads;
+    private final long evictions;
+    private final int size;
+    private final long weight;
+
+    Stats(final long hits, final long misses, final long loads, final long evictions, final int size, final long weight) {
+      this.hits = hits;
+      this.misses = misses;
+      this.loads = loads;
+      this.evictions = evictions;
+      this.size = size;
+      this.weight = weight;
+    }
+
+    /**
+     * Gets the number of reads served from the cache.
+     *
+     * @return the number of hits
+     */
+    public long hits() {
+      return this.hits;
+    }
+
+    /**
+     * Gets the number of reads not served from the cache.
+     *
+     * @return the number of misses
+     */
+    public long misses() {
+      return this.misses;
+    }
+
+    /**
+     * Gets the number of files read. Concurrent misses for the same file are read once.
+     *
+     * @return the number of loads
+     */
+    public long loads() {
+      return this.loads;
+    }
+
+    /**
+     * Gets the number of entries evicted to stay within the maximum size.
+     *
+     * @return the number of evictions
+     */
+    public long evictions() {
+      return this.evictions;
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+      return this.size;
+    }
+
+    /**
+     * Gets the estimated heap space retained by all entries.
+     *
+     * @return the weight, in bytes
+     */
+    public long weight() {
+      return this.weight;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Stats{hits=%d, misses=%d, loads=%d, evictions=%d, size=%d, weight=%d}", this.hits, this.misses, this.loads, this.evictions, this.size, this.weight);
+    }
+  }
+
+  /**
+   * A tag cache builder.
+   */
+  public static final class Builder {
+    private long maxBytes = 64L * 1024 * 1024;
+    private Compression compression = Compression.GZIP;
+    private boolean copyOnRead = true;
+
+    Builder() {
+    }
+
+    /**
+     * Sets the maximum estimated heap space retained by all entries.
+     *
+     * @param maxBytes the maximum number of bytes
+     * @return this builder
+     */
+    public @NonNull Builder maxBytes(final long maxBytes) {
+      if(maxBytes < 0) {
+        throw new IllegalArgumentException(String.format("Maximum of %d bytes is negative", maxBytes));
+      }
+      this.maxBytes = maxBytes;
+      return this;
+    }
+
+    /**
+     * Sets the compression files are read with.
+     *
+     * @param compression the compression
+     * @return this builder
+     */
+    public @NonNull Builder compression(final @NonNull Compression compression) {
+      this.compression = requireNonNull(compression, "compression");
+      return this;
+    }
+
+    /**
+     * Sets if callers get a copy of the cached tag.
+     *
+     * @param copyOnRead if callers get a copy
+     * @return this builder
+     */
+    public @NonNull Builder copyOnRead(final boolean copyOnRead) {
+      this.copyOnRead = copyOnRead;
+      return this;
+    }
+
+    /**
+     * Builds a tag cache.
+     *
+     * @return the tag cache
+     */
+    public @NonNull TagCache build() {
+      return new TagCache(this.maxBytes, this.compression, this.copyOnRead);
+    }
+  }
+}
@@ -0,0 +1,670 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A tag decoder.
+ *
+ * <p>A decoder reads tags without recursion - nested compound and list tags are tracked on an explicit
+ * stack, so decoding deep trees does not depend on the size of the thread stack. Tags are created directly
+ * from their type id, rather than through {@link Tag#read(DataInput, int)}.</p>
+ *
+ * <p>A decoder can limit the number of tags, and the estimated number of bytes retained by them, that a
+ * single call may decode. Lengths read from the input are never trusted for large allocations - arrays
+ * above a threshold are grown as their elements are read.</p>
+ *
+ * <p>Decoders are immutable, and can be shared between threads.</p>
+ */
+public final class TagDecoder {
+  /**
+   * The default decoder.
+   */
+  static final TagDecoder DEFAULT = new TagDecoder(RawTagPolicy.NONE, null, Long.MAX_VALUE, Long.MAX_VALUE);
+  /**
+   * The largest list capacity allocated up front, before any elements have been read.
+   */
+  static final int MAX_INITIAL_CAPACITY = 1 << 16;
+  /**
+   * The largest number of tags in a subtree that is interned, so that comparing subtrees stays cheap.
+   */
+  static final int MAX_INTERNED_TAGS = 256;
+  /**
+   * The largest array size, in bytes, allocated up front. Larger arrays are grown as their elements
+   * are read, so a declared length that is not backed by input can not cause a large allocation.
+   */
+  static final int MAX_INITIAL_ARRAY_BYTES = 1 << 20;
+  /**
+   * The size of the buffer that int and long arrays in the {@link TagEncoding#JAVA Java encoding} are read through.
+   */
+  private static final int BULK_BYTES = 8192;
+  private static final byte END = 0;
+  private static final byte BYTE = 1;
+  private static final byte SHORT = 2;
+  private static final byte INT = 3;
+  private static final byte LONG = 4;
+  private static final byte FLOAT = 5;
+  private static final byte DOUBLE = 6;
+  private static final byte BYTE_ARRAY = 7;
+  private static final byte STRING = 8;
+  private static final byte LIST = 9;
+  private static final byte COMPOUND = 10;
+  private static final byte INT_ARRAY = 11;
+  private static final byte LONG_ARRAY = 12;
+  /**
+   * The raw tag policy.
+   */
+  private final @NonNull RawTagPolicy policy;
+  /**
+   * The interner, or {@code null}.
+   */
+  private final @Nullable TagInterner interner;
+  /**
+   * The maximum estimated number of bytes retained by the decoded tags.
+   */
+  private final long maxBytes;
+  /**
+   * The maximum number of decoded tags.
+   */
+  private final long maxTags;
+
+  private TagDecoder(final @NonNull RawTagPolicy policy, final @Nullable TagInterner interner, final long maxBytes, final long maxTags) {
+    this.policy = policy;
+    this.interner = interner;
+    this.maxBytes = maxBytes;
+    this.maxTags = maxTags;
+  }
+
+  /**
+   * Gets the default decoder.
+   *
+   * @return the default decoder
+   */
+  public static @NonNull TagDecoder decoder() {
+    return DEFAULT;
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return a new builder
+   */
+  public static @NonNull Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Decodes a root compound tag from {@code input}.
+   *
+   * @param input the input
+   * @return the compound tag
+   * @throws IOException if an exception was encountered while decoding
+   */
+  public @NonNull CompoundTag decode(final @NonNull DataInput input) throws IOException {
+    final TagType type = TagType.of(input.readByte());
+    if(type != TagType.COMPOUND) {
+      throw new IOException(String.format("Expected root tag to be a %s, was %s", TagType.COMPOUND, type));
+    }
+    input.readUTF(); // read empty name
+    final /* @Nullable */ Budget budget = this.budget();
+    if(budget != null) {
+      budget.allocate(RetainedSize.COMPOUND, 1);
+    }
+    final CompoundTag tag = new CompoundTag();
+    this.readCompound(tag, input, 0, budget); // initial depth is zero
+    return tag;
+  }
+
+  /**
+   * Decodes the value of a tag from {@code input}.
+   *
+   * @param type the type of the tag
+   * @param input the input
+   * @return the tag
+   * @throws IOException if an exception was encountered while decoding
+   */
+  public @NonNull Tag decode(final @NonNull TagType type, final @NonNull DataInput input) throws IOException {
+    final Frame[] stack = new Frame[8];
+    final /* @Nullable */ Budget budget = this.budget();
+    final Frame parent = push(stack, 0, null, null, -1, END, -1);
+    final /* @Nullable */ Tag tag = this.value(stack, 1, parent, type.id(), null, input, budget);
+    if(tag != null) {
+      return tag;
+    }
+    this.run(stack, 2, 1, input, budget);
+    return stack[1].tag;
+  }
+
+  /**
+   * Reads the entries of a compound tag into {@code tag}.
+   *
+   * @param tag the compound tag
+   * @param input the input
+   * @param depth the depth of the compound tag
+   * @throws IOException if an exception was encountered while decoding
+   */
+  void readCompound(final @NonNull CompoundTag tag, final @NonNull DataInput input, final int depth) throws IOException {
+    this.readCompound(tag, input, depth, this.budget());
+  }
+
+  private void readCompound(final @NonNull CompoundTag tag, final @NonNull DataInput input, final int depth, final @Nullable Budget budget) throws IOException {
+    checkDepth(depth);
+    final Frame[] stack = new Frame[8];
+    push(stack, 0, tag, null, -1, END, depth);
+    this.run(stack, 1, 0, input, budget);
+  }
+
+  /**
+   * Reads {@code length} elements of a list tag into {@code tag}.
+   *
+   * @param tag the list tag
+   * @param length the number of elements
+   * @param input the input
+   * @param depth the depth of the list tag
+   * @throws IOException if an exception was encountered while decoding
+   */
+  void readList(final @NonNull ListTag tag, final int length, final @NonNull DataInput input, final int depth) throws IOException {
+    checkDepth(depth);
+    final Frame[] stack = new Frame[8];
+    push(stack, 0, tag, null, Math.max(0, length), tag.listType().id(), depth);
+    this.run(stack, 1, 0, input, this.budget());
+  }
+
+  /**
+   * Reads tags until the frame at index {@code floor} of {@code stack} has been completed.
+   */
+  private void run(Frame[] stack, int size, final int floor, final @NonNull DataInput input, final @Nullable Budget budget) throws IOException {
+    while(size > floor) {
+      final Frame frame = stack[size - 1];
+      final byte id;
+      final /* @Nullable */ String key;
+      if(frame.remaining < 0) {
+        id = input.readByte();
+        if(id == END) {
+          size = this.pop(stack, size, floor);
+          continue;
+        }
+        key = input.readUTF();
+        if(budget != null) {
+          budget.allocate(RetainedSize.entry(key), 0);
+        }
+      } else if(frame.remaining == 0) {
+        size = this.pop(stack, size, floor);
+        continue;
+      } else {
+        frame.remaining--;
+        id = frame.elementId;
+        key = null;
+        if(budget != null) {
+          budget.allocate(4, 0); // the reference held by the list
+        }
+      }
+      final /* @Nullable */ Tag tag = this.value(stack, size, frame, id, key, input, budget);
+      if(tag == null) {
+        size++; // a new compound or list tag was pushed
+        if(size == stack.length) {
+          stack = Arrays.copyOf(stack, size * 2);
+        }
+      } else {
+        this.attach(frame, key, tag, this.interner != null ? tag.hashCode() : 0, 1);
+      }
+    }
+  }
+
+  /**
+   * Reads the value of a tag, or pushes a new frame if the tag is a compound or list tag.
+   *
+   * @return the tag, or {@code null} if a new frame was pushed
+   */
+  private @Nullable Tag value(final Frame@NonNull[] stack, final int size, final @NonNull Frame parent, final byte id, final @Nullable String key, final @NonNull DataInput input, final @Nullable Budget budget) throws IOException {
+    final int depth = parent.depth + 1;
+    if(this.policy != RawTagPolicy.NONE) {
+      final TagType type = TagType.of(id);
+      if(this.policy.raw(type, key, depth)) {
+        final RawTag tag = new RawTag(type);
+        tag.read(input, depth);
+        if(budget != null) {
+          budget.allocate(RetainedSize.STRING + RetainedSize.array(tag.length(), 1), 1);
+        }
+        return tag;
+      }
+    }
+    switch(id) {
+      case END:
+        if(budget != null) {
+          budget.allocate(RetainedSize.NUMBER, 1);
+        }
+        return TagType.END.create();
+      case BYTE:
+        if(budget != null) {
+          budget.allocate(RetainedSize.NUMBER, 1);
+        }
+        return new ByteTag(input.readByte());
+      case SHORT:
+        if(budget != null) {
+          budget.allocate(RetainedSize.NUMBER, 1);
+        }
+        return new ShortTag(input.readShort());
+      case INT:
+        if(budget != null) {
+          budget.allocate(RetainedSize.NUMBER, 1);
+        }
+        return new IntTag(input.readInt());
+      case LONG:
+        if(budget != null) {
+          budget.allocate(RetainedSize.WIDE_NUMBER, 1);
+        }
+        return new LongTag(input.readLong());
+      case FLOAT:
+        if(budget != null) {
+          budget.allocate(RetainedSize.NUMBER, 1);
+        }
+        return new FloatTag(input.readFloat());
+      case DOUBLE:
+        if(budget != null) {
+          budget.allocate(RetainedSize.WIDE_NUMBER, 1);
+        }
+        return new DoubleTag(input.readDouble());
+      case BYTE_ARRAY: {
+        final int length = input.readInt();
+        if(budget != null) {
+          budget.allocate(RetainedSize.ARRAY + RetainedSize.array(length, Byte.BYTES), 1);
+        }
+        return new ByteArrayTag(readBytes(input, length));
+      }
+      case STRING: {
+        if(!TagEncoding.java(input)) {
+          final String value = input.readUTF();
+          if(budget != null) {
+            budget.allocate(RetainedSize.STRING + RetainedSize.array(value.length(), 2), 1);
+          }
+          return new StringTag(value);
+        }
+        final byte[] value = new byte[input.readUnsignedShort()];
+        if(budget != null) {
+          budget.allocate(RetainedSize.STRING + RetainedSize.array(value.length, 1), 1);
+        }
+        input.readFully(value);
+        ModifiedUtf8.validate(value);
+        return new StringTag(value);
+      }
+      case LIST: {
+        checkDepth(depth);
+        final byte elementId = input.readByte();
+        final TagType elementType = TagType.of(elementId);
+        // a negative length is read as an empty list, rather than as a compound frame
+        final int length = Math.max(0, input.readInt());
+        final int capacity = Math.min(length, MAX_INITIAL_CAPACITY);
+        if(budget != null) {
+          budget.allocate(RetainedSize.LIST + RetainedSize.array(capacity, 4), 1);
+        }
+        final ListTag tag = new ListTag(elementType, capacity);
+        push(stack, size, tag, key, length, elementId, depth);
+        return null;
+      }
+      case COMPOUND: {
+        checkDepth(depth);
+        if(budget != null) {
+          budget.allocate(RetainedSize.COMPOUND, 1);
+        }
+        // elements of a list are usually similar to each other, so use the size of the previous element as a hint
+        final CompoundTag tag = parent.hint > 0 ? new CompoundTag(parent.hint) : new CompoundTag();
+        push(stack, size, tag, key, -1, END, depth);
+        return null;
+      }
+      case INT_ARRAY: {
+        final int length = input.readInt();
+        if(budget != null) {
+          budget.allocate(RetainedSize.ARRAY + RetainedSize.array(length, Integer.BYTES), 1);
+        }
+        return new IntArrayTag(readInts(input, length));
+      }
+      case LONG_ARRAY: {
+        final int length = input.readInt();
+        if(budget != null) {
+          budget.allocate(RetainedSize.ARRAY + RetainedSize.array(length, Long.BYTES), 1);
+        }
+        return new LongArrayTag(readLongs(input, length));
+      }
+      default:
+        throw new IOException(String.format("Unknown tag type id %d", id));
+    }
+  }
+
+  private int pop(final Frame@NonNull[] stack, int size, final int floor) {
+    final Frame frame = stack[--size];
+    if(size > floor) {
+      final Tag tag = frame.tag;
+      final Frame parent = stack[size - 1];
+      if(parent.remaining >= 0 && tag instanceof CompoundTag) {
+        parent.hint = ((CompoundTag) tag).size();
+      }
+      this.attach(parent, frame.key, tag, frame.hash, frame.count);
+      frame.tag = null;
+    }
+    return size;
+  }
+
+  /**
+   * Adds a tag to its parent, interning it if it is small enough.
+   *
+   * <p>The hash of the parent is built up from the hashes of its children in the same way as
+   * {@link Tag#hashCode()}, so that each tag is only hashed once.</p>
+   */
+  private void attach(final @NonNull Frame parent, final @Nullable String key, Tag tag, final int hash, final int count) {
+    if(this.interner != null && count <= MAX_INTERNED_TAGS) {
+      tag = this.interner.canonicalize(tag, hash);
+    }
+    if(parent.remaining < 0) {
+      final CompoundTag compound = (CompoundTag) parent.tag;
+      final int size = compound.size();
+      compound.put(key, tag);
+      if(compound.size() == size) {
+        // a repeated key replaces a child whose hash is no longer known, so the parent is not interned
+        parent.count = Integer.MAX_VALUE;
+      }
+      parent.hash += key.hashCode() ^ hash;
+    } else {
+      ((ListTag) parent.tag).append(tag);
+      parent.hash = 31 * parent.hash + hash;
+    }
+    parent.count = (int) Math.min((long) parent.count + count, Integer.MAX_VALUE);
+  }
+
+  private static @NonNull Frame push(final Frame@NonNull[] stack, final int size, final Tag tag, final @Nullable String key, final int remaining, final byte elementId, final int depth) {
+    Frame frame = stack[size];
+    if(frame == null) {
+      frame = stack[size] = new Frame();
+    }
+    frame.tag = tag;
+    frame.key = key;
+    frame.remaining = remaining;
+    frame.elementId = elementId;
+    frame.depth = depth;
+    frame.hint = 0;
+    frame.hash = remaining < 0 ? 0 : 1; // the initial hash of a map or a list
+    frame.count = 1;
+    return frame;
+  }
+
+  private @Nullable Budget budget() {
+    if(this.maxBytes == Long.MAX_VALUE && this.maxTags == Long.MAX_VALUE) {
+      return null;
+    }
+    return new Budget(this.maxBytes, this.maxTags);
+  }
+
+  /**
+   * Reads an array of bytes.
+   *
+   * @param input the input
+   * @param length the declared length
+   * @return the array of bytes
+   * @throws IOException if an exception was encountered while reading
+   */
+  static byte@NonNull[] readBytes(final @NonNull DataInput input, final int length) throws IOException {
+    checkLength(length);
+    byte[] value = new byte[Math.min(length, MAX_INITIAL_ARRAY_BYTES)];
+    int read = 0;
+    while(true) {
+      input.readFully(value, read, value.length - read);
+      read = value.length;
+      if(read == length) {
+        return value;
+      }
+      value = Arrays.copyOf(value, (int) Math.min(length, read * 2L));
+    }
+  }
+
+  /**
+   * Reads an array of ints.
+   *
+   * @param input the input
+   * @param length the declared length
+   * @return the array of ints
+   * @throws IOException if an exception was encountered while reading
+   */
+  static int@NonNull[] readInts(final @NonNull DataInput input, final int length) throws IOException {
+    checkLength(length);
+    int[] value = new int[Math.min(length, MAX_INITIAL_ARRAY_BYTES / Integer.BYTES)];
+    if(!TagEncoding.java(input)) {
+      for(int i = 0; i < length; i++) {
+        if(i == value.length) {
+          value = Arrays.copyOf(value, (int) Math.min(length, i * 2L));
+        }
+        value[i] = input.readInt();
+      }
+      return value;
+    }
+    // read big-endian elements in bulk, rather than through one call per element
+    final byte[] buffer = new byte[Math.min(length, BULK_BYTES / Integer.BYTES) * Integer.BYTES];
+    for(int i = 0; i < length; ) {
+      if(i == value.length) {
+        value = Arrays.copyOf(value, (int) Math.min(length, i * 2L));
+      }
+      final int count = Math.min(value.length - i, buffer.length / Integer.BYTES);
+      input.readFully(buffer, 0, count * Integer.BYTES);
+      for(int j = 0; j < count; j++) {
+        value[i + j] = ByteArrays.getInt(buffer, j * Integer.BYTES);
+      }
+      i += count;
+    }
+    return value;
+  }
+
+  /**
+   * Reads an array of longs.
+   *
+   * @param input the input
+   * @param length the declared length
+   * @return the array of longs
+   * @throws IOException if an exception was encountered while reading
+   */
+  static long@NonNull[] readLongs(final @NonNull DataInput input, final int length) throws IOException {
+    checkLength(length);
+    long[] value = new long[Math.min(length, MAX_INITIAL_ARRAY_BYTES / Long.BYTES)];
+    if(!TagEncoding.java(input)) {
+      for(int i = 0; i < length; i++) {
+        if(i == value.length) {
+          value = Arrays.copyOf(value, (int) Math.min(length, i * 2L));
+        }
+        value[i] = input.readLong();
+      }
+      return value;
+    }
+    // read big-endian elements in bulk, rather than through one call per element
+    final byte[] buffer = new byte[Math.min(length, BULK_BYTES / Long.BYTES) * Long.BYTES];
+    for(int i = 0; i < length; ) {
+      if(i == value.length) {
+        value = Arrays.copyOf(value, (int) Math.min(length, i * 2L));
+      }
+      final int count = Math.min(value.length - i, buffer.length / Long.BYTES);
+      input.readFully(buffer, 0, count * Long.BYTES);
+      for(int j = 0; j < count; j++) {
+        value[i + j] = ByteArrays.getLong(buffer, j * Long.BYTES);
+      }
+      i += count;
+    }
+    return value;
+  }
+
+  private static void checkLength(final int length) throws IOException {
+    if(length < 0) {
+      throw new IOException(String.format("Array length of %d is negative", length));
+    }
+  }
+
+  static void checkDepth(final int depth) {
+    if(depth > CompoundTag.MAX_DEPTH) {
+      throw new IllegalStateException(String.format("Depth of %d is higher than max of %d", depth, CompoundTag.MAX_DEPTH));
+    }
+  }
+
+  /**
+   * A compound or list tag being decoded.
+   */
+  private static final class Frame {
+    /**
+     * The tag being decoded.
+     */
+    Tag tag;
+    /**
+     * The key of the tag in its parent, or {@code null} if the parent is a list tag.
+     */
+    @Nullable String key;
+    /**
+     * The number of elements remaining in a list tag, or {@code -1} for a compound tag.
+     */
+    int remaining;
+    /**
+     * The type id of the elements of a list tag.
+     */
+    byte elementId;
+    /**
+     * The depth of the tag.
+     */
+    int depth;
+    /**
+     * The size of the last compound tag read as an element of this list tag.
+     */
+    int hint;
+    /**
+     * The hash of the children read so far, if tags are being interned.
+     */
+    int hash;
+    /**
+     * The number of tags read so far, including this one.
+     */
+    int count;
+  }
+
+  /**
+   * The space used by the tags decoded by a single call.
+   */
+  static final class Budget {
+    private final long maxBytes;
+    private final long maxTags;
+    private long bytes;
+    private long tags;
+
+    Budget(final long maxBytes, final long maxTags) {
+      this.maxBytes = maxBytes;
+      this.maxTags = maxTags;
+    }
+
+    void allocate(final long bytes, final int tags) throws IOException {
+      this.bytes += bytes;
+      this.tags += tags;
+      if(this.bytes > this.maxBytes) {
+        throw new IOException(String.format("Decoded tags exceed the quota of %d bytes", this.maxBytes));
+      }
+      if(this.tags > this.maxTags) {
+        throw new IOException(String.format("Decoded tags exceed the quota of %d tags", this.maxTags));
+      }
+    }
+  }
+
+  /**
+   * A decoder builder.
+   */
+  public static final class Builder {
+    private RawTagPolicy policy = RawTagPolicy.NONE;
+    private @Nullable TagInterner interner;
+    private long maxBytes = Long.MAX_VALUE;
+    private long maxTags = Long.MAX_VALUE;
+
+    Builder() {
+    }
+
+    /**
+     * Sets the raw tag policy.
+     *
+     * @param policy the raw tag policy
+     * @return this builder
+     */
+    public @NonNull Builder policy(final @NonNull RawTagPolicy policy) {
+      this.policy = requireNonNull(policy, "policy");
+      return this;
+    }
+
+    /**
+     * Sets the interner that decoded tags are interned with.
+     *
+     * @param interner the interner, or {@code null}
+     * @return this builder
+     */
+    public @NonNull Builder interner(final @Nullable TagInterner interner) {
+      this.interner = interner;
+      return this;
+    }
+
+    /**
+     * Sets the maximum estimated number of bytes retained by the tags decoded by a single call.
+     *
+     * <p>Decoding fails as soon as the quota is exceeded. The size of an array is accounted for
+     * as soon as its length has been read, before the array is allocated.</p>
+     *
+     * @param maxBytes the maximum number of bytes
+     * @return this builder
+     */
+    public @NonNull Builder maxBytes(final long maxBytes) {
+      if(maxBytes < 0) {
+        throw new IllegalArgumentException(String.format("Quota of %d bytes is negative", maxBytes));
+      }
+      this.maxBytes = maxBytes;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of tags decoded by a single call.
+     *
+     * @param maxTags the maximum number of tags
+     * @return this builder
+     */
+    public @NonNull Builder maxTags(final long maxTags) {
+      if(maxTags < 0) {
+        throw new IllegalArgumentException(String.format("Quota of %d tags is negative", maxTags));
+      }
+      this.maxTags = maxTags;
+      return this;
+    }
+
+    /**
+     * Builds a decoder.
+     *
+     * @return the decoder
+     */
+    public @NonNull TagDecoder build() {
+      return new TagDecoder(this.policy, this.interner, this.maxBytes, this.maxTags);
+    }
+  }
+}
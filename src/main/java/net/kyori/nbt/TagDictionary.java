@@ -0,0 +1,344 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A preset dictionary for compressing small compound tags.
+ *
+ * <p>Compressed frames are zlib streams that carry the {@link #id() id} of the dictionary they
+ * were compressed with, so that a reader can pick the right dictionary out of several.</p>
+ */
+public final class TagDictionary {
+  /**
+   * The maximum size of a dictionary, which is the size of the deflate window.
+   */
+  public static final int MAX_SIZE = 32 * 1024;
+  /**
+   * The default maximum size of a decompressed frame.
+   */
+  public static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+  private final byte[] bytes;
+  private final int id;
+
+  private TagDictionary(final byte@NonNull[] bytes) {
+    this.bytes = bytes;
+    final Adler32 adler = new Adler32();
+    adler.update(bytes, 0, bytes.length);
+    this.id = (int) adler.getValue();
+  }
+
+  /**
+   * Creates a dictionary from its bytes.
+   *
+   * @param bytes the bytes
+   * @return a dictionary
+   */
+  public static @NonNull TagDictionary of(final byte@NonNull[] bytes) {
+    if(bytes.length > MAX_SIZE) {
+      throw new IllegalArgumentException(String.format("Dictionary size of %d is higher than max of %d", bytes.length, MAX_SIZE));
+    }
+    return new TagDictionary(bytes.clone());
+  }
+
+  /**
+   * Creates a new trainer.
+   *
+   * @return a new trainer
+   */
+  public static @NonNull Trainer trainer() {
+    return new Trainer();
+  }
+
+  /**
+   * Gets the id of this dictionary.
+   *
+   * <p>The id is the Adler-32 checksum of the dictionary, as stored in the zlib header.</p>
+   *
+   * @return the id
+   */
+  public int id() {
+    return this.id;
+  }
+
+  /**
+   * Gets the bytes of this dictionary.
+   *
+   * @return the bytes
+   */
+  public byte@NonNull[] bytes() {
+    return this.bytes.clone();
+  }
+
+  /**
+   * Compresses a compound tag into a frame.
+   *
+   * @param tag the compound tag
+   * @param level the compression level
+   * @return the frame
+   * @throws IOException if an exception was encountered while writing the compound tag
+   */
+  byte@NonNull[] compress(final @NonNull CompoundTag tag, final int level) throws IOException {
+    final byte[] input = TagIO.writeToByteArray(tag);
+    final Deflater deflater = new Deflater(level);
+    try {
+      deflater.setDictionary(this.bytes);
+      deflater.setInput(input);
+      deflater.finish();
+      byte[] output = new byte[Math.max(64, input.length / 2)];
+      int length = 0;
+      while(!deflater.finished()) {
+        if(length == output.length) {
+          output = Arrays.copyOf(output, output.length * 2);
+        }
+        length += deflater.deflate(output, length, output.length - length);
+      }
+      return Arrays.copyOf(output, length);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Decompresses a compound tag from a frame.
+   *
+   * @param frame the frame
+   * @param maxSize the maximum size of the decompressed frame
+   * @param dictionaries the dictionaries the frame may have been compressed with
+   * @return the compound tag
+   * @throws IOException if an exception was encountered while reading the compound tag, if none of the dictionaries match,
+   *     or if the decompressed frame is larger than {@code maxSize}
+   */
+  static @NonNull CompoundTag decompress(final byte@NonNull[] frame, final @NonNegative int maxSize, final @NonNull TagDictionary@NonNull... dictionaries) throws IOException {
+    if(maxSize < 0) {
+      throw new IllegalArgumentException(String.format("Maximum frame size of %d is negative", maxSize));
+    }
+    final Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(frame);
+      byte[] output = new byte[(int) Math.min(maxSize, Math.max(256, frame.length * 4L))];
+      int length = 0;
+      while(!inflater.finished()) {
+        if(length == output.length) {
+          if(length == maxSize) {
+            throw new IOException(String.format("Decompressed frame is larger than %d bytes", maxSize));
+          }
+          output = Arrays.copyOf(output, (int) Math.min(maxSize, output.length * 2L));
+        }
+        final int inflated = inflater.inflate(output, length, output.length - length);
+        length += inflated;
+        if(inflated == 0) {
+          if(inflater.needsDictionary()) {
+            inflater.setDictionary(find(dictionaries, inflater.getAdler()).bytes);
+          } else if(inflater.needsInput()) {
+            throw new IOException("Unexpected end of frame");
+          }
+        }
+      }
+      return TagIO.readDataInput(new DataInputStream(new ByteArrayInputStream(output, 0, length)));
+    } catch(final DataFormatException e) {
+      throw new IOException(e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static @NonNull TagDictionary find(final @NonNull TagDictionary@NonNull[] dictionaries, final int id) throws IOException {
+    for(final TagDictionary dictionary : dictionaries) {
+      if(dictionary.id == id) {
+        return dictionary;
+      }
+    }
+    throw new IOException(String.format("Unknown dictionary id %08x", id));
+  }
+
+  /**
+   * Builds a dictionary from a corpus of sample compound tags.
+   *
+   * <p>The dictionary is made of the encoded fragments that repeat across samples: entry headers
+   * (type id and key), entries with their values, and small subtrees. The fragments saving the most
+   * bytes are placed last, where they are cheapest to reference.</p>
+   */
+  public static final class Trainer {
+    /**
+     * The maximum size of a fragment.
+     */
+    private static final int MAX_FRAGMENT = 512;
+    private final Map<ByteBuffer, Fragment> fragments = new HashMap<>();
+    private int samples;
+
+    private Trainer() {
+    }
+
+    /**
+     * Adds a sample.
+     *
+     * @param tag the sample
+     * @return this trainer
+     */
+    public @NonNull Trainer sample(final @NonNull CompoundTag tag) {
+      try {
+        this.count(tag);
+      } catch(final UTFDataFormatException e) {
+        throw new IllegalArgumentException(e);
+      }
+      this.samples++;
+      return this;
+    }
+
+    /**
+     * Adds samples.
+     *
+     * @param tags the samples
+     * @return this trainer
+     */
+    public @NonNull Trainer samples(final @NonNull Iterable<CompoundTag> tags) {
+      for(final CompoundTag tag : tags) {
+        this.sample(tag);
+      }
+      return this;
+    }
+
+    /**
+     * Builds a dictionary from the samples added so far.
+     *
+     * @param size the maximum size of the dictionary
+     * @return a dictionary
+     */
+    public @NonNull TagDictionary train(final @NonNegative int size) {
+      if(size < 0 || size > MAX_SIZE) {
+        throw new IllegalArgumentException(String.format("Dictionary size of %d is not between 0 and %d", size, MAX_SIZE));
+      }
+      final List<Fragment> candidates = new ArrayList<>();
+      for(final Fragment fragment : this.fragments.values()) {
+        if(fragment.count > 1) {
+          candidates.add(fragment);
+        }
+      }
+      candidates.sort((a, b) -> Long.compare(b.score(), a.score()));
+      final List<Fragment> selected = new ArrayList<>();
+      final Set<ByteBuffer> headers = new HashSet<>();
+      int remaining = size;
+      for(final Fragment fragment : candidates) {
+        if(fragment.bytes.length > remaining) {
+          continue;
+        }
+        if(fragment.header == fragment.bytes.length && headers.contains(ByteBuffer.wrap(fragment.bytes))) {
+          continue; // already part of a selected entry
+        }
+        headers.add(ByteBuffer.wrap(fragment.bytes, 0, fragment.header).slice());
+        selected.add(fragment);
+        remaining -= fragment.bytes.length;
+      }
+      final byte[] bytes = new byte[size - remaining];
+      int position = 0;
+      for(int i = selected.size() - 1; i >= 0; i--) {
+        final byte[] fragment = selected.get(i).bytes;
+        System.arraycopy(fragment, 0, bytes, position, fragment.length);
+        position += fragment.length;
+      }
+      return new TagDictionary(bytes);
+    }
+
+    private void count(final @NonNull CompoundTag tag) throws UTFDataFormatException {
+      for(final String key : tag.keySet()) {
+        final Tag value = tag.get(key);
+        final int header = Byte.BYTES + Short.BYTES + ModifiedUtf8.encodedLength(key);
+        final int length = header + value.serializedSize();
+        if(header <= MAX_FRAGMENT) {
+          final ArrayDataOutput output = new ArrayDataOutput(new byte[Math.min(length, MAX_FRAGMENT)]);
+          output.writeByte(value.type().id());
+          output.writeUTF(key);
+          this.add(Arrays.copyOf(output.array(), header), header);
+          if(length <= MAX_FRAGMENT) {
+            try {
+              value.write(output);
+            } catch(final IOException e) {
+              throw new IllegalStateException(e);
+            }
+            this.add(output.array(), header);
+          }
+        }
+        this.descend(value);
+      }
+    }
+
+    private void descend(final @NonNull Tag tag) throws UTFDataFormatException {
+      if(tag instanceof CompoundTag) {
+        this.count((CompoundTag) tag);
+      } else if(tag instanceof ListTag) {
+        for(final Tag element : (ListTag) tag) {
+          this.descend(element);
+        }
+      }
+    }
+
+    private void add(final byte@NonNull[] bytes, final int header) {
+      final Fragment fragment = this.fragments.computeIfAbsent(ByteBuffer.wrap(bytes), k -> new Fragment(bytes, header));
+      if(fragment.sample != this.samples) {
+        // count each fragment once per sample, so that a fragment repeated within one sample is not favoured
+        fragment.sample = this.samples;
+        fragment.count++;
+      }
+    }
+  }
+
+  private static final class Fragment {
+    final byte[] bytes;
+    /**
+     * The length of the entry header at the start of this fragment.
+     */
+    final int header;
+    int count;
+    int sample = -1;
+
+    Fragment(final byte@NonNull[] bytes, final int header) {
+      this.bytes = bytes;
+      this.header = header;
+    }
+
+    long score() {
+      return (long) this.count * this.bytes.length;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+
+/**
+ * A binary encoding of tags.
+ */
+public enum TagEncoding {
+  /**
+   * The Java edition encoding, with big-endian numbers and modified UTF-8 strings.
+   */
+  JAVA {
+    @Override
+    public @NonNull DataInput input(final @NonNull DataInput input) {
+      return input;
+    }
+
+    @Override
+    public @NonNull DataOutput output(final @NonNull DataOutput output) {
+      return output;
+    }
+  },
+  /**
+   * The Bedrock edition storage encoding, with little-endian numbers and UTF-8 strings.
+   */
+  LITTLE_ENDIAN {
+    @Override
+    public @NonNull DataInput input(final @NonNull DataInput input) {
+      return new LittleEndianDataInput(input);
+    }
+
+    @Override
+    public @NonNull DataOutput output(final @NonNull DataOutput output) {
+      return new LittleEndianDataOutput(output);
+    }
+  },
+  /**
+   * The Bedrock edition network encoding, with zigzag varint ints, longs and lengths, little-endian
+   * shorts, floats and doubles, and UTF-8 strings.
+   */
+  NETWORK {
+    @Override
+    public @NonNull DataInput input(final @NonNull DataInput input) {
+      return new VarIntDataInput(input);
+    }
+
+    @Override
+    public @NonNull DataOutput output(final @NonNull DataOutput output) {
+      return new VarIntDataOutput(output);
+    }
+  };
+
+  /**
+   * Wraps a big-endian data input to read in this encoding.
+   *
+   * @param input the input, such as a {@link java.io.DataInputStream}
+   * @return an input reading in this encoding
+   */
+  public abstract @NonNull DataInput input(final @NonNull DataInput input);
+
+  /**
+   * Wraps a big-endian data output to write in this encoding.
+   *
+   * @param output the output, such as a {@link java.io.DataOutputStream}
+   * @return an output writing in this encoding
+   */
+  public abstract @NonNull DataOutput output(final @NonNull DataOutput output);
+
+  /**
+   * Tests if {@code input} reads in the {@link #JAVA} encoding, so that encoded strings and arrays can be
+   * copied verbatim.
+   *
+   * @param input the input
+   * @return {@code true} if the input reads in the Java encoding
+   */
+  static boolean java(final @NonNull DataInput input) {
+    return !(input instanceof LittleEndianDataInput);
+  }
+
+  /**
+   * Tests if {@code output} writes in the {@link #JAVA} encoding, so that encoded strings and arrays can be
+   * copied verbatim.
+   *
+   * @param output the output
+   * @return {@code true} if the output writes in the Java encoding
+   */
+  static boolean java(final @NonNull DataOutput output) {
+    return !(output instanceof LittleEndianDataOutput);
+  }
+}
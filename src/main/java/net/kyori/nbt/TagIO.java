@@ -23,8 +23,10 @@
  */
 package net.kyori.nbt;
 
+import org.checkerframework.checker.index.qual.NonNegative;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutput;
@@ -32,8 +34,10 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -89,6 +93,77 @@ public final class TagIO {
     }
   }
 
+  /**
+   * Reads a compound tag from {@code path} using {@code compression}.
+   *
+   * @param path the path
+   * @param compression the compression
+   * @return the compound tag
+   * @throws IOException if an exception was encountered while reading a compound tag
+   */
+  public static @NonNull CompoundTag readPath(final @NonNull Path path, final @NonNull Compression compression) throws IOException {
+    return readInputStream(Files.newInputStream(path), compression);
+  }
+
+  /**
+   * Reads a compound tag from an input stream using {@code compression}.
+   *
+   * @param input the input stream
+   * @param compression the compression
+   * @return the compound tag
+   * @throws IOException if an exception was encountered while reading a compound tag
+   */
+  public static @NonNull CompoundTag readInputStream(final @NonNull InputStream input, final @NonNull Compression compression) throws IOException {
+    return readInputStream(input, compression, TagEncoding.JAVA);
+  }
+
+  /**
+   * Reads a compound tag from {@code path} using {@code compression} and {@code decoder}.
+   *
+   * <p>Use a decoder with a {@link TagDecoder.Builder#maxBytes(long) quota} to read untrusted input.</p>
+   *
+   * @param path the path
+   * @param compression the compression
+   * @param decoder the decoder
+   * @return the compound tag
+   * @throws IOException if an exception was encountered while reading a compound tag
+   */
+  public static @NonNull CompoundTag readPath(final @NonNull Path path, final @NonNull Compression compression, final @NonNull TagDecoder decoder) throws IOException {
+    return readInputStream(Files.newInputStream(path), compression, decoder);
+  }
+
+  /**
+   * Reads a compound tag from an input stream using {@code compression} and {@code decoder}.
+   *
+   * <p>Use a decoder with a {@link TagDecoder.Builder#maxBytes(long) quota} to read untrusted input.</p>
+   *
+   * @param input the input stream
+   * @param compression the compression
+   * @param decoder the decoder
+   * @return the compound tag
+   * @throws IOException if an exception was encountered while reading a compound tag
+   */
+  public static @NonNull CompoundTag readInputStream(final @NonNull InputStream input, final @NonNull Compression compression, final @NonNull TagDecoder decoder) throws IOException {
+    try(final DataInputStream dis = new DataInputStream(compression.decompress(input))) {
+      return decoder.decode(dis);
+    }
+  }
+
+  /**
+   * Reads a compound tag from an input stream using {@code compression} and {@code encoding}.
+   *
+   * @param input the input stream
+   * @param compression the compression
+   * @param encoding the encoding
+   * @return the compound tag
+   * @throws IOException if an exception was encountered while reading a compound tag
+   */
+  public static @NonNull CompoundTag readInputStream(final @NonNull InputStream input, final @NonNull Compression compression, final @NonNull TagEncoding encoding) throws IOException {
+    try(final DataInputStream dis = new DataInputStream(compression.decompress(input))) {
+      return readDataInput(encoding.input(dis));
+    }
+  }
+
   /**
    * Reads a compound tag from {@code input}.
    *
@@ -97,14 +172,102 @@ public final class TagIO {
    * @throws IOException if an exception was encountered while reading a compound tag
    */
   public static @NonNull CompoundTag readDataInput(final @NonNull DataInput input) throws IOException {
-    final TagType type = TagType.of(input.readByte());
-    if(type != TagType.COMPOUND) {
-      throw new IOException(String.format("Expected root tag to be a %s, was %s", TagType.COMPOUND, type));
+    return TagDecoder.decoder().decode(input);
+  }
+
+  /**
+   * Reads a compound tag from {@code input}, retaining at most an estimated {@code maxBytes} bytes.
+   *
+   * @param input the input
+   * @param maxBytes the maximum number of bytes
+   * @return the compound tag
+   * @throws IOException if an exception was encountered while reading a compound tag, or if the quota was exceeded
+   * @see TagDecoder.Builder#maxBytes(long)
+   */
+  public static @NonNull CompoundTag readDataInput(final @NonNull DataInput input, final long maxBytes) throws IOException {
+    return TagDecoder.builder().maxBytes(maxBytes).build().decode(input);
+  }
+
+  /**
+   * Reads a compound tag from {@code input}, keeping the tags selected by {@code policy} {@link RawTag raw}.
+   *
+   * @param input the input
+   * @param policy the raw tag policy
+   * @return the compound tag
+   * @throws IOException if an exception was encountered while reading a compound tag
+   */
+  public static @NonNull CompoundTag readDataInput(final @NonNull DataInput input, final @NonNull RawTagPolicy policy) throws IOException {
+    return TagDecoder.builder().policy(policy).build().decode(input);
+  }
+
+  /**
+   * Reads a compound tag from a frame compressed with a {@link TagDictionary dictionary}.
+   *
+   * @param frame the frame
+   * @param dictionaries the dictionaries the frame may have been compressed with
+   * @return the compound tag
+   * @throws IOException if an exception was encountered while reading a compound tag, if none of the dictionaries match,
+   *     or if the decompressed frame is larger than {@link TagDictionary#DEFAULT_MAX_FRAME_SIZE}
+   */
+  public static @NonNull CompoundTag readDictionaryCompressed(final byte@NonNull[] frame, final @NonNull TagDictionary@NonNull... dictionaries) throws IOException {
+    return TagDictionary.decompress(frame, TagDictionary.DEFAULT_MAX_FRAME_SIZE, dictionaries);
+  }
+
+  /**
+   * Reads a compound tag from a frame compressed with a {@link TagDictionary dictionary}.
+   *
+   * @param frame the frame
+   * @param maxSize the maximum size of the decompressed frame
+   * @param dictionaries the dictionaries the frame may have been compressed with
+   * @return the compound tag
+   * @throws IOException if an exception was encountered while reading a compound tag, if none of the dictionaries match,
+   *     or if the decompressed frame is larger than {@code maxSize}
+   */
+  public static @NonNull CompoundTag readDictionaryCompressed(final byte@NonNull[] frame, final @NonNegative int maxSize, final @NonNull TagDictionary@NonNull... dictionaries) throws IOException {
+    return TagDictionary.decompress(frame, maxSize, dictionaries);
+  }
+
+  /**
+   * Reads a tape from {@code path}.
+   *
+   * @param path the path
+   * @return the tape
+   * @throws IOException if an exception was encountered while reading a tape
+   */
+  public static @NonNull TagTape readTapePath(final @NonNull Path path) throws IOException {
+    return readTape(Files.readAllBytes(path));
+  }
+
+  /**
+   * Reads a tape from {@code path} using GZIP decompression.
+   *
+   * @param path the path
+   * @return the tape
+   * @throws IOException if an exception was encountered while reading a tape
+   */
+  public static @NonNull TagTape readCompressedTapePath(final @NonNull Path path) throws IOException {
+    try(final InputStream input = new GZIPInputStream(Files.newInputStream(path))) {
+      final ByteArrayOutputStream output = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      int read;
+      while((read = input.read(buffer)) != -1) {
+        output.write(buffer, 0, read);
+      }
+      return readTape(output.toByteArray());
     }
-    input.skipBytes(input.readUnsignedShort()); // read empty name
-    final Tag tag = type.create();
-    tag.read(input, 0); // initial depth is zero
-    return (CompoundTag) tag;
+  }
+
+  /**
+   * Reads a tape from the encoded bytes of a compound tag.
+   *
+   * <p>The tape holds on to {@code bytes}, which must not be modified afterwards.</p>
+   *
+   * @param bytes the encoded bytes
+   * @return the tape
+   * @throws IOException if an exception was encountered while reading a tape
+   */
+  public static @NonNull TagTape readTape(final byte@NonNull[] bytes) throws IOException {
+    return TagTape.parse(ByteBuffer.wrap(bytes));
   }
 
   /**
@@ -155,6 +318,93 @@ public final class TagIO {
     }
   }
 
+  /**
+   * Writes a compound tag to {@code path} using {@code compression}.
+   *
+   * @param tag the compound tag
+   * @param path the path
+   * @param compression the compression
+   * @throws IOException if an exception was encountered while writing the compound tag
+   */
+  public static void writePath(final @NonNull CompoundTag tag, final @NonNull Path path, final @NonNull Compression compression) throws IOException {
+    writeOutputStream(tag, Files.newOutputStream(path), compression);
+  }
+
+  /**
+   * Writes a compound tag to an output stream using {@code compression}.
+   *
+   * @param tag the compound tag
+   * @param output the output stream
+   * @param compression the compression
+   * @throws IOException if an exception was encountered while writing the compound tag
+   */
+  public static void writeOutputStream(final @NonNull CompoundTag tag, final @NonNull OutputStream output, final @NonNull Compression compression) throws IOException {
+    writeOutputStream(tag, output, compression, TagEncoding.JAVA);
+  }
+
+  /**
+   * Writes a compound tag to an output stream using {@code compression} and {@code encoding}.
+   *
+   * @param tag the compound tag
+   * @param output the output stream
+   * @param compression the compression
+   * @param encoding the encoding
+   * @throws IOException if an exception was encountered while writing the compound tag
+   */
+  public static void writeOutputStream(final @NonNull CompoundTag tag, final @NonNull OutputStream output, final @NonNull Compression compression, final @NonNull TagEncoding encoding) throws IOException {
+    try(final DataOutputStream dos = new DataOutputStream(compression.compress(output))) {
+      writeDataOutput(tag, encoding.output(dos));
+    }
+  }
+
+  /**
+   * Writes a compound tag to a frame compressed with a {@link TagDictionary dictionary}.
+   *
+   * @param tag the compound tag
+   * @param dictionary the dictionary
+   * @return the frame
+   * @throws IOException if an exception was encountered while writing the compound tag
+   */
+  public static byte@NonNull[] writeDictionaryCompressed(final @NonNull CompoundTag tag, final @NonNull TagDictionary dictionary) throws IOException {
+    return writeDictionaryCompressed(tag, dictionary, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Writes a compound tag to a frame compressed with a {@link TagDictionary dictionary}.
+   *
+   * @param tag the compound tag
+   * @param dictionary the dictionary
+   * @param level the compression level
+   * @return the frame
+   * @throws IOException if an exception was encountered while writing the compound tag
+   */
+  public static byte@NonNull[] writeDictionaryCompressed(final @NonNull CompoundTag tag, final @NonNull TagDictionary dictionary, final int level) throws IOException {
+    return dictionary.compress(tag, level);
+  }
+
+  /**
+   * Writes a compound tag to a new array of exactly the right size.
+   *
+   * @param tag the compound tag
+   * @return the encoded bytes
+   * @throws IOException if an exception was encountered while writing the compound tag
+   */
+  public static byte@NonNull[] writeToByteArray(final @NonNull CompoundTag tag) throws IOException {
+    final ArrayDataOutput output = new ArrayDataOutput(new byte[serializedSize(tag)]);
+    writeDataOutput(tag, output);
+    return output.array();
+  }
+
+  /**
+   * Gets the number of bytes {@link #writeDataOutput(CompoundTag, DataOutput) written} for a compound tag.
+   *
+   * @param tag the compound tag
+   * @return the serialized size, in bytes
+   */
+  public static int serializedSize(final @NonNull CompoundTag tag) {
+    return Byte.BYTES + Short.BYTES + tag.serializedSize(); // type id, empty name, value
+  }
+
   /**
    * Writes a compound tag to {@code output}.
    *
@@ -0,0 +1,597 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * An index of the entries of an uncompressed compound tag file, kept in a sidecar file next to it.
+ *
+ * <p>The index records the type, offset and length of each entry of a compound tag, and of each compound
+ * or list element of a list tag, so a single value can be decoded without reading the rest of the file.
+ * Entries can be left out of the index by depth or size - values below them are then found by decoding
+ * the closest indexed value above them.</p>
+ *
+ * <p>Paths are lists of keys of compound tags, and indexes of list tag elements.</p>
+ */
+public final class TagIndex {
+  private static final int MAGIC = 0x4e425458; // NBTX
+  private static final int VERSION = 1;
+  /**
+   * The number of bytes at each end of the file included in the checksum.
+   */
+  private static final int SAMPLE = 4096;
+  /**
+   * The parent of top level entries.
+   */
+  private static final int ROOT = -1;
+  /**
+   * The parent of entries that are not indexed.
+   */
+  private static final int NONE = -2;
+  private final Path file;
+  private final long size;
+  private final long modified;
+  private final long rootOffset;
+  private final byte[] types;
+  private final long[] offsets;
+  private final long[] lengths;
+  private final Map<Child, Integer> children;
+
+  private TagIndex(final @NonNull Path file, final long size, final long modified, final long rootOffset, final byte@NonNull[] types, final long@NonNull[] offsets, final long@NonNull[] lengths, final @NonNull Map<Child, Integer> children) {
+    this.file = file;
+    this.size = size;
+    this.modified = modified;
+    this.rootOffset = rootOffset;
+    this.types = types;
+    this.offsets = offsets;
+    this.lengths = lengths;
+    this.children = children;
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return a new builder
+   */
+  public static @NonNull Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Gets the path of the sidecar file holding the index of {@code file}.
+   *
+   * @param file the path of the indexed file
+   * @return the path of the sidecar file
+   */
+  public static @NonNull Path sidecar(final @NonNull Path file) {
+    return file.resolveSibling(file.getFileName() + ".idx");
+  }
+
+  /**
+   * Opens the index of {@code file} from its sidecar file.
+   *
+   * @param file the path of the indexed file
+   * @return the index
+   * @throws IOException if an exception was encountered while reading the index, or if the file has
+   *     changed since it was indexed
+   */
+  public static @NonNull TagIndex open(final @NonNull Path file) throws IOException {
+    try(final DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar(file))))) {
+      if(input.readInt() != MAGIC) {
+        throw new IOException(String.format("%s is not a tag index", sidecar(file)));
+      }
+      if(input.readInt() != VERSION) {
+        throw new IOException(String.format("Unsupported tag index version of %s", sidecar(file)));
+      }
+      final long size = input.readLong();
+      final long modified = input.readLong();
+      final int checksum = input.readInt();
+      final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      if(attributes.size() != size || attributes.lastModifiedTime().toMillis() != modified || checksum(file, size) != checksum) {
+        throw new IOException(String.format("Index of %s is stale", file));
+      }
+      final long rootOffset = input.readLong();
+      final int count = input.readInt();
+      // the header takes 40 bytes, and each entry at least 23 - a parent, an empty name, a type, an offset and a length
+      if(count < 0 || count > (Files.size(sidecar(file)) - 40) / 23) {
+        throw new IOException(String.format("Entry count of %d does not fit in %s", count, sidecar(file)));
+      }
+      final byte[] types = new byte[count];
+      final long[] offsets = new long[count];
+      final long[] lengths = new long[count];
+      final Map<Child, Integer> children = new HashMap<>(count * 4 / 3 + 1);
+      for(int i = 0; i < count; i++) {
+        final int parent = input.readInt();
+        final String name = input.readUTF();
+        types[i] = input.readByte();
+        offsets[i] = input.readLong();
+        lengths[i] = input.readLong();
+        if(parent < ROOT || parent >= i) {
+          throw new IOException(String.format("Entry %d of %s has an invalid parent %d", i, sidecar(file), parent));
+        }
+        children.put(new Child(parent, name), i);
+      }
+      return new TagIndex(file, size, modified, rootOffset, types, offsets, lengths, children);
+    }
+  }
+
+  /**
+   * Gets the number of indexed entries.
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    return this.types.length;
+  }
+
+  /**
+   * Tests if the file has changed since it was indexed.
+   *
+   * @return {@code true} if the file has changed
+   * @throws IOException if an exception was encountered while reading the attributes of the file
+   */
+  public boolean stale() throws IOException {
+    final BasicFileAttributes attributes = Files.readAttributes(this.file, BasicFileAttributes.class);
+    return attributes.size() != this.size || attributes.lastModifiedTime().toMillis() != this.modified;
+  }
+
+  /**
+   * Gets the indexed entry at {@code path}.
+   *
+   * @param path the path
+   * @return the entry, or {@code null} if it is not indexed
+   */
+  public @Nullable Entry entry(final @NonNull List<String> path) {
+    int entry = ROOT;
+    for(final String element : path) {
+      final Integer child = this.children.get(new Child(entry, element));
+      if(child == null) {
+        return null;
+      }
+      entry = child;
+    }
+    return entry == ROOT ? new Entry(TagType.COMPOUND, this.rootOffset, this.size - this.rootOffset) : new Entry(TagType.of(this.types[entry]), this.offsets[entry], this.lengths[entry]);
+  }
+
+  /**
+   * Reads the value at {@code path}, decoding only the closest indexed value holding it.
+   *
+   * @param path the path
+   * @return the value, or {@code null} if there is none
+   * @throws IOException if an exception was encountered while reading the value, or if the file has
+   *     changed since it was indexed
+   */
+  public @Nullable Tag read(final @NonNull List<String> path) throws IOException {
+    if(this.stale()) {
+      throw new IOException(String.format("Index of %s is stale", this.file));
+    }
+    int entry = ROOT;
+    int depth = 0;
+    while(depth < path.size()) {
+      final Integer child = this.children.get(new Child(entry, path.get(depth)));
+      if(child == null) {
+        break;
+      }
+      entry = child;
+      depth++;
+    }
+    /* @Nullable */ Tag tag;
+    try(final FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+      channel.position(entry == ROOT ? this.rootOffset : this.offsets[entry]);
+      final DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+      tag = TagDecoder.DEFAULT.decode(entry == ROOT ? TagType.COMPOUND : TagType.of(this.types[entry]), input);
+    }
+    // the rest of the path was not indexed
+    for(; depth < path.size() && tag != null; depth++) {
+      final String element = path.get(depth);
+      if(tag instanceof CompoundTag) {
+        tag = ((CompoundTag) tag).get(element);
+      } else if(tag instanceof ListTag) {
+        final int index = index(element);
+        tag = index >= 0 && index < ((ListTag) tag).size() ? ((ListTag) tag).get(index) : null;
+      } else {
+        tag = null;
+      }
+    }
+    return tag;
+  }
+
+  private static int index(final @NonNull String element) {
+    try {
+      return Integer.parseInt(element);
+    } catch(final NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Computes a checksum of both ends of a file, to tell rewrites that keep its size and modification time apart.
+   *
+   * @param file the file
+   * @param size the size of the file
+   * @return the checksum
+   * @throws IOException if an exception was encountered while reading the file
+   */
+  private static int checksum(final @NonNull Path file, final long size) throws IOException {
+    final CRC32 crc = new CRC32();
+    try(final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(SAMPLE, size));
+      for(final long position : new long[]{0, Math.max(0, size - SAMPLE)}) {
+        buffer.clear();
+        while(buffer.hasRemaining()) {
+          if(channel.read(buffer, position + buffer.position()) < 0) {
+            throw new EOFException();
+          }
+        }
+        crc.update(buffer.array(), 0, buffer.limit());
+      }
+    }
+    return (int) crc.getValue();
+  }
+
+  /**
+   * An indexed entry.
+   */
+  public static final class Entry {
+    private final TagType type;
+    private final long offset;
+    private final long length;
+
+    Entry(final @NonNull TagType type, final long offset, final long length) {
+      this.type = type;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    /**
+     * Gets the type of the value.
+     *
+     * @return the type
+     */
+    public @NonNull TagType type() {
+      return this.type;
+    }
+
+    /**
+     * Gets the offset of the value in the file.
+     *
+     * @return the offset, in bytes
+     */
+    public long offset() {
+      return this.offset;
+    }
+
+    /**
+     * Gets the length of the encoded value.
+     *
+     * @return the length, in bytes
+     */
+    public long length() {
+      return this.length;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Entry{type=%s, offset=%d, length=%d}", this.type, this.offset, this.length);
+    }
+  }
+
+  private static final class Child {
+    final int parent;
+    final String name;
+
+    Child(final int parent, final @NonNull String name) {
+      this.parent = parent;
+      this.name = name;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * this.parent + this.name.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object that) {
+      if(this == that) {
+        return true;
+      }
+      if(!(that instanceof Child)) {
+        return false;
+      }
+      final Child other = (Child) that;
+      return this.parent == other.parent && this.name.equals(other.name);
+    }
+  }
+
+  /**
+   * Scans a file, recording its entries.
+   */
+  private static final class Scanner {
+    private final CountingInputStream counter;
+    private final DataInputStream input;
+    private final int maxDepth;
+    private int count;
+    private int[] parents = new int[64];
+    private String[] names = new String[64];
+    private byte[] types = new byte[64];
+    private long[] offsets = new long[64];
+    private long[] lengths = new long[64];
+
+    Scanner(final @NonNull InputStream input, final int maxDepth) {
+      this.counter = new CountingInputStream(input);
+      this.input = new DataInputStream(this.counter);
+      this.maxDepth = maxDepth;
+    }
+
+    long root() throws IOException {
+      final TagType type = TagType.of(this.input.readByte());
+      if(type != TagType.COMPOUND) {
+        throw new IOException(String.format("Expected root tag to be a %s, was %s", TagType.COMPOUND, type));
+      }
+      this.skip(this.input.readUnsignedShort()); // name
+      final long offset = this.counter.count;
+      this.value(TagType.COMPOUND, 0, ROOT);
+      return offset;
+    }
+
+    private void value(final @NonNull TagType type, final int depth, final int self) throws IOException {
+      switch(type) {
+        case BYTE: this.skip(1); break;
+        case SHORT: this.skip(2); break;
+        case INT: case FLOAT: this.skip(4); break;
+        case LONG: case DOUBLE: this.skip(8); break;
+        case BYTE_ARRAY: this.skip(this.input.readInt()); break;
+        case INT_ARRAY: this.skip(this.input.readInt() * 4L); break;
+        case LONG_ARRAY: this.skip(this.input.readInt() * 8L); break;
+        case STRING: this.skip(this.input.readUnsignedShort()); break;
+        case LIST: {
+          if(depth > ListTag.MAX_DEPTH) {
+            throw new IllegalStateException(String.format("Depth of %d is higher than max of %d", depth, ListTag.MAX_DEPTH));
+          }
+          final TagType elementType = TagType.of(this.input.readByte());
+          final int length = this.input.readInt();
+          final boolean record = self != NONE && depth < this.maxDepth && (elementType == TagType.COMPOUND || elementType == TagType.LIST);
+          for(int i = 0; i < length; i++) {
+            this.entry(elementType, depth + 1, record ? self : NONE, Integer.toString(i));
+          }
+          break;
+        }
+        case COMPOUND: {
+          if(depth > CompoundTag.MAX_DEPTH) {
+            throw new IllegalStateException(String.format("Depth of %d is higher than max of %d", depth, CompoundTag.MAX_DEPTH));
+          }
+          TagType childType;
+          while((childType = TagType.of(this.input.readByte())) != TagType.END) {
+            final String key = this.input.readUTF();
+            this.entry(childType, depth + 1, self != NONE && depth < this.maxDepth ? self : NONE, key);
+          }
+          break;
+        }
+        default:
+          throw new IOException(String.format("Unexpected %s tag", type));
+      }
+    }
+
+    private void entry(final @NonNull TagType type, final int depth, final int parent, final @NonNull String name) throws IOException {
+      if(parent == NONE) {
+        this.value(type, depth, NONE);
+        return;
+      }
+      final int self = this.count++;
+      if(self == this.parents.length) {
+        final int capacity = self * 2;
+        this.parents = Arrays.copyOf(this.parents, capacity);
+        this.names = Arrays.copyOf(this.names, capacity);
+        this.types = Arrays.copyOf(this.types, capacity);
+        this.offsets = Arrays.copyOf(this.offsets, capacity);
+        this.lengths = Arrays.copyOf(this.lengths, capacity);
+      }
+      final long offset = this.counter.count;
+      this.parents[self] = parent;
+      this.names[self] = name;
+      this.types[self] = type.id();
+      this.offsets[self] = offset;
+      this.value(type, depth, self);
+      this.lengths[self] = this.counter.count - offset;
+    }
+
+    private void skip(final long length) throws IOException {
+      if(length < 0) {
+        throw new IOException(String.format("Negative length %d", length));
+      }
+      long remaining = length;
+      while(remaining > 0) {
+        final long skipped = this.counter.skip(remaining);
+        if(skipped <= 0) {
+          if(this.counter.read() < 0) {
+            throw new EOFException();
+          }
+          remaining--;
+        } else {
+          remaining -= skipped;
+        }
+      }
+    }
+
+    /**
+     * Writes the recorded entries that are at least {@code minBytes} long.
+     *
+     * @param output the output
+     * @param minBytes the minimum length
+     * @throws IOException if an exception was encountered while writing
+     */
+    void write(final @NonNull DataOutputStream output, final long minBytes) throws IOException {
+      // a child is never longer than its parent, so the parent of a written entry is written too
+      final int[] remapped = new int[this.count];
+      int written = 0;
+      for(int i = 0; i < this.count; i++) {
+        remapped[i] = this.lengths[i] >= minBytes ? written++ : NONE;
+      }
+      output.writeInt(written);
+      for(int i = 0; i < this.count; i++) {
+        if(remapped[i] != NONE) {
+          output.writeInt(this.parents[i] == ROOT ? ROOT : remapped[this.parents[i]]);
+          output.writeUTF(this.names[i]);
+          output.writeByte(this.types[i]);
+          output.writeLong(this.offsets[i]);
+          output.writeLong(this.lengths[i]);
+        }
+      }
+    }
+  }
+
+  private static final class CountingInputStream extends FilterInputStream {
+    long count;
+
+    CountingInputStream(final @NonNull InputStream input) {
+      super(input);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int read = super.read();
+      if(read >= 0) {
+        this.count++;
+      }
+      return read;
+    }
+
+    @Override
+    public int read(final byte@NonNull[] bytes, final int offset, final int length) throws IOException {
+      final int read = super.read(bytes, offset, length);
+      if(read > 0) {
+        this.count += read;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(final long length) throws IOException {
+      final long skipped = super.skip(length);
+      this.count += skipped;
+      return skipped;
+    }
+  }
+
+  /**
+   * A tag index builder.
+   */
+  public static final class Builder {
+    private int maxDepth = Integer.MAX_VALUE;
+    private long minBytes;
+
+    Builder() {
+    }
+
+    /**
+     * Sets the depth of the deepest indexed entries. Top level entries of the root compound tag have a depth of {@code 1}.
+     *
+     * @param maxDepth the depth
+     * @return this builder
+     */
+    public @NonNull Builder maxDepth(final int maxDepth) {
+      if(maxDepth < 0) {
+        throw new IllegalArgumentException(String.format("Maximum depth of %d is negative", maxDepth));
+      }
+      this.maxDepth = maxDepth;
+      return this;
+    }
+
+    /**
+     * Sets the length of the shortest indexed entries.
+     *
+     * @param minBytes the length, in bytes
+     * @return this builder
+     */
+    public @NonNull Builder minBytes(final long minBytes) {
+      if(minBytes < 0) {
+        throw new IllegalArgumentException(String.format("Minimum of %d bytes is negative", minBytes));
+      }
+      this.minBytes = minBytes;
+      return this;
+    }
+
+    /**
+     * Indexes {@code file}, writing the index to its {@link TagIndex#sidecar(Path) sidecar file}.
+     *
+     * @param file the path of an uncompressed compound tag file
+     * @return the index
+     * @throws IOException if an exception was encountered while indexing
+     */
+    public @NonNull TagIndex build(final @NonNull Path file) throws IOException {
+      final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      final Scanner scanner;
+      final long rootOffset;
+      try(final InputStream input = new BufferedInputStream(Files.newInputStream(file), 65536)) {
+        scanner = new Scanner(input, this.maxDepth);
+        rootOffset = scanner.root();
+      } catch(final IndexOutOfBoundsException e) {
+        throw new IOException(String.format("%s is not an uncompressed compound tag", file), e); // an unknown tag type
+      }
+      final Path sidecar = sidecar(file);
+      final Path temporary = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+      try {
+        try(final OutputStream stream = Files.newOutputStream(temporary)) {
+          final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+          output.writeInt(MAGIC);
+          output.writeInt(VERSION);
+          output.writeLong(attributes.size());
+          output.writeLong(attributes.lastModifiedTime().toMillis());
+          output.writeInt(checksum(file, attributes.size()));
+          output.writeLong(rootOffset);
+          scanner.write(output, this.minBytes);
+          output.flush();
+        }
+        TagSaver.move(temporary, sidecar);
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+      return open(file);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A tag interner.
+ *
+ * <p>An interner canonicalizes equal tags to a single shared instance. Subtrees are interned
+ * from the bottom up, so equal children of interned tags are also shared, and comparing two
+ * interned tags for equality is a reference comparison in the common case.</p>
+ *
+ * <p>The interner is backed by a fixed-size table keyed by the {@link Tag#hashCode() content hash}
+ * of a tag. When two different tags map to the same slot, the most recently interned tag wins - the
+ * table never grows, and an interner will never hold on to more than {@code capacity} tags.</p>
+ *
+ * <p>Tags can be interned as they are decoded by configuring a {@link TagDecoder.Builder#interner(TagInterner) decoder}
+ * with an interner. The decoder hashes each tag from the hashes of its children, and only interns small subtrees
+ * below the root tag.</p>
+ *
+ * <p>Interned tags are shared, and must not be modified.</p>
+ */
+public final class TagInterner {
+  /**
+   * The default capacity.
+   */
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+  /**
+   * The table of interned tags.
+   */
+  private final AtomicReferenceArray<Tag> table;
+  /**
+   * The mask used to map a hash to a slot.
+   */
+  private final int mask;
+
+  public TagInterner() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a new interner.
+   *
+   * @param capacity the capacity, rounded up to the next power of two
+   */
+  public TagInterner(final @NonNegative int capacity) {
+    if(capacity < 1 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException(String.format("Capacity of %d is not between 1 and %d", capacity, 1 << 30));
+    }
+    final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+    this.table = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  /**
+   * Interns a tag, and all of its children.
+   *
+   * <p>{@code tag} is not modified - when any of its children are replaced with their interned instances,
+   * a new compound or list tag holding the interned children is interned in its place.</p>
+   *
+   * @param tag the tag
+   * @param <T> the tag type
+   * @return the interned tag, which may be {@code tag}
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends Tag> @NonNull T intern(final @NonNull T tag) {
+    return (T) this.canonicalize(this.internChildren(tag));
+  }
+
+  private @NonNull Tag internChildren(final @NonNull Tag tag) {
+    boolean changed = false;
+    if(tag instanceof CompoundTag) {
+      final CompoundTag compound = (CompoundTag) tag;
+      final CompoundTag interned = new CompoundTag(compound.size());
+      for(final String key : compound.keySet()) {
+        final Tag child = compound.get(key);
+        final Tag canonical = this.intern(child);
+        changed |= canonical != child;
+        interned.put(key, canonical);
+      }
+      return changed ? interned : tag;
+    } else if(tag instanceof ListTag) {
+      final ListTag list = (ListTag) tag;
+      final ListTag interned = new ListTag(list.listType(), list.size());
+      for(int i = 0, size = list.size(); i < size; i++) {
+        final Tag child = list.get(i);
+        final Tag canonical = this.intern(child);
+        changed |= canonical != child;
+        interned.append(canonical);
+      }
+      return changed ? interned : tag;
+    }
+    return tag;
+  }
+
+  /**
+   * Interns a tag, without interning its children.
+   *
+   * @param tag the tag
+   * @return the interned tag, which may be {@code tag}
+   */
+  @NonNull Tag canonicalize(final @NonNull Tag tag) {
+    return this.canonicalize(tag, tag.hashCode());
+  }
+
+  /**
+   * Interns a tag with a known {@link Tag#hashCode() hash}, without interning its children.
+   *
+   * @param tag the tag
+   * @param hash the hash of the tag
+   * @return the interned tag, which may be {@code tag}
+   */
+  @NonNull Tag canonicalize(final @NonNull Tag tag, final int hash) {
+    final int slot = (hash ^ (hash >>> 16)) & this.mask;
+    final /* @Nullable */ Tag existing = this.table.get(slot);
+    if(existing != null && existing.equals(tag)) {
+      return existing;
+    }
+    this.table.set(slot, tag);
+    return tag;
+  }
+
+  /**
+   * Removes all interned tags.
+   */
+  public void clear() {
+    for(int i = 0, length = this.table.length(); i < length; i++) {
+      this.table.set(i, null);
+    }
+  }
+}
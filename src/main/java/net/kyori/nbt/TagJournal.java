@@ -0,0 +1,561 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A compound tag kept as a snapshot and a journal of the edits made since.
+ *
+ * <p>The snapshot is a file written with {@link TagIO}, and the journal is a file next to it with the
+ * suffix {@code .journal}, to which each {@link Edit#commit() committed} edit is appended and forced to
+ * disk. Opening a journal reads the snapshot and replays the journal. Once the journal grows past a
+ * threshold, it is folded into a new snapshot.</p>
+ *
+ * <p>Edits address tags by path: each element of a path is a key of a compound tag, or the index of
+ * an element of a list tag.</p>
+ */
+public final class TagJournal implements Closeable {
+  private static final int MAGIC = 0x4e42544a; // NBTJ
+  /**
+   * The length of the journal header: the magic number, and the length and checksum of the snapshot
+   * the journal applies to.
+   */
+  private static final int HEADER = 4 + 8 + 4;
+  private static final byte PUT = 0;
+  private static final byte REMOVE = 1;
+  private static final byte SET = 2;
+  private static final byte INSERT = 3;
+  private final Path path;
+  private final Compression compression;
+  private final long compactBytes;
+  private final CompoundTag root;
+  private FileChannel journal;
+  /**
+   * If the last compaction failed after replacing the snapshot. The journal is no longer for the snapshot,
+   * so nothing is appended to it until a compaction succeeds.
+   */
+  private boolean compactionFailed;
+
+  private TagJournal(final @NonNull Path path, final @NonNull Compression compression, final long compactBytes) throws IOException {
+    this.path = path;
+    this.compression = compression;
+    this.compactBytes = compactBytes;
+    final byte @Nullable [] snapshot = Files.exists(path) ? Files.readAllBytes(path) : null;
+    this.root = snapshot != null ? TagIO.readInputStream(new ByteArrayInputStream(snapshot), compression) : new CompoundTag();
+    this.journal = FileChannel.open(path.resolveSibling(path.getFileName() + ".journal"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      if(!this.replay(header(snapshot))) {
+        // the snapshot already holds the edits of a journal from before it was written
+        this.journal.truncate(0);
+        this.journal.write(ByteBuffer.wrap(header(snapshot)), 0);
+        this.journal.force(false);
+      }
+    } catch(final IOException | RuntimeException e) {
+      this.journal.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return a new builder
+   */
+  public static @NonNull Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Gets the current compound tag.
+   *
+   * <p>The compound tag must only be modified through {@link #edit() edits}.</p>
+   *
+   * @return the compound tag
+   */
+  public @NonNull CompoundTag root() {
+    return this.root;
+  }
+
+  /**
+   * Starts an edit.
+   *
+   * @return a new edit
+   */
+  public @NonNull Edit edit() {
+    return new Edit(this);
+  }
+
+  /**
+   * Gets the size of the journal.
+   *
+   * @return the size, in bytes
+   * @throws IOException if an exception was encountered while getting the size
+   */
+  public synchronized long journalSize() throws IOException {
+    return this.journal.size();
+  }
+
+  /**
+   * Folds the journal into a new snapshot.
+   *
+   * @throws IOException if an exception was encountered while writing the snapshot
+   */
+  public synchronized void compact() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    TagIO.writeOutputStream(this.root, bytes, this.compression);
+    final byte[] snapshot = bytes.toByteArray();
+    write(this.path.resolveSibling(this.path.getFileName() + ".tmp"), snapshot, this.path);
+    // until the journal is reset, it is for the snapshot that was just replaced - a failure before here leaves both intact
+    this.compactionFailed = true;
+    // the new snapshot must be durable before the journal it replaces is cleared
+    TagSaver.syncDirectory(this.path.toAbsolutePath().getParent());
+    this.journal.truncate(0);
+    this.journal.write(ByteBuffer.wrap(header(snapshot)), 0);
+    this.journal.force(false);
+    this.compactionFailed = false;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    this.journal.close();
+  }
+
+  private synchronized void commit(final @NonNull List<Op> ops) throws IOException {
+    if(this.compactionFailed) {
+      this.compact();
+    }
+    final Deque<Runnable> undo = new ArrayDeque<>();
+    try {
+      for(final Op op : ops) {
+        apply(this.root, op, undo);
+      }
+    } catch(final RuntimeException e) {
+      while(!undo.isEmpty()) {
+        undo.pop().run();
+      }
+      throw e;
+    }
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream output = new DataOutputStream(bytes);
+    output.writeInt(0); // length, filled in below
+    output.writeInt(0); // checksum, filled in below
+    output.writeInt(ops.size());
+    for(final Op op : ops) {
+      op.write(output);
+    }
+    final byte[] record = bytes.toByteArray();
+    final CRC32 crc = new CRC32();
+    crc.update(record, 8, record.length - 8);
+    ByteArrays.putInt(record, 0, record.length - 8);
+    ByteArrays.putInt(record, 4, (int) crc.getValue());
+    final long end = this.journal.size();
+    try {
+      final ByteBuffer buffer = ByteBuffer.wrap(record);
+      long position = end;
+      while(buffer.hasRemaining()) {
+        position += this.journal.write(buffer, position);
+      }
+      this.journal.force(false);
+    } catch(final IOException e) {
+      while(!undo.isEmpty()) {
+        undo.pop().run();
+      }
+      try {
+        this.journal.truncate(end);
+      } catch(final IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+    if(end + record.length >= this.compactBytes) {
+      try {
+        this.compact();
+      } catch(final IOException ignored) {
+        // the edit is durable in the journal, so it is committed - compaction is retried by the next commit
+      }
+    }
+  }
+
+  /**
+   * Replays the journal, truncating it at the first torn record.
+   *
+   * @param header the header the journal must have
+   * @return {@code false} if the journal is not for the snapshot
+   * @throws IOException if an exception was encountered while replaying
+   */
+  private boolean replay(final byte@NonNull[] header) throws IOException {
+    final long size = this.journal.size();
+    if(size < HEADER) {
+      return false;
+    }
+    final InputStream input = new BufferedInputStream(Channels.newInputStream(this.journal.position(0)));
+    final byte[] actual = new byte[HEADER];
+    new DataInputStream(input).readFully(actual);
+    if(!Arrays.equals(header, actual)) {
+      return false;
+    }
+    long offset = HEADER;
+    while(offset + 8 <= size) {
+      final DataInputStream data = new DataInputStream(input);
+      final int length = data.readInt();
+      final int checksum = data.readInt();
+      if(length < 4 || length > size - offset - 8) {
+        break;
+      }
+      final byte[] record = new byte[length];
+      final CheckedInputStream checked = new CheckedInputStream(input, new CRC32());
+      new DataInputStream(checked).readFully(record);
+      if((int) checked.getChecksum().getValue() != checksum) {
+        break;
+      }
+      final DataInputStream ops = new DataInputStream(new ByteArrayInputStream(record));
+      final Deque<Runnable> undo = new ArrayDeque<>();
+      for(int i = 0, count = ops.readInt(); i < count; i++) {
+        apply(this.root, Op.read(ops), undo);
+      }
+      offset += 8 + length;
+    }
+    if(offset < size) {
+      this.journal.truncate(offset);
+    }
+    return true;
+  }
+
+  private static void apply(final @NonNull CompoundTag root, final @NonNull Op op, final @NonNull Deque<Runnable> undo) {
+    final int parentLength = op.kind == SET || op.kind == INSERT ? op.path.size() : op.path.size() - 1;
+    final Tag parent = navigate(root, op.path, parentLength);
+    if(op.kind == PUT || op.kind == REMOVE) {
+      final String key = op.path.get(op.path.size() - 1);
+      if(parent instanceof CompoundTag) {
+        final CompoundTag compound = (CompoundTag) parent;
+        final @Nullable Tag previous = compound.get(key);
+        if(op.kind == PUT) {
+          compound.put(key, op.tag.copy());
+        } else {
+          compound.remove(key);
+        }
+        undo.push(() -> {
+          if(previous != null) {
+            compound.put(key, previous);
+          } else {
+            compound.remove(key);
+          }
+        });
+      } else {
+        final ListTag list = (ListTag) parent;
+        final int index = index(list, op.path, parentLength);
+        if(op.kind == PUT) {
+          checkType(list, op);
+          final Tag previous = list.set(index, op.tag.copy());
+          undo.push(() -> list.set(index, previous));
+        } else {
+          final Tag previous = list.remove(index);
+          undo.push(() -> list.add(index, previous));
+        }
+      }
+    } else {
+      if(!(parent instanceof ListTag)) {
+        throw new IllegalArgumentException(String.format("Tag at %s is not a list", op.path));
+      }
+      final ListTag list = (ListTag) parent;
+      checkType(list, op);
+      if(op.index < 0 || op.index > list.size() || (op.kind == SET && op.index == list.size())) {
+        throw new IllegalArgumentException(String.format("Index %d is out of bounds for list at %s of size %d", op.index, op.path, list.size()));
+      }
+      if(op.kind == SET) {
+        final Tag previous = list.set(op.index, op.tag.copy());
+        undo.push(() -> list.set(op.index, previous));
+      } else {
+        list.add(op.index, op.tag.copy());
+        undo.push(() -> list.remove(op.index));
+      }
+    }
+  }
+
+  private static @NonNull Tag navigate(final @NonNull CompoundTag root, final @NonNull List<String> path, final int length) {
+    Tag tag = root;
+    for(int i = 0; i < length; i++) {
+      final @Nullable Tag child;
+      if(tag instanceof CompoundTag) {
+        child = ((CompoundTag) tag).get(path.get(i));
+      } else if(tag instanceof ListTag) {
+        child = ((ListTag) tag).get(index((ListTag) tag, path, i));
+      } else {
+        child = null;
+      }
+      if(child == null) {
+        throw new IllegalArgumentException(String.format("No compound or list at %s", path.subList(0, i + 1)));
+      }
+      tag = child;
+    }
+    if(!(tag instanceof CompoundTag || tag instanceof ListTag)) {
+      throw new IllegalArgumentException(String.format("No compound or list at %s", path.subList(0, length)));
+    }
+    return tag;
+  }
+
+  private static int index(final @NonNull ListTag list, final @NonNull List<String> path, final int element) {
+    final int index;
+    try {
+      index = Integer.parseInt(path.get(element));
+    } catch(final NumberFormatException e) {
+      throw new IllegalArgumentException(String.format("Element %s of %s is not a list index", path.get(element), path));
+    }
+    if(index < 0 || index >= list.size()) {
+      throw new IllegalArgumentException(String.format("Index %d is out of bounds for list at %s of size %d", index, path.subList(0, element), list.size()));
+    }
+    return index;
+  }
+
+  private static void checkType(final @NonNull ListTag list, final @NonNull Op op) {
+    if(list.listType() != TagType.END && list.listType() != op.tag.type()) {
+      throw new IllegalArgumentException(String.format("Cannot add a %s to a list of %s at %s", op.tag.type(), list.listType(), op.path));
+    }
+  }
+
+  private static byte@NonNull[] header(final byte @Nullable [] snapshot) {
+    final byte[] header = new byte[HEADER];
+    ByteArrays.putInt(header, 0, MAGIC);
+    if(snapshot == null) {
+      ByteArrays.putLong(header, 4, -1);
+    } else {
+      final CRC32 crc = new CRC32();
+      crc.update(snapshot, 0, snapshot.length);
+      ByteArrays.putLong(header, 4, snapshot.length);
+      ByteArrays.putInt(header, 12, (int) crc.getValue());
+    }
+    return header;
+  }
+
+  private static void write(final @NonNull Path temporary, final byte@NonNull[] bytes, final @NonNull Path target) throws IOException {
+    try(final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      while(buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+    TagSaver.move(temporary, target);
+  }
+
+  private static final class Op {
+    final byte kind;
+    final List<String> path;
+    final int index;
+    final @Nullable Tag tag;
+
+    Op(final byte kind, final @NonNull List<String> path, final int index, final @Nullable Tag tag) {
+      this.kind = kind;
+      this.path = path;
+      this.index = index;
+      this.tag = tag;
+    }
+
+    void write(final @NonNull DataOutputStream output) throws IOException {
+      output.writeByte(this.kind);
+      output.writeInt(this.path.size());
+      for(final String element : this.path) {
+        output.writeUTF(element);
+      }
+      if(this.kind == SET || this.kind == INSERT) {
+        output.writeInt(this.index);
+      }
+      if(this.kind != REMOVE) {
+        output.writeByte(this.tag.type().id());
+        this.tag.write(output);
+      }
+    }
+
+    static @NonNull Op read(final @NonNull DataInputStream input) throws IOException {
+      final byte kind = input.readByte();
+      final int size = input.readInt();
+      final List<String> path = new ArrayList<>(size);
+      for(int i = 0; i < size; i++) {
+        path.add(input.readUTF());
+      }
+      final int index = kind == SET || kind == INSERT ? input.readInt() : -1;
+      final @Nullable Tag tag = kind != REMOVE ? TagDecoder.DEFAULT.decode(TagType.of(input.readByte()), input) : null;
+      return new Op(kind, path, index, tag);
+    }
+  }
+
+  /**
+   * An edit of a journaled compound tag, made of operations applied in order when committed.
+   */
+  public static final class Edit {
+    private final TagJournal journal;
+    private final List<Op> ops = new ArrayList<>();
+
+    Edit(final @NonNull TagJournal journal) {
+      this.journal = journal;
+    }
+
+    /**
+     * Puts a tag into the compound tag, or sets an element of the list tag, that holds {@code path}.
+     *
+     * @param path the path
+     * @param tag the tag
+     * @return this edit
+     */
+    public @NonNull Edit put(final @NonNull List<String> path, final @NonNull Tag tag) {
+      this.ops.add(new Op(PUT, checkPath(path, 1), -1, requireNonNull(tag, "tag")));
+      return this;
+    }
+
+    /**
+     * Removes the tag at {@code path}.
+     *
+     * @param path the path
+     * @return this edit
+     */
+    public @NonNull Edit remove(final @NonNull List<String> path) {
+      this.ops.add(new Op(REMOVE, checkPath(path, 1), -1, null));
+      return this;
+    }
+
+    /**
+     * Sets an element of the list tag at {@code path}.
+     *
+     * @param path the path of the list tag
+     * @param index the index
+     * @param tag the tag
+     * @return this edit
+     */
+    public @NonNull Edit set(final @NonNull List<String> path, final int index, final @NonNull Tag tag) {
+      this.ops.add(new Op(SET, checkPath(path, 0), index, requireNonNull(tag, "tag")));
+      return this;
+    }
+
+    /**
+     * Inserts an element into the list tag at {@code path}.
+     *
+     * @param path the path of the list tag
+     * @param index the index, or the size of the list tag to append
+     * @param tag the tag
+     * @return this edit
+     */
+    public @NonNull Edit insert(final @NonNull List<String> path, final int index, final @NonNull Tag tag) {
+      this.ops.add(new Op(INSERT, checkPath(path, 0), index, requireNonNull(tag, "tag")));
+      return this;
+    }
+
+    /**
+     * Applies the operations to the compound tag, and appends them to the journal.
+     *
+     * <p>Either all operations are applied, or none are. Once committed, the edit is empty again. A failure
+     * to compact the journal afterwards does not fail the commit, and compaction is retried by the next one.</p>
+     *
+     * @throws IOException if an exception was encountered while appending to the journal, or while retrying
+     *     a failed compaction before it
+     * @throws IllegalArgumentException if an operation does not apply to the compound tag
+     */
+    public void commit() throws IOException {
+      if(!this.ops.isEmpty()) {
+        this.journal.commit(this.ops);
+        this.ops.clear();
+      }
+    }
+
+    private static @NonNull List<String> checkPath(final @NonNull List<String> path, final int minimum) {
+      if(path.size() < minimum) {
+        throw new IllegalArgumentException(String.format("Path %s is shorter than %d", path, minimum));
+      }
+      return new ArrayList<>(path);
+    }
+  }
+
+  /**
+   * A tag journal builder.
+   */
+  public static final class Builder {
+    private Compression compression = Compression.GZIP;
+    private long compactBytes = 4L * 1024 * 1024;
+
+    Builder() {
+    }
+
+    /**
+     * Sets the compression the snapshot is written with.
+     *
+     * @param compression the compression
+     * @return this builder
+     */
+    public @NonNull Builder compression(final @NonNull Compression compression) {
+      this.compression = requireNonNull(compression, "compression");
+      return this;
+    }
+
+    /**
+     * Sets the size of the journal at which it is folded into a new snapshot.
+     *
+     * @param compactBytes the size, in bytes
+     * @return this builder
+     */
+    public @NonNull Builder compactBytes(final long compactBytes) {
+      if(compactBytes < HEADER) {
+        throw new IllegalArgumentException(String.format("Compaction threshold of %d is lower than %d", compactBytes, HEADER));
+      }
+      this.compactBytes = compactBytes;
+      return this;
+    }
+
+    /**
+     * Opens the journaled compound tag at {@code path}, starting from an empty compound tag if there is
+     * no snapshot.
+     *
+     * @param path the path of the snapshot
+     * @return the tag journal
+     * @throws IOException if an exception was encountered while reading the snapshot or the journal
+     */
+    public @NonNull TagJournal open(final @NonNull Path path) throws IOException {
+      return new TagJournal(path, this.compression, this.compactBytes);
+    }
+  }
+}
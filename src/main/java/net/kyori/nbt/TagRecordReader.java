@@ -0,0 +1,155 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reads many root compound tags from a single stream written by a {@link TagRecordWriter}.
+ */
+public final class TagRecordReader implements Closeable {
+  private static final int BUFFER_SIZE = 8192;
+  private final DataInputStream stream;
+  private final DataInput input;
+  private final TagDecoder decoder;
+  private final @Nullable Inflater inflater;
+
+  private TagRecordReader(final @NonNull InputStream in, final @Nullable Inflater inflater, final @NonNull TagDecoder decoder, final @NonNull TagEncoding encoding) {
+    this.inflater = inflater;
+    final InputStream source = inflater != null ? new InflaterInputStream(in, inflater, BUFFER_SIZE) : in;
+    this.stream = new DataInputStream(new BufferedInputStream(source, BUFFER_SIZE));
+    this.input = encoding.input(this.stream);
+    this.decoder = decoder;
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return a new builder
+   */
+  public static @NonNull Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Reads the next record, blocking until it has been read.
+   *
+   * @return the record, or {@code null} if the end of the stream has been reached
+   * @throws IOException if an exception was encountered while reading the record
+   */
+  public @Nullable CompoundTag read() throws IOException {
+    final int id = this.stream.read();
+    if(id == -1) {
+      return null;
+    }
+    if(id != TagType.COMPOUND.id()) {
+      throw new IOException(String.format("Expected root tag to be a %s, was %s", TagType.COMPOUND, TagType.of((byte) id)));
+    }
+    this.input.readUTF(); // read empty name
+    return (CompoundTag) this.decoder.decode(TagType.COMPOUND, this.input);
+  }
+
+  /**
+   * Closes the underlying stream.
+   *
+   * @throws IOException if an exception was encountered while closing
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      this.stream.close();
+    } finally {
+      if(this.inflater != null) {
+        this.inflater.end();
+      }
+    }
+  }
+
+  /**
+   * A record reader builder.
+   */
+  public static final class Builder {
+    private boolean inflate;
+    private TagDecoder decoder = TagDecoder.DEFAULT;
+    private TagEncoding encoding = TagEncoding.JAVA;
+
+    Builder() {
+    }
+
+    /**
+     * Sets if records are compressed with a shared deflate stream.
+     *
+     * @param inflate if records are compressed
+     * @return this builder
+     */
+    public @NonNull Builder inflate(final boolean inflate) {
+      this.inflate = inflate;
+      return this;
+    }
+
+    /**
+     * Sets the decoder records are decoded with.
+     *
+     * @param decoder the decoder
+     * @return this builder
+     */
+    public @NonNull Builder decoder(final @NonNull TagDecoder decoder) {
+      this.decoder = requireNonNull(decoder, "decoder");
+      return this;
+    }
+
+    /**
+     * Sets the encoding.
+     *
+     * @param encoding the encoding
+     * @return this builder
+     */
+    public @NonNull Builder encoding(final @NonNull TagEncoding encoding) {
+      this.encoding = requireNonNull(encoding, "encoding");
+      return this;
+    }
+
+    /**
+     * Builds a reader.
+     *
+     * @param input the input stream
+     * @return the reader
+     */
+    public @NonNull TagRecordReader build(final @NonNull InputStream input) {
+      return new TagRecordReader(requireNonNull(input, "input"), this.inflate ? new Inflater() : null, this.decoder, this.encoding);
+    }
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes many root compound tags to a single stream.
+ *
+ * <p>Records are written back to back, each as a complete root compound tag, and are read with a
+ * {@link TagRecordReader}. When deflate is enabled, all records share one deflate stream, which is
+ * {@link Deflater#SYNC_FLUSH sync flushed} on every flush - later records are compressed against
+ * the history of earlier ones, and every flushed record can be read immediately.</p>
+ */
+public final class TagRecordWriter implements Closeable, Flushable {
+  private static final int BUFFER_SIZE = 8192;
+  private final CountingOutputStream stream;
+  private final DataOutput output;
+  private final FlushPolicy policy;
+  private final @Nullable Deflater deflater;
+  private int records;
+
+  private TagRecordWriter(final @NonNull OutputStream out, final @Nullable Deflater deflater, final @NonNull FlushPolicy policy, final @NonNull TagEncoding encoding) {
+    this.deflater = deflater;
+    final OutputStream target = deflater != null ? new DeflaterOutputStream(out, deflater, BUFFER_SIZE, true) : out;
+    this.stream = new CountingOutputStream(new BufferedOutputStream(target, BUFFER_SIZE));
+    this.output = encoding.output(this.stream);
+    this.policy = policy;
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return a new builder
+   */
+  public static @NonNull Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Writes a record.
+   *
+   * @param tag the record
+   * @throws IOException if an exception was encountered while writing the record
+   */
+  public void write(final @NonNull CompoundTag tag) throws IOException {
+    TagIO.writeDataOutput(tag, this.output);
+    this.records++;
+    if(this.policy.flush(this.records, this.stream.size())) {
+      this.flush();
+    }
+  }
+
+  /**
+   * Flushes all written records to the underlying stream.
+   *
+   * @throws IOException if an exception was encountered while flushing
+   */
+  @Override
+  public void flush() throws IOException {
+    this.stream.flush();
+    this.records = 0;
+    this.stream.reset();
+  }
+
+  /**
+   * Finishes the stream, and closes the underlying stream.
+   *
+   * @throws IOException if an exception was encountered while closing
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      this.stream.close();
+    } finally {
+      if(this.deflater != null) {
+        this.deflater.end();
+      }
+    }
+  }
+
+  /**
+   * A data output stream whose count of written bytes can be reset.
+   */
+  private static final class CountingOutputStream extends DataOutputStream {
+    CountingOutputStream(final @NonNull OutputStream out) {
+      super(out);
+    }
+
+    void reset() {
+      this.written = 0;
+    }
+  }
+
+  /**
+   * A record writer builder.
+   */
+  public static final class Builder {
+    private boolean deflate;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private FlushPolicy policy = FlushPolicy.EVERY_RECORD;
+    private TagEncoding encoding = TagEncoding.JAVA;
+
+    Builder() {
+    }
+
+    /**
+     * Sets if records are compressed with a shared deflate stream.
+     *
+     * @param deflate if records are compressed
+     * @return this builder
+     */
+    public @NonNull Builder deflate(final boolean deflate) {
+      this.deflate = deflate;
+      return this;
+    }
+
+    /**
+     * Sets the compression level, and enables compression.
+     *
+     * @param level the compression level
+     * @return this builder
+     */
+    public @NonNull Builder level(final int level) {
+      if((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+        throw new IllegalArgumentException(String.format("Invalid compression level %d", level));
+      }
+      this.deflate = true;
+      this.level = level;
+      return this;
+    }
+
+    /**
+     * Sets the flush policy.
+     *
+     * @param policy the flush policy
+     * @return this builder
+     */
+    public @NonNull Builder flushPolicy(final @NonNull FlushPolicy policy) {
+      this.policy = requireNonNull(policy, "policy");
+      return this;
+    }
+
+    /**
+     * Sets the encoding.
+     *
+     * @param encoding the encoding
+     * @return this builder
+     */
+    public @NonNull Builder encoding(final @NonNull TagEncoding encoding) {
+      this.encoding = requireNonNull(encoding, "encoding");
+      return this;
+    }
+
+    /**
+     * Builds a writer.
+     *
+     * @param output the output stream
+     * @return the writer
+     */
+    public @NonNull TagRecordWriter build(final @NonNull OutputStream output) {
+      return new TagRecordWriter(requireNonNull(output, "output"), this.deflate ? new Deflater(this.level) : null, this.policy, this.encoding);
+    }
+  }
+}
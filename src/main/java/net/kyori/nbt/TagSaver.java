@@ -0,0 +1,428 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Saves compound tags to files in the background.
+ *
+ * <p>Saves are queued per path, and a save replaces any queued save for the same path that has not started
+ * yet - only the latest tag is written. Queued saves are written in batches: each tag is written to a
+ * temporary file next to its target, all temporary files of the batch are synced, and each one is then
+ * atomically moved into place. A crash leaves either the old or the new file, never a truncated one.</p>
+ *
+ * <p>The saver takes ownership of saved tags - a tag must not be modified after it has been saved.</p>
+ */
+public final class TagSaver implements AutoCloseable {
+  private final Executor executor;
+  /**
+   * The executor created by the builder, which is shut down on close, or {@code null} if one was provided.
+   */
+  private final @Nullable ExecutorService defaultExecutor;
+  private final int workers;
+  private final int batchSize;
+  private final Compression compression;
+  private final boolean sync;
+  /**
+   * The saves that have not started yet, in the order they were first queued. Guarded by {@code this}.
+   */
+  private final LinkedHashMap<Path, Save> queued = new LinkedHashMap<>();
+  /**
+   * The saves being written. Guarded by {@code this}.
+   */
+  private final Map<Path, Save> writing = new HashMap<>();
+  private int running;
+  private boolean closed;
+
+  private TagSaver(final @NonNull Executor executor, final @Nullable ExecutorService defaultExecutor, final int workers, final int batchSize, final @NonNull Compression compression, final boolean sync) {
+    this.executor = executor;
+    this.defaultExecutor = defaultExecutor;
+    this.workers = workers;
+    this.batchSize = batchSize;
+    this.compression = compression;
+    this.sync = sync;
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return a new builder
+   */
+  public static @NonNull Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Queues a compound tag to be saved to {@code path}.
+   *
+   * @param tag the compound tag
+   * @param path the path
+   * @return a future completed once the tag, or a later tag saved to the same path, has been written
+   */
+  public @NonNull CompletableFuture<Void> save(final @NonNull CompoundTag tag, final @NonNull Path path) {
+    final Path target = path.toAbsolutePath().normalize();
+    synchronized(this) {
+      if(this.closed) {
+        throw new IllegalStateException("The saver has been closed");
+      }
+      final Save existing = this.queued.get(target);
+      if(existing != null) {
+        existing.tag = tag; // coalesce with the queued save
+        return existing.future;
+      }
+      final Save save = new Save(target, tag);
+      this.queued.put(target, save);
+      this.schedule();
+      return save.future;
+    }
+  }
+
+  /**
+   * Gets a future completed once all saves queued so far have been written.
+   *
+   * @return the future
+   */
+  public synchronized @NonNull CompletableFuture<Void> flush() {
+    final List<CompletableFuture<Void>> futures = new ArrayList<>(this.queued.size() + this.writing.size());
+    for(final Save save : this.queued.values()) {
+      futures.add(save.future);
+    }
+    for(final Save save : this.writing.values()) {
+      futures.add(save.future);
+    }
+    // failed saves are reported through their own futures
+    return CompletableFuture.allOf(futures.stream().map(future -> future.exceptionally(e -> null)).toArray(CompletableFuture[]::new));
+  }
+
+  /**
+   * Stops accepting saves, and waits until all queued saves have been written.
+   */
+  @Override
+  public void close() {
+    final CompletableFuture<Void> flush;
+    synchronized(this) {
+      this.closed = true;
+      flush = this.flush();
+    }
+    flush.join();
+    if(this.defaultExecutor != null) {
+      this.defaultExecutor.shutdown();
+    }
+  }
+
+  /**
+   * Starts workers while there are workers to spare and saves they could take.
+   */
+  private void schedule() {
+    while(this.running < this.workers && this.running < this.queued.size()) {
+      this.running++;
+      try {
+        this.executor.execute(this::work);
+      } catch(final RejectedExecutionException e) {
+        this.running--;
+        final Iterator<Save> it = this.queued.values().iterator();
+        while(it.hasNext()) {
+          it.next().future.completeExceptionally(e);
+          it.remove();
+        }
+        return;
+      }
+    }
+  }
+
+  private void work() {
+    while(true) {
+      final List<Save> batch = this.take();
+      if(batch.isEmpty()) {
+        return;
+      }
+      this.write(batch);
+      synchronized(this) {
+        for(final Save save : batch) {
+          this.writing.remove(save.path);
+        }
+      }
+      for(final Save save : batch) {
+        if(save.error != null) {
+          save.future.completeExceptionally(save.error);
+        } else {
+          save.future.complete(null);
+        }
+      }
+    }
+  }
+
+  /**
+   * Takes a batch of queued saves whose paths are not being written by another worker.
+   *
+   * @return the batch, or an empty list if this worker should stop
+   */
+  private synchronized @NonNull List<Save> take() {
+    final List<Save> batch = new ArrayList<>(Math.min(this.batchSize, this.queued.size()));
+    final Iterator<Save> it = this.queued.values().iterator();
+    while(batch.size() < this.batchSize && it.hasNext()) {
+      final Save save = it.next();
+      if(!this.writing.containsKey(save.path)) {
+        it.remove();
+        this.writing.put(save.path, save);
+        batch.add(save);
+      }
+    }
+    if(batch.isEmpty()) {
+      // any saves left wait on a path being written, and the worker writing it takes them next
+      this.running--;
+    }
+    return batch;
+  }
+
+  private void write(final @NonNull List<Save> batch) {
+    for(final Save save : batch) {
+      try {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TagIO.writeOutputStream(save.tag, bytes, this.compression);
+        save.tag = null;
+        try(final FileChannel channel = createTemporary(save)) {
+          final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+          while(buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+        }
+      } catch(final IOException | RuntimeException e) {
+        this.fail(save, e);
+      }
+    }
+    if(this.sync) {
+      // sync the whole batch before moving anything, so the syncs are not interleaved with metadata updates
+      for(final Save save : batch) {
+        if(save.error == null) {
+          try(final FileChannel channel = FileChannel.open(save.temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+          } catch(final IOException e) {
+            this.fail(save, e);
+          }
+        }
+      }
+    }
+    final Set<Path> directories = new LinkedHashSet<>();
+    for(final Save save : batch) {
+      if(save.error == null) {
+        try {
+          move(save.temporary, save.path);
+          directories.add(save.path.getParent());
+        } catch(final IOException e) {
+          this.fail(save, e);
+        }
+      }
+    }
+    if(this.sync) {
+      for(final Path directory : directories) {
+        syncDirectory(directory);
+      }
+    }
+  }
+
+  /**
+   * Creates a uniquely named temporary file next to the path of {@code save}.
+   *
+   * <p>Unlike {@link Files#createTempFile(Path, String, String, java.nio.file.attribute.FileAttribute[])}, which
+   * restricts the file to its owner, the file is created with the default permissions, and the file that replaces
+   * the target keeps them.</p>
+   */
+  private static @NonNull FileChannel createTemporary(final @NonNull Save save) throws IOException {
+    while(true) {
+      final Path temporary = save.path.resolveSibling(save.path.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+      try {
+        final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        save.temporary = temporary;
+        return channel;
+      } catch(final FileAlreadyExistsException e) {
+        // another file has the same name, so try a different one
+      }
+    }
+  }
+
+  private void fail(final @NonNull Save save, final @NonNull Exception error) {
+    save.error = error;
+    if(save.temporary != null) {
+      try {
+        Files.deleteIfExists(save.temporary);
+      } catch(final IOException e) {
+        error.addSuppressed(e);
+      }
+    }
+  }
+
+  static void move(final @NonNull Path source, final @NonNull Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch(final AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Syncs a directory, so that the files moved into it survive a crash.
+   *
+   * @param directory the directory
+   */
+  static void syncDirectory(final @NonNull Path directory) {
+    try(final FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch(final IOException e) {
+      // not every platform can open or sync a directory - the moves have still happened
+    }
+  }
+
+  private static final class Save {
+    final Path path;
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+    @Nullable CompoundTag tag;
+    @Nullable Path temporary;
+    @Nullable Exception error;
+
+    Save(final @NonNull Path path, final @NonNull CompoundTag tag) {
+      this.path = path;
+      this.tag = tag;
+    }
+  }
+
+  /**
+   * A tag saver builder.
+   */
+  public static final class Builder {
+    private @Nullable Executor executor;
+    private int workers = 2;
+    private int batchSize = 64;
+    private Compression compression = Compression.GZIP;
+    private boolean sync = true;
+
+    Builder() {
+    }
+
+    /**
+     * Sets the executor saves are written on.
+     *
+     * <p>By default, a dedicated pool of daemon threads is used, or virtual threads on Java 21 and newer. It is
+     * shut down when the saver is closed.</p>
+     *
+     * @param executor the executor
+     * @return this builder
+     */
+    public @NonNull Builder executor(final @NonNull Executor executor) {
+      this.executor = requireNonNull(executor, "executor");
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of batches written at once.
+     *
+     * @param workers the number of workers
+     * @return this builder
+     */
+    public @NonNull Builder workers(final int workers) {
+      if(workers < 1) {
+        throw new IllegalArgumentException(String.format("Worker count of %d is not positive", workers));
+      }
+      this.workers = workers;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of files written and synced together.
+     *
+     * @param batchSize the batch size
+     * @return this builder
+     */
+    public @NonNull Builder batchSize(final int batchSize) {
+      if(batchSize < 1) {
+        throw new IllegalArgumentException(String.format("Batch size of %d is not positive", batchSize));
+      }
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /**
+     * Sets the compression files are written with.
+     *
+     * @param compression the compression
+     * @return this builder
+     */
+    public @NonNull Builder compression(final @NonNull Compression compression) {
+      this.compression = requireNonNull(compression, "compression");
+      return this;
+    }
+
+    /**
+     * Sets if written files are synced to disk before they are moved into place.
+     *
+     * @param sync if files are synced
+     * @return this builder
+     */
+    public @NonNull Builder sync(final boolean sync) {
+      this.sync = sync;
+      return this;
+    }
+
+    /**
+     * Builds a tag saver.
+     *
+     * @return the tag saver
+     */
+    public @NonNull TagSaver build() {
+      if(this.executor != null) {
+        return new TagSaver(this.executor, null, this.workers, this.batchSize, this.compression, this.sync);
+      }
+      final ExecutorService executor = BlockingExecutors.create("nbt-saver-");
+      return new TagSaver(executor, executor, this.workers, this.batchSize, this.compression, this.sync);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The serialized sizes of the large compound and list tags in a tree.
+ *
+ * <p>Sizes are computed bottom-up in a single pass, rather than by calling {@link Tag#serializedSize()}
+ * on every subtree that is considered for splitting, which would visit each tag once per level above it.</p>
+ */
+final class TagSizes {
+  /**
+   * The sizes of the compound and list tags that are at least {@link #threshold} bytes.
+   */
+  private final Map<Tag, Integer> sizes = new IdentityHashMap<>();
+  /**
+   * The serialized size, in bytes, from which the size of a compound or list tag is recorded.
+   */
+  private final int threshold;
+  /**
+   * The serialized size of the root tag.
+   */
+  private final int total;
+
+  TagSizes(final @NonNull Tag tag, final int threshold) {
+    this.threshold = threshold;
+    this.total = this.measure(tag);
+  }
+
+  /**
+   * Gets the serialized size of the root tag.
+   *
+   * @return the serialized size
+   */
+  int total() {
+    return this.total;
+  }
+
+  /**
+   * Gets the serialized size of a compound or list tag in the tree, if it is at least the threshold.
+   *
+   * @param tag the tag
+   * @return the serialized size, or {@code -1} if the tag is smaller than the threshold
+   */
+  int large(final @NonNull Tag tag) {
+    final Integer size = this.sizes.get(tag);
+    return size != null ? size : -1;
+  }
+
+  private int measure(final @NonNull Tag tag) {
+    int size;
+    if(tag instanceof CompoundTag) {
+      final CompoundTag compound = (CompoundTag) tag;
+      size = Byte.BYTES; // end
+      for(final String key : compound.keySet()) {
+        final Tag child = compound.get(key);
+        size += Byte.BYTES;
+        if(child.type() != TagType.END) {
+          size += Short.BYTES + ModifiedUtf8.encodedLength(key) + this.measure(child);
+        }
+      }
+    } else if(tag instanceof ListTag) {
+      final ListTag list = (ListTag) tag;
+      size = Byte.BYTES + Integer.BYTES;
+      for(int i = 0, length = list.size(); i < length; i++) {
+        size += this.measure(list.get(i));
+      }
+    } else {
+      return tag.serializedSize();
+    }
+    if(size >= this.threshold) {
+      this.sizes.put(tag, size);
+    }
+    return size;
+  }
+}
@@ -0,0 +1,994 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An embedded, log-structured store of compound tags keyed by string.
+ *
+ * <p>Records are appended to segment files in a directory, and an in-memory index maps each key to
+ * its latest record. The index is checkpointed to disk periodically, so opening the store only replays
+ * the records appended since the last checkpoint. Records torn by a crash are dropped when the store is
+ * opened.</p>
+ *
+ * <p>Segments in which most records have been superseded are compacted in the background, by
+ * appending their live records again and deleting the segment.</p>
+ *
+ * <p>A store may only be open once at a time.</p>
+ */
+public final class TagStore implements Closeable {
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final String CHECKPOINT = "checkpoint";
+  private static final String LOCK = "lock";
+  private static final int CHECKPOINT_MAGIC = 0x4e425443; // NBTC
+  private static final int CHECKPOINT_VERSION = 1;
+  /**
+   * The length of a record header: the length and checksum of the rest of the record.
+   */
+  private static final int HEADER = 8;
+  /**
+   * The offset of the record key, after the sequence number, type, and compression.
+   */
+  private static final int KEY = HEADER + 8 + 1 + 1;
+  private static final byte PUT = 0;
+  private static final byte DELETE = 1;
+  private static final Compression[] COMPRESSIONS = Compression.values();
+  private final Path directory;
+  private final Compression compression;
+  private final long segmentBytes;
+  private final long checkpointBytes;
+  private final double garbageRatio;
+  private final boolean sync;
+  private final Executor executor;
+  private final FileChannel lockChannel;
+  /**
+   * The segments, by id. Guarded by this store, as are the index and the fields below.
+   */
+  private final TreeMap<Long, Segment> segments = new TreeMap<>();
+  private final Map<String, Location> index = new HashMap<>();
+  private Segment active;
+  private long nextSequence;
+  private int size;
+  private long appendedSinceCheckpoint;
+  private boolean closed;
+  /**
+   * Held while compacting or checkpointing.
+   */
+  private final Object maintenance = new Object();
+  private final AtomicBoolean checkpointScheduled = new AtomicBoolean();
+  private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+  private volatile @Nullable IOException backgroundFailure;
+
+  private TagStore(final @NonNull Path directory, final @NonNull Compression compression, final long segmentBytes, final long checkpointBytes, final double garbageRatio, final boolean sync, final @NonNull Executor executor) throws IOException {
+    this.directory = directory;
+    this.compression = compression;
+    this.segmentBytes = segmentBytes;
+    this.checkpointBytes = checkpointBytes;
+    this.garbageRatio = garbageRatio;
+    this.sync = sync;
+    this.executor = executor;
+    Files.createDirectories(directory);
+    this.lockChannel = FileChannel.open(directory.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    try {
+      @Nullable FileLock lock;
+      try {
+        lock = this.lockChannel.tryLock();
+      } catch(final OverlappingFileLockException e) {
+        lock = null; // open in this process
+      }
+      if(lock == null) {
+        throw new IOException(String.format("Store %s is already open", directory));
+      }
+      this.recover();
+    } catch(final IOException | RuntimeException e) {
+      this.closeSegments();
+      this.lockChannel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return a new builder
+   */
+  public static @NonNull Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Gets the compound tag stored under {@code key}.
+   *
+   * @param key the key
+   * @return the compound tag, or {@code null} if there is none
+   * @throws IOException if an exception was encountered while reading the compound tag
+   */
+  public @Nullable CompoundTag get(final @NonNull String key) throws IOException {
+    while(true) {
+      final Location location;
+      synchronized(this) {
+        this.ensureOpen();
+        location = this.index.get(key);
+      }
+      if(location == null || location.deleted) {
+        return null;
+      }
+      final Segment segment = location.segment;
+      final FileChannel channel = segment.channel;
+      final byte[] record;
+      try {
+        record = Segment.read(channel, location.offset, location.length);
+      } catch(final ClosedChannelException e) {
+        synchronized(this) {
+          this.ensureOpen();
+          if(this.segments.get(segment.id) == segment) {
+            this.reopen(segment, channel); // closed by an interrupted read or write
+          } else if(this.index.get(key) == location) {
+            throw e;
+          }
+        }
+        if(e instanceof ClosedByInterruptException) {
+          throw e;
+        }
+        continue; // the record was moved by compaction, or the segment was reopened, while reading
+      }
+      if(checksum(record, 0, record.length) != ByteArrays.getInt(record, 4)) {
+        throw new IOException(String.format("Record for %s in segment %d has a bad checksum", key, location.segment.id));
+      }
+      final int value = KEY + 2 + (ByteArrays.getShort(record, KEY) & 0xffff);
+      final Compression compression = COMPRESSIONS[record[KEY - 1]];
+      return TagIO.readInputStream(new ByteArrayInputStream(record, value, record.length - value), compression);
+    }
+  }
+
+  /**
+   * Gets the compound tag stored under {@code key}.
+   *
+   * @param key the key
+   * @return the compound tag, or {@code null} if there is none
+   * @throws IOException if an exception was encountered while reading the compound tag
+   */
+  public @Nullable CompoundTag get(final @NonNull UUID key) throws IOException {
+    return this.get(key.toString());
+  }
+
+  /**
+   * Tests if a compound tag is stored under {@code key}.
+   *
+   * @param key the key
+   * @return {@code true} if a compound tag is stored
+   */
+  public synchronized boolean contains(final @NonNull String key) {
+    this.ensureOpen();
+    final Location location = this.index.get(key);
+    return location != null && !location.deleted;
+  }
+
+  /**
+   * Stores a compound tag under {@code key}, compressed with the store's compression.
+   *
+   * @param key the key
+   * @param tag the compound tag
+   * @throws IOException if an exception was encountered while writing the compound tag
+   */
+  public void put(final @NonNull String key, final @NonNull CompoundTag tag) throws IOException {
+    this.put(key, tag, this.compression);
+  }
+
+  /**
+   * Stores a compound tag under {@code key}.
+   *
+   * @param key the key
+   * @param tag the compound tag
+   * @param compression the compression
+   * @throws IOException if an exception was encountered while writing the compound tag
+   */
+  public void put(final @NonNull String key, final @NonNull CompoundTag tag, final @NonNull Compression compression) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream output = new DataOutputStream(bytes);
+    writeHeader(output, PUT, compression, key);
+    TagIO.writeOutputStream(tag, output, compression);
+    final byte[] record = bytes.toByteArray();
+    synchronized(this) {
+      this.ensureOpen();
+      this.append(key, record, false);
+    }
+  }
+
+  /**
+   * Stores a compound tag under {@code key}, compressed with the store's compression.
+   *
+   * @param key the key
+   * @param tag the compound tag
+   * @throws IOException if an exception was encountered while writing the compound tag
+   */
+  public void put(final @NonNull UUID key, final @NonNull CompoundTag tag) throws IOException {
+    this.put(key.toString(), tag);
+  }
+
+  /**
+   * Removes the compound tag stored under {@code key}.
+   *
+   * @param key the key
+   * @return {@code true} if a compound tag was stored
+   * @throws IOException if an exception was encountered while writing the removal
+   */
+  public boolean remove(final @NonNull String key) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    writeHeader(new DataOutputStream(bytes), DELETE, Compression.NONE, key);
+    final byte[] record = bytes.toByteArray();
+    synchronized(this) {
+      this.ensureOpen();
+      final Location location = this.index.get(key);
+      if(location == null || location.deleted) {
+        return false;
+      }
+      this.append(key, record, true);
+      return true;
+    }
+  }
+
+  /**
+   * Removes the compound tag stored under {@code key}.
+   *
+   * @param key the key
+   * @return {@code true} if a compound tag was stored
+   * @throws IOException if an exception was encountered while writing the removal
+   */
+  public boolean remove(final @NonNull UUID key) throws IOException {
+    return this.remove(key.toString());
+  }
+
+  /**
+   * Gets a snapshot of the keys with a stored compound tag.
+   *
+   * @return the keys
+   */
+  public synchronized @NonNull Set<String> keys() {
+    this.ensureOpen();
+    final Set<String> keys = new HashSet<>(this.size * 4 / 3 + 1);
+    for(final Map.Entry<String, Location> entry : this.index.entrySet()) {
+      if(!entry.getValue().deleted) {
+        keys.add(entry.getKey());
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Gets the number of keys with a stored compound tag.
+   *
+   * @return the number of keys
+   */
+  public synchronized int size() {
+    return this.size;
+  }
+
+  /**
+   * Forces appended records to disk.
+   *
+   * @throws IOException if an exception was encountered while syncing
+   */
+  public void sync() throws IOException {
+    final Segment active;
+    synchronized(this) {
+      this.ensureOpen();
+      active = this.active;
+    }
+    active.channel.force(false);
+  }
+
+  /**
+   * Writes a checkpoint of the index, so opening the store does not replay the records appended so far.
+   *
+   * @throws IOException if an exception was encountered while writing the checkpoint
+   */
+  public void checkpoint() throws IOException {
+    synchronized(this.maintenance) {
+      this.writeCheckpoint();
+    }
+  }
+
+  /**
+   * Compacts every segment, other than the one being appended to, in which the share of superseded
+   * records has reached the garbage ratio.
+   *
+   * @return the number of segments compacted
+   * @throws IOException if an exception was encountered while compacting
+   */
+  public int compact() throws IOException {
+    synchronized(this.maintenance) {
+      final List<Segment> candidates = new ArrayList<>();
+      synchronized(this) {
+        this.ensureOpen();
+        for(final Segment segment : this.segments.values()) {
+          if(segment != this.active && segment.size - segment.live >= segment.size * this.garbageRatio) {
+            candidates.add(segment);
+          }
+        }
+      }
+      for(final Segment segment : candidates) {
+        this.compact(segment);
+      }
+      if(!candidates.isEmpty()) {
+        // the checkpoint no longer refers to the compacted segments, so they can go
+        this.writeCheckpoint();
+        for(final Segment segment : candidates) {
+          segment.channel.close();
+          Files.delete(segment.path);
+        }
+      }
+      return candidates.size();
+    }
+  }
+
+  /**
+   * Writes a checkpoint, and closes the store.
+   *
+   * @throws IOException if an exception was encountered while closing the store, or by an earlier
+   *     background checkpoint or compaction
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized(this) {
+      if(this.closed) {
+        return;
+      }
+    }
+    try {
+      synchronized(this.maintenance) {
+        try {
+          this.writeCheckpoint();
+        } finally {
+          synchronized(this) {
+            this.closed = true;
+            this.closeSegments();
+          }
+          this.lockChannel.close();
+        }
+      }
+    } finally {
+      final IOException failure = this.backgroundFailure;
+      if(failure != null) {
+        throw failure;
+      }
+    }
+  }
+
+  /**
+   * Appends a record, and points its key at it.
+   *
+   * <p>Must be called while holding the lock on this store.</p>
+   *
+   * @param key the key
+   * @param record the record, without its sequence number and checksum
+   * @param deleted if the record is a removal
+   * @throws IOException if an exception was encountered while appending
+   */
+  private void append(final @NonNull String key, final byte@NonNull[] record, final boolean deleted) throws IOException {
+    final long sequence = this.nextSequence++;
+    ByteArrays.putLong(record, HEADER, sequence);
+    ByteArrays.putInt(record, 0, record.length - HEADER);
+    ByteArrays.putInt(record, 4, checksum(record, 0, record.length));
+    this.apply(key, this.write(record, sequence), record.length, sequence, deleted);
+  }
+
+  /**
+   * Writes a complete record to the active segment, starting a new segment if it is full.
+   *
+   * <p>Must be called while holding the lock on this store.</p>
+   *
+   * @param record the record
+   * @param sequence the sequence number of the record
+   * @return the segment and offset the record was written at
+   * @throws IOException if an exception was encountered while writing
+   */
+  private @NonNull Location write(final byte@NonNull[] record, final long sequence) throws IOException {
+    if(this.active.size > 0 && this.active.size + record.length > this.segmentBytes) {
+      this.roll();
+    }
+    final Segment segment = this.active;
+    final FileChannel channel = segment.channel;
+    final long offset;
+    try {
+      offset = segment.append(record);
+      if(this.sync) {
+        channel.force(false);
+      }
+    } catch(final ClosedByInterruptException e) {
+      this.reopen(segment, channel);
+      throw e;
+    }
+    segment.minSequence = Math.min(segment.minSequence, sequence);
+    this.appendedSinceCheckpoint += record.length;
+    if(this.appendedSinceCheckpoint >= this.checkpointBytes && this.checkpointScheduled.compareAndSet(false, true)) {
+      this.appendedSinceCheckpoint = 0;
+      this.executor.execute(() -> {
+        this.checkpointScheduled.set(false);
+        this.background(this::checkpoint);
+      });
+    }
+    return new Location(segment, offset, record.length, sequence, false);
+  }
+
+  private void roll() throws IOException {
+    this.active.channel.force(false);
+    this.active = this.open(this.active.id + 1);
+    if(this.compactionScheduled.compareAndSet(false, true)) {
+      this.executor.execute(() -> {
+        this.compactionScheduled.set(false);
+        this.background(this::compact);
+      });
+    }
+  }
+
+  private void apply(final @NonNull String key, final @NonNull Location where, final int length, final long sequence, final boolean deleted) {
+    final Location location = new Location(where.segment, where.offset, length, sequence, deleted);
+    final Location previous = this.index.put(key, location);
+    if(previous != null) {
+      previous.segment.live -= previous.length;
+      if(!previous.deleted) {
+        this.size--;
+      }
+    }
+    location.segment.live += length;
+    if(!deleted) {
+      this.size++;
+    }
+  }
+
+  /**
+   * Compacts a segment, by appending its live records again.
+   *
+   * @param segment the segment
+   * @throws IOException if an exception was encountered while compacting
+   */
+  private void compact(final @NonNull Segment segment) throws IOException {
+    try(final InputStream input = new BufferedInputStream(Files.newInputStream(segment.path))) {
+      long offset = 0;
+      while(true) {
+        final byte @Nullable [] record = readRecord(input, segment.size - offset);
+        if(record == null) {
+          break;
+        }
+        final String key = key(record);
+        synchronized(this) {
+          this.ensureOpen();
+          final Location location = this.index.get(key);
+          if(location != null && location.segment == segment && location.offset == offset) {
+            if(location.deleted && this.olderThanAllOthers(location.sequence, segment)) {
+              // nothing older is left for the removal to hide
+              this.index.remove(key);
+              segment.live -= location.length;
+            } else {
+              this.apply(key, this.write(record, location.sequence), record.length, location.sequence, location.deleted);
+            }
+          }
+        }
+        offset += record.length;
+      }
+    }
+    synchronized(this) {
+      this.segments.remove(segment.id);
+    }
+  }
+
+  private boolean olderThanAllOthers(final long sequence, final @NonNull Segment segment) {
+    for(final Segment other : this.segments.values()) {
+      if(other != segment && other.minSequence < sequence) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void writeCheckpoint() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final CRC32 crc = new CRC32();
+    final DataOutputStream output = new DataOutputStream(new CheckedOutputStream(bytes, crc));
+    final List<Segment> segments;
+    synchronized(this) {
+      if(this.closed) {
+        return;
+      }
+      segments = new ArrayList<>(this.segments.values());
+      output.writeInt(CHECKPOINT_MAGIC);
+      output.writeInt(CHECKPOINT_VERSION);
+      output.writeLong(this.nextSequence);
+      output.writeInt(this.segments.size());
+      for(final Segment segment : this.segments.values()) {
+        output.writeLong(segment.id);
+        output.writeLong(segment.size);
+        output.writeLong(segment.minSequence);
+      }
+      output.writeInt(this.index.size());
+      for(final Map.Entry<String, Location> entry : this.index.entrySet()) {
+        final Location location = entry.getValue();
+        output.writeUTF(entry.getKey());
+        output.writeLong(location.segment.id);
+        output.writeLong(location.offset);
+        output.writeInt(location.length);
+        output.writeLong(location.sequence);
+        output.writeBoolean(location.deleted);
+      }
+      this.appendedSinceCheckpoint = 0;
+    }
+    output.writeInt((int) crc.getValue());
+    // the segments the checkpoint refers to must be on disk before it is
+    for(final Segment segment : segments) {
+      segment.channel.force(false);
+    }
+    final Path temp = this.directory.resolve(CHECKPOINT + ".tmp");
+    try(final FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+      while(buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+    try {
+      Files.move(temp, this.directory.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE);
+    } catch(final AtomicMoveNotSupportedException e) {
+      Files.move(temp, this.directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private void recover() throws IOException {
+    try(final DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "*" + SEGMENT_SUFFIX)) {
+      for(final Path file : files) {
+        final String name = file.getFileName().toString();
+        final long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()), 16);
+        this.segments.put(id, this.open(id));
+      }
+    }
+    final Map<Long, Long> replayFrom = new HashMap<>();
+    if(!this.readCheckpoint(replayFrom)) {
+      this.index.clear();
+      this.nextSequence = 0;
+      replayFrom.clear();
+      for(final Segment segment : this.segments.values()) {
+        segment.minSequence = Long.MAX_VALUE;
+      }
+    }
+    for(final Segment segment : this.segments.values()) {
+      final Long from = replayFrom.get(segment.id);
+      this.replay(segment, from != null ? from : 0);
+    }
+    this.size = 0;
+    for(final Segment segment : this.segments.values()) {
+      segment.live = 0;
+    }
+    for(final Location location : this.index.values()) {
+      location.segment.live += location.length;
+      if(!location.deleted) {
+        this.size++;
+      }
+    }
+    this.active = this.segments.isEmpty() ? this.open(0) : this.segments.lastEntry().getValue();
+  }
+
+  private boolean readCheckpoint(final @NonNull Map<Long, Long> replayFrom) throws IOException {
+    final Path path = this.directory.resolve(CHECKPOINT);
+    if(!Files.exists(path)) {
+      return false;
+    }
+    final byte[] bytes = Files.readAllBytes(path);
+    if(bytes.length < 4) {
+      return false;
+    }
+    final CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length - 4);
+    if((int) crc.getValue() != ByteArrays.getInt(bytes, bytes.length - 4)) {
+      return false;
+    }
+    final DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4));
+    if(input.readInt() != CHECKPOINT_MAGIC || input.readInt() != CHECKPOINT_VERSION) {
+      return false;
+    }
+    this.nextSequence = input.readLong();
+    final int segments = input.readInt();
+    for(int i = 0; i < segments; i++) {
+      final Segment segment = this.segments.get(input.readLong());
+      final long size = input.readLong();
+      final long minSequence = input.readLong();
+      if(segment == null || segment.size < size) {
+        return false; // the checkpoint is not for these segments
+      }
+      segment.minSequence = minSequence;
+      replayFrom.put(segment.id, size);
+    }
+    final int entries = input.readInt();
+    for(int i = 0; i < entries; i++) {
+      final String key = input.readUTF();
+      final Segment segment = this.segments.get(input.readLong());
+      if(segment == null) {
+        return false;
+      }
+      this.index.put(key, new Location(segment, input.readLong(), input.readInt(), input.readLong(), input.readBoolean()));
+    }
+    return true;
+  }
+
+  /**
+   * Replays the records of a segment into the index, truncating the segment at the first torn record.
+   *
+   * @param segment the segment
+   * @param from the offset to replay from
+   * @throws IOException if an exception was encountered while replaying
+   */
+  private void replay(final @NonNull Segment segment, final long from) throws IOException {
+    try(final InputStream input = new BufferedInputStream(Files.newInputStream(segment.path))) {
+      long skipped = 0;
+      while(skipped < from) {
+        final long n = input.skip(from - skipped);
+        if(n <= 0) {
+          throw new EOFException();
+        }
+        skipped += n;
+      }
+      long offset = from;
+      while(true) {
+        final byte @Nullable [] record = readRecord(input, segment.size - offset);
+        if(record == null) {
+          break;
+        }
+        final long sequence = ByteArrays.getLong(record, HEADER);
+        final String key = key(record);
+        final Location previous = this.index.get(key);
+        if(previous == null || previous.sequence < sequence) {
+          this.index.put(key, new Location(segment, offset, record.length, sequence, record[HEADER + 8] == DELETE));
+        }
+        segment.minSequence = Math.min(segment.minSequence, sequence);
+        this.nextSequence = Math.max(this.nextSequence, sequence + 1);
+        offset += record.length;
+      }
+      if(offset < segment.size) {
+        segment.channel.truncate(offset);
+        segment.size = offset;
+      }
+    }
+  }
+
+  private @NonNull Segment open(final long id) throws IOException {
+    final Path path = this.directory.resolve(String.format("%016x%s", id, SEGMENT_SUFFIX));
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    final Segment segment = new Segment(id, path, channel, channel.size());
+    this.segments.put(id, segment);
+    return segment;
+  }
+
+  /**
+   * Reopens a segment whose channel was closed by an interrupted read or write, so that the interrupt
+   * does not break the store for other threads.
+   *
+   * <p>Must be called while holding the lock on this store.</p>
+   *
+   * @param segment the segment
+   * @param closed the channel that was closed
+   * @throws IOException if an exception was encountered while reopening the segment
+   */
+  private void reopen(final @NonNull Segment segment, final @NonNull FileChannel closed) throws IOException {
+    if(segment.channel == closed && !closed.isOpen()) {
+      segment.channel = FileChannel.open(segment.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+  }
+
+  private void closeSegments() throws IOException {
+    for(final Segment segment : this.segments.values()) {
+      segment.channel.close();
+    }
+  }
+
+  private void ensureOpen() {
+    if(this.closed) {
+      throw new IllegalStateException("Store is closed");
+    }
+  }
+
+  private void background(final @NonNull Task task) {
+    try {
+      synchronized(this) {
+        if(this.closed) {
+          return;
+        }
+      }
+      task.run();
+    } catch(final IOException e) {
+      this.backgroundFailure = e;
+    } catch(final IllegalStateException ignored) {
+      // closed while running
+    }
+  }
+
+  private static void writeHeader(final @NonNull DataOutputStream output, final byte type, final @NonNull Compression compression, final @NonNull String key) throws IOException {
+    output.writeInt(0); // length, filled in when appended
+    output.writeInt(0); // checksum, filled in when appended
+    output.writeLong(0); // sequence number, filled in when appended
+    output.writeByte(type);
+    output.writeByte(compression.ordinal());
+    output.writeUTF(key);
+  }
+
+  /**
+   * Reads a record.
+   *
+   * @param input the input
+   * @param remaining the number of bytes left in the segment, which bounds the length of the record
+   * @return the record, or {@code null} at the end of the input or at a torn record
+   * @throws IOException if an exception was encountered while reading
+   */
+  private static byte @Nullable [] readRecord(final @NonNull InputStream input, final long remaining) throws IOException {
+    final byte[] header = new byte[HEADER];
+    if(!readFully(input, header, 0, HEADER)) {
+      return null;
+    }
+    final int length = ByteArrays.getInt(header, 0);
+    // a torn length is not trusted for the allocation below
+    if(length < KEY + 2 - HEADER || length > Integer.MAX_VALUE - HEADER || length > remaining - HEADER) {
+      return null;
+    }
+    final CheckedInputStream checked = new CheckedInputStream(input, new CRC32());
+    final byte[] record = new byte[HEADER + length];
+    System.arraycopy(header, 0, record, 0, HEADER);
+    if(!readFully(checked, record, HEADER, length) || (int) checked.getChecksum().getValue() != ByteArrays.getInt(header, 4)) {
+      return null;
+    }
+    return record;
+  }
+
+  private static boolean readFully(final @NonNull InputStream input, final byte@NonNull[] bytes, int offset, int length) throws IOException {
+    while(length > 0) {
+      final int read = input.read(bytes, offset, length);
+      if(read < 0) {
+        return false;
+      }
+      offset += read;
+      length -= read;
+    }
+    return true;
+  }
+
+  private static @NonNull String key(final byte@NonNull[] record) throws IOException {
+    return new DataInputStream(new ByteArrayInputStream(record, KEY, record.length - KEY)).readUTF();
+  }
+
+  private static int checksum(final byte@NonNull[] record, final int offset, final int length) {
+    final CRC32 crc = new CRC32();
+    crc.update(record, offset + HEADER, length - HEADER);
+    return (int) crc.getValue();
+  }
+
+  @FunctionalInterface
+  private interface Task {
+    void run() throws IOException;
+  }
+
+  private static final class Segment {
+    final long id;
+    final Path path;
+    /**
+     * The channel, replaced if an interrupted read or write closes it. Written while holding the lock on the store.
+     */
+    volatile FileChannel channel;
+    /**
+     * The number of bytes written. Guarded by the store, as are the fields below.
+     */
+    long size;
+    /**
+     * The number of bytes in records that are not superseded.
+     */
+    long live;
+    /**
+     * The lowest sequence number of the records in this segment.
+     */
+    long minSequence = Long.MAX_VALUE;
+
+    Segment(final long id, final @NonNull Path path, final @NonNull FileChannel channel, final long size) {
+      this.id = id;
+      this.path = path;
+      this.channel = channel;
+      this.size = size;
+    }
+
+    long append(final byte@NonNull[] record) throws IOException {
+      final long offset = this.size;
+      final ByteBuffer buffer = ByteBuffer.wrap(record);
+      long position = offset;
+      while(buffer.hasRemaining()) {
+        position += this.channel.write(buffer, position);
+      }
+      this.size = position;
+      return offset;
+    }
+
+    static byte@NonNull[] read(final @NonNull FileChannel channel, final long offset, final int length) throws IOException {
+      final ByteBuffer buffer = ByteBuffer.allocate(length);
+      long position = offset;
+      while(buffer.hasRemaining()) {
+        final int read = channel.read(buffer, position);
+        if(read < 0) {
+          throw new EOFException();
+        }
+        position += read;
+      }
+      return buffer.array();
+    }
+  }
+
+  private static final class Location {
+    final Segment segment;
+    final long offset;
+    final int length;
+    final long sequence;
+    final boolean deleted;
+
+    Location(final @NonNull Segment segment, final long offset, final int length, final long sequence, final boolean deleted) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+      this.sequence = sequence;
+      this.deleted = deleted;
+    }
+  }
+
+  /**
+   * A tag store builder.
+   */
+  public static final class Builder {
+    private Compression compression = Compression.GZIP;
+    private long segmentBytes = 64L * 1024 * 1024;
+    private long checkpointBytes = 16L * 1024 * 1024;
+    private double garbageRatio = 0.5;
+    private boolean sync;
+    private @Nullable Executor executor;
+
+    Builder() {
+    }
+
+    /**
+     * Sets the compression records are written with, unless given when putting them.
+     *
+     * @param compression the compression
+     * @return this builder
+     */
+    public @NonNull Builder compression(final @NonNull Compression compression) {
+      this.compression = requireNonNull(compression, "compression");
+      return this;
+    }
+
+    /**
+     * Sets the size at which a new segment is started.
+     *
+     * @param segmentBytes the size, in bytes
+     * @return this builder
+     */
+    public @NonNull Builder segmentBytes(final long segmentBytes) {
+      if(segmentBytes < 1) {
+        throw new IllegalArgumentException(String.format("Segment size of %d is lower than 1", segmentBytes));
+      }
+      this.segmentBytes = segmentBytes;
+      return this;
+    }
+
+    /**
+     * Sets the number of bytes appended after which a checkpoint is written in the background.
+     *
+     * @param checkpointBytes the number of bytes
+     * @return this builder
+     */
+    public @NonNull Builder checkpointBytes(final long checkpointBytes) {
+      if(checkpointBytes < 1) {
+        throw new IllegalArgumentException(String.format("Checkpoint interval of %d is lower than 1", checkpointBytes));
+      }
+      this.checkpointBytes = checkpointBytes;
+      return this;
+    }
+
+    /**
+     * Sets the share of superseded records at which a segment is compacted.
+     *
+     * @param garbageRatio the share, between {@code 0} and {@code 1}
+     * @return this builder
+     */
+    public @NonNull Builder garbageRatio(final double garbageRatio) {
+      if(!(garbageRatio >= 0 && garbageRatio <= 1)) {
+        throw new IllegalArgumentException(String.format("Garbage ratio of %s is not between 0 and 1", garbageRatio));
+      }
+      this.garbageRatio = garbageRatio;
+      return this;
+    }
+
+    /**
+     * Sets if every record is forced to disk before {@code put} or {@code remove} returns.
+     *
+     * @param sync if records are forced to disk
+     * @return this builder
+     */
+    public @NonNull Builder sync(final boolean sync) {
+      this.sync = sync;
+      return this;
+    }
+
+    /**
+     * Sets the executor checkpoints and compactions run on.
+     *
+     * @param executor the executor
+     * @return this builder
+     */
+    public @NonNull Builder executor(final @NonNull Executor executor) {
+      this.executor = requireNonNull(executor, "executor");
+      return this;
+    }
+
+    /**
+     * Opens a tag store in {@code directory}, creating it if it does not exist.
+     *
+     * @param directory the directory
+     * @return the tag store
+     * @throws IOException if an exception was encountered while opening the tag store
+     */
+    public @NonNull TagStore open(final @NonNull Path directory) throws IOException {
+      return new TagStore(directory, this.compression, this.segmentBytes, this.checkpointBytes, this.garbageRatio, this.sync, this.executor != null ? this.executor : BlockingExecutors.create("nbt-store-"));
+    }
+  }
+}
@@ -0,0 +1,682 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * A read-only, flat representation of a compound tag.
+ *
+ * <p>A tape holds the encoded bytes of a compound tag along with a single array of structural entries,
+ * one per tag, in the order the tags appear in the encoded bytes. Each entry records the type of a tag,
+ * where its key and value are located in the encoded bytes, and the index of the entry following the
+ * tag and all of its children - so an entire subtree can be skipped in constant time.</p>
+ *
+ * <p>A tape is navigated with a {@link Cursor}. Values are decoded from the encoded bytes on request,
+ * and arrays are exposed as views over the encoded bytes.</p>
+ */
+public final class TagTape {
+  /**
+   * The key offset of an entry which has no key.
+   */
+  private static final long NO_KEY = 0xffffffffL;
+  /**
+   * The number of {@code long}s used by each entry.
+   */
+  private static final int ENTRY_WIDTH = 2;
+  /**
+   * The encoded bytes.
+   */
+  private final @NonNull ByteBuffer data;
+  /**
+   * The structural entries.
+   *
+   * <p>The first word of an entry holds the type id in the upper 8 bits, and the offset of the key
+   * in the lower 32 bits. The second word holds the offset of the value in the upper 32 bits, and
+   * the index of the next entry outside of this tag in the lower 32 bits.</p>
+   */
+  private final @NonNull LongBuffer entries;
+
+  TagTape(final @NonNull ByteBuffer data, final @NonNull LongBuffer entries) {
+    this.data = data;
+    this.entries = entries;
+  }
+
+  /**
+   * Parses a tape from the encoded bytes of a root compound tag.
+   *
+   * @param data the encoded bytes
+   * @return the tape
+   * @throws IOException if the bytes are not a valid compound tag
+   */
+  static @NonNull TagTape parse(final @NonNull ByteBuffer data) throws IOException {
+    final ByteBuffer buffer = data.slice().order(ByteOrder.BIG_ENDIAN);
+    try {
+      return new Parser(buffer).parse();
+    } catch(final IndexOutOfBoundsException e) {
+      final EOFException eof = new EOFException("Unexpected end of tape data");
+      eof.initCause(e);
+      throw eof;
+    }
+  }
+
+  /**
+   * Gets the number of tags in this tape.
+   *
+   * @return the number of tags
+   */
+  public int size() {
+    return this.entries.limit() / ENTRY_WIDTH;
+  }
+
+  /**
+   * Creates a new cursor positioned at the root compound tag.
+   *
+   * @return a new cursor
+   */
+  public @NonNull Cursor cursor() {
+    return new Cursor();
+  }
+
+  /**
+   * Gets the encoded bytes this tape was parsed from.
+   *
+   * @return the encoded bytes
+   */
+  ByteBuffer data() {
+    return this.data.duplicate();
+  }
+
+  /**
+   * Gets the structural entries of this tape.
+   *
+   * @return the entries
+   */
+  LongBuffer entries() {
+    return this.entries.duplicate();
+  }
+
+  private @NonNull TagType type(final int entry) {
+    return TagType.of((byte) (this.entries.get(entry * ENTRY_WIDTH) >>> 56));
+  }
+
+  private int keyOffset(final int entry) {
+    return (int) this.entries.get(entry * ENTRY_WIDTH);
+  }
+
+  private int valueOffset(final int entry) {
+    return (int) (this.entries.get(entry * ENTRY_WIDTH + 1) >>> 32);
+  }
+
+  private int next(final int entry) {
+    return (int) this.entries.get(entry * ENTRY_WIDTH + 1);
+  }
+
+  /**
+   * A cursor over the tags of a tape.
+   *
+   * <p>A cursor is positioned at a single tag. It can {@link #enter(String) enter} a child of the
+   * current tag, move to the {@link #next() next} sibling, or {@link #exit() exit} back to the parent.</p>
+   */
+  public final class Cursor {
+    /**
+     * The current entry.
+     */
+    private int entry;
+    /**
+     * The stack of parent entries.
+     */
+    private int[] parents = new int[8];
+    /**
+     * The number of parents.
+     */
+    private int depth;
+
+    Cursor() {
+    }
+
+    /**
+     * Gets the type of the current tag.
+     *
+     * @return the type
+     */
+    public @NonNull TagType type() {
+      return TagTape.this.type(this.entry);
+    }
+
+    /**
+     * Gets the key of the current tag.
+     *
+     * @return the key, or {@code null} if the current tag is the root, or an element of a list
+     */
+    public @Nullable String key() {
+      final int offset = TagTape.this.keyOffset(this.entry);
+      if(offset == (int) NO_KEY) {
+        return null;
+      }
+      return this.string(offset);
+    }
+
+    /**
+     * Gets the depth of the current tag, where the root tag has a depth of zero.
+     *
+     * @return the depth
+     */
+    public int depth() {
+      return this.depth;
+    }
+
+    /**
+     * Moves to the child of the current compound tag with the specified key.
+     *
+     * @param key the key
+     * @return {@code true} if the cursor was moved, {@code false} if there is no child with the key
+     * @throws IllegalStateException if the current tag is not a compound tag
+     */
+    public boolean enter(final @NonNull String key) {
+      this.expect(TagType.COMPOUND);
+      final byte[] encoded = ModifiedUtf8.encode(key);
+      final ByteBuffer data = TagTape.this.data;
+      for(int child = this.entry + 1, end = TagTape.this.next(this.entry); child < end; child = TagTape.this.next(child)) {
+        final int offset = TagTape.this.keyOffset(child);
+        if((data.getShort(offset) & 0xffff) == encoded.length && this.matches(offset + 2, encoded)) {
+          this.push(child);
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Moves to the first child of the current compound or list tag.
+     *
+     * @return {@code true} if the cursor was moved, {@code false} if the current tag has no children
+     * @throws IllegalStateException if the current tag is not a compound or list tag
+     */
+    public boolean enter() {
+      final TagType type = this.type();
+      if(type != TagType.COMPOUND && type != TagType.LIST) {
+        throw new IllegalStateException(String.format("Expected a %s or %s, was %s", TagType.COMPOUND, TagType.LIST, type));
+      }
+      final int child = this.entry + 1;
+      if(child >= TagTape.this.next(this.entry)) {
+        return false;
+      }
+      this.push(child);
+      return true;
+    }
+
+    /**
+     * Moves to the element of the current list tag at the specified index.
+     *
+     * @param index the index
+     * @return {@code true} if the cursor was moved, {@code false} if the index is out of range
+     * @throws IllegalStateException if the current tag is not a list tag
+     */
+    public boolean enter(final int index) {
+      this.expect(TagType.LIST);
+      if(index < 0) {
+        return false;
+      }
+      int child = this.entry + 1;
+      final int end = TagTape.this.next(this.entry);
+      for(int i = 0; i < index && child < end; i++) {
+        child = TagTape.this.next(child);
+      }
+      if(child >= end) {
+        return false;
+      }
+      this.push(child);
+      return true;
+    }
+
+    /**
+     * Moves to the next sibling of the current tag, skipping over all of its children.
+     *
+     * @return {@code true} if the cursor was moved, {@code false} if the current tag is the last child of its parent
+     */
+    public boolean next() {
+      if(this.depth == 0) {
+        return false;
+      }
+      final int next = TagTape.this.next(this.entry);
+      if(next >= TagTape.this.next(this.parents[this.depth - 1])) {
+        return false;
+      }
+      this.entry = next;
+      return true;
+    }
+
+    /**
+     * Moves to the parent of the current tag.
+     *
+     * @return {@code true} if the cursor was moved, {@code false} if the current tag is the root
+     */
+    public boolean exit() {
+      if(this.depth == 0) {
+        return false;
+      }
+      this.entry = this.parents[--this.depth];
+      return true;
+    }
+
+    /**
+     * Gets the size of the current tag.
+     *
+     * <p>For a compound tag, this requires a walk over its children.</p>
+     *
+     * @return the number of children of a compound or list tag, or the length of an array tag
+     * @throws IllegalStateException if the current tag is not a compound, list or array tag
+     */
+    public int size() {
+      final TagType type = this.type();
+      switch(type) {
+        case COMPOUND:
+          int size = 0;
+          for(int child = this.entry + 1, end = TagTape.this.next(this.entry); child < end; child = TagTape.this.next(child)) {
+            size++;
+          }
+          return size;
+        case LIST:
+          return TagTape.this.data.getInt(this.offset() + 1);
+        case BYTE_ARRAY:
+        case INT_ARRAY:
+        case LONG_ARRAY:
+          return TagTape.this.data.getInt(this.offset());
+        default:
+          throw new IllegalStateException(String.format("Expected a collection, was %s", type));
+      }
+    }
+
+    /**
+     * Gets the value of the current number tag as an {@code int}.
+     *
+     * @return the int value
+     * @throws IllegalStateException if the current tag is not a number tag
+     */
+    public int intValue() {
+      final TagType type = this.type();
+      final int offset = this.offset();
+      switch(type) {
+        case BYTE:
+          return TagTape.this.data.get(offset);
+        case SHORT:
+          return TagTape.this.data.getShort(offset);
+        case INT:
+          return TagTape.this.data.getInt(offset);
+        case LONG:
+          return (int) TagTape.this.data.getLong(offset);
+        case FLOAT:
+          return NumberTag.floor(TagTape.this.data.getFloat(offset));
+        case DOUBLE:
+          return NumberTag.floor(TagTape.this.data.getDouble(offset));
+        default:
+          throw new IllegalStateException(String.format("Expected a number, was %s", type));
+      }
+    }
+
+    /**
+     * Gets the value of the current number tag as a {@code long}.
+     *
+     * @return the long value
+     * @throws IllegalStateException if the current tag is not a number tag
+     */
+    public long longValue() {
+      final TagType type = this.type();
+      final int offset = this.offset();
+      switch(type) {
+        case LONG:
+          return TagTape.this.data.getLong(offset);
+        case FLOAT:
+          return (long) TagTape.this.data.getFloat(offset);
+        case DOUBLE:
+          return (long) TagTape.this.data.getDouble(offset);
+        default:
+          return this.intValue();
+      }
+    }
+
+    /**
+     * Gets the value of the current number tag as a {@code double}.
+     *
+     * @return the double value
+     * @throws IllegalStateException if the current tag is not a number tag
+     */
+    public double doubleValue() {
+      final TagType type = this.type();
+      final int offset = this.offset();
+      switch(type) {
+        case LONG:
+          return (double) TagTape.this.data.getLong(offset);
+        case FLOAT:
+          return (double) TagTape.this.data.getFloat(offset);
+        case DOUBLE:
+          return TagTape.this.data.getDouble(offset);
+        default:
+          return (double) this.intValue();
+      }
+    }
+
+    /**
+     * Gets the value of the current string tag.
+     *
+     * @return the string value
+     * @throws IllegalStateException if the current tag is not a string tag
+     */
+    public @NonNull String stringValue() {
+      this.expect(TagType.STRING);
+      return this.string(this.offset());
+    }
+
+    /**
+     * Gets a view of the value of the current byte array tag.
+     *
+     * @return a read-only view of the bytes
+     * @throws IllegalStateException if the current tag is not a byte array tag
+     */
+    public @NonNull ByteBuffer byteArrayView() {
+      this.expect(TagType.BYTE_ARRAY);
+      return this.arrayView(Byte.BYTES);
+    }
+
+    /**
+     * Gets a view of the value of the current int array tag.
+     *
+     * @return a read-only view of the ints
+     * @throws IllegalStateException if the current tag is not an int array tag
+     */
+    public @NonNull IntBuffer intArrayView() {
+      this.expect(TagType.INT_ARRAY);
+      return this.arrayView(Integer.BYTES).asIntBuffer();
+    }
+
+    /**
+     * Gets a view of the value of the current long array tag.
+     *
+     * @return a read-only view of the longs
+     * @throws IllegalStateException if the current tag is not a long array tag
+     */
+    public @NonNull LongBuffer longArrayView() {
+      this.expect(TagType.LONG_ARRAY);
+      return this.arrayView(Long.BYTES).asLongBuffer();
+    }
+
+    /**
+     * Decodes the current tag, and all of its children.
+     *
+     * @return the decoded tag
+     */
+    public @NonNull Tag toTag() {
+      final ByteBuffer buffer = TagTape.this.data.duplicate();
+      buffer.position(this.offset());
+      final Tag tag = this.type().create();
+      try {
+        tag.read(new DataInputStream(new ByteBufferInputStream(buffer)), this.depth);
+      } catch(final IOException e) {
+        throw new IllegalStateException(e); // the structure was validated when the tape was parsed
+      }
+      return tag;
+    }
+
+    private int offset() {
+      return TagTape.this.valueOffset(this.entry);
+    }
+
+    private void expect(final @NonNull TagType expected) {
+      final TagType type = this.type();
+      if(type != expected) {
+        throw new IllegalStateException(String.format("Expected a %s, was %s", expected, type));
+      }
+    }
+
+    private void push(final int child) {
+      if(this.depth == this.parents.length) {
+        this.parents = Arrays.copyOf(this.parents, this.depth * 2);
+      }
+      this.parents[this.depth++] = this.entry;
+      this.entry = child;
+    }
+
+    private boolean matches(final int offset, final byte@NonNull[] encoded) {
+      final ByteBuffer data = TagTape.this.data;
+      for(int i = 0; i < encoded.length; i++) {
+        if(data.get(offset + i) != encoded[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private @NonNull ByteBuffer arrayView(final int width) {
+      final ByteBuffer buffer = TagTape.this.data.asReadOnlyBuffer();
+      final int offset = this.offset() + Integer.BYTES;
+      buffer.position(offset);
+      buffer.limit(offset + TagTape.this.data.getInt(this.offset()) * width);
+      return buffer.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    private @NonNull String string(final int offset) {
+      final int length = TagTape.this.data.getShort(offset) & 0xffff;
+      final byte[] bytes = new byte[length];
+      final ByteBuffer buffer = TagTape.this.data.duplicate();
+      buffer.position(offset + 2);
+      buffer.get(bytes);
+      try {
+        return ModifiedUtf8.decode(bytes);
+      } catch(final UTFDataFormatException e) {
+        throw new IllegalStateException("Malformed string value", e);
+      }
+    }
+  }
+
+  /**
+   * A tape parser.
+   */
+  private static final class Parser {
+    private final ByteBuffer data;
+    private long[] entries;
+    private int size;
+    private int position;
+    /**
+     * The stack of open compound and list entries.
+     */
+    private int[] open = new int[16];
+    /**
+     * The number of elements remaining in each open list, or {@code -1} for an open compound.
+     */
+    private int[] remaining = new int[16];
+    private int depth;
+
+    Parser(final @NonNull ByteBuffer data) {
+      this.data = data;
+      this.entries = new long[16 * ENTRY_WIDTH];
+    }
+
+    @NonNull TagTape parse() throws IOException {
+      final TagType rootType = TagType.of(this.data.get(0));
+      if(rootType != TagType.COMPOUND) {
+        throw new IOException(String.format("Expected root tag to be a %s, was %s", TagType.COMPOUND, rootType));
+      }
+      this.position = 3 + (this.data.getShort(1) & 0xffff); // skip empty name
+      this.value(TagType.COMPOUND, NO_KEY);
+
+      while(this.depth > 0) {
+        final int top = this.depth - 1;
+        if(this.remaining[top] < 0) {
+          final TagType type = TagType.of(this.data.get(this.position++));
+          if(type == TagType.END) {
+            this.close();
+            continue;
+          }
+          final long key = this.position;
+          this.advance(2 + (this.data.getShort(this.position) & 0xffff));
+          this.value(type, key);
+        } else if(this.remaining[top] == 0) {
+          this.close();
+        } else {
+          this.remaining[top]--;
+          this.value(TagType.of(this.data.get(this.valueOffset(this.open[top]))), NO_KEY);
+        }
+      }
+
+      final LongBuffer entries = LongBuffer.wrap(Arrays.copyOf(this.entries, this.size * ENTRY_WIDTH));
+      final ByteBuffer data = this.data.duplicate();
+      data.limit(this.position);
+      return new TagTape(data.slice().order(ByteOrder.BIG_ENDIAN), entries);
+    }
+
+    private void value(final @NonNull TagType type, final long key) throws IOException {
+      final int entry = this.size++;
+      if(this.size * ENTRY_WIDTH > this.entries.length) {
+        this.entries = Arrays.copyOf(this.entries, this.entries.length * 2);
+      }
+      this.entries[entry * ENTRY_WIDTH] = ((long) type.id() << 56) | key;
+      this.entries[entry * ENTRY_WIDTH + 1] = ((long) this.position << 32) | (entry + 1);
+      switch(type) {
+        case END:
+          break;
+        case BYTE:
+          this.advance(Byte.BYTES);
+          break;
+        case SHORT:
+          this.advance(Short.BYTES);
+          break;
+        case INT:
+        case FLOAT:
+          this.advance(Integer.BYTES);
+          break;
+        case LONG:
+        case DOUBLE:
+          this.advance(Long.BYTES);
+          break;
+        case BYTE_ARRAY:
+          this.array(Byte.BYTES);
+          break;
+        case STRING:
+          this.advance(2 + (this.data.getShort(this.position) & 0xffff));
+          break;
+        case LIST: {
+          final TagType elementType = TagType.of(this.data.get(this.position));
+          final int length = this.data.getInt(this.position + 1);
+          if(length < 0) {
+            throw new IOException(String.format("List length of %d is negative", length));
+          }
+          if(elementType == TagType.END && length > 0) {
+            throw new IOException(String.format("List of %d %s tags is not empty", length, TagType.END));
+          }
+          this.advance(1 + Integer.BYTES);
+          // every element takes up at least a few bytes, so a list can not have more elements than there are bytes left
+          if((long) length * minimumSize(elementType) > this.data.limit() - this.position) {
+            throw new EOFException("Unexpected end of tape data");
+          }
+          this.push(entry, length);
+          break;
+        }
+        case COMPOUND:
+          this.push(entry, -1);
+          break;
+        case INT_ARRAY:
+          this.array(Integer.BYTES);
+          break;
+        case LONG_ARRAY:
+          this.array(Long.BYTES);
+          break;
+      }
+    }
+
+    private static int minimumSize(final @NonNull TagType type) {
+      switch(type) {
+        case BYTE:
+        case COMPOUND:
+          return 1;
+        case SHORT:
+        case STRING:
+          return 2;
+        case INT:
+        case FLOAT:
+        case BYTE_ARRAY:
+        case INT_ARRAY:
+        case LONG_ARRAY:
+          return 4;
+        case LIST:
+          return 5;
+        case LONG:
+        case DOUBLE:
+          return 8;
+        default:
+          return 0;
+      }
+    }
+
+    private void array(final int width) throws IOException {
+      final int length = this.data.getInt(this.position);
+      if(length < 0) {
+        throw new IOException(String.format("Array length of %d is negative", length));
+      }
+      this.advance(Integer.BYTES + (long) length * width);
+    }
+
+    private void advance(final long length) throws EOFException {
+      final long position = this.position + length;
+      if(position > this.data.limit()) {
+        throw new EOFException("Unexpected end of tape data");
+      }
+      this.position = (int) position;
+    }
+
+    private void push(final int entry, final int remaining) {
+      if(this.depth > CompoundTag.MAX_DEPTH) {
+        throw new IllegalStateException(String.format("Depth of %d is higher than max of %d", this.depth, CompoundTag.MAX_DEPTH));
+      }
+      if(this.depth == this.open.length) {
+        this.open = Arrays.copyOf(this.open, this.depth * 2);
+        this.remaining = Arrays.copyOf(this.remaining, this.depth * 2);
+      }
+      this.open[this.depth] = entry;
+      this.remaining[this.depth] = remaining;
+      this.depth++;
+    }
+
+    private void close() {
+      final int entry = this.open[--this.depth];
+      final int index = entry * ENTRY_WIDTH + 1;
+      this.entries[index] = (this.entries[index] & 0xffffffff00000000L) | this.size;
+    }
+
+    private int valueOffset(final int entry) {
+      return (int) (this.entries[entry * ENTRY_WIDTH + 1] >>> 32);
+    }
+  }
+}
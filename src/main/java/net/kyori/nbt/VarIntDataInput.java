@@ -0,0 +1,77 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+/**
+ * A data input reading zigzag varint ints and longs and varint-prefixed UTF-8 strings, as used by the
+ * Bedrock edition network protocol.
+ *
+ * <p>Shorts, floats and doubles are little-endian.</p>
+ */
+final class VarIntDataInput extends LittleEndianDataInput {
+  VarIntDataInput(final @NonNull DataInput input) {
+    super(input);
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    final int value = this.readUnsignedVarInt();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    long value = 0;
+    for(int shift = 0; shift < Long.SIZE; shift += 7) {
+      final byte b = this.input.readByte();
+      value |= (long) (b & 0x7f) << shift;
+      if(b >= 0) {
+        return (value >>> 1) ^ -(value & 1);
+      }
+    }
+    throw new IOException("VarLong is too long");
+  }
+
+  @Override
+  public @NonNull String readUTF() throws IOException {
+    return this.readUTF(this.readUnsignedVarInt());
+  }
+
+  private int readUnsignedVarInt() throws IOException {
+    int value = 0;
+    for(int shift = 0; shift < Integer.SIZE; shift += 7) {
+      final byte b = this.input.readByte();
+      value |= (b & 0x7f) << shift;
+      if(b >= 0) {
+        return value;
+      }
+    }
+    throw new IOException("VarInt is too long");
+  }
+}
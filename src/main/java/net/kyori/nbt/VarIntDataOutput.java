@@ -0,0 +1,72 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A data output writing zigzag varint ints and longs and varint-prefixed UTF-8 strings, as used by the
+ * Bedrock edition network protocol.
+ *
+ * <p>Shorts, floats and doubles are little-endian.</p>
+ */
+final class VarIntDataOutput extends LittleEndianDataOutput {
+  VarIntDataOutput(final @NonNull DataOutput output) {
+    super(output);
+  }
+
+  @Override
+  public void writeInt(final int v) throws IOException {
+    this.writeUnsignedVarInt((v << 1) ^ (v >> 31));
+  }
+
+  @Override
+  public void writeLong(final long v) throws IOException {
+    long value = (v << 1) ^ (v >> 63);
+    while((value & ~0x7fL) != 0) {
+      this.output.writeByte((int) (value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    this.output.writeByte((int) value);
+  }
+
+  @Override
+  public void writeUTF(final @NonNull String s) throws IOException {
+    final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    this.writeUnsignedVarInt(bytes.length);
+    this.output.write(bytes);
+  }
+
+  private void writeUnsignedVarInt(int value) throws IOException {
+    while((value & ~0x7f) != 0) {
+      this.output.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    this.output.writeByte(value);
+  }
+}
@@ -34,6 +34,7 @@ import net.kyori.nbt.IntTag;
 import net.kyori.nbt.ListTag;
 import net.kyori.nbt.LongArrayTag;
 import net.kyori.nbt.LongTag;
+import net.kyori.nbt.RawTag;
 import net.kyori.nbt.ShortTag;
 import net.kyori.nbt.StringTag;
 import net.kyori.nbt.Tag;
@@ -62,7 +63,9 @@ public class StringTagDisplay implements TagDisplay<String> {
   }
 
   private void render(final @Nullable String name, final Tag tag, final StringBuilder sb, final int depth) {
-    if(tag instanceof CompoundTag) {
+    if(tag instanceof RawTag) {
+      this.render(name, ((RawTag) tag).decode(), sb, depth);
+    } else if(tag instanceof CompoundTag) {
       this.indent(sb, depth);
 
       if(name != null) {
@@ -186,6 +189,8 @@ public class StringTagDisplay implements TagDisplay<String> {
       return ((ShortTag) tag).shortValue() + "s";
     } else if(tag instanceof StringTag) {
       return renderQuotedString(((StringTag) tag).value());
+    } else if(tag instanceof RawTag) {
+      return toString(((RawTag) tag).decode());
     }
     throw new IllegalArgumentException(tag.getClass().getName());
   }
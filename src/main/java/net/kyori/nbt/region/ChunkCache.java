@@ -0,0 +1,489 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt.region;
+
+import net.kyori.nbt.CompoundTag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A cache of chunks read from the region files in a directory.
+ *
+ * <p>Chunks are keyed by their absolute chunk coordinates. The least recently used chunks are evicted
+ * once more than a maximum are cached, and modified chunks are written back to their region file when
+ * evicted or {@link #flush() flushed}. Write-back of evicted chunks happens on an executor, so loads are
+ * not held up by it. Concurrent misses for the same chunk read it only once, and chunks that are not
+ * present are cached as well.</p>
+ *
+ * <p>Cached tags are shared: a tag modified in place must be {@link #put(int, int, CompoundTag) put}
+ * back to be written, and must not be modified while it is being written.</p>
+ */
+public final class ChunkCache implements Closeable {
+  private final int maxChunks;
+  private final Executor executor;
+  private final RegionPool regions;
+  /**
+   * The cached chunks, in access order. Guarded by itself.
+   */
+  private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  /**
+   * Evicted chunks that are being written back. Loads are served from here until they are written, and a
+   * written chunk stays here while a load of it is in progress, as that load may have read what is now stale.
+   * Guarded by {@link #entries} for removals.
+   */
+  private final Map<Long, Entry> evicted = new ConcurrentHashMap<>();
+  private final Map<Long, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+  /**
+   * The number of chunks read from region files.
+   */
+  private final LongAdder reads = new LongAdder();
+
+  private ChunkCache(final int maxChunks, final @NonNull Executor executor, final @NonNull RegionPool regions) {
+    this.maxChunks = maxChunks;
+    this.executor = executor;
+    this.regions = regions;
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return a new builder
+   */
+  public static @NonNull Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Gets a chunk, reading it if it is not cached.
+   *
+   * @param x the chunk x coordinate
+   * @param z the chunk z coordinate
+   * @return the chunk, or {@code null} if it is not present
+   * @throws IOException if an exception was encountered while reading the chunk
+   */
+  public @Nullable CompoundTag get(final int x, final int z) throws IOException {
+    final Long key = RegionPool.key(x, z);
+    synchronized(this.entries) {
+      final Entry entry = this.entries.get(key);
+      if(entry != null) {
+        return entry.tag;
+      }
+    }
+    return this.load(key, x, z).tag;
+  }
+
+  /**
+   * Puts a chunk, marking it as modified.
+   *
+   * @param x the chunk x coordinate
+   * @param z the chunk z coordinate
+   * @param tag the chunk
+   */
+  public void put(final int x, final int z, final @NonNull CompoundTag tag) {
+    this.update(RegionPool.key(x, z), requireNonNull(tag, "tag"));
+  }
+
+  /**
+   * Removes a chunk, marking it as modified.
+   *
+   * @param x the chunk x coordinate
+   * @param z the chunk z coordinate
+   */
+  public void remove(final int x, final int z) {
+    this.update(RegionPool.key(x, z), null);
+  }
+
+  /**
+   * Gets the number of cached chunks.
+   *
+   * @return the number of chunks
+   */
+  public int size() {
+    synchronized(this.entries) {
+      return this.entries.size();
+    }
+  }
+
+  /**
+   * Writes all modified chunks back to their region files, and forces them to disk.
+   *
+   * @throws IOException if an exception was encountered while writing
+   */
+  public void flush() throws IOException {
+    final List<Entry> dirty = new ArrayList<>();
+    synchronized(this.entries) {
+      for(final Entry entry : this.entries.values()) {
+        if(entry.dirty) {
+          dirty.add(entry);
+        }
+      }
+    }
+    dirty.addAll(this.evicted.values());
+    @Nullable IOException failure = null;
+    for(final Entry entry : dirty) {
+      try {
+        this.writeBack(entry);
+        this.written(entry);
+      } catch(final IOException e) {
+        if(failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if(failure != null) {
+      throw failure;
+    }
+    this.regions.sync();
+  }
+
+  /**
+   * Flushes modified chunks, and closes all region files.
+   *
+   * @throws IOException if an exception was encountered while writing or closing
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      this.flush();
+    } finally {
+      this.regions.close();
+    }
+  }
+
+  private @NonNull Entry load(final @NonNull Long key, final int x, final int z) throws IOException {
+    final CompletableFuture<Entry> future = new CompletableFuture<>();
+    final CompletableFuture<Entry> existing = this.loading.putIfAbsent(key, future);
+    if(existing != null) {
+      try {
+        return existing.join();
+      } catch(final CompletionException e) {
+        if(e.getCause() instanceof UncheckedIOException) {
+          throw ((UncheckedIOException) e.getCause()).getCause();
+        }
+        throw e;
+      }
+    }
+    try {
+      @Nullable Entry entry;
+      synchronized(this.entries) {
+        entry = this.cached(key);
+      }
+      List<Entry> evicted = Collections.emptyList();
+      if(entry == null) {
+        final RegionPool.Handle handle = this.regions.acquire(x, z, false);
+        @Nullable CompoundTag tag = null;
+        if(handle != null) {
+          try {
+            tag = handle.file.read(x, z);
+            this.reads.increment();
+          } finally {
+            this.regions.release(handle);
+          }
+        }
+        synchronized(this.entries) {
+          // put while reading - if it was also evicted and written back, it is still held in the evicted chunks
+          entry = this.cached(key);
+          if(entry == null) {
+            entry = new Entry(key, tag);
+            this.entries.put(key, entry);
+            evicted = this.evict();
+          }
+        }
+      }
+      future.complete(entry);
+      this.writeBackLater(evicted);
+      return entry;
+    } catch(final IOException e) {
+      future.completeExceptionally(new UncheckedIOException(e));
+      throw e;
+    } catch(final RuntimeException | Error e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      this.loading.remove(key, future);
+    }
+  }
+
+  private void update(final @NonNull Long key, final @Nullable CompoundTag tag) {
+    final List<Entry> evicted;
+    synchronized(this.entries) {
+      Entry entry = this.cached(key);
+      if(entry == null) {
+        entry = new Entry(key, tag);
+        this.entries.put(key, entry);
+      }
+      entry.tag = tag;
+      entry.dirty = true;
+      evicted = this.evict();
+    }
+    this.writeBackLater(evicted);
+  }
+
+  /**
+   * Gets a cached chunk, taking it back from the evicted chunks if it is being written back.
+   *
+   * <p>Must be called while holding the lock on {@link #entries}.</p>
+   *
+   * @param key the chunk key
+   * @return the chunk
+   */
+  private @Nullable Entry cached(final @NonNull Long key) {
+    final Entry entry = this.entries.get(key);
+    if(entry != null) {
+      return entry;
+    }
+    final Entry evicted = this.evicted.remove(key);
+    if(evicted != null) {
+      this.entries.put(key, evicted);
+    }
+    return evicted;
+  }
+
+  /**
+   * Evicts the least recently used chunks over the maximum.
+   *
+   * <p>Must be called while holding the lock on {@link #entries}.</p>
+   *
+   * @return the evicted chunks that need to be written back
+   */
+  private @NonNull List<Entry> evict() {
+    final List<Entry> dirty = new ArrayList<>(0);
+    final Iterator<Entry> it = this.entries.values().iterator();
+    while(this.entries.size() > this.maxChunks && it.hasNext()) {
+      final Entry eldest = it.next();
+      it.remove();
+      if(eldest.dirty) {
+        this.evicted.put(eldest.key, eldest);
+        dirty.add(eldest);
+      }
+    }
+    return dirty;
+  }
+
+  private void writeBackLater(final @NonNull List<Entry> evicted) {
+    for(final Entry entry : evicted) {
+      this.executor.execute(() -> {
+        try {
+          this.writeBack(entry);
+          this.written(entry);
+        } catch(final IOException ignored) {
+          // stays evicted and modified, to be retried - and reported - by the next flush
+        }
+      });
+    }
+  }
+
+  /**
+   * Writes a chunk back to its region file if it is modified.
+   *
+   * @param entry the chunk
+   * @throws IOException if an exception was encountered while writing
+   */
+  private void writeBack(final @NonNull Entry entry) throws IOException {
+    // one write of a chunk at a time, each writing the latest version
+    synchronized(entry) {
+      final CompoundTag tag;
+      synchronized(this.entries) {
+        if(!entry.dirty) {
+          return;
+        }
+        entry.dirty = false;
+        tag = entry.tag;
+      }
+      final int x = (int) (entry.key >> 32);
+      final int z = (int) (long) entry.key;
+      try {
+        final RegionPool.Handle handle = this.regions.acquire(x, z, tag != null);
+        if(handle != null) {
+          try {
+            if(tag != null) {
+              handle.file.write(x, z, tag);
+            } else {
+              handle.file.delete(x, z);
+            }
+          } finally {
+            this.regions.release(handle);
+          }
+        }
+      } catch(final IOException | RuntimeException e) {
+        synchronized(this.entries) {
+          entry.dirty = true;
+        }
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Releases an evicted chunk once it has been written back, unless a load of it is in progress.
+   *
+   * <p>A chunk that is kept is taken back by the next load of it, or released by the next flush.</p>
+   *
+   * @param entry the chunk
+   */
+  private void written(final @NonNull Entry entry) {
+    synchronized(this.entries) {
+      if(!this.loading.containsKey(entry.key)) {
+        this.evicted.remove(entry.key, entry);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of chunks read from region files.
+   *
+   * @return the number of chunks
+   */
+  long reads() {
+    return this.reads.sum();
+  }
+
+  private static final class Entry {
+    final Long key;
+    /**
+     * The chunk, or {@code null} if it is not present. Guarded by the cache's entries.
+     */
+    @Nullable CompoundTag tag;
+    /**
+     * If the chunk was modified since it was last written. Guarded by the cache's entries.
+     */
+    boolean dirty;
+
+    Entry(final @NonNull Long key, final @Nullable CompoundTag tag) {
+      this.key = key;
+      this.tag = tag;
+    }
+  }
+
+  /**
+   * A chunk cache builder.
+   */
+  public static final class Builder {
+    private int maxChunks = 4096;
+    private int maxOpenRegions = 32;
+    private RegionCompression compression = RegionCompression.ZLIB;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private @Nullable Executor executor;
+
+    Builder() {
+    }
+
+    /**
+     * Sets the maximum number of cached chunks.
+     *
+     * @param maxChunks the maximum number of chunks
+     * @return this builder
+     */
+    public @NonNull Builder maxChunks(final int maxChunks) {
+      if(maxChunks < 0) {
+        throw new IllegalArgumentException(String.format("Maximum of %d chunks is negative", maxChunks));
+      }
+      this.maxChunks = maxChunks;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of open region files. Region files in use may briefly exceed it.
+     *
+     * @param maxOpenRegions the maximum number of region files
+     * @return this builder
+     */
+    public @NonNull Builder maxOpenRegions(final int maxOpenRegions) {
+      if(maxOpenRegions < 1) {
+        throw new IllegalArgumentException(String.format("Maximum of %d open regions is lower than 1", maxOpenRegions));
+      }
+      this.maxOpenRegions = maxOpenRegions;
+      return this;
+    }
+
+    /**
+     * Sets the compression chunks are written with.
+     *
+     * @param compression the compression
+     * @param level the compression level
+     * @return this builder
+     */
+    public @NonNull Builder compression(final @NonNull RegionCompression compression, final int level) {
+      this.compression = requireNonNull(compression, "compression");
+      this.level = level;
+      return this;
+    }
+
+    /**
+     * Sets the executor evicted chunks are written back on.
+     *
+     * <p>By default, a pool of daemon threads is used.</p>
+     *
+     * @param executor the executor
+     * @return this builder
+     */
+    public @NonNull Builder executor(final @NonNull Executor executor) {
+      this.executor = requireNonNull(executor, "executor");
+      return this;
+    }
+
+    /**
+     * Builds a chunk cache over the region files in {@code directory}.
+     *
+     * @param directory the directory
+     * @return the chunk cache
+     */
+    public @NonNull ChunkCache build(final @NonNull Path directory) {
+      requireNonNull(directory, "directory");
+      Executor executor = this.executor;
+      if(executor == null) {
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+          final Thread thread = new Thread(runnable, "nbt-chunk-writer-" + count.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+      return new ChunkCache(this.maxChunks, executor, new RegionPool(directory, this.compression, this.level, this.maxOpenRegions));
+    }
+  }
+}
@@ -0,0 +1,326 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt.region;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compacts region files, packing their chunks into consecutive sectors and dropping the free space
+ * left behind by chunks that were moved, shrunk, or deleted.
+ *
+ * <p>Chunks are copied without being decoded, unless they are {@link Builder#recompress(RegionCompression, int) recompressed}.
+ * Chunks stored in separate files are left in place.</p>
+ */
+public final class RegionCompactor {
+  private final @Nullable RegionCompression recompress;
+  private final int level;
+  private final int threads;
+
+  private RegionCompactor(final @Nullable RegionCompression recompress, final int level, final int threads) {
+    this.recompress = recompress;
+    this.level = level;
+    this.threads = threads;
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return a new builder
+   */
+  public static @NonNull Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Compacts a region file in place.
+   *
+   * <p>The compacted file is written next to the region file and then moved over it, so the region file
+   * is never left partially compacted.</p>
+   *
+   * @param file the region file
+   * @return the result
+   * @throws IOException if an exception was encountered while compacting
+   */
+  public @NonNull Result compact(final @NonNull Path file) throws IOException {
+    final Path temp = file.resolveSibling(file.getFileName() + ".compact");
+    try {
+      final Result result = this.compact(file, temp);
+      try {
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch(final AtomicMoveNotSupportedException e) {
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return result;
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Compacts a region file into a new file.
+   *
+   * <p>Chunks stored in separate files are not copied, and must stay next to the target file.</p>
+   *
+   * <p>If the target is the region file itself, it is compacted in place.</p>
+   *
+   * @param source the region file
+   * @param target the file to write the compacted region file to, replacing it if it exists
+   * @return the result
+   * @throws IOException if an exception was encountered while compacting
+   */
+  public @NonNull Result compact(final @NonNull Path source, final @NonNull Path target) throws IOException {
+    if(Files.exists(target) && Files.isSameFile(source, target)) {
+      return this.compact(source);
+    }
+    final long before = Files.size(source);
+    Files.deleteIfExists(target);
+    int chunks = 0;
+    try(final RegionFile input = RegionFile.openReadOnly(source); final RegionFile output = RegionFile.open(target)) {
+      // chunks are allocated first-fit in an empty file, so writing them in order packs them from the header on
+      for(int i = 0; i < RegionFile.CHUNKS; i++) {
+        final byte @Nullable [] payload = input.readPayload(i);
+        if(payload != null) {
+          output.writePayload(i, this.recompress(payload), input.timestamp(i));
+          chunks++;
+        }
+      }
+      output.sync();
+    }
+    return new Result(1, chunks, before, Files.size(target));
+  }
+
+  /**
+   * Compacts every region file in a directory and its subdirectories in place.
+   *
+   * @param directory the directory
+   * @return the combined result
+   * @throws IOException if an exception was encountered while compacting
+   */
+  public @NonNull Result compactWorld(final @NonNull Path directory) throws IOException {
+    final List<Path> files;
+    try(final Stream<Path> stream = Files.walk(directory)) {
+      files = stream.filter(path -> path.getFileName().toString().endsWith(".mca") && Files.isRegularFile(path)).collect(Collectors.toList());
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.threads, Math.max(1, files.size())));
+    try {
+      final List<Future<Result>> futures = new ArrayList<>(files.size());
+      for(final Path file : files) {
+        futures.add(executor.submit(() -> this.compact(file)));
+      }
+      Result result = new Result(0, 0, 0, 0);
+      @Nullable IOException failure = null;
+      for(final Future<Result> future : futures) {
+        try {
+          result = result.plus(future.get());
+        } catch(final ExecutionException e) {
+          final IOException exception = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+          if(failure == null) {
+            failure = exception;
+          } else {
+            failure.addSuppressed(exception);
+          }
+        } catch(final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while compacting " + directory, e);
+        }
+      }
+      if(failure != null) {
+        throw failure;
+      }
+      return result;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private byte@NonNull[] recompress(final byte@NonNull[] payload) throws IOException {
+    final byte type = payload[4];
+    if(this.recompress == null || (type & RegionFile.EXTERNAL) != 0) {
+      return payload;
+    }
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length);
+    bytes.write(new byte[5]); // length and compression, filled in below
+    try(final InputStream input = RegionCompression.of(type).decompress(new ByteArrayInputStream(payload, 5, payload.length - 5));
+        final OutputStream output = this.recompress.compress(bytes, this.level)) {
+      final byte[] buffer = new byte[8192];
+      int read;
+      while((read = input.read(buffer)) != -1) {
+        output.write(buffer, 0, read);
+      }
+    }
+    final byte[] result = bytes.toByteArray();
+    if(RegionFile.sectors(result.length) > RegionFile.MAX_SECTORS) {
+      return payload; // keep the original, which fits in the region file
+    }
+    ByteBuffer.wrap(result).putInt(result.length - 4).put(this.recompress.id());
+    return result;
+  }
+
+  /**
+   * The result of compacting one or more region files.
+   */
+  public static final class Result {
+    private final int files;
+    private final int chunks;
+    private final long before;
+    private final long after;
+
+    Result(final int files, final int chunks, final long before, final long after) {
+      this.files = files;
+      this.chunks = chunks;
+      this.before = before;
+      this.after = after;
+    }
+
+    /**
+     * Gets the number of region files compacted.
+     *
+     * @return the number of region files
+     */
+    public int files() {
+      return this.files;
+    }
+
+    /**
+     * Gets the number of chunks copied.
+     *
+     * @return the number of chunks
+     */
+    public int chunks() {
+      return this.chunks;
+    }
+
+    /**
+     * Gets the size of the region files before compacting.
+     *
+     * @return the size, in bytes
+     */
+    public long before() {
+      return this.before;
+    }
+
+    /**
+     * Gets the size of the region files after compacting.
+     *
+     * @return the size, in bytes
+     */
+    public long after() {
+      return this.after;
+    }
+
+    /**
+     * Gets the number of bytes reclaimed by compacting.
+     *
+     * @return the number of bytes, negative if the region files grew
+     */
+    public long reclaimed() {
+      return this.before - this.after;
+    }
+
+    @NonNull Result plus(final @NonNull Result that) {
+      return new Result(this.files + that.files, this.chunks + that.chunks, this.before + that.before, this.after + that.after);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d files, %d chunks, %d bytes reclaimed", this.files, this.chunks, this.reclaimed());
+    }
+  }
+
+  /**
+   * A builder for a {@link RegionCompactor}.
+   */
+  public static final class Builder {
+    private @Nullable RegionCompression recompress;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    Builder() {
+    }
+
+    /**
+     * Sets the compression chunks are rewritten with.
+     *
+     * <p>By default chunks keep their compression.</p>
+     *
+     * @param compression the compression
+     * @param level the compression level
+     * @return this builder
+     */
+    public @NonNull Builder recompress(final @NonNull RegionCompression compression, final int level) {
+      if(level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+        throw new IllegalArgumentException(String.format("Compression level %d is not between %d and %d", level, Deflater.NO_COMPRESSION, Deflater.BEST_COMPRESSION));
+      }
+      this.recompress = requireNonNull(compression, "compression");
+      this.level = level;
+      return this;
+    }
+
+    /**
+     * Sets the number of region files compacted at once by {@link RegionCompactor#compactWorld(Path)}.
+     *
+     * @param threads the number of threads
+     * @return this builder
+     */
+    public @NonNull Builder threads(final int threads) {
+      if(threads < 1) {
+        throw new IllegalArgumentException(String.format("Thread count of %d is lower than 1", threads));
+      }
+      this.threads = threads;
+      return this;
+    }
+
+    /**
+     * Builds the compactor.
+     *
+     * @return the compactor
+     */
+    public @NonNull RegionCompactor build() {
+      return new RegionCompactor(this.recompress, this.level, this.threads);
+    }
+  }
+}
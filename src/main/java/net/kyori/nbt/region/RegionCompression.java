@@ -0,0 +1,130 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt.region;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The compression of a chunk in a region file.
+ */
+public enum RegionCompression {
+  /**
+   * GZIP compression.
+   */
+  GZIP(1) {
+    @Override
+    @NonNull InputStream decompress(final @NonNull InputStream input) throws IOException {
+      return new GZIPInputStream(input);
+    }
+
+    @Override
+    @NonNull OutputStream compress(final @NonNull OutputStream output, final int level) throws IOException {
+      return new GZIPOutputStream(output) {
+        {
+          this.def.setLevel(level);
+        }
+      };
+    }
+  },
+  /**
+   * Zlib compression, the default.
+   */
+  ZLIB(2) {
+    @Override
+    @NonNull InputStream decompress(final @NonNull InputStream input) {
+      return new InflaterInputStream(input);
+    }
+
+    @Override
+    @NonNull OutputStream compress(final @NonNull OutputStream output, final int level) {
+      return new DeflaterOutputStream(output, new Deflater(level)) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            this.def.end();
+          }
+        }
+      };
+    }
+  },
+  /**
+   * No compression.
+   */
+  NONE(3) {
+    @Override
+    @NonNull InputStream decompress(final @NonNull InputStream input) {
+      return input;
+    }
+
+    @Override
+    @NonNull OutputStream compress(final @NonNull OutputStream output, final int level) {
+      return output;
+    }
+  };
+
+  private static final RegionCompression[] BY_ID = {null, GZIP, ZLIB, NONE};
+  private final byte id;
+
+  RegionCompression(final int id) {
+    this.id = (byte) id;
+  }
+
+  /**
+   * Gets the id of this compression, as stored in a region file.
+   *
+   * @return the id
+   */
+  public byte id() {
+    return this.id;
+  }
+
+  /**
+   * Gets a compression by its id.
+   *
+   * @param id the id
+   * @return the compression
+   * @throws IOException if the id is unknown
+   */
+  static @NonNull RegionCompression of(final byte id) throws IOException {
+    if(id < 1 || id >= BY_ID.length) {
+      throw new IOException(String.format("Unknown chunk compression %d", id));
+    }
+    return BY_ID[id];
+  }
+
+  abstract @NonNull InputStream decompress(final @NonNull InputStream input) throws IOException;
+
+  abstract @NonNull OutputStream compress(final @NonNull OutputStream output, final int level) throws IOException;
+}
@@ -0,0 +1,446 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt.region;
+
+import net.kyori.nbt.CompoundTag;
+import net.kyori.nbt.TagIO;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A region file, holding the chunks of a 32 by 32 chunk area in the Anvil format.
+ *
+ * <p>The file starts with a table of chunk locations and a table of timestamps, each one sector long,
+ * followed by the chunks. Each chunk occupies a run of whole sectors. Chunks too large for 255 sectors
+ * are stored in a separate {@code c.<x>.<z>.mcc} file next to the region file, named by the absolute
+ * coordinates of the chunk. These are derived from the name of the region file, which must be of the
+ * form {@code r.<x>.<z>.mca} for such chunks to be read or written.</p>
+ *
+ * <p>Chunk coordinates may be given relative to the region, or as absolute chunk coordinates.</p>
+ */
+public final class RegionFile implements Closeable {
+  /**
+   * The size of a sector, in bytes.
+   */
+  public static final int SECTOR_BYTES = 4096;
+  /**
+   * The number of chunks in a region file.
+   */
+  static final int CHUNKS = 32 * 32;
+  /**
+   * The number of sectors taken by the header.
+   */
+  static final int HEADER_SECTORS = 2;
+  /**
+   * The maximum number of sectors of a chunk stored in the region file.
+   */
+  static final int MAX_SECTORS = 0xff;
+  /**
+   * The bit set on the compression id of a chunk stored in a separate file.
+   */
+  static final int EXTERNAL = 0x80;
+  private static final Pattern NAME = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+  private final Path path;
+  /**
+   * The absolute coordinates of the first chunk of this region, or {@code null} if the file is not named
+   * {@code r.<x>.<z>.mca}.
+   */
+  private final int @Nullable [] origin;
+  private final FileChannel channel;
+  private final RegionCompression compression;
+  private final int level;
+  private final boolean readOnly;
+  /**
+   * The location of each chunk, as its first sector in the upper 24 bits and its sector count in the
+   * lower 8 bits. A location of zero means the chunk is not present.
+   */
+  private final int[] locations = new int[CHUNKS];
+  private final int[] timestamps = new int[CHUNKS];
+  private final BitSet used = new BitSet();
+
+  private RegionFile(final @NonNull Path path, final @NonNull FileChannel channel, final @NonNull RegionCompression compression, final int level, final boolean readOnly) throws IOException {
+    this.path = path;
+    this.origin = origin(path);
+    this.channel = channel;
+    this.compression = compression;
+    this.level = level;
+    this.readOnly = readOnly;
+    this.readHeader();
+  }
+
+  /**
+   * Opens a region file for reading and writing, creating it if it does not exist.
+   *
+   * <p>Chunks are written with {@link RegionCompression#ZLIB zlib} compression.</p>
+   *
+   * @param path the path
+   * @return the region file
+   * @throws IOException if an exception was encountered while opening the region file
+   */
+  public static @NonNull RegionFile open(final @NonNull Path path) throws IOException {
+    return open(path, RegionCompression.ZLIB, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Opens a region file for reading and writing, creating it if it does not exist.
+   *
+   * @param path the path
+   * @param compression the compression chunks are written with
+   * @param level the compression level
+   * @return the region file
+   * @throws IOException if an exception was encountered while opening the region file
+   */
+  public static @NonNull RegionFile open(final @NonNull Path path, final @NonNull RegionCompression compression, final int level) throws IOException {
+    requireNonNull(compression, "compression");
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    try {
+      return new RegionFile(path, channel, compression, level, false);
+    } catch(final IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens a region file for reading.
+   *
+   * @param path the path
+   * @return the region file
+   * @throws IOException if an exception was encountered while opening the region file
+   */
+  public static @NonNull RegionFile openReadOnly(final @NonNull Path path) throws IOException {
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new RegionFile(path, channel, RegionCompression.ZLIB, Deflater.DEFAULT_COMPRESSION, true);
+    } catch(final IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Gets the path of this region file.
+   *
+   * @return the path
+   */
+  public @NonNull Path path() {
+    return this.path;
+  }
+
+  /**
+   * Tests if a chunk is present.
+   *
+   * @param x the chunk x coordinate
+   * @param z the chunk z coordinate
+   * @return {@code true} if the chunk is present
+   */
+  public synchronized boolean contains(final int x, final int z) {
+    return this.locations[index(x, z)] != 0;
+  }
+
+  /**
+   * Gets the time a chunk was last written.
+   *
+   * @param x the chunk x coordinate
+   * @param z the chunk z coordinate
+   * @return the time, in seconds since the epoch, or {@code 0} if the chunk is not present
+   */
+  public synchronized int timestamp(final int x, final int z) {
+    return this.timestamps[index(x, z)];
+  }
+
+  /**
+   * Reads a chunk.
+   *
+   * @param x the chunk x coordinate
+   * @param z the chunk z coordinate
+   * @return the chunk, or {@code null} if it is not present
+   * @throws IOException if an exception was encountered while reading the chunk
+   */
+  public @Nullable CompoundTag read(final int x, final int z) throws IOException {
+    final byte @Nullable [] payload;
+    synchronized(this) {
+      payload = this.readPayload(index(x, z));
+    }
+    if(payload == null) {
+      return null;
+    }
+    final byte type = payload[4];
+    if((type & EXTERNAL) != 0) {
+      final byte[] external = Files.readAllBytes(this.external(index(x, z)));
+      return TagIO.readInputStream(RegionCompression.of((byte) (type & ~EXTERNAL)).decompress(new ByteArrayInputStream(external)));
+    }
+    return TagIO.readInputStream(RegionCompression.of(type).decompress(new ByteArrayInputStream(payload, 5, payload.length - 5)));
+  }
+
+  /**
+   * Writes a chunk.
+   *
+   * @param x the chunk x coordinate
+   * @param z the chunk z coordinate
+   * @param tag the chunk
+   * @throws IOException if an exception was encountered while writing the chunk
+   */
+  public void write(final int x, final int z, final @NonNull CompoundTag tag) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bytes.write(new byte[5]); // length and compression, filled in below
+    TagIO.writeOutputStream(tag, this.compression.compress(bytes, this.level));
+    final byte[] payload = bytes.toByteArray();
+    ByteBuffer.wrap(payload).putInt(payload.length - 4).put(this.compression.id());
+    synchronized(this) {
+      this.writePayload(index(x, z), payload, (int) (System.currentTimeMillis() / 1000));
+    }
+  }
+
+  /**
+   * Deletes a chunk.
+   *
+   * @param x the chunk x coordinate
+   * @param z the chunk z coordinate
+   * @throws IOException if an exception was encountered while deleting the chunk
+   */
+  public void delete(final int x, final int z) throws IOException {
+    final int index = index(x, z);
+    synchronized(this) {
+      this.free(this.locations[index]);
+      this.setLocation(index, 0, 0);
+    }
+    if(this.origin != null) {
+      Files.deleteIfExists(this.external(index));
+    }
+  }
+
+  /**
+   * Gets the number of sectors holding chunks or the header.
+   *
+   * @return the number of sectors
+   */
+  public synchronized int usedSectors() {
+    return this.used.cardinality();
+  }
+
+  /**
+   * Forces written chunks to disk.
+   *
+   * @throws IOException if an exception was encountered while syncing
+   */
+  public void sync() throws IOException {
+    this.channel.force(true);
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.channel.close();
+  }
+
+  /**
+   * Reads the stored bytes of a chunk: its length, its compression id, and its compressed data.
+   *
+   * @param index the chunk index
+   * @return the stored bytes, or {@code null} if the chunk is not present
+   * @throws IOException if an exception was encountered while reading
+   */
+  byte @Nullable [] readPayload(final int index) throws IOException {
+    final int location = this.locations[index];
+    if(location == 0) {
+      return null;
+    }
+    final long position = (long) (location >>> 8) * SECTOR_BYTES;
+    final ByteBuffer header = ByteBuffer.allocate(5);
+    this.readFully(header, position);
+    final int length = header.getInt(0);
+    if(length <= 0 || length > (location & 0xff) * SECTOR_BYTES - 4) {
+      throw new IOException(String.format("Chunk %d has an invalid length of %d", index, length));
+    }
+    final ByteBuffer payload = ByteBuffer.allocate(length + 4);
+    this.readFully(payload, position);
+    return payload.array();
+  }
+
+  /**
+   * Writes the stored bytes of a chunk, reusing its sectors if they are large enough and allocating the
+   * first free run of sectors otherwise.
+   *
+   * <p>Compressed data too large for the region file is written to a separate file instead.</p>
+   *
+   * @param index the chunk index
+   * @param payload the stored bytes
+   * @param timestamp the timestamp
+   * @throws IOException if an exception was encountered while writing
+   */
+  void writePayload(final int index, final byte@NonNull[] payload, final int timestamp) throws IOException {
+    if(sectors(payload.length) > MAX_SECTORS) {
+      Files.write(this.external(index), Arrays.copyOfRange(payload, 5, payload.length));
+      this.writeSectors(index, new byte[]{0, 0, 0, 1, (byte) (payload[4] | EXTERNAL)}, timestamp);
+    } else {
+      this.writeSectors(index, payload, timestamp);
+      if((payload[4] & EXTERNAL) == 0 && this.origin != null) {
+        Files.deleteIfExists(this.external(index)); // the chunk is no longer stored separately
+      }
+    }
+  }
+
+  private void writeSectors(final int index, final byte@NonNull[] payload, final int timestamp) throws IOException {
+    final int count = sectors(payload.length);
+    final int previous = this.locations[index];
+    this.free(previous);
+    final int offset = previous != 0 && (previous & 0xff) >= count ? previous >>> 8 : this.allocate(count);
+    final ByteBuffer buffer = ByteBuffer.allocate(count * SECTOR_BYTES);
+    buffer.put(payload).clear();
+    this.writeFully(buffer, (long) offset * SECTOR_BYTES);
+    this.used.set(offset, offset + count);
+    this.setLocation(index, offset, count);
+    this.timestamps[index] = timestamp;
+    final ByteBuffer time = ByteBuffer.allocate(4).putInt(0, timestamp);
+    this.writeFully(time, SECTOR_BYTES + index * 4L);
+  }
+
+  /**
+   * Gets the timestamp of a chunk.
+   *
+   * @param index the chunk index
+   * @return the timestamp
+   */
+  int timestamp(final int index) {
+    return this.timestamps[index];
+  }
+
+  private void readHeader() throws IOException {
+    this.used.set(0, HEADER_SECTORS);
+    final long size = this.channel.size();
+    if(size < HEADER_SECTORS * SECTOR_BYTES) {
+      if(size == 0 && !this.readOnly) {
+        this.writeFully(ByteBuffer.allocate(HEADER_SECTORS * SECTOR_BYTES), 0);
+        return;
+      }
+      throw new IOException(String.format("Region file of %d bytes is too small for its header", size));
+    }
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_SECTORS * SECTOR_BYTES);
+    this.readFully(header, 0);
+    header.flip();
+    final long sectors = (size + SECTOR_BYTES - 1) / SECTOR_BYTES;
+    for(int i = 0; i < CHUNKS; i++) {
+      final int location = header.getInt(i * 4);
+      final int offset = location >>> 8;
+      final int count = location & 0xff;
+      if(location != 0 && offset >= HEADER_SECTORS && count > 0 && offset + count <= sectors) {
+        this.locations[i] = location;
+        this.used.set(offset, offset + count);
+      }
+      this.timestamps[i] = header.getInt(SECTOR_BYTES + i * 4);
+    }
+  }
+
+  private int allocate(final int count) {
+    int start = this.used.nextClearBit(HEADER_SECTORS);
+    while(true) {
+      final int end = this.used.nextSetBit(start);
+      if(end == -1 || end - start >= count) {
+        return start;
+      }
+      start = this.used.nextClearBit(end);
+    }
+  }
+
+  private void free(final int location) {
+    if(location != 0) {
+      this.used.clear(location >>> 8, (location >>> 8) + (location & 0xff));
+    }
+  }
+
+  private void setLocation(final int index, final int offset, final int count) throws IOException {
+    final int location = count == 0 ? 0 : offset << 8 | count;
+    this.locations[index] = location;
+    this.writeFully(ByteBuffer.allocate(4).putInt(0, location), index * 4L);
+  }
+
+  /**
+   * Gets the path of the separate file a chunk is stored in when it is too large for the region file.
+   *
+   * @param index the chunk index
+   * @return the path
+   * @throws IOException if the region file is not named {@code r.<x>.<z>.mca}
+   */
+  private @NonNull Path external(final int index) throws IOException {
+    if(this.origin == null) {
+      throw new IOException(String.format("Chunk %d of %s is stored in a separate file, which requires a region file named r.<x>.<z>.mca", index, this.path));
+    }
+    return this.path.resolveSibling("c." + (this.origin[0] + (index & 31)) + '.' + (this.origin[1] + (index >> 5)) + ".mcc");
+  }
+
+  private static int @Nullable [] origin(final @NonNull Path path) {
+    final Path name = path.getFileName();
+    final Matcher matcher = NAME.matcher(name != null ? name.toString() : "");
+    if(!matcher.matches()) {
+      return null;
+    }
+    try {
+      return new int[]{Integer.parseInt(matcher.group(1)) * 32, Integer.parseInt(matcher.group(2)) * 32};
+    } catch(final NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private void readFully(final @NonNull ByteBuffer buffer, long position) throws IOException {
+    while(buffer.hasRemaining()) {
+      final int read = this.channel.read(buffer, position);
+      if(read < 0) {
+        throw new EOFException();
+      }
+      position += read;
+    }
+  }
+
+  private void writeFully(final @NonNull ByteBuffer buffer, long position) throws IOException {
+    while(buffer.hasRemaining()) {
+      position += this.channel.write(buffer, position);
+    }
+  }
+
+  static int index(final int x, final int z) {
+    return (x & 31) + (z & 31) * 32;
+  }
+
+  static int sectors(final int bytes) {
+    return (bytes + SECTOR_BYTES - 1) / SECTOR_BYTES;
+  }
+}
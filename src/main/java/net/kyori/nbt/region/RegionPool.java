@@ -0,0 +1,205 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt.region;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A pool of open region files in a directory.
+ *
+ * <p>The least recently used region files are closed once more than a maximum are open. Region files
+ * in use are never closed, so a region file is only ever open once.</p>
+ */
+final class RegionPool implements Closeable {
+  private final Path directory;
+  private final RegionCompression compression;
+  private final int level;
+  private final int maxOpen;
+  /**
+   * The open region files, in access order. Guarded by itself.
+   */
+  private final LinkedHashMap<Long, Handle> handles = new LinkedHashMap<>(16, 0.75f, true);
+
+  RegionPool(final @NonNull Path directory, final @NonNull RegionCompression compression, final int level, final int maxOpen) {
+    this.directory = directory;
+    this.compression = compression;
+    this.level = level;
+    this.maxOpen = maxOpen;
+  }
+
+  /**
+   * Acquires the region file holding a chunk, opening it if needed. The region file must be
+   * {@link #release(Handle) released} once done with.
+   *
+   * @param x the chunk x coordinate
+   * @param z the chunk z coordinate
+   * @param create if the region file is created when it does not exist
+   * @return the region file, or {@code null} if it does not exist and is not created
+   * @throws IOException if an exception was encountered while opening the region file
+   */
+  @Nullable Handle acquire(final int x, final int z, final boolean create) throws IOException {
+    final int regionX = x >> 5;
+    final int regionZ = z >> 5;
+    final Long key = key(regionX, regionZ);
+    synchronized(this.handles) {
+      final Handle handle = this.handles.get(key);
+      if(handle != null) {
+        handle.refs++;
+        return handle;
+      }
+    }
+    final Path path = this.directory.resolve("r." + regionX + '.' + regionZ + ".mca");
+    if(!create && !Files.exists(path)) {
+      return null;
+    }
+    // opened outside the lock, so region files in use by others are not held up
+    final RegionFile file = RegionFile.open(path, this.compression, this.level);
+    final Handle handle;
+    final List<RegionFile> closing = new ArrayList<>(1);
+    synchronized(this.handles) {
+      final Handle existing = this.handles.get(key);
+      if(existing != null) {
+        closing.add(file); // opened by someone else meanwhile
+        handle = existing;
+      } else {
+        handle = new Handle(file);
+        this.handles.put(key, handle);
+        this.evict(closing);
+      }
+      handle.refs++;
+    }
+    close(closing);
+    return handle;
+  }
+
+  /**
+   * Releases a region file.
+   *
+   * @param handle the region file
+   * @throws IOException if an exception was encountered while closing evicted region files
+   */
+  void release(final @NonNull Handle handle) throws IOException {
+    final List<RegionFile> closing = new ArrayList<>(0);
+    synchronized(this.handles) {
+      handle.refs--;
+      this.evict(closing);
+    }
+    close(closing);
+  }
+
+  /**
+   * Forces written chunks of all open region files to disk.
+   *
+   * @throws IOException if an exception was encountered while syncing
+   */
+  void sync() throws IOException {
+    final List<Handle> handles;
+    synchronized(this.handles) {
+      handles = new ArrayList<>(this.handles.values());
+      for(final Handle handle : handles) {
+        handle.refs++;
+      }
+    }
+    try {
+      for(final Handle handle : handles) {
+        handle.file.sync();
+      }
+    } finally {
+      for(final Handle handle : handles) {
+        this.release(handle);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    final List<RegionFile> closing;
+    synchronized(this.handles) {
+      closing = new ArrayList<>(this.handles.size());
+      for(final Handle handle : this.handles.values()) {
+        closing.add(handle.file);
+      }
+      this.handles.clear();
+    }
+    close(closing);
+  }
+
+  private void evict(final @NonNull List<RegionFile> closing) {
+    final Iterator<Handle> it = this.handles.values().iterator();
+    while(this.handles.size() > this.maxOpen && it.hasNext()) {
+      final Handle handle = it.next();
+      if(handle.refs == 0) {
+        it.remove();
+        closing.add(handle.file);
+      }
+    }
+  }
+
+  private static void close(final @NonNull List<RegionFile> files) throws IOException {
+    @Nullable IOException failure = null;
+    for(final RegionFile file : files) {
+      try {
+        file.close();
+      } catch(final IOException e) {
+        if(failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if(failure != null) {
+      throw failure;
+    }
+  }
+
+  static long key(final int x, final int z) {
+    return (long) x << 32 | z & 0xffffffffL;
+  }
+
+  /**
+   * An open region file.
+   */
+  static final class Handle {
+    final RegionFile file;
+    /**
+     * The number of users. Guarded by the pool.
+     */
+    int refs;
+
+    Handle(final @NonNull RegionFile file) {
+      this.file = file;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Reads and writes primitives in byte arrays.
+ *
+ * <p>Each access is a single, bounds-checked load or store through a {@code VarHandle} view.</p>
+ */
+final class ByteArrays {
+  private static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private ByteArrays() {
+  }
+
+  static short getShort(final byte@NonNull[] array, final int index) {
+    return (short) SHORT.get(array, index);
+  }
+
+  static int getInt(final byte@NonNull[] array, final int index) {
+    return (int) INT.get(array, index);
+  }
+
+  static long getLong(final byte@NonNull[] array, final int index) {
+    return (long) LONG.get(array, index);
+  }
+
+  static int getIntLE(final byte@NonNull[] array, final int index) {
+    return (int) INT_LE.get(array, index);
+  }
+
+  static void putShort(final byte@NonNull[] array, final int index, final short value) {
+    SHORT.set(array, index, value);
+  }
+
+  static void putInt(final byte@NonNull[] array, final int index, final int value) {
+    INT.set(array, index, value);
+  }
+
+  static void putLong(final byte@NonNull[] array, final int index, final long value) {
+    LONG.set(array, index, value);
+  }
+
+  static void putIntLE(final byte@NonNull[] array, final int index, final int value) {
+    INT_LE.set(array, index, value);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncTagIOTest {
+  @Test
+  void testReadWrite() throws Exception {
+    final Path path = Files.createTempFile("async", ".nbt");
+    try {
+      final CompoundTag tag = new CompoundTag();
+      tag.putString("name", "async");
+      final AsyncTagIO io = AsyncTagIO.builder().build();
+      io.writeCompressedPathAsync(tag, path).get();
+      assertEquals(tag, io.readCompressedPathAsync(path).get());
+      io.writePathAsync(tag, path, Compression.LZ4).get();
+      assertEquals(tag, io.readPathAsync(path, Compression.LZ4).get());
+
+      final ExecutionException e = assertThrows(ExecutionException.class, () -> io.readPathAsync(path.resolveSibling("missing.nbt")).get());
+      assertTrue(e.getCause() instanceof IOException);
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  void testBackpressure() throws Exception {
+    final Path path = Files.createTempFile("async", ".nbt");
+    try {
+      TagIO.writePath(new CompoundTag(), path);
+      final Queue<Runnable> tasks = new ArrayDeque<>();
+      final AsyncTagIO io = AsyncTagIO.builder().executor(tasks::add).maxInFlight(1).maxQueued(2).build();
+      final CompletableFuture<CompoundTag> first = io.readPathAsync(path);
+      final CompletableFuture<CompoundTag> second = io.readPathAsync(path);
+      final CompletableFuture<CompoundTag> third = io.readPathAsync(path);
+      final CompletableFuture<CompoundTag> rejected = io.readPathAsync(path);
+      assertTrue(rejected.isCompletedExceptionally());
+      assertThrows(ExecutionException.class, rejected::get);
+      assertEquals(1, tasks.size());
+      assertEquals(3, io.pending());
+
+      second.cancel(false);
+      tasks.poll().run();
+      assertEquals(new CompoundTag(), first.get());
+      // the cancelled operation is skipped
+      assertEquals(1, tasks.size());
+      tasks.poll().run();
+      assertEquals(new CompoundTag(), third.get());
+      assertTrue(second.isCancelled());
+      assertEquals(0, io.pending());
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+}
@@ -26,13 +26,22 @@ package net.kyori.nbt;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Ensure that we can read the bigtest.nbt file.
@@ -43,6 +52,7 @@ class BigTest {
   private static final ListTag LONG_LIST = new ListTag();
   private static final ListTag COMPOUND_LIST = new ListTag();
   private static final CompoundTag NESTED_COMPOUND = new CompoundTag();
+  private static byte[] bytes;
   private static CompoundTag compound;
 
   static {
@@ -81,6 +91,15 @@ class BigTest {
   static void before() throws IOException, URISyntaxException {
     final URL url = BigTest.class.getResource("/bigtest.nbt");
     compound = TagIO.readCompressedPath(Paths.get(url.toURI()));
+    try(final InputStream input = new GZIPInputStream(Files.newInputStream(Paths.get(url.toURI())))) {
+      final ByteArrayOutputStream output = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[4096];
+      int read;
+      while((read = input.read(buffer)) != -1) {
+        output.write(buffer, 0, read);
+      }
+      bytes = output.toByteArray();
+    }
   }
 
   @Test
@@ -97,4 +116,44 @@ class BigTest {
     assertEquals(NESTED_COMPOUND, compound.getCompound("nested compound test"));
     assertEquals("HELLO WORLD THIS IS A TEST STRING ÅÄÖ!", compound.getString("stringTest"));
   }
+
+  @Test
+  void testRawPassthrough() throws IOException {
+    final CompoundTag raw = TagIO.readDataInput(new DataInputStream(new ByteArrayInputStream(bytes)), RawTagPolicy.keys("nested compound test", "listTest (compound)"));
+    assertTrue(raw.get("nested compound test") instanceof RawTag);
+    assertEquals(NESTED_COMPOUND, ((RawTag) raw.get("nested compound test")).decode());
+    assertEquals(COMPOUND_LIST, ((RawTag) raw.get("listTest (compound)")).decode());
+
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    TagIO.writeDataOutput(raw, new DataOutputStream(output));
+    assertEquals(compound, TagIO.readDataInput(new DataInputStream(new ByteArrayInputStream(output.toByteArray()))));
+  }
+
+  @Test
+  void testRawGetters() throws IOException {
+    final CompoundTag raw = TagIO.readDataInput(new DataInputStream(new ByteArrayInputStream(bytes)), RawTagPolicy.deeperThan(0));
+    assertTrue(raw.get("intTest") instanceof RawTag);
+    assertEquals(Integer.MAX_VALUE, raw.getInt("intTest"));
+    assertEquals(NESTED_COMPOUND, raw.getCompound("nested compound test"));
+    assertEquals(COMPOUND_LIST, raw.getList("listTest (compound)"));
+    assertEquals("Compound tag #1", raw.getList("listTest (compound)").getCompound(1).getString("name"));
+    assertEquals(0, raw.getInt("stringTest"));
+    // decoding for a getter leaves the raw tag in place
+    assertTrue(raw.get("intTest") instanceof RawTag);
+    assertTrue(raw.get("nested compound test") instanceof RawTag);
+  }
+
+  @Test
+  void testRawEndList() {
+    final byte[] bytes = {TagType.COMPOUND.id(), 0, 0, TagType.LIST.id(), 0, 1, 'a', TagType.END.id(), 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0};
+    assertThrows(IOException.class, () -> TagIO.readDataInput(new DataInputStream(new ByteArrayInputStream(bytes)), RawTagPolicy.keys("a")));
+  }
+
+  @Test
+  void testWriteToByteArray() throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    TagIO.writeDataOutput(compound, new DataOutputStream(output));
+    assertEquals(output.size(), TagIO.serializedSize(compound));
+    assertArrayEquals(output.toByteArray(), TagIO.writeToByteArray(compound));
+  }
 }
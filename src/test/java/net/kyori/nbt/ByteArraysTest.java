@@ -0,0 +1,71 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the classes with a Java 21 version in the multi-release jar, and passes with either version.
+ */
+class ByteArraysTest {
+  @Test
+  void testBigEndian() {
+    final byte[] array = new byte[11];
+    ByteArrays.putShort(array, 1, (short) 0x0102);
+    assertArrayEquals(new byte[]{0, 1, 2}, Arrays.copyOf(array, 3));
+    assertEquals((short) 0x0102, ByteArrays.getShort(array, 1));
+    ByteArrays.putInt(array, 1, 0x01020304);
+    assertArrayEquals(new byte[]{0, 1, 2, 3, 4}, Arrays.copyOf(array, 5));
+    assertEquals(0x01020304, ByteArrays.getInt(array, 1));
+    assertEquals(0x04030201, ByteArrays.getIntLE(array, 1));
+    ByteArrays.putLong(array, 3, 0x8102030405060708L);
+    assertArrayEquals(new byte[]{0, 1, 2, (byte) 0x81, 2, 3, 4, 5, 6, 7, 8}, array);
+    assertEquals(0x8102030405060708L, ByteArrays.getLong(array, 3));
+    ByteArrays.putIntLE(array, 0, -2);
+    assertEquals(-2, ByteArrays.getIntLE(array, 0));
+    assertThrows(IndexOutOfBoundsException.class, () -> ByteArrays.getLong(array, 4));
+  }
+
+  @Test
+  void testBlockingExecutor() throws Exception {
+    final ExecutorService executor = BlockingExecutors.create("test-");
+    try {
+      final Thread thread = executor.submit(Thread::currentThread).get();
+      assertTrue(thread.isDaemon());
+      assertTrue(thread.getName().startsWith("test-"));
+    } finally {
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionTest {
+  private static CompoundTag compound;
+
+  @BeforeAll
+  static void before() {
+    compound = new CompoundTag();
+    final ListTag entities = new ListTag();
+    for(int i = 0; i < 2000; i++) {
+      final CompoundTag entity = new CompoundTag();
+      entity.putString("id", "minecraft:zombie");
+      entity.putDouble("x", i * 0.5);
+      entity.putInt("Health", 20);
+      entity.putLongArray("Data", new long[]{i, i * 31L, 0, 0});
+      entities.add(entity);
+    }
+    compound.put("Entities", entities);
+    compound.putByteArray("Blocks", new byte[100000]);
+  }
+
+  @Test
+  void testRoundTrip() throws IOException {
+    for(final Compression compression : Compression.values()) {
+      final ByteArrayOutputStream output = new ByteArrayOutputStream();
+      TagIO.writeOutputStream(compound, output, compression);
+      assertEquals(compound, TagIO.readInputStream(new ByteArrayInputStream(output.toByteArray()), compression));
+    }
+  }
+
+  @Test
+  void testLz4Blocks() throws IOException {
+    final Random random = new Random(42);
+    final byte[] incompressible = new byte[70000];
+    random.nextBytes(incompressible);
+    final byte[] mixed = new byte[200000];
+    for(int i = 0; i < mixed.length; i++) {
+      mixed[i] = (byte) (i % 1000 < 500 ? random.nextInt(4) : i % 7);
+    }
+    for(final byte[] data : new byte[][]{new byte[0], new byte[]{1}, new byte[12], new byte[13], new byte[100000], incompressible, mixed}) {
+      final byte[] compressed = new byte[Lz4.maxCompressedLength(data.length)];
+      final int length = Lz4.compress(data, 0, data.length, compressed, 0, new int[1 << Lz4.HASH_LOG]);
+      final byte[] decompressed = new byte[data.length];
+      assertEquals(data.length, Lz4.decompress(compressed, 0, length, decompressed, 0, decompressed.length));
+      assertArrayEquals(data, decompressed);
+
+      assertArrayEquals(data, decompress(compress(data, Compression.LZ4), Compression.LZ4));
+    }
+  }
+
+  @Test
+  void testLz4Malformed() {
+    // a match with an offset before the start of the block
+    final byte[] block = {0x10, 'a', 0x05, 0x00};
+    assertThrows(IOException.class, () -> Lz4.decompress(block, 0, block.length, new byte[64], 0, 64));
+    // literals past the end of the destination
+    final byte[] literals = {(byte) 0x50, 1, 2, 3, 4, 5};
+    assertThrows(IOException.class, () -> Lz4.decompress(literals, 0, literals.length, new byte[4], 0, 4));
+    assertThrows(IOException.class, () -> decompress(new byte[]{1, 2, 3, 4, 5, 6, 7}, Compression.LZ4));
+  }
+
+  @Test
+  void testXxHash32() {
+    assertEquals(0x02cc5d05, Lz4.xxHash32(new byte[0], 0, 0, 0));
+    // the header checksum of a frame with 64 KiB independent blocks
+    assertEquals(0x82, (Lz4.xxHash32(new byte[]{0x60, 0x40}, 0, 2, 0) >>> 8) & 0xff);
+  }
+
+  @Test
+  void testRatio() throws IOException {
+    final byte[] data = TagIO.writeToByteArray(compound);
+    final byte[] lz4 = compress(data, Compression.LZ4);
+    assertTrue(lz4.length < data.length / 4, "lz4 " + lz4.length + " of " + data.length);
+    assertArrayEquals(data, decompress(lz4, Compression.LZ4));
+  }
+
+  private static byte[] compress(final byte[] data, final Compression compression) throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try(final OutputStream stream = compression.compress(output)) {
+      stream.write(data);
+    }
+    return output.toByteArray();
+  }
+
+  private static byte[] decompress(final byte[] data, final Compression compression) throws IOException {
+    try(final InputStream input = compression.decompress(new ByteArrayInputStream(data))) {
+      final ByteArrayOutputStream output = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      int read;
+      while((read = input.read(buffer)) != -1) {
+        output.write(buffer, 0, read);
+      }
+      return output.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IncrementalTagDecoderTest {
+  private static CompoundTag compound() {
+    final CompoundTag tag = new CompoundTag();
+    tag.putByte("byte", (byte) 1);
+    tag.putShort("short", (short) 2);
+    tag.putInt("int", 3);
+    tag.putLong("long", 4);
+    tag.putFloat("float", 5);
+    tag.putDouble("double", 6);
+    tag.putString("string", "seven \u0000 😀");
+    tag.putByteArray("bytes", new byte[3000]);
+    tag.putIntArray("ints", new int[]{1, -2, 3});
+    tag.putLongArray("longs", new long[]{Long.MIN_VALUE, 0, Long.MAX_VALUE});
+    tag.put("empty", new ListTag());
+    final ListTag list = new ListTag();
+    for(int i = 0; i < 10; i++) {
+      final CompoundTag element = new CompoundTag();
+      element.putInt("i", i);
+      element.put("nested", new CompoundTag());
+      list.add(element);
+    }
+    tag.put("list", list);
+    return tag;
+  }
+
+  @Test
+  void testChunks() throws IOException {
+    final CompoundTag tag = compound();
+    final byte[] bytes = TagIO.writeToByteArray(tag);
+    final Random random = new Random(7);
+    for(final int maxChunk : new int[]{1, 3, 17, 1000, bytes.length}) {
+      final IncrementalTagDecoder decoder = new IncrementalTagDecoder();
+      int offset = 0;
+      IncrementalTagDecoder.Status status = IncrementalTagDecoder.Status.NEED_MORE_INPUT;
+      while(offset < bytes.length) {
+        final int chunk = Math.min(bytes.length - offset, 1 + random.nextInt(maxChunk));
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, chunk).order(ByteOrder.LITTLE_ENDIAN);
+        status = decoder.feed(buffer);
+        assertFalse(buffer.hasRemaining());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+        offset += chunk;
+        if(offset < bytes.length) {
+          assertEquals(IncrementalTagDecoder.Status.NEED_MORE_INPUT, status);
+        }
+      }
+      assertEquals(IncrementalTagDecoder.Status.COMPLETE, status);
+      assertEquals(tag, decoder.result());
+    }
+  }
+
+  @Test
+  void testConsecutive() throws IOException {
+    final CompoundTag first = compound();
+    final CompoundTag second = new CompoundTag();
+    second.putString("second", "yes");
+    final byte[] a = TagIO.writeToByteArray(first);
+    final byte[] b = TagIO.writeToByteArray(second);
+    final ByteBuffer buffer = ByteBuffer.allocate(a.length + b.length).put(a).put(b);
+    buffer.flip();
+    final IncrementalTagDecoder decoder = new IncrementalTagDecoder();
+    assertEquals(IncrementalTagDecoder.Status.COMPLETE, decoder.feed(buffer));
+    assertEquals(b.length, buffer.remaining());
+    assertEquals(first, decoder.result());
+    assertEquals(IncrementalTagDecoder.Status.COMPLETE, decoder.feed(buffer));
+    assertEquals(second, decoder.result());
+  }
+
+  @Test
+  void testMalformed() {
+    assertThrows(IOException.class, () -> new IncrementalTagDecoder().feed(ByteBuffer.wrap(new byte[]{1, 0, 0})));
+    // a byte array with a negative length
+    assertThrows(IOException.class, () -> new IncrementalTagDecoder().feed(ByteBuffer.wrap(new byte[]{10, 0, 0, 7, 0, 1, 'a', -1, -1, -1, -1})));
+    assertThrows(IllegalStateException.class, () -> new IncrementalTagDecoder().result());
+  }
+
+  @Test
+  void testQuota() throws IOException {
+    // each empty compound element takes a single byte of input
+    final byte[] header = {TagType.COMPOUND.id(), 0, 0, TagType.LIST.id(), 0, 1, 'a', TagType.COMPOUND.id(), 0, 0, 0x10, 0};
+    final ByteBuffer buffer = ByteBuffer.allocate(header.length + 4096 + 1).put(header);
+    buffer.position(buffer.limit());
+    buffer.flip();
+    assertEquals(IncrementalTagDecoder.Status.COMPLETE, new IncrementalTagDecoder().feed(buffer.duplicate()));
+    final IncrementalTagDecoder decoder = IncrementalTagDecoder.builder().maxBytes(64 * 1024).build();
+    assertThrows(IOException.class, () -> decoder.feed(buffer.duplicate()));
+    assertThrows(IOException.class, () -> IncrementalTagDecoder.builder().maxTags(100).build().feed(buffer.duplicate()));
+  }
+}
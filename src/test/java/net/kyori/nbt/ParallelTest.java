@@ -0,0 +1,152 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelTest {
+  private static CompoundTag compound;
+
+  @BeforeAll
+  static void before() {
+    compound = new CompoundTag();
+    for(int i = 0; i < 64; i++) {
+      final ListTag sections = new ListTag();
+      for(int j = 0; j < 16; j++) {
+        final CompoundTag section = new CompoundTag();
+        section.putByte("Y", (byte) j);
+        section.putLongArray("BlockStates", new long[256 + i]);
+        section.putByteArray("SkyLight", new byte[2048]);
+        section.putString("Name", "section " + i + '/' + j);
+        sections.add(section);
+      }
+      final CompoundTag chunk = new CompoundTag();
+      chunk.put("Sections", sections);
+      chunk.putInt("xPos", i);
+      chunk.put("Empty", new CompoundTag());
+      compound.put("chunk" + i, chunk);
+    }
+  }
+
+  @Test
+  void testWriteIdentical() throws IOException {
+    final byte[] expected = TagIO.writeToByteArray(compound);
+    assertArrayEquals(expected, new ParallelTagWriter().writeToByteArray(compound));
+    assertArrayEquals(expected, new ParallelTagWriter(new ForkJoinPool(4), 1).writeToByteArray(compound));
+  }
+
+  @Test
+  void testGzip() throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    TagIO.writeOutputStream(compound, new ParallelGZIPOutputStream(output));
+    assertEquals(compound, TagIO.readCompressedInputStream(new ByteArrayInputStream(output.toByteArray())));
+
+    final ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      output.reset();
+      try(final ParallelGZIPOutputStream gzip = new ParallelGZIPOutputStream(output, executor, 3, 32 * 1024, 1)) {
+        gzip.write(TagIO.writeToByteArray(compound));
+        gzip.flush(); // a short block in the middle of the stream
+        TagIO.writeDataOutput(compound, new DataOutputStream(gzip));
+      }
+      final DataInputStream input = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(output.toByteArray())));
+      assertEquals(compound, TagIO.readDataInput(input));
+      assertEquals(compound, TagIO.readDataInput(input));
+
+      output.reset();
+      new ParallelGZIPOutputStream(output, executor, 1, 32 * 1024, 9).close();
+      assertEquals(-1, new GZIPInputStream(new ByteArrayInputStream(output.toByteArray())).read());
+
+      output.reset();
+      final AtomicBoolean closed = new AtomicBoolean();
+      final ParallelGZIPOutputStream gzip = new ParallelGZIPOutputStream(new FilterOutputStream(output) {
+        @Override
+        public void close() {
+          closed.set(true);
+        }
+      }, executor, 1, 32 * 1024, 9);
+      for(int i = 0; i < 100_000; i++) {
+        gzip.write(i);
+      }
+      gzip.finish();
+      assertThrows(IOException.class, () -> gzip.write(0));
+      gzip.close();
+      assertTrue(closed.get());
+      final GZIPInputStream inflated = new GZIPInputStream(new ByteArrayInputStream(output.toByteArray()));
+      for(int i = 0; i < 100_000; i++) {
+        assertEquals(i & 0xff, inflated.read());
+      }
+      assertEquals(-1, inflated.read());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void testCopy() {
+    final CompoundTag copy = ParallelTags.parallelCopy(compound);
+    assertNotSame(compound, copy);
+    assertNotSame(compound.getList("Sections"), copy.getList("Sections"));
+    assertEquals(compound, copy);
+  }
+
+  @Test
+  void testEqualsAndHash() {
+    final CompoundTag copy = compound.copy();
+    assertTrue(ParallelTags.parallelEquals(compound, copy));
+    assertEquals(compound.hashCode(), ParallelTags.parallelHash(compound));
+    assertEquals(compound.getCompound("chunk3").hashCode(), ParallelTags.parallelHash(compound.getCompound("chunk3")));
+
+    copy.getCompound("chunk63").getList("Sections").getCompound(15).putByte("Y", (byte) -1);
+    assertFalse(ParallelTags.parallelEquals(compound, copy));
+  }
+
+  @Test
+  void testSpliterators() {
+    assertEquals(compound.size(), StreamSupport.stream(compound.spliterator(), true).count());
+    final ListTag sections = compound.getCompound("chunk0").getList("Sections");
+    assertEquals(120, StreamSupport.stream(sections.spliterator(), true).mapToInt(section -> ((CompoundTag) section).getByte("Y")).sum());
+  }
+}
@@ -29,8 +29,11 @@ import com.google.common.io.ByteStreams;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.io.UTFDataFormatException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ReadWriteTest {
   @Test
@@ -95,6 +98,17 @@ class ReadWriteTest {
     assertEquals(a, b);
   }
 
+  @Test
+  void testListNegativeLength() throws IOException {
+    final ListTag list = new ListTag();
+    list.read(ByteStreams.newDataInput(new byte[]{10, -1, -1, -1, -1}), 0);
+    assertTrue(list.isEmpty());
+    // a compound holding a list of compounds with a length of -1
+    final byte[] bytes = {10, 0, 0, 9, 0, 1, 'l', 10, -1, -1, -1, -1, 0};
+    final CompoundTag compound = TagIO.readDataInput(ByteStreams.newDataInput(bytes));
+    assertTrue(compound.getList("l").isEmpty());
+  }
+
   @Test
   void testLongArray() throws IOException {
     this.testWriteRead(new LongArrayTag(new long[]{Long.MIN_VALUE, -100, 0, 100, Long.MAX_VALUE}), new LongArrayTag());
@@ -118,6 +132,37 @@ class ReadWriteTest {
     assertEquals(a, b);
   }
 
+  @Test
+  void testStringEncoded() throws IOException {
+    final StringTag a = new StringTag("H\u00e9llo, \u0000w\u00f6rld! \ud83d\ude00");
+    final StringTag b = new StringTag();
+    this.writeRead(a, b);
+    final StringTag c = new StringTag();
+    this.writeRead(b, c);
+    assertEquals(a.hashCode(), b.hashCode());
+    assertEquals(b, c);
+    assertEquals(a, c);
+    assertEquals(a.value(), c.value());
+    assertEquals(b.copy(), a);
+  }
+
+  @Test
+  void testStringMalformed() {
+    final StringTag tag = new StringTag();
+    assertThrows(UTFDataFormatException.class, () -> tag.read(ByteStreams.newDataInput(new byte[]{0, 2, 'a', (byte) 0x80}), 0));
+    assertThrows(UTFDataFormatException.class, () -> tag.read(ByteStreams.newDataInput(new byte[]{0, 2, 'a', (byte) 0xe0}), 0));
+  }
+
+  @Test
+  void testStringNonCanonical() throws IOException {
+    final StringTag canonical = new StringTag();
+    canonical.read(ByteStreams.newDataInput(new byte[]{0, 2, 'a', 0}), 0);
+    final StringTag overlong = new StringTag();
+    overlong.read(ByteStreams.newDataInput(new byte[]{0, 3, 'a', (byte) 0xc0, (byte) 0x80}), 0);
+    assertEquals(canonical.hashCode(), overlong.hashCode());
+    assertEquals(canonical, overlong);
+  }
+
   private <T extends Tag> void testWriteRead(final T a, final T b) throws IOException {
     this.writeRead(a, b);
     assertEquals(a, b);
@@ -127,6 +172,7 @@ class ReadWriteTest {
   private void writeRead(final Tag a, final Tag b) throws IOException {
     final ByteArrayDataOutput output = ByteStreams.newDataOutput();
     a.write(output);
+    assertEquals(output.toByteArray().length, a.serializedSize());
     final ByteArrayDataInput input = ByteStreams.newDataInput(output.toByteArray());
     b.read(input, 0);
   }
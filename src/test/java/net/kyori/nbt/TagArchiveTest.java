@@ -0,0 +1,86 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TagArchiveTest {
+  private static CompoundTag structure(final int size) {
+    final CompoundTag tag = new CompoundTag();
+    tag.putString("name", "structure" + size);
+    tag.putIntArray("size", new int[]{size, size, size});
+    final ListTag blocks = new ListTag();
+    for(int i = 0; i < size; i++) {
+      final CompoundTag block = new CompoundTag();
+      block.putInt("state", i);
+      block.putLongArray("pos", new long[]{i, i * 2L, i * 3L});
+      blocks.add(block);
+    }
+    tag.put("blocks", blocks);
+    return tag;
+  }
+
+  @Test
+  void testReadWrite() throws IOException {
+    final Path path = Files.createTempFile("archive", ".nbta");
+    try {
+      TagArchive.writer()
+        .add("village/house", structure(5))
+        .add("dungeon", structure(40))
+        .add("église", structure(1)) // sorted by the string, not its bytes
+        .add("empty", new CompoundTag())
+        .write(path);
+      final TagArchive archive = TagArchive.open(path);
+      assertEquals(4, archive.size());
+      assertEquals(Arrays.asList("dungeon", "empty", "village/house", "église"), archive.names());
+      assertEquals(structure(40), archive.get("dungeon").cursor().toTag());
+      assertEquals(structure(5), archive.get("village/house").cursor().toTag());
+      assertEquals(structure(1), archive.get("église").cursor().toTag());
+      assertEquals(new CompoundTag(), archive.get("empty").cursor().toTag());
+      assertNull(archive.get("missing"));
+
+      final TagTape.Cursor cursor = archive.get("dungeon").cursor();
+      assertTrue(cursor.enter("blocks"));
+      assertTrue(cursor.enter(39));
+      assertTrue(cursor.enter("pos"));
+      assertEquals(117, cursor.longArrayView().get(2));
+
+      assertThrows(IllegalArgumentException.class, () -> TagArchive.writer().add("a", new CompoundTag()).add("a", new CompoundTag()));
+      Files.write(path, new byte[]{1, 2, 3});
+      assertThrows(IOException.class, () -> TagArchive.open(path));
+    } finally {
+      Files.delete(path);
+    }
+  }
+}
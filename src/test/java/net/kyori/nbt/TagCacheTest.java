@@ -0,0 +1,137 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TagCacheTest {
+  private static CompoundTag tag(final String value) {
+    final CompoundTag tag = new CompoundTag();
+    tag.putString("value", value);
+    tag.putIntArray("data", new int[1000]);
+    return tag;
+  }
+
+  @Test
+  void testHitsAndReload() throws Exception {
+    final Path path = Files.createTempFile("cache", ".dat");
+    try {
+      TagIO.writeCompressedPath(tag("a"), path);
+      final TagCache cache = TagCache.builder().build();
+      final CompoundTag first = cache.get(path);
+      assertEquals(tag("a"), first);
+      first.putString("value", "modified");
+      assertEquals(tag("a"), cache.get(path)); // copy on read
+      assertEquals(1, cache.stats().loads());
+      assertEquals(1, cache.stats().hits());
+
+      TagIO.writeCompressedPath(tag("b"), path);
+      Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 2000));
+      assertEquals(tag("b"), cache.get(path));
+      assertEquals(2, cache.stats().loads());
+      assertEquals(1, cache.stats().size());
+
+      final TagCache shared = TagCache.builder().copyOnRead(false).build();
+      assertSame(shared.get(path), shared.get(path));
+      assertNotSame(cache.get(path), cache.get(path));
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  void testEviction() throws Exception {
+    final List<Path> paths = new ArrayList<>();
+    try {
+      for(int i = 0; i < 4; i++) {
+        final Path path = Files.createTempFile("cache", ".dat");
+        TagIO.writeCompressedPath(tag("v" + i), path);
+        paths.add(path);
+      }
+      final long weight = RetainedSize.of(tag("v0"));
+      final TagCache cache = TagCache.builder().maxBytes(weight * 2).build();
+      cache.get(paths.get(0));
+      cache.get(paths.get(1));
+      cache.get(paths.get(0)); // path 1 is now least recently used
+      cache.get(paths.get(2));
+      assertEquals(1, cache.stats().evictions());
+      assertEquals(2, cache.stats().size());
+      assertTrue(cache.stats().weight() <= weight * 2);
+      cache.get(paths.get(0));
+      assertEquals(3, cache.stats().loads());
+      cache.get(paths.get(1));
+      assertEquals(4, cache.stats().loads());
+    } finally {
+      for(final Path path : paths) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+
+  @Test
+  void testSingleFlight() throws Exception {
+    final Path path = Files.createTempFile("cache", ".dat");
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      final CompoundTag big = new CompoundTag();
+      for(int i = 0; i < 20000; i++) {
+        big.putString("key" + i, "value" + i);
+      }
+      TagIO.writeCompressedPath(big, path);
+      final TagCache cache = TagCache.builder().build();
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Future<CompoundTag>> results = new ArrayList<>();
+      for(int i = 0; i < 8; i++) {
+        results.add(executor.submit(() -> {
+          start.await();
+          return cache.get(path);
+        }));
+      }
+      start.countDown();
+      for(final Future<CompoundTag> result : results) {
+        assertEquals(big, result.get());
+      }
+      assertEquals(1, cache.stats().loads());
+      assertEquals(8, cache.stats().hits() + cache.stats().misses());
+    } finally {
+      executor.shutdown();
+      Files.deleteIfExists(path);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TagDecoderTest {
+  @Test
+  void testDeepTreeOnSmallStack() throws Exception {
+    final CompoundTag root = nest(CompoundTag.MAX_DEPTH);
+    final byte[] bytes = write(root);
+    final AtomicReference<Object> result = new AtomicReference<>();
+    final Thread thread = new Thread(null, () -> {
+      try {
+        result.set(TagDecoder.decoder().decode(new DataInputStream(new ByteArrayInputStream(bytes))));
+      } catch(final Throwable t) {
+        result.set(t);
+      }
+    }, "small-stack", 64 * 1024);
+    thread.start();
+    thread.join();
+    assertEquals(root, result.get());
+  }
+
+  @Test
+  void testTooDeep() throws IOException {
+    final byte[] bytes = write(nest(CompoundTag.MAX_DEPTH + 1));
+    assertThrows(IllegalStateException.class, () -> TagDecoder.decoder().decode(new DataInputStream(new ByteArrayInputStream(bytes))));
+  }
+
+  @Test
+  void testDecodeValue() throws IOException {
+    final ListTag list = new ListTag();
+    for(int i = 0; i < 3; i++) {
+      final CompoundTag element = new CompoundTag();
+      element.putInt("index", i);
+      element.put("doubles", ListTag.doubles(i, i * 2));
+      list.add(element);
+    }
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    list.write(new DataOutputStream(output));
+    assertEquals(list, TagDecoder.decoder().decode(TagType.LIST, new DataInputStream(new ByteArrayInputStream(output.toByteArray()))));
+  }
+
+  @Test
+  void testInterner() throws IOException {
+    final CompoundTag root = new CompoundTag();
+    final CompoundTag a = new CompoundTag();
+    a.putString("id", "minecraft:stone");
+    root.put("a", a);
+    root.put("b", a.copy());
+    final ListTag list = new ListTag();
+    list.add(a.copy());
+    list.add(a.copy());
+    root.put("c", list);
+    final TagInterner interner = new TagInterner();
+    final TagDecoder decoder = TagDecoder.builder().interner(interner).build();
+    final CompoundTag decoded = decoder.decode(new DataInputStream(new ByteArrayInputStream(write(root))));
+    assertEquals(root, decoded);
+    assertSame(decoded.get("a"), decoded.get("b"));
+    assertSame(decoded.get("a"), decoded.getList("c").get(1));
+    // decoded tags are hashed the same way as tags interned directly
+    assertSame(decoded.get("a"), interner.intern(a.copy()));
+    assertSame(decoded.get("c"), interner.intern(list.copy()));
+    assertNotSame(decoded, interner.intern(root.copy()));
+  }
+
+  @Test
+  void testOversizedArray() {
+    final byte[] bytes = {TagType.COMPOUND.id(), 0, 0, TagType.LONG_ARRAY.id(), 0, 1, 'a', 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 1, 2, 3};
+    assertThrows(EOFException.class, () -> TagDecoder.decoder().decode(new DataInputStream(new ByteArrayInputStream(bytes))));
+    final TagDecoder decoder = TagDecoder.builder().maxBytes(1024 * 1024).build();
+    final IOException e = assertThrows(IOException.class, () -> decoder.decode(new DataInputStream(new ByteArrayInputStream(bytes))));
+    assertFalse(e instanceof EOFException);
+  }
+
+  @Test
+  void testLargeArrays() throws IOException {
+    final CompoundTag root = new CompoundTag();
+    final int[] ints = new int[300_001];
+    final long[] longs = new long[150_001];
+    for(int i = 0; i < ints.length; i++) {
+      ints[i] = i * 0x9e3779b9;
+    }
+    for(int i = 0; i < longs.length; i++) {
+      longs[i] = i * 0x9e3779b97f4a7c15L;
+    }
+    root.putIntArray("ints", ints);
+    root.putLongArray("longs", longs);
+    assertEquals(root, TagDecoder.decoder().decode(new DataInputStream(new ByteArrayInputStream(write(root)))));
+  }
+
+  @Test
+  void testQuota() throws IOException {
+    final CompoundTag root = new CompoundTag();
+    root.put("list", ListTag.doubles(new double[1000]));
+    final byte[] bytes = write(root);
+    assertEquals(root, TagDecoder.builder().maxTags(1002).build().decode(new DataInputStream(new ByteArrayInputStream(bytes))));
+    assertThrows(IOException.class, () -> TagDecoder.builder().maxTags(1001).build().decode(new DataInputStream(new ByteArrayInputStream(bytes))));
+    assertThrows(IOException.class, () -> TagDecoder.builder().maxBytes(1000).build().decode(new DataInputStream(new ByteArrayInputStream(bytes))));
+  }
+
+  @Test
+  void testQuotaOverloads() throws IOException {
+    // a list of end tags has no input for its elements, so only a quota bounds it
+    final byte[] bytes = {TagType.COMPOUND.id(), 0, 0, TagType.LIST.id(), 0, 1, 'a', TagType.END.id(), 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0};
+    final IOException e = assertThrows(IOException.class, () -> TagIO.readDataInput(new DataInputStream(new ByteArrayInputStream(bytes)), 1024 * 1024));
+    assertFalse(e instanceof EOFException);
+    final TagDecoder decoder = TagDecoder.builder().maxBytes(1024 * 1024).build();
+    assertThrows(IOException.class, () -> TagIO.readInputStream(new ByteArrayInputStream(bytes), Compression.NONE, decoder));
+    final CompoundTag tag = new CompoundTag();
+    tag.putString("a", "b");
+    assertEquals(tag, TagIO.readInputStream(new ByteArrayInputStream(write(tag)), Compression.NONE, decoder));
+  }
+
+  private static CompoundTag nest(final int depth) {
+    final CompoundTag root = new CompoundTag();
+    CompoundTag current = root;
+    for(int i = 0; i < depth; i++) {
+      final CompoundTag child = new CompoundTag();
+      current.put("child", child);
+      current = child;
+    }
+    current.putString("leaf", "value");
+    return root;
+  }
+
+  private static byte[] write(final CompoundTag tag) throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    TagIO.writeDataOutput(tag, new DataOutputStream(output));
+    return output.toByteArray();
+  }
+}
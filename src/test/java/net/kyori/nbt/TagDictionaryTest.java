@@ -0,0 +1,103 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TagDictionaryTest {
+  private static CompoundTag item(final int i) {
+    final CompoundTag tag = new CompoundTag();
+    tag.putString("id", i % 3 == 0 ? "minecraft:diamond_sword" : "minecraft:iron_pickaxe");
+    tag.putByte("Count", (byte) (1 + i % 64));
+    tag.putByte("Slot", (byte) (i % 36));
+    final CompoundTag display = new CompoundTag();
+    display.putString("Name", "{\"text\":\"Item " + i + "\"}");
+    final CompoundTag nbt = new CompoundTag();
+    nbt.put("display", display);
+    nbt.putInt("Damage", i * 7);
+    nbt.putBoolean("Unbreakable", i % 5 == 0);
+    final ListTag enchantments = new ListTag();
+    final CompoundTag enchantment = new CompoundTag();
+    enchantment.putString("id", "minecraft:sharpness");
+    enchantment.putShort("lvl", (short) (1 + i % 5));
+    enchantments.add(enchantment);
+    nbt.put("Enchantments", enchantments);
+    tag.put("tag", nbt);
+    return tag;
+  }
+
+  @Test
+  void testRoundTrip() throws IOException {
+    final List<CompoundTag> samples = new ArrayList<>();
+    for(int i = 0; i < 200; i++) {
+      samples.add(item(i));
+    }
+    final TagDictionary dictionary = TagDictionary.trainer().samples(samples).train(4096);
+    assertTrue(dictionary.bytes().length > 0);
+    assertEquals(dictionary.id(), TagDictionary.of(dictionary.bytes()).id());
+
+    int plain = 0;
+    int trained = 0;
+    for(int i = 1000; i < 1050; i++) {
+      final CompoundTag tag = item(i);
+      final byte[] frame = TagIO.writeDictionaryCompressed(tag, dictionary);
+      assertEquals(tag, TagIO.readDictionaryCompressed(frame, TagDictionary.of(new byte[]{1, 2, 3}), dictionary));
+      trained += frame.length;
+
+      final ByteArrayOutputStream output = new ByteArrayOutputStream();
+      try(final DeflaterOutputStream deflater = new DeflaterOutputStream(output, new Deflater())) {
+        deflater.write(TagIO.writeToByteArray(tag));
+      }
+      plain += output.size();
+    }
+    assertTrue(trained * 2 < plain, "trained " + trained + " vs plain " + plain);
+  }
+
+  @Test
+  void testUnknownDictionary() throws IOException {
+    final byte[] frame = TagIO.writeDictionaryCompressed(item(0), TagDictionary.trainer().sample(item(0)).sample(item(1)).train(1024));
+    assertThrows(IOException.class, () -> TagIO.readDictionaryCompressed(frame, TagDictionary.of(new byte[]{1, 2, 3})));
+  }
+
+  @Test
+  void testMaxFrameSize() throws IOException {
+    final TagDictionary dictionary = TagDictionary.trainer().sample(item(0)).sample(item(1)).train(1024);
+    final CompoundTag tag = new CompoundTag();
+    tag.putByteArray("zeros", new byte[1024 * 1024]);
+    final byte[] frame = TagIO.writeDictionaryCompressed(tag, dictionary);
+    assertEquals(tag, TagIO.readDictionaryCompressed(frame, dictionary));
+    assertThrows(IOException.class, () -> TagIO.readDictionaryCompressed(frame, 64 * 1024, dictionary));
+  }
+}
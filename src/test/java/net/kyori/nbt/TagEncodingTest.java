@@ -0,0 +1,97 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TagEncodingTest {
+  private static CompoundTag compound() {
+    final CompoundTag tag = new CompoundTag();
+    tag.putByte("byte", (byte) -3);
+    tag.putShort("short", (short) 1234);
+    tag.putInt("int", -123456);
+    tag.putLong("long", Long.MIN_VALUE);
+    tag.putFloat("float", 1.5f);
+    tag.putDouble("double", -2.25);
+    tag.putString("string", "naïve \u0000 😀");
+    tag.putByteArray("bytes", new byte[]{1, 2, 3});
+    tag.putIntArray("ints", new int[]{0, -1, Integer.MAX_VALUE});
+    tag.putLongArray("longs", new long[]{Long.MAX_VALUE, -1});
+    final ListTag list = new ListTag();
+    for(int i = 0; i < 3; i++) {
+      final CompoundTag element = new CompoundTag();
+      element.putString("name", "element " + i);
+      list.add(element);
+    }
+    tag.put("list", list);
+    return tag;
+  }
+
+  @Test
+  void testRoundTrip() throws IOException {
+    final CompoundTag tag = compound();
+    for(final TagEncoding encoding : TagEncoding.values()) {
+      final byte[] bytes = write(tag, encoding);
+      assertEquals(tag, read(bytes, encoding));
+      final CompoundTag raw = TagIO.readDataInput(encoding.input(new DataInputStream(new ByteArrayInputStream(bytes))), RawTagPolicy.keys("list", "string", "ints"));
+      assertArrayEquals(bytes, write(raw, encoding));
+    }
+  }
+
+  @Test
+  void testBytes() throws IOException {
+    final CompoundTag tag = new CompoundTag();
+    tag.putInt("a", 1);
+    assertArrayEquals(new byte[]{10, 0, 0, 3, 1, 0, 'a', 1, 0, 0, 0, 0}, write(tag, TagEncoding.LITTLE_ENDIAN));
+    assertArrayEquals(new byte[]{10, 0, 3, 1, 'a', 2, 0}, write(tag, TagEncoding.NETWORK));
+  }
+
+  @Test
+  void testTranscode() throws IOException {
+    // strings and raw tags read from the Java encoding are written in the target encoding
+    final CompoundTag tag = compound();
+    final CompoundTag java = TagIO.readDataInput(new DataInputStream(new ByteArrayInputStream(write(tag, TagEncoding.JAVA))), RawTagPolicy.keys("list"));
+    for(final TagEncoding encoding : TagEncoding.values()) {
+      assertArrayEquals(write(tag, encoding), write(java, encoding));
+    }
+  }
+
+  private static byte[] write(final CompoundTag tag, final TagEncoding encoding) throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    TagIO.writeOutputStream(tag, output, Compression.NONE, encoding);
+    return output.toByteArray();
+  }
+
+  private static CompoundTag read(final byte[] bytes, final TagEncoding encoding) throws IOException {
+    return TagIO.readInputStream(new ByteArrayInputStream(bytes), Compression.NONE, encoding);
+  }
+}
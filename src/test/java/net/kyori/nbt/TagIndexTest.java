@@ -0,0 +1,108 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TagIndexTest {
+  private static CompoundTag world() {
+    final CompoundTag world = new CompoundTag();
+    world.putString("name", "world");
+    final ListTag players = new ListTag();
+    for(int i = 0; i < 10; i++) {
+      final CompoundTag player = new CompoundTag();
+      player.putInt("id", i);
+      player.putByteArray("inventory", new byte[100 * i]);
+      player.put("pos", ListTag.doubles(i, 64, -i));
+      players.add(player);
+    }
+    final CompoundTag data = new CompoundTag();
+    data.put("players", players);
+    data.putLongArray("seeds", new long[]{1, 2, 3});
+    world.put("data", data);
+    return world;
+  }
+
+  @Test
+  void testRead() throws IOException {
+    final Path file = Files.createTempFile("world", ".dat");
+    try {
+      final CompoundTag world = world();
+      TagIO.writePath(world, file);
+      final TagIndex index = TagIndex.builder().build(file);
+      assertFalse(index.stale());
+      assertEquals(world, index.read(Collections.emptyList()));
+      assertEquals(world.getCompound("data").getList("players").get(7), index.read(Arrays.asList("data", "players", "7")));
+      assertEquals(new IntTag(3), index.read(Arrays.asList("data", "players", "3", "id")));
+      assertEquals(new StringTag("world"), index.read(Collections.singletonList("name")));
+      assertNull(index.read(Arrays.asList("data", "missing")));
+      assertNull(index.read(Arrays.asList("data", "players", "10")));
+
+      final TagIndex.Entry entry = index.entry(Arrays.asList("data", "players", "9", "inventory"));
+      assertEquals(TagType.BYTE_ARRAY, entry.type());
+      assertEquals(4 + 900, entry.length());
+
+      // the same values are found through the closest indexed value
+      final TagIndex sparse = TagIndex.builder().maxDepth(2).minBytes(64).build(file);
+      assertTrue(sparse.size() < index.size());
+      assertNull(sparse.entry(Collections.singletonList("name")));
+      assertNull(sparse.entry(Arrays.asList("data", "players", "7")));
+      assertEquals(world.getCompound("data").getList("players").get(7), sparse.read(Arrays.asList("data", "players", "7")));
+      assertEquals(new StringTag("world"), sparse.read(Collections.singletonList("name")));
+      assertEquals(sparse.size(), TagIndex.open(file).size());
+
+      // an entry count too large for the sidecar is rejected before anything is allocated
+      final byte[] sidecar = Files.readAllBytes(TagIndex.sidecar(file));
+      final byte[] corrupt = sidecar.clone();
+      corrupt[36] = 0x7f;
+      Files.write(TagIndex.sidecar(file), corrupt);
+      assertThrows(IOException.class, () -> TagIndex.open(file));
+      Files.write(TagIndex.sidecar(file), sidecar);
+      assertEquals(sparse.size(), TagIndex.open(file).size());
+
+      world.putString("name", "changed");
+      TagIO.writePath(world, file);
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+      assertTrue(index.stale());
+      assertThrows(IOException.class, () -> index.read(Collections.emptyList()));
+      assertThrows(IOException.class, () -> TagIndex.open(file));
+    } finally {
+      Files.deleteIfExists(TagIndex.sidecar(file));
+      Files.delete(file);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TagInternerTest {
+  @Test
+  void testInternEqual() {
+    final TagInterner interner = new TagInterner();
+    final CompoundTag a = enchantment("sharpness", 5);
+    final CompoundTag b = enchantment("sharpness", 5);
+    assertNotSame(a, b);
+    assertSame(interner.intern(a), interner.intern(b));
+  }
+
+  @Test
+  void testInternChildren() {
+    final TagInterner interner = new TagInterner();
+    final ListTag a = new ListTag();
+    a.add(enchantment("sharpness", 5));
+    final CompoundTag b = new CompoundTag();
+    b.put("sharpness", enchantment("sharpness", 5));
+    final ListTag internedA = interner.intern(a);
+    final CompoundTag internedB = interner.intern(b);
+    assertSame(internedA.get(0), internedB.get("sharpness"));
+    // the tags being interned are not modified
+    assertNotSame(a.get(0), b.get("sharpness"));
+  }
+
+  @Test
+  void testInternDifferent() {
+    final TagInterner interner = new TagInterner(1);
+    final CompoundTag a = enchantment("sharpness", 5);
+    final CompoundTag b = enchantment("sharpness", 4);
+    assertSame(a, interner.intern(a));
+    assertSame(b, interner.intern(b));
+    assertEquals(enchantment("sharpness", 4), interner.intern(enchantment("sharpness", 4)));
+  }
+
+  private static CompoundTag enchantment(final String id, final int level) {
+    final CompoundTag tag = new CompoundTag();
+    tag.putString("id", id);
+    tag.putShort("lvl", (short) level);
+    return tag;
+  }
+}
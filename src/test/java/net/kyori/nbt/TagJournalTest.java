@@ -0,0 +1,146 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TagJournalTest {
+  @Test
+  void testReplay() throws IOException {
+    final Path directory = Files.createTempDirectory("journal");
+    try {
+      final Path path = directory.resolve("world.dat");
+      final CompoundTag expected;
+      try(final TagJournal journal = TagJournal.builder().open(path)) {
+        journal.edit()
+          .put(Collections.singletonList("players"), new ListTag())
+          .put(Collections.singletonList("time"), new LongTag(1))
+          .commit();
+        journal.edit()
+          .insert(Collections.singletonList("players"), 0, ListTag.strings("a"))
+          .insert(Collections.singletonList("players"), 0, ListTag.strings("b"))
+          .set(Collections.singletonList("players"), 1, ListTag.strings("c"))
+          .put(Arrays.asList("players", "0"), ListTag.strings("d", "e"))
+          .put(Arrays.asList("players", "1", "0"), new StringTag("f"))
+          .remove(Collections.singletonList("time"))
+          .commit();
+        // rolled back as a whole
+        assertThrows(IllegalArgumentException.class, () -> journal.edit()
+          .put(Collections.singletonList("time"), new LongTag(2))
+          .insert(Collections.singletonList("players"), 0, new IntTag(1))
+          .commit());
+        assertFalse(journal.root().contains("time"));
+        expected = journal.root().copy();
+        assertEquals(2, expected.getList("players").size());
+        assertFalse(Files.exists(path)); // everything is in the journal
+      }
+      // a torn record at the end of the journal
+      Files.write(directory.resolve("world.dat.journal"), new byte[]{0, 0, 0, 9, 1, 2}, StandardOpenOption.APPEND);
+      try(final TagJournal journal = TagJournal.builder().open(path)) {
+        assertEquals(expected, journal.root());
+        journal.compact();
+        assertTrue(Files.exists(path));
+        assertEquals(16, journal.journalSize());
+      }
+      try(final TagJournal journal = TagJournal.builder().open(path)) {
+        assertEquals(expected, journal.root());
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+
+  @Test
+  void testCompact() throws IOException {
+    final Path directory = Files.createTempDirectory("journal");
+    try {
+      final Path path = directory.resolve("world.dat");
+      final byte[] journalBefore;
+      try(final TagJournal journal = TagJournal.builder().compactBytes(1024).open(path)) {
+        for(int i = 0; i < 100; i++) {
+          journal.edit().put(Collections.singletonList("counter"), new IntTag(i)).commit();
+          assertTrue(journal.journalSize() < 1024);
+        }
+        assertTrue(Files.exists(path));
+        journalBefore = Files.readAllBytes(directory.resolve("world.dat.journal"));
+        journal.edit().put(Collections.singletonList("counter"), new IntTag(100)).commit();
+      }
+      // a crash after the snapshot was replaced, but before the journal was cleared
+      final byte[] snapshot = Files.readAllBytes(path);
+      try(final TagJournal journal = TagJournal.builder().open(path)) {
+        assertEquals(100, journal.root().getInt("counter"));
+        journal.compact();
+      }
+      Files.write(directory.resolve("world.dat.journal"), journalBefore);
+      assertFalse(Arrays.equals(snapshot, Files.readAllBytes(path)));
+      try(final TagJournal journal = TagJournal.builder().open(path)) {
+        assertEquals(100, journal.root().getInt("counter"));
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+
+  @Test
+  void testCompactionFailure() throws IOException {
+    final Path directory = Files.createTempDirectory("journal");
+    try {
+      final Path path = directory.resolve("world.dat");
+      try(final TagJournal journal = TagJournal.builder().compactBytes(16).open(path)) {
+        journal.edit().put(Collections.singletonList("log"), new ListTag()).commit();
+        // the temporary snapshot can not be written while a directory is in its place
+        final Path blocker = Files.createDirectories(directory.resolve("world.dat.tmp").resolve("blocker"));
+        final TagJournal.Edit edit = journal.edit().insert(Collections.singletonList("log"), 0, new IntTag(1));
+        edit.commit(); // committed, although compacting failed
+        edit.commit();
+        assertEquals(1, journal.root().getList("log").size());
+        // the snapshot was never replaced, so the journal is still appended to while compaction keeps failing
+        journal.edit().put(Collections.singletonList("time"), new LongTag(1)).commit();
+        assertTrue(journal.root().contains("time"));
+        Files.delete(blocker);
+        Files.delete(blocker.getParent());
+        journal.edit().put(Collections.singletonList("time"), new LongTag(1)).commit();
+        assertTrue(Files.exists(path));
+      }
+      try(final TagJournal journal = TagJournal.builder().open(path)) {
+        assertEquals(1, journal.root().getList("log").size());
+        assertEquals(1, journal.root().getLong("time"));
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TagRecordTest {
+  private static CompoundTag record(final int i) {
+    final CompoundTag tag = new CompoundTag();
+    tag.putString("type", "position");
+    tag.putLong("player", 1000 + i % 10);
+    tag.putDouble("x", i * 0.25);
+    tag.putDouble("z", -i * 0.5);
+    return tag;
+  }
+
+  @Test
+  void testRecords() throws IOException {
+    for(final TagEncoding encoding : TagEncoding.values()) {
+      for(final boolean deflate : new boolean[]{false, true}) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try(final TagRecordWriter writer = TagRecordWriter.builder().deflate(deflate).encoding(encoding).flushPolicy(FlushPolicy.records(100)).build(output)) {
+          for(int i = 0; i < 1000; i++) {
+            writer.write(record(i));
+          }
+        }
+        try(final TagRecordReader reader = TagRecordReader.builder().inflate(deflate).encoding(encoding).build(new ByteArrayInputStream(output.toByteArray()))) {
+          for(int i = 0; i < 1000; i++) {
+            assertEquals(record(i), reader.read());
+          }
+          assertNull(reader.read());
+        }
+      }
+    }
+  }
+
+  @Test
+  void testSharedHistory() throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try(final TagRecordWriter writer = TagRecordWriter.builder().deflate(true).build(output)) {
+      for(int i = 0; i < 100; i++) {
+        writer.write(record(i));
+      }
+    }
+    int separate = 0;
+    for(int i = 0; i < 100; i++) {
+      final ByteArrayOutputStream single = new ByteArrayOutputStream();
+      TagIO.writeCompressedOutputStream(record(i), single);
+      separate += single.size();
+    }
+    assertTrue(output.size() * 2 < separate, "shared " + output.size() + " vs separate " + separate);
+  }
+
+  @Test
+  void testFlushedRecordReadable() throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final TagRecordWriter writer = TagRecordWriter.builder().deflate(true).flushPolicy(FlushPolicy.MANUAL).build(output);
+    writer.write(record(0));
+    writer.write(record(1));
+    writer.flush();
+    // the stream is still open, but everything written so far can be read
+    final TagRecordReader reader = TagRecordReader.builder().inflate(true).build(new ByteArrayInputStream(output.toByteArray()));
+    assertEquals(record(0), reader.read());
+    assertEquals(record(1), reader.read());
+    writer.close();
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TagSaverTest {
+  private static CompoundTag tag(final int version) {
+    final CompoundTag tag = new CompoundTag();
+    tag.putInt("version", version);
+    return tag;
+  }
+
+  @Test
+  void testCoalesce() throws IOException {
+    final Path directory = Files.createTempDirectory("saver");
+    try {
+      final Queue<Runnable> tasks = new ArrayDeque<>();
+      final TagSaver saver = TagSaver.builder().executor(tasks::add).workers(1).build();
+      final Path path = directory.resolve("player.dat");
+      final CompletableFuture<Void> first = saver.save(tag(1), path);
+      final CompletableFuture<Void> second = saver.save(tag(2), path);
+      saver.save(tag(1), directory.resolve("other.dat"));
+      assertSame(first, second);
+      assertEquals(1, tasks.size());
+      final CompletableFuture<Void> flush = saver.flush();
+      assertFalse(flush.isDone());
+
+      tasks.poll().run();
+      assertTrue(flush.isDone());
+      assertTrue(first.isDone());
+      assertEquals(tag(2), TagIO.readCompressedPath(path));
+      assertEquals(tag(1), TagIO.readCompressedPath(directory.resolve("other.dat")));
+      try(final Stream<Path> files = Files.list(directory)) {
+        assertEquals(2, files.count()); // no temporary files left behind
+      }
+      if(Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class)) {
+        // saved files get the same permissions as any other new file, rather than those of a private temporary file
+        final Path reference = Files.createFile(directory.resolve("reference"));
+        assertEquals(Files.getPosixFilePermissions(reference), Files.getPosixFilePermissions(path));
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+
+  @Test
+  void testClose() throws IOException {
+    final Path directory = Files.createTempDirectory("saver");
+    try {
+      final TagSaver saver = TagSaver.builder().compression(Compression.LZ4).batchSize(3).build();
+      for(int i = 0; i < 100; i++) {
+        saver.save(tag(i), directory.resolve("file" + (i % 10) + ".dat"));
+      }
+      saver.close();
+      for(int i = 0; i < 10; i++) {
+        assertEquals(tag(90 + i), TagIO.readPath(directory.resolve("file" + i + ".dat"), Compression.LZ4));
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+
+  @Test
+  void testFailure() throws IOException {
+    final Path directory = Files.createTempDirectory("saver");
+    try {
+      final TagSaver saver = TagSaver.builder().build();
+      final CompletableFuture<Void> missing = saver.save(tag(0), directory.resolve("missing").resolve("file.dat"));
+      final CompletableFuture<Void> ok = saver.save(tag(0), directory.resolve("file.dat"));
+      saver.close();
+      assertTrue(missing.isCompletedExceptionally());
+      assertFalse(ok.isCompletedExceptionally());
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TagStoreTest {
+  private static CompoundTag tag(final int version) {
+    final CompoundTag tag = new CompoundTag();
+    tag.putInt("version", version);
+    tag.putByteArray("data", new byte[100]);
+    return tag;
+  }
+
+  @Test
+  void testPutGetRemove() throws IOException {
+    final Path directory = Files.createTempDirectory("store");
+    try {
+      final UUID uuid = UUID.randomUUID();
+      try(final TagStore store = TagStore.builder().open(directory)) {
+        assertNull(store.get("a"));
+        store.put("a", tag(1));
+        store.put("b", tag(2), Compression.NONE);
+        store.put(uuid, tag(3));
+        store.put("a", tag(4));
+        assertEquals(tag(4), store.get("a"));
+        assertEquals(tag(2), store.get("b"));
+        assertEquals(tag(3), store.get(uuid));
+        assertTrue(store.remove("b"));
+        assertFalse(store.remove("b"));
+        assertNull(store.get("b"));
+        assertEquals(2, store.size());
+        assertThrows(IOException.class, () -> TagStore.builder().open(directory)); // locked
+      }
+      try(final TagStore store = TagStore.builder().open(directory)) {
+        assertEquals(tag(4), store.get("a"));
+        assertNull(store.get("b"));
+        assertEquals(tag(3), store.get(uuid));
+        assertEquals(2, store.keys().size());
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+
+  @Test
+  void testInterrupted() throws IOException {
+    final Path directory = Files.createTempDirectory("store");
+    try(final TagStore store = TagStore.builder().open(directory)) {
+      store.put("a", tag(1));
+      Thread.currentThread().interrupt();
+      assertThrows(ClosedByInterruptException.class, () -> store.get("a"));
+      assertTrue(Thread.interrupted());
+      assertEquals(tag(1), store.get("a"));
+      Thread.currentThread().interrupt();
+      assertThrows(ClosedByInterruptException.class, () -> store.put("b", tag(2)));
+      assertTrue(Thread.interrupted());
+      store.put("b", tag(3));
+      assertEquals(tag(3), store.get("b"));
+    } finally {
+      Thread.interrupted();
+      TestFiles.delete(directory);
+    }
+  }
+
+  @Test
+  void testRecover() throws IOException {
+    final Path directory = Files.createTempDirectory("store");
+    try {
+      try(final TagStore store = TagStore.builder().open(directory)) {
+        store.put("a", tag(1));
+        store.checkpoint();
+        store.put("b", tag(2)); // replayed after the checkpoint
+        store.remove("a");
+      }
+      Files.delete(directory.resolve("checkpoint"));
+      // a torn record at the end of the segment, with a length running far past it
+      Files.write(directory.resolve("0000000000000000.seg"), new byte[]{0x7f, -1, -1, 0, 0, 0, 0, 0, 1, 2}, StandardOpenOption.APPEND);
+      try(final TagStore store = TagStore.builder().open(directory)) {
+        assertNull(store.get("a"));
+        assertEquals(tag(2), store.get("b"));
+        assertEquals(1, store.size());
+        store.put("c", tag(3));
+      }
+      try(final TagStore store = TagStore.builder().open(directory)) {
+        assertEquals(tag(2), store.get("b"));
+        assertEquals(tag(3), store.get("c"));
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+
+  @Test
+  void testCompact() throws IOException {
+    final Path directory = Files.createTempDirectory("store");
+    try {
+      final Queue<Runnable> tasks = new ArrayDeque<>();
+      try(final TagStore store = TagStore.builder().segmentBytes(4096).executor(tasks::add).open(directory)) {
+        for(int i = 0; i < 200; i++) {
+          store.put("key" + i % 10, tag(i));
+        }
+        store.remove("key0");
+        assertFalse(tasks.isEmpty()); // compaction scheduled when segments filled up
+        final long before = segmentBytes(directory);
+        assertTrue(store.compact() > 0);
+        assertTrue(segmentBytes(directory) < before / 2);
+        for(int i = 1; i < 10; i++) {
+          assertEquals(tag(190 + i), store.get("key" + i));
+        }
+        assertNull(store.get("key0"));
+      }
+      try(final TagStore store = TagStore.builder().open(directory)) {
+        for(int i = 1; i < 10; i++) {
+          assertEquals(tag(190 + i), store.get("key" + i));
+        }
+        assertNull(store.get("key0"));
+        assertEquals(9, store.size());
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+
+  private static long segmentBytes(final Path directory) throws IOException {
+    try(final Stream<Path> files = Files.list(directory)) {
+      return files.filter(path -> path.toString().endsWith(".seg")).mapToLong(path -> path.toFile().length()).sum();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TagTapeTest {
+  private static CompoundTag compound;
+  private static TagTape tape;
+
+  @BeforeAll
+  static void before() throws IOException, URISyntaxException {
+    final Path path = Paths.get(TagTapeTest.class.getResource("/bigtest.nbt").toURI());
+    compound = TagIO.readCompressedPath(path);
+    tape = TagIO.readCompressedTapePath(path);
+  }
+
+  @Test
+  void testNavigation() {
+    final TagTape.Cursor cursor = tape.cursor();
+    assertEquals(TagType.COMPOUND, cursor.type());
+    assertTrue(cursor.enter("intTest"));
+    assertEquals(Integer.MAX_VALUE, cursor.intValue());
+    assertTrue(cursor.exit());
+    assertFalse(cursor.enter("missing"));
+
+    assertTrue(cursor.enter("nested compound test"));
+    assertTrue(cursor.enter("egg"));
+    assertTrue(cursor.enter("name"));
+    assertEquals("Eggbert", cursor.stringValue());
+    assertEquals(3, cursor.depth());
+    assertTrue(cursor.exit());
+    assertTrue(cursor.exit());
+    assertTrue(cursor.exit());
+    assertFalse(cursor.exit());
+
+    assertTrue(cursor.enter("listTest (long)"));
+    assertEquals(5, cursor.size());
+    assertTrue(cursor.enter(4));
+    assertEquals(15L, cursor.longValue());
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  void testSiblings() {
+    final TagTape.Cursor cursor = tape.cursor();
+    assertEquals(compound.size(), cursor.size());
+    final Set<String> keys = new HashSet<>();
+    assertTrue(cursor.enter());
+    do {
+      keys.add(cursor.key());
+    } while(cursor.next());
+    assertEquals(compound.keySet(), keys);
+  }
+
+  @Test
+  void testDecode() {
+    assertEquals(compound, tape.cursor().toTag());
+  }
+
+  @Test
+  void testArrayViews() throws IOException {
+    final long[] longs = {Long.MIN_VALUE, -100, 0, 100, Long.MAX_VALUE};
+    final CompoundTag tag = new CompoundTag();
+    tag.putLongArray("longs", longs);
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    TagIO.writeDataOutput(tag, new DataOutputStream(output));
+
+    final TagTape.Cursor cursor = TagIO.readTape(output.toByteArray()).cursor();
+    assertTrue(cursor.enter("longs"));
+    final LongBuffer view = cursor.longArrayView();
+    final long[] actual = new long[view.remaining()];
+    view.get(actual);
+    assertArrayEquals(longs, actual);
+
+    final byte[] truncated = Arrays.copyOf(output.toByteArray(), output.size() - 10);
+    assertThrows(EOFException.class, () -> TagIO.readTape(truncated));
+  }
+
+  @Test
+  void testMalformedLists() {
+    final byte[] ends = {TagType.COMPOUND.id(), 0, 0, TagType.LIST.id(), 0, 1, 'a', TagType.END.id(), 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0};
+    assertThrows(IOException.class, () -> TagIO.readTape(ends));
+    final byte[] compounds = {TagType.COMPOUND.id(), 0, 0, TagType.LIST.id(), 0, 1, 'a', TagType.COMPOUND.id(), 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0};
+    assertThrows(EOFException.class, () -> TagIO.readTape(compounds));
+  }
+}
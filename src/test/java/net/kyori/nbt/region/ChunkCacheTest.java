@@ -0,0 +1,109 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt.region;
+
+import net.kyori.nbt.CompoundTag;
+import net.kyori.nbt.TestFiles;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ChunkCacheTest {
+  private static CompoundTag chunk(final int x, final int z) {
+    final CompoundTag tag = new CompoundTag();
+    tag.putInt("xPos", x);
+    tag.putInt("zPos", z);
+    return tag;
+  }
+
+  @Test
+  void testWriteBack() throws IOException {
+    final Path directory = Files.createTempDirectory("chunks");
+    try {
+      try(final ChunkCache cache = ChunkCache.builder().maxChunks(4).maxOpenRegions(1).executor(Runnable::run).build(directory)) {
+        assertNull(cache.get(0, 0));
+        assertFalse(Files.exists(directory.resolve("r.0.0.mca"))); // not created by reads
+        for(int i = 0; i < 8; i++) {
+          cache.put(i * 16, -i, chunk(i * 16, -i));
+        }
+        assertEquals(4, cache.size());
+        // the first chunks were evicted, and written back
+        try(final RegionFile region = RegionFile.openReadOnly(directory.resolve("r.0.-1.mca"))) {
+          assertEquals(chunk(16, -1), region.read(16, -1));
+        }
+        assertEquals(chunk(0, 0), cache.get(0, 0));
+        cache.remove(112, -7);
+      }
+      try(final ChunkCache cache = ChunkCache.builder().build(directory)) {
+        for(int i = 0; i < 7; i++) {
+          assertEquals(chunk(i * 16, -i), cache.get(i * 16, -i));
+        }
+        assertNull(cache.get(112, -7));
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+
+  @Test
+  void testShared() throws Exception {
+    final Path directory = Files.createTempDirectory("chunks");
+    try {
+      try(final RegionFile region = RegionFile.open(directory.resolve("r.0.0.mca"))) {
+        region.write(3, 4, chunk(3, 4));
+      }
+      final ExecutorService executor = Executors.newFixedThreadPool(8);
+      try(final ChunkCache cache = ChunkCache.builder().build(directory)) {
+        final List<Future<CompoundTag>> futures = new ArrayList<>();
+        for(int i = 0; i < 32; i++) {
+          futures.add(executor.submit(() -> cache.get(3, 4)));
+        }
+        final CompoundTag first = futures.get(0).get();
+        assertEquals(chunk(3, 4), first);
+        for(final Future<CompoundTag> future : futures) {
+          assertSame(first, future.get());
+        }
+        assertEquals(1, cache.size());
+        assertSame(first, cache.get(3, 4));
+        assertEquals(1, cache.reads());
+      } finally {
+        executor.shutdown();
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+}
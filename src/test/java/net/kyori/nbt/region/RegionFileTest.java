@@ -0,0 +1,183 @@
+/*
+ * This file is part of nbt, licensed under the MIT License.
+ *
+ * Copyright (c) 2017 KyoriPowered
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.kyori.nbt.region;
+
+import net.kyori.nbt.CompoundTag;
+import net.kyori.nbt.TestFiles;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegionFileTest {
+  private static CompoundTag chunk(final int x, final int z, final int size) {
+    final CompoundTag tag = new CompoundTag();
+    tag.putInt("xPos", x);
+    tag.putInt("zPos", z);
+    final byte[] blocks = new byte[size];
+    new Random(x * 31 + z).nextBytes(blocks);
+    tag.putByteArray("blocks", blocks);
+    return tag;
+  }
+
+  @Test
+  void testReadWrite() throws IOException {
+    final Path directory = Files.createTempDirectory("region");
+    try {
+      final Path path = directory.resolve("r.0.0.mca");
+      try(final RegionFile region = RegionFile.open(path)) {
+        assertNull(region.read(0, 0));
+        region.write(0, 0, chunk(0, 0, 100));
+        region.write(31, 31, chunk(31, 31, 10000));
+        region.write(5, 5, chunk(5, 5, 2_000_000)); // too large for the region file
+        assertTrue(region.contains(0, 0));
+        assertEquals(chunk(0, 0, 100), region.read(0, 0));
+        assertEquals(chunk(31, 31, 10000), region.read(-1, -1));
+      }
+      try(final RegionFile region = RegionFile.openReadOnly(path)) {
+        assertEquals(chunk(0, 0, 100), region.read(0, 0));
+        assertEquals(chunk(31, 31, 10000), region.read(31, 31));
+        assertEquals(chunk(5, 5, 2_000_000), region.read(5, 5));
+        assertFalse(region.contains(1, 0));
+      }
+      try(final RegionFile region = RegionFile.open(path)) {
+        region.delete(5, 5);
+        assertNull(region.read(5, 5));
+        assertFalse(Files.exists(directory.resolve("c.5.5.mcc")));
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+
+  @Test
+  void testExternalName() throws IOException {
+    final Path directory = Files.createTempDirectory("region");
+    try {
+      try(final RegionFile region = RegionFile.open(directory.resolve("r.1.-1.mca"))) {
+        region.write(3, 4, chunk(3, 4, 2_000_000));
+        assertTrue(Files.exists(directory.resolve("c.35.-28.mcc")));
+        assertEquals(chunk(3, 4, 2_000_000), region.read(35, -28));
+      }
+      try(final RegionFile region = RegionFile.open(directory.resolve("chunks.dat"))) {
+        assertThrows(IOException.class, () -> region.write(0, 0, chunk(0, 0, 2_000_000)));
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+
+  @Test
+  void testCompact() throws IOException {
+    final Path directory = Files.createTempDirectory("region");
+    try {
+      final Path path = directory.resolve("r.0.0.mca");
+      try(final RegionFile region = RegionFile.open(path)) {
+        for(int i = 0; i < 16; i++) {
+          region.write(i, 0, chunk(i, 0, 20000));
+        }
+        for(int i = 0; i < 16; i += 2) {
+          region.write(i, 0, chunk(i, 0, 50000)); // moved to the end, leaving holes
+        }
+        region.delete(1, 0);
+      }
+      final long before = Files.size(path);
+      final RegionCompactor.Result result = RegionCompactor.builder().build().compact(path);
+      assertEquals(1, result.files());
+      assertEquals(15, result.chunks());
+      assertEquals(before, result.before());
+      assertEquals(Files.size(path), result.after());
+      assertTrue(result.reclaimed() > 0);
+      try(final RegionFile region = RegionFile.openReadOnly(path)) {
+        assertEquals(Files.size(path) / RegionFile.SECTOR_BYTES, region.usedSectors());
+        for(int i = 0; i < 16; i++) {
+          assertEquals(i == 1 ? null : chunk(i, 0, i % 2 == 0 ? 50000 : 20000), region.read(i, 0));
+        }
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+
+  @Test
+  void testCompactOversized() throws IOException {
+    final Path directory = Files.createTempDirectory("region");
+    try {
+      final Path path = directory.resolve("r.0.0.mca");
+      final CompoundTag tag = new CompoundTag();
+      tag.putByteArray("blocks", new byte[1_500_000]);
+      try(final RegionFile region = RegionFile.open(path)) {
+        region.write(0, 0, tag);
+        region.write(1, 0, chunk(1, 0, 100));
+      }
+      // uncompressed, the chunk is too large for the region file
+      RegionCompactor.builder().recompress(RegionCompression.NONE, -1).build().compact(path);
+      RegionCompactor.builder().build().compact(path, path);
+      try(final RegionFile region = RegionFile.openReadOnly(path)) {
+        assertEquals(tag, region.read(0, 0));
+        assertEquals(chunk(1, 0, 100), region.read(1, 0));
+        assertEquals(RegionCompression.ZLIB.id(), region.readPayload(RegionFile.index(0, 0))[4]);
+        assertEquals(RegionCompression.NONE.id(), region.readPayload(RegionFile.index(1, 0))[4]);
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+
+  @Test
+  void testCompactWorld() throws IOException {
+    final Path directory = Files.createTempDirectory("world");
+    try {
+      Files.createDirectories(directory.resolve("region"));
+      for(int r = 0; r < 4; r++) {
+        try(final RegionFile region = RegionFile.open(directory.resolve("region").resolve("r." + r + ".0.mca"), RegionCompression.GZIP, 1)) {
+          for(int i = 0; i < 8; i++) {
+            final CompoundTag tag = new CompoundTag();
+            tag.putByteArray("blocks", new byte[30000]);
+            region.write(i, i, tag);
+          }
+        }
+      }
+      final RegionCompactor.Result result = RegionCompactor.builder().recompress(RegionCompression.ZLIB, 9).threads(2).build().compactWorld(directory);
+      assertEquals(4, result.files());
+      assertEquals(32, result.chunks());
+      try(final RegionFile region = RegionFile.openReadOnly(directory.resolve("region").resolve("r.2.0.mca"))) {
+        final CompoundTag tag = new CompoundTag();
+        tag.putByteArray("blocks", new byte[30000]);
+        assertEquals(tag, region.read(7, 7));
+        assertEquals(RegionCompression.ZLIB.id(), region.readPayload(RegionFile.index(7, 7))[4]);
+      }
+    } finally {
+      TestFiles.delete(directory);
+    }
+  }
+}